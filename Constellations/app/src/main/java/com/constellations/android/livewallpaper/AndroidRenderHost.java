@@ -0,0 +1,46 @@
+package com.constellations.android.livewallpaper;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.io.File;
+
+/**
+ * The {@link RenderHost} of the app, backed by its {@link Context}
+ */
+public class AndroidRenderHost implements RenderHost
+{
+    private final Context context;
+
+    /**
+     * @param context Context used to retrieve resources, settings and the cache directory
+     */
+    public AndroidRenderHost(Context context)
+    {
+        this.context = context;
+    }
+
+    @Override
+    public String loadShaderSource(int resourceId) throws ShaderException
+    {
+        return ShaderProgram.loadSource(context, resourceId);
+    }
+
+    @Override
+    public File getCacheDir()
+    {
+        return context.getCacheDir();
+    }
+
+    @Override
+    public void updateConfiguration()
+    {
+        Configuration.update(context);
+    }
+
+    @Override
+    public long uptimeMillis()
+    {
+        return SystemClock.uptimeMillis();
+    }
+}
@@ -0,0 +1,412 @@
+package com.constellations.android.livewallpaper;
+
+import com.constellations.android.util.Logger;
+import com.constellations.android.util.LoggerConfig;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * A pre-rendered cycle of the scene, stored as a sequence of deflate-compressed keyframes
+ * in the cache directory.
+ *
+ * The scene fades in from black at the start of each {@link SceneMath#SCENE_PERIOD} and is
+ * black again at its end, so a single cycle loops seamlessly. It is rendered once on the CPU
+ * with the {@link ReferenceRenderer}, at a low resolution and a low frame rate, after which
+ * {@link LoopPlayer} can replay it by blending neighbouring keyframes instead of evaluating
+ * the scene shader.
+ *
+ * Baking happens on a background thread, one keyframe file at a time. Files are written
+ * under a temporary name and renamed once complete, so an interrupted bake resumes with the
+ * first missing keyframe. The directory name encodes the loop dimensions and the colour
+ * configuration, so changing either starts a new bake. Engines with different
+ * configurations, like the home and the lock screen, share the directory, so only loops
+ * beyond the {@link #KEPT_LOOPS} most recently used ones are deleted.
+ */
+public class BakedLoop
+{
+    private static final String TAG = "BakedLoop";
+
+    /**
+     * Number of keyframes per second of scene time
+     */
+    public static final int FRAME_RATE = 2;
+
+    /**
+     * Number of keyframes in the loop
+     */
+    public static final int FRAMES = (int)(SceneMath.SCENE_PERIOD * FRAME_RATE);
+
+    /**
+     * The loop is rendered at the screen resolution divided by this value
+     */
+    public static final int DIVISOR = 8;
+
+    /**
+     * Increase this if the file format or the scene changes, so old loops are not reused
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Name of the directory below the cache directory holding all loops
+     */
+    private static final String DIRECTORY = "loop";
+
+    /**
+     * Number of loops kept in the cache, including the one being baked
+     */
+    private static final int KEPT_LOOPS = 3;
+
+    /**
+     * Keyframes store RGB8 pixels
+     */
+    public static final int BYTES_PER_PIXEL = 3;
+
+    private final File directory;
+    private final int width;
+    private final int height;
+    private final boolean useCustomColor;
+    private final float red, green, blue;
+
+    /**
+     * Whether all keyframes are on disk
+     */
+    private volatile boolean complete;
+
+    /**
+     * Whether the bake was cancelled
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * The thread baking the missing keyframes, or null if none is running
+     */
+    private Thread baker;
+
+    /**
+     * Describe the loop for given screen and colour configuration. Nothing is baked until
+     * {@link #start()} is called.
+     * @param cacheDir The cache directory of the application
+     * @param screenWidth Screen width in pixels
+     * @param screenHeight Screen height in pixels
+     * @param useCustomColor Value of the iUseCustomColor uniform
+     * @param r Red component of iCustomColor
+     * @param g Green component of iCustomColor
+     * @param b Blue component of iCustomColor
+     */
+    public BakedLoop(File cacheDir, int screenWidth, int screenHeight, boolean useCustomColor, float r, float g, float b)
+    {
+        this.width = Math.max(1, screenWidth / DIVISOR);
+        this.height = Math.max(1, screenHeight / DIVISOR);
+        this.useCustomColor = useCustomColor;
+        this.red = useCustomColor ? r : 0.f;
+        this.green = useCustomColor ? g : 0.f;
+        this.blue = useCustomColor ? b : 0.f;
+
+        this.directory = new File(new File(cacheDir, DIRECTORY), key());
+    }
+
+    /**
+     * The name of the directory of this loop. It covers everything the keyframes depend on.
+     */
+    private String key()
+    {
+        final StringBuilder key = new StringBuilder();
+        key.append('v').append(FORMAT_VERSION).append('_').append(width).append('x').append(height);
+
+        if(useCustomColor)
+        {
+            key.append(String.format(Locale.US, "_%02x%02x%02x", Math.round(red * 255.f),
+                    Math.round(green * 255.f), Math.round(blue * 255.f)));
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Whether this loop describes the same keyframes as given one
+     */
+    public boolean isSameAs(BakedLoop other)
+    {
+        return other != null && directory.equals(other.directory);
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Size of a decompressed keyframe in bytes
+     */
+    public int getFrameSize()
+    {
+        return width * height * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Whether all keyframes are baked, so the loop can be played back
+     */
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    /**
+     * Start baking the missing keyframes in the background. This marks the loop as used, and
+     * deletes the least recently used loops of other configurations. Calling this again after
+     * a keyframe went missing resumes the bake.
+     */
+    public synchronized void start()
+    {
+        if(cancelled || (baker != null && baker.isAlive()))
+            return;
+
+        complete = false;
+
+        baker = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                bake();
+            }
+        }, TAG);
+
+        baker.setPriority(Thread.MIN_PRIORITY);
+        baker.setDaemon(true);
+        baker.start();
+    }
+
+    /**
+     * Stop baking. Keyframes already on disk are kept, so a later loop with the same
+     * configuration resumes from there.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Bake all keyframes that are not on disk yet
+     */
+    private void bake()
+    {
+        if(!directory.isDirectory() && !directory.mkdirs())
+        {
+            Logger.w(TAG, "Cannot create " + directory);
+            return;
+        }
+
+        // The modification time of a loop directory is the time it was last used
+        directory.setLastModified(System.currentTimeMillis());
+        deleteStaleLoops();
+
+        // Leave half of the cores to the rest of the system
+        final ForkJoinPool pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        final ReferenceRenderer renderer = new ReferenceRenderer(pool, ReferenceRenderer.DEFAULT_TILE_SIZE);
+        renderer.setCustomColor(useCustomColor, red, green, blue);
+
+        final ReferenceImage image = new ReferenceImage(width, height);
+        final byte[] frame = new byte[getFrameSize()];
+        int baked = 0;
+
+        try
+        {
+            for(int i = 0; i < FRAMES && !cancelled; ++i)
+            {
+                final File file = frameFile(i);
+
+                if(file.isFile())
+                    continue;
+
+                renderer.render(image, (float)i / FRAME_RATE);
+                pack(image, frame);
+                write(file, frame);
+                ++baked;
+            }
+        }
+        catch(IOException ex)
+        {
+            Logger.w(TAG, "Baking the loop failed", ex);
+            return;
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        if(!cancelled)
+        {
+            if(LoggerConfig.ON)
+            {
+                Logger.d(TAG, "Loop " + directory.getName() + " complete, baked " + baked + " keyframes");
+            }
+
+            complete = true;
+        }
+    }
+
+    /**
+     * Convert a rendered image to RGB8 bytes, bottom row first like OpenGL expects
+     */
+    private static void pack(ReferenceImage image, byte[] frame)
+    {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final int[] pixels = image.getPixels();
+
+        int offset = 0;
+        for(int y = h - 1; y >= 0; --y)
+        {
+            for(int x = 0; x < w; ++x)
+            {
+                final int pixel = pixels[y * w + x];
+                frame[offset++] = (byte)(pixel >> 16);
+                frame[offset++] = (byte)(pixel >> 8);
+                frame[offset++] = (byte)pixel;
+            }
+        }
+    }
+
+    private void write(File file, byte[] frame) throws IOException
+    {
+        // Other engines may bake the same loop, so temporary files have to be unique
+        final File temp = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try(OutputStream out = new DeflaterOutputStream(new FileOutputStream(temp), deflater))
+        {
+            out.write(frame);
+        }
+        finally
+        {
+            deflater.end();
+        }
+
+        if(!temp.renameTo(file))
+        {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Decompress a keyframe
+     * @param index Index of the keyframe
+     * @param out Receives the RGB8 pixels. Its capacity has to be at least {@link #getFrameSize()}.
+     * @param inflater Inflater to use, which is reset first
+     * @param scratch Buffer holding the compressed file, grown if too small
+     * @return The scratch buffer to use for the next call
+     * @throws IOException If the keyframe is missing or corrupt. Corrupt keyframes are deleted,
+     * so resuming the bake with {@link #start()} replaces them.
+     */
+    public byte[] readFrame(int index, ByteBuffer out, Inflater inflater, byte[] scratch) throws IOException
+    {
+        final File file = frameFile(index);
+        final int length = (int)file.length();
+
+        if(length == 0)
+            throw new IOException("Keyframe " + index + " is missing");
+
+        if(scratch == null || scratch.length < length)
+            scratch = new byte[length];
+
+        try(InputStream in = new FileInputStream(file))
+        {
+            int read = 0;
+            while(read < length)
+            {
+                final int count = in.read(scratch, read, length - read);
+
+                if(count < 0)
+                    throw new IOException("Keyframe " + index + " is truncated");
+
+                read += count;
+            }
+        }
+
+        inflater.reset();
+        inflater.setInput(scratch, 0, length);
+
+        try
+        {
+            final int size = inflater.inflate(out.array(), out.arrayOffset(), getFrameSize());
+
+            if(size != getFrameSize() || !inflater.finished())
+                throw new DataFormatException("Unexpected size");
+        }
+        catch(DataFormatException ex)
+        {
+            file.delete();
+            throw new IOException("Keyframe " + index + " is corrupt", ex);
+        }
+
+        out.position(0);
+        out.limit(getFrameSize());
+
+        return scratch;
+    }
+
+    private File frameFile(int index)
+    {
+        return new File(directory, String.format(Locale.US, "%04d.bin", index));
+    }
+
+    /**
+     * Delete the loops of other configurations, except for the most recently used ones
+     */
+    private void deleteStaleLoops()
+    {
+        final File[] loops = directory.getParentFile().listFiles();
+
+        if(loops == null || loops.length <= KEPT_LOOPS)
+            return;
+
+        // Most recently used first
+        Arrays.sort(loops, new Comparator<File>()
+        {
+            @Override
+            public int compare(File a, File b)
+            {
+                return Long.compare(b.lastModified(), a.lastModified());
+            }
+        });
+
+        int kept = 1;
+
+        for(File loop: loops)
+        {
+            if(loop.equals(directory) || kept++ < KEPT_LOOPS)
+                continue;
+
+            final File[] files = loop.listFiles();
+
+            if(files != null)
+            {
+                for(File file: files)
+                    file.delete();
+            }
+
+            loop.delete();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+/**
+ * {@link Presenter} copying the scene to the screen with glBlitFramebuffer, see
+ * {@link PresentStrategy#BLIT}. The render target must not have a floating point format.
+ */
+public class BlitPresenter implements Presenter
+{
+    private final GLBackend gl;
+    private final GLState state;
+
+    /**
+     * GL_NEAREST or GL_LINEAR
+     */
+    private int filter = GLES31.GL_LINEAR;
+
+    public BlitPresenter(GLState state)
+    {
+        this.state = state;
+        this.gl = state.getBackend();
+    }
+
+    /**
+     * Set the filter to upscale with, which may only be nearest or bilinear
+     */
+    public void setFilter(UpscaleFilter filter)
+    {
+        this.filter = filter.getTextureFilter();
+    }
+
+    @Override
+    public void present(RenderTarget source, int width, int height)
+    {
+        final Dimensions size = source.getDimensions();
+
+        state.bindReadFramebuffer(source.getFramebufferHandle());
+
+        gl.glBlitFramebuffer(0, 0, size.getWidth(), size.getHeight(), 0, 0, width, height,
+                GLES31.GL_COLOR_BUFFER_BIT, filter);
+    }
+}
@@ -2,46 +2,142 @@ package com.constellations.android.livewallpaper;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.graphics.Color;
 import android.preference.PreferenceManager;
 
-public class Configuration
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Immutable snapshot of the wallpaper settings. Whenever the settings change, a new snapshot
+ * with a higher version number is published atomically. Readers on any thread get a
+ * consistent set of values without locking, and the render thread can detect changes by
+ * comparing version numbers once per frame.
+ */
+public final class Configuration
 {
-    private static Configuration instance;
+    /**
+     * The most recently published snapshot
+     */
+    private static final AtomicReference<Configuration> current =
+            new AtomicReference<>(new Configuration());
 
-    private Color customColor;
-    private boolean useCustomColor;
-    private int resolutionDivisor;
+    private final long version;
+    private final int customColor;
+    private final boolean useCustomColor;
+    private final int resolutionDivisor;
+    private final InterleaveMode interleaveMode;
+    private final boolean geometryRenderer;
+    private final boolean layerCache;
+    private final boolean cpuPoints;
+    private final QualityTier qualityTier;
+    private final TargetFormat targetFormat;
+    private final UpscaleFilter upscaleFilter;
+    private final PresentStrategy presentStrategy;
+    private final boolean bakedPlayback;
+    private final boolean adaptiveResolution;
+    private final int minResolutionDivisor;
+    private final int maxResolutionDivisor;
+    private final float targetFrameTime;
+    private final int targetFps;
 
-    public synchronized static Configuration getInstance()
+    /**
+     * Retrieve the most recently published snapshot. This never blocks.
+     */
+    public static Configuration getCurrent()
     {
-        if(instance == null)
-            instance = new Configuration();
+        return current.get();
+    }
 
-        return instance;
+    /**
+     * Read the settings of given context and publish them as a new snapshot
+     */
+    public static void update(Context c)
+    {
+        update(PreferenceManager.getDefaultSharedPreferences(c));
     }
 
-    private Configuration()
+    /**
+     * Read given settings and publish them as a new snapshot. This may be called from any
+     * thread.
+     */
+    public static void update(SharedPreferences prefs)
     {
+        // Versions have to increase even if two threads publish at the same time
+        Configuration previous;
+        Configuration next;
+
+        do
+        {
+            previous = current.get();
+            next = new Configuration(prefs, previous.version + 1);
+        }
+        while(!current.compareAndSet(previous, next));
     }
 
-    public synchronized void update(Context c)
+    /**
+     * Create the initial snapshot holding the default settings
+     */
+    private Configuration()
     {
-        update(PreferenceManager.getDefaultSharedPreferences(c));
+        version = 0;
+        customColor = 0xFFFFFFFF;
+        useCustomColor = false;
+        resolutionDivisor = 4;
+        interleaveMode = InterleaveMode.OFF;
+        geometryRenderer = false;
+        layerCache = false;
+        cpuPoints = false;
+        qualityTier = QualityTier.HIGH;
+        targetFormat = TargetFormat.RGBA8;
+        upscaleFilter = UpscaleFilter.BILINEAR;
+        presentStrategy = PresentStrategy.AUTO;
+        bakedPlayback = false;
+        adaptiveResolution = true;
+        minResolutionDivisor = 4;
+        maxResolutionDivisor = 8;
+        targetFrameTime = 16.7f;
+        targetFps = 30;
     }
 
-    public synchronized void update(SharedPreferences prefs)
+    private Configuration(SharedPreferences prefs, long version)
     {
+        this.version = version;
+
         // Get color
-        int customColorInt = prefs.getInt("custom_color", 0xFFFFFFFF);
-        customColor = Color.valueOf(customColorInt);
+        customColor = prefs.getInt("custom_color", 0xFFFFFFFF);
 
         useCustomColor = prefs.getBoolean("use_fixed_color", false);
 
         resolutionDivisor = parseInt(prefs, "res_divisor", "4");
+        interleaveMode = InterleaveMode.fromKey(prefs.getString("interleave_mode", "off"));
+        geometryRenderer = prefs.getBoolean("geometry_renderer", false);
+        layerCache = prefs.getBoolean("layer_cache", false);
+        cpuPoints = prefs.getBoolean("cpu_points", false);
+        qualityTier = QualityTier.fromKey(prefs.getString("quality_tier", "high"));
+        targetFormat = TargetFormat.fromKey(prefs.getString("target_format", "rgba8"));
+        upscaleFilter = UpscaleFilter.fromKey(prefs.getString("upscale_filter", "bilinear"));
+        presentStrategy = PresentStrategy.fromKey(prefs.getString("present_mode", "auto"));
+        bakedPlayback = prefs.getBoolean("baked_playback", false);
+
+        adaptiveResolution = prefs.getBoolean("adaptive_resolution", true);
+        minResolutionDivisor = parseInt(prefs, "res_divisor_min", "4");
+        maxResolutionDivisor = parseInt(prefs, "res_divisor_max", "8");
+        targetFrameTime = parseFloat(prefs, "target_frame_time", "16.7");
+        targetFps = parseInt(prefs, "target_fps", "30");
+    }
+
+    private static float parseFloat(SharedPreferences p, String key, String def)
+    {
+        try
+        {
+            return Float.parseFloat(p.getString(key, def));
+        }
+        catch(NumberFormatException e)
+        {
+            return Float.parseFloat(def);
+        }
     }
 
-    private int parseInt(SharedPreferences p, String key, String def)
+    private static int parseInt(SharedPreferences p, String key, String def)
     {
         try
         {
@@ -53,12 +149,173 @@ public class Configuration
         }
     }
 
+    /**
+     * Whether any setting affecting the render target layout or the resolution governor
+     * differs between this snapshot and given one
+     */
+    public boolean resolutionDiffers(Configuration other)
+    {
+        return resolutionDivisor != other.resolutionDivisor
+                || interleaveMode != other.interleaveMode
+                || targetFormat != other.targetFormat
+                || upscaleFilter != other.upscaleFilter
+                || geometryRenderer != other.geometryRenderer
+                || layerCache != other.layerCache
+                || adaptiveResolution != other.adaptiveResolution
+                || minResolutionDivisor != other.minResolutionDivisor
+                || maxResolutionDivisor != other.maxResolutionDivisor
+                || targetFrameTime != other.targetFrameTime
+                || targetFps != other.targetFps;
+    }
+
+    /**
+     * Whether any setting stored in the frame uniforms differs between this snapshot and
+     * given one
+     */
+    public boolean colorDiffers(Configuration other)
+    {
+        return useCustomColor != other.useCustomColor
+                || customColor != other.customColor;
+    }
+
+    /**
+     * The version of this snapshot. Each published snapshot has a higher version than the
+     * previous one.
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
     public int getResolutionDivisor()
     {
         return resolutionDivisor;
     }
 
-    public Color getCustomColor()
+    /**
+     * The interleaving pattern used to render the first pass
+     */
+    public InterleaveMode getInterleaveMode()
+    {
+        return interleaveMode;
+    }
+
+    /**
+     * The quality tier the scene shaders are built for
+     */
+    public QualityTier getQualityTier()
+    {
+        return qualityTier;
+    }
+
+    /**
+     * The preferred texture format of the render targets. It is only used if it is
+     * renderable, see {@link TargetFormat#negotiate(TargetFormat, GLCapabilities)}.
+     */
+    public TargetFormat getTargetFormat()
+    {
+        return targetFormat;
+    }
+
+    /**
+     * The filter the render target is upscaled to the screen with
+     */
+    public UpscaleFilter getUpscaleFilter()
+    {
+        return upscaleFilter;
+    }
+
+    /**
+     * The preferred way of getting the scene to the screen. The strategy actually used is
+     * picked by {@link PresentStrategy#choose(Configuration)}.
+     */
+    public PresentStrategy getPresentStrategy()
+    {
+        return presentStrategy;
+    }
+
+    /**
+     * Whether a pre-rendered loop of the scene is played back instead of rendering it live,
+     * see {@link BakedLoop}
+     */
+    public boolean isBakedPlayback()
+    {
+        return bakedPlayback;
+    }
+
+    /**
+     * Whether the scene is drawn as geometry (see {@link GeometryRenderer}) instead of being
+     * evaluated per pixel. Interleaving does not apply in that case.
+     */
+    public boolean isGeometryRenderer()
+    {
+        return geometryRenderer;
+    }
+
+    /**
+     * Whether the layers of the scene are cached and refreshed one at a time (see
+     * {@link LayerCache}). This does not apply to the geometry renderer, and interleaving
+     * does not apply in that case.
+     */
+    public boolean isLayerCache()
+    {
+        return layerCache;
+    }
+
+    /**
+     * Whether the points of the scene are simulated on the CPU (see {@link PointSimulation})
+     * instead of by the compute pass. This does not apply to the geometry renderer.
+     */
+    public boolean isCpuPoints()
+    {
+        return cpuPoints;
+    }
+
+    /**
+     * Whether the resolution divisor is chosen automatically at runtime. In that case,
+     * {@link #getResolutionDivisor()} is only the initial value.
+     */
+    public boolean isAdaptiveResolution()
+    {
+        return adaptiveResolution;
+    }
+
+    /**
+     * Smallest resolution divisor (highest quality) adaptive resolution may choose
+     */
+    public int getMinResolutionDivisor()
+    {
+        return minResolutionDivisor;
+    }
+
+    /**
+     * Largest resolution divisor (lowest quality) adaptive resolution may choose
+     */
+    public int getMaxResolutionDivisor()
+    {
+        return maxResolutionDivisor;
+    }
+
+    /**
+     * Frame time adaptive resolution tries to hold, in milliseconds
+     */
+    public float getTargetFrameTime()
+    {
+        return targetFrameTime;
+    }
+
+    /**
+     * Frame rate cap in Hz, or 0 to render at the native display refresh rate
+     */
+    public int getTargetFps()
+    {
+        return targetFps;
+    }
+
+    /**
+     * The custom color as packed 0xAARRGGBB value
+     */
+    public int getCustomColor()
     {
         return customColor;
     }
@@ -1,12 +1,14 @@
 package com.constellations.android.livewallpaper;
 
 import android.content.Context;
-import android.graphics.Color;
 import android.opengl.GLES31;
 import android.opengl.GLSurfaceView;
-import android.os.SystemClock;
-import android.util.Log;
-import com.constellations.android.R;
+import com.constellations.android.util.Logger;
+
+import java.io.PrintWriter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
@@ -18,6 +20,34 @@ public class ConstellationsRenderer implements GLSurfaceView.Renderer
 {
     private static final String TAG = "ConstellationsRenderer";
 
+    /**
+     * Texture unit the precomputed points are bound to during the first pass. Units 0 and 1
+     * are used by the other passes.
+     */
+    private static final int CELLS_TEXTURE_UNIT = 2;
+
+    /**
+     * All attachments of the default framebuffer. The presenting passes overwrite every
+     * pixel, so none of them has to be loaded.
+     */
+    private static final int[] SCREEN_ATTACHMENTS = { GLES31.GL_COLOR, GLES31.GL_DEPTH, GLES31.GL_STENCIL };
+
+    /**
+     * The attachments of the default framebuffer that are never used, so they do not have to
+     * be stored
+     */
+    private static final int[] UNUSED_SCREEN_ATTACHMENTS = { GLES31.GL_DEPTH, GLES31.GL_STENCIL };
+
+    /**
+     * The GL backend all calls are issued through
+     */
+    private final GLBackend gl;
+
+    /**
+     * Shadow copy of the GL binding state, used to drop redundant binds
+     */
+    private final GLState state;
+
     /**
      * The current screen width
      */
@@ -34,14 +64,186 @@ public class ConstellationsRenderer implements GLSurfaceView.Renderer
     private ShaderProgram firstPassProgram;
 
     /**
-     * The shader program used to draw the FBO texture to a full screen quad
+     * The strategy the engine asked for, see {@link #setPresentStrategy(PresentStrategy)}
+     */
+    private volatile PresentStrategy requestedStrategy = PresentStrategy.QUAD;
+
+    /**
+     * Whether the wallpaper became visible again since the last frame, see {@link #onResume()}
+     */
+    private volatile boolean resumed;
+
+    /**
+     * The strategy currently applied
+     */
+    private PresentStrategy presentStrategy;
+
+    /**
+     * Draws the scene to the screen with a full screen quad
+     */
+    private QuadPresenter quadPresenter;
+
+    /**
+     * Copies the scene to the screen with glBlitFramebuffer
+     */
+    private BlitPresenter blitPresenter;
+
+    /**
+     * The presenter of the current strategy
+     */
+    private Presenter presenter;
+
+    /**
+     * Whether the first pass renders straight to the screen, which the compositor upscales.
+     * There is no second pass in that case.
      */
-    private ShaderProgram secondPassProgram;
+    private boolean renderToScreen;
+
+    /**
+     * Whether the resolution divisor is chosen by the governor
+     */
+    private boolean adaptiveResolution;
+
+    /**
+     * The shader program used to recombine the interleaved fields of the first pass
+     */
+    private ShaderProgram resolveProgram;
+
+    /**
+     * Compute pass precomputing the animated points the first pass program reads
+     */
+    private PointPositionPass positionPass;
+
+    /**
+     * Alternative to the compute pass simulating the points on the CPU, and the stream
+     * uploading them, used if enabled in the settings. The stream is created on first use.
+     */
+    private PointSimulation pointSimulation;
+    private PointStream pointStream;
+
+    /**
+     * Whether the points are simulated on the CPU
+     */
+    private boolean useCpuPoints;
+
+    /**
+     * Alternative first pass drawing the scene as geometry, used if enabled in the settings
+     */
+    private GeometryRenderer geometryRenderer;
+
+    /**
+     * Whether the geometry renderer is used for the first pass
+     */
+    private boolean useGeometry;
+
+    /**
+     * Alternative first pass caching each layer and refreshing them one at a time, used if
+     * enabled in the settings
+     */
+    private LayerCache layerCache;
+
+    /**
+     * Whether the layer cache is used for the first pass
+     */
+    private boolean useLayers;
+
+    /**
+     * Resources shared with the renderers of other engines, or null if this renderer always
+     * builds its own programs
+     */
+    private final SharedResources shared;
+
+    /**
+     * Whether the render context is part of the share group of {@link #shared}. Otherwise,
+     * the renderer builds its own programs on the render thread.
+     */
+    private boolean sharing;
+
+    /**
+     * The shared programs currently being built. Until they are ready, a placeholder frame
+     * is presented.
+     */
+    private Future<ScenePrograms> pendingPrograms;
+
+    /**
+     * The quality tier of the pending shared programs, or null if none are pending
+     */
+    private QualityTier pendingTier;
+
+    /**
+     * The quality tier of the installed shared programs, or null if the installed programs
+     * are owned by this renderer
+     */
+    private QualityTier heldTier;
+
+    /**
+     * Whether the programs are built and installed
+     */
+    private boolean programsReady;
+
+    /**
+     * The installed programs, or null if there are none yet. If {@link #heldTier} is set,
+     * these are a view of shared programs.
+     */
+    private ScenePrograms scenePrograms;
+
+    /**
+     * The quality tier programs were last requested for
+     */
+    private QualityTier requestedTier;
+
+    /**
+     * The pre-rendered loop played back in battery saver mode, or null if that is disabled
+     */
+    private BakedLoop bakedLoop;
+
+    /**
+     * Plays back the baked loop once it is complete. Created when first needed.
+     */
+    private LoopPlayer loopPlayer;
+
+    /**
+     * The configuration snapshot currently applied, or null if the next one has to be
+     * applied in full
+     */
+    private Configuration appliedConfig;
+
+    /**
+     * The power policy currently applied, or null if the next one has to be applied in full
+     */
+    private RenderPolicy appliedPolicy;
+
+    /**
+     * The resolution divisor the render target was last resized with
+     */
+    private float currentDivisor = 1.f;
+
+    /**
+     * The per-frame uniform block of the first pass program
+     */
+    private FrameUniforms frameUniforms;
 
 
     private int empty_vbo;
     private int empty_vao;
 
+    /**
+     * Recycles the textures of the render targets when they are resized
+     */
+    private TexturePool texturePool;
+
+    /**
+     * Touches and launcher offsets driving iMouse
+     */
+    private final ParallaxInput parallax = new ParallaxInput();
+
+    /**
+     * Scratch storage for the render target dimensions, and those of a single field if
+     * interleaving is used. Render targets copy them.
+     */
+    private final Dimensions targetSize = new Dimensions();
+    private final Dimensions fieldSize = new Dimensions();
+
     /**
      * Render target used to render scene to a texture. This is useful since it
      * allows rendering at a lower resolution to save computing power.
@@ -49,79 +251,265 @@ public class ConstellationsRenderer implements GLSurfaceView.Renderer
     private RenderTarget renderTarget;
 
     /**
-     * The current application context. This is used to retrieve shader resources.
+     * The interleaving pattern of the first pass. If interleaving is enabled, the render
+     * target above only holds the field shaded this frame, and the full image is reconstructed
+     * into one of the history targets.
+     */
+    private InterleaveMode interleaveMode = InterleaveMode.OFF;
+
+    /**
+     * Full resolution targets for interleaved rendering. Each frame, one of them receives the
+     * resolved image while the other one holds the previous frame.
      */
-    private Context context;
+    private final RenderTarget[] historyTargets = new RenderTarget[2];
 
     /**
-     * Flag indicating if the first frame already happened or not. This is used
-     * to mark the time of startup (which we interpret as the time when the first
-     * frame was drawn, since this causes the wallpaper to always start exactly the
-     * same way, independent of a possibly varying startup time)
+     * Index of the history target the next frame is resolved into
      */
-    private boolean firstFrame = true;
+    private int historyIndex;
 
     /**
-     * The point in time the application rendered the first frame.
+     * Whether the history target holding the previous frame has valid contents
      */
-    private long startTime;
+    private boolean historyValid;
+
+    /**
+     * Number of frames rendered since the render target was resized, used to cycle the fields
+     */
+    private int interleaveFrame;
+
+    /**
+     * Capabilities of the current context
+     */
+    private GLCapabilities capabilities;
+
+    /**
+     * Timer measuring the GPU cost of the passes rendering the scene. This is null if timer
+     * queries are not supported.
+     */
+    private GpuTimer gpuTimer;
+
+    /**
+     * Timer measuring the GPU cost of the pass presenting the scene. This is null if timer
+     * queries are not supported.
+     */
+    private GpuTimer presentTimer;
+
+    /**
+     * Performance telemetry, reported through {@link #dumpMetrics(PrintWriter, String)}
+     */
+    private final FrameMetrics metrics = new FrameMetrics();
+
+    /**
+     * Governor choosing the resolution divisor if adaptive resolution is enabled
+     */
+    private final ResolutionGovernor governor = new ResolutionGovernor();
+
+    /**
+     * The point in time the previous frame started, in nanoseconds, or 0 if there was no
+     * previous frame since the surface was created, the wallpaper became visible or the
+     * animation was unpaused. Used to measure frame intervals for the telemetry, and for
+     * the governor when no GPU timer is available.
+     */
+    private long lastFrameStart;
+
+    /**
+     * Intervals longer than this many expected frame intervals are gaps, like the wallpaper
+     * being hidden, and not a measurement of the rendering cost
+     */
+    private static final int MAX_INTERVAL_FRAMES = 4;
+
+    /**
+     * The longest frame interval that is a measurement of the rendering cost, in nanoseconds
+     */
+    private long maxFrameInterval;
+
+    /**
+     * The platform services, used to retrieve shader resources, settings and the time
+     */
+    private final RenderHost host;
+
+    /**
+     * The live clock, following the vsyncs reported by the frame pacer
+     */
+    private final VsyncFrameClock vsyncClock = new VsyncFrameClock();
+
+    /**
+     * The clock deciding the scene time of each frame. The scene starts with the first
+     * rendered frame, so the wallpaper always starts exactly the same way, independent of a
+     * possibly varying startup time.
+     */
+    private FrameClock clock = vsyncClock;
 
 
     public ConstellationsRenderer(Context c)
     {
-        this.context = c;
+        this(c, new GLES31Backend());
+    }
+
+    /**
+     * Create renderer issuing all GL calls through given backend. This allows the command
+     * stream to be recorded, for example using {@link RecordingGLBackend}.
+     * @param c The application context
+     * @param gl The GL backend to use
+     */
+    public ConstellationsRenderer(Context c, GLBackend gl)
+    {
+        this(new AndroidRenderHost(c), gl, SharedResources.acquire(c));
 
         ContextManager.setContext(c);
     }
 
+    /**
+     * Create renderer that only reaches the platform through given host and backend, for
+     * example to drive it on a plain JVM
+     * @param host The platform services
+     * @param gl The GL backend to use
+     * @param shared Resources shared with the renderers of other engines, or null to always
+     *               build the programs on the render thread
+     */
+    public ConstellationsRenderer(RenderHost host, GLBackend gl, SharedResources shared)
+    {
+        this.host = host;
+        this.gl = gl;
+        this.state = new GLState(gl);
+        this.shared = shared;
+    }
+
+    /**
+     * The factory creating the render context. It has to be installed on the surface view, so
+     * the context joins the share group of the other engines.
+     */
+    public GLSurfaceView.EGLContextFactory getContextFactory()
+    {
+        return shared;
+    }
+
+    /**
+     * The live clock of this renderer. The vsyncs frames are requested at have to be reported
+     * to it.
+     */
+    public VsyncFrameClock getVsyncClock()
+    {
+        return vsyncClock;
+    }
+
+    /**
+     * Replace the clock deciding the scene time of each frame, for example with a
+     * {@link ReplayFrameClock} for reproducible runs. This has to be called before the first
+     * frame is rendered.
+     */
+    public void setFrameClock(FrameClock clock)
+    {
+        this.clock = clock;
+    }
+
+    /**
+     * Give up all shared resources. This has to be called once the render thread has exited,
+     * and the renderer must not be used afterwards.
+     */
+    public void release()
+    {
+        releaseProgramRef(pendingTier);
+        releaseProgramRef(heldTier);
+        pendingTier = null;
+        heldTier = null;
+
+        if(bakedLoop != null)
+            bakedLoop.cancel();
+
+        if(loopPlayer != null)
+        {
+            loopPlayer.shutdown();
+            loopPlayer = null;
+        }
+
+        if(shared != null)
+            shared.release();
+
+        metrics.release();
+    }
+
 
     /**
      * Called when the drawing surface is created for the first time. We initialize all objects here
      * that we need to render a frame.
      * @param glUnused Unused
-     * @param config Unused
+     * @param config The configuration of the context
      */
     @Override
     public void onSurfaceCreated(GL10 glUnused, EGLConfig config)
     {
+        // This is a fresh context, so all bindings are at their initial values
+        state.reset();
+
+        // The time since the last frame of the previous surface is not a frame interval
+        lastFrameStart = 0;
+
         // Set background color to black
-        GLES31.glClearColor(0.f, 0.f, 0.f, 0.f);
+        gl.glClearColor(0.f, 0.f, 0.f, 0.f);
 
-        // Try to create the shader programs
-        try
-        {
-            firstPassProgram = new ShaderProgram();
-            firstPassProgram.attachShader(ShaderType.FRAGMENT_SHADER, context, R.raw.shader_fragment);
-            firstPassProgram.attachShader(ShaderType.VERTEX_SHADER, context, R.raw.shader_vertex);
-            firstPassProgram.linkProgram();
+        // Use GPU timer queries to measure frame cost if possible
+        capabilities = new GLCapabilities(gl);
+        gpuTimer = capabilities.hasTimerQuery() ? new GpuTimer(gl, 4) : null;
+        presentTimer = capabilities.hasTimerQuery() ? new GpuTimer(gl, 4) : null;
+        governor.setSource(gpuTimer != null ? ResolutionGovernor.Source.GPU_TIME : ResolutionGovernor.Source.FRAME_INTERVAL);
 
-            secondPassProgram = new ShaderProgram();
-            secondPassProgram.attachShader(ShaderType.FRAGMENT_SHADER, context, R.raw.quad_fragment);
-            secondPassProgram.attachShader(ShaderType.VERTEX_SHADER, context, R.raw.quad_vertex);
-            secondPassProgram.linkProgram();
-        }
-        catch(ShaderException ex)
+        // The per-frame values live in a uniform buffer, so each frame only costs one
+        // buffer update
+        frameUniforms = new FrameUniforms(state);
+
+        // Objects of a previous context are gone with it. Shared programs survive in the
+        // share group, and their references are only given up once the programs for this
+        // context were requested, so they do not have to be built again.
+        final QualityTier previousHeld = heldTier;
+        final QualityTier previousPending = pendingTier;
+
+        programsReady = false;
+        pendingPrograms = null;
+        pendingTier = null;
+        heldTier = null;
+        scenePrograms = null;
+        positionPass = null;
+        pointStream = null;
+        geometryRenderer = null;
+        layerCache = null;
+
+        if(loopPlayer != null)
         {
-            Log.e(TAG, "Failed to create shader programs: \n" + ex.getMessage());
-            System.exit(-1);
+            loopPlayer.shutdown();
+            loopPlayer = null;
         }
 
+        sharing = shared != null && shared.sharesCurrentContext();
 
         int[] ids = new int[1];
-        GLES31.glGenBuffers(1, ids, 0);
+        gl.glGenBuffers(1, ids, 0);
         empty_vbo = ids[0];
 
         int[] ids2 = new int[1];
-        GLES31.glGenVertexArrays(1, ids2, 0);
-        empty_vbo = ids2[0];
+        gl.glGenVertexArrays(1, ids2, 0);
+        empty_vao = ids2[0];
 
         // Create our render target. Its dimensions will be set later, since we do not
         // know the screen size yet.
-        renderTarget = new RenderTarget();
+        // The format is chosen when the configuration is applied.
+        texturePool = new TexturePool(state);
+        renderTarget = new RenderTarget(state, texturePool, TargetFormat.RGBA8);
+        quadPresenter = new QuadPresenter(state);
+        blitPresenter = new BlitPresenter(state);
+        historyTargets[0] = new RenderTarget(state, texturePool, TargetFormat.RGBA8);
+        historyTargets[1] = new RenderTarget(state, texturePool, TargetFormat.RGBA8);
 
         // Force one initial update of the configuration. Otherwise, changes to the settings would
         // not immediately apply when using the wallpaper preview screen.
-        Configuration.getInstance().update(context);
+        host.updateConfiguration();
+
+        // Build the shader programs in the background, unless another engine did already
+        requestPrograms(RenderPolicy.getCurrent().capTier(Configuration.getCurrent().getQualityTier()));
+
+        releaseProgramRef(previousHeld);
+        releaseProgramRef(previousPending);
     }
 
     /**
@@ -137,13 +525,137 @@ public class ConstellationsRenderer implements GLSurfaceView.Renderer
         this.width = width;
         this.height = height;
 
-        int divisor = Configuration.getInstance().getResolutionDivisor();
-        renderTarget.resize(new Dimensions(width / divisor, height / divisor));
+        // The render target depends on the surface size, so everything is applied anew
+        appliedConfig = null;
+        appliedPolicy = null;
+        applyConfiguration(Configuration.getCurrent(), RenderPolicy.getCurrent());
+    }
+
+    /**
+     * Apply the parts of given configuration snapshot and power policy that differ from the
+     * ones applied previously. Nothing is locked, since both are immutable.
+     * @param config The configuration snapshot to apply
+     * @param policy The power policy limiting the configuration
+     */
+    private void applyConfiguration(Configuration config, RenderPolicy policy)
+    {
+        final Configuration previous = appliedConfig;
+        final RenderPolicy previousPolicy = appliedPolicy;
+        final boolean policyChanged = appliedPolicy == null || policy.getVersion() != appliedPolicy.getVersion();
+        final boolean strategyChanged = requestedStrategy != presentStrategy;
+        appliedConfig = config;
+        appliedPolicy = policy;
+        presentStrategy = requestedStrategy;
+
+        // No frames were rendered while paused, so the next interval would span the pause
+        if(previousPolicy != null && previousPolicy.isPaused() && !policy.isPaused())
+            lastFrameStart = 0;
+
+        // Switch the shader variants if the quality tier changed. The current programs are
+        // used until the new ones are ready.
+        final QualityTier tier = policy.capTier(config.getQualityTier());
+        if(tier != requestedTier)
+            requestPrograms(tier);
+
+        useCpuPoints = config.isCpuPoints();
+
+        if(previous == null || policyChanged || strategyChanged || config.resolutionDiffers(previous))
+        {
+            // With the hardware scaler, the surface already has the reduced resolution
+            final boolean scaled = presentStrategy == PresentStrategy.HARDWARE_SCALER;
+            final float divisor = scaled ? 1.f : policy.clampDivisor(config.getResolutionDivisor());
+            final float minDivisor = scaled ? 1.f : policy.clampDivisor(config.getMinResolutionDivisor());
+            final float maxDivisor = scaled ? 1.f : Math.max(minDivisor, config.getMaxResolutionDivisor());
+            final int targetFps = policy.capFps(config.getTargetFps());
+
+            adaptiveResolution = config.isAdaptiveResolution() && !scaled;
+            useGeometry = config.isGeometryRenderer();
+            useLayers = config.isLayerCache() && !useGeometry;
+            interleaveMode = (useGeometry || useLayers) ? InterleaveMode.OFF : config.getInterleaveMode();
+            renderToScreen = scaled && interleaveMode == InterleaveMode.OFF && !useGeometry && !useLayers;
+
+            // Let the scene shader render the full image again if the cache is turned off
+            if(layerCache != null)
+                layerCache.reset();
+
+            final TargetFormat format = TargetFormat.negotiate(config.getTargetFormat(), capabilities);
+            renderTarget.setFormat(format);
+            historyTargets[0].setFormat(format);
+            historyTargets[1].setFormat(format);
+
+            final UpscaleFilter filter = config.getUpscaleFilter();
+            renderTarget.setFilter(filter.getTextureFilter());
+            historyTargets[0].setFilter(filter.getTextureFilter());
+            historyTargets[1].setFilter(filter.getTextureFilter());
+            quadPresenter.setFilter(filter);
+            blitPresenter.setFilter(filter);
 
-        // Update screen dimensions on the GPU
-        setDimensionsUniform();
-        setQuadTexUniform();
-        setConfigUniforms();
+            // Targets the hardware scaler path cannot render to directly are copied 1:1
+            final boolean blit = (presentStrategy == PresentStrategy.BLIT && !filter.usesEdgeProgram())
+                    || scaled;
+            presenter = (blit && !format.isFloat()) ? blitPresenter : quadPresenter;
+
+            // The frame rate cap sets the frame budget, whether the governor is fed with GPU
+            // times or frame intervals. Intervals can never be shorter than the cap allows.
+            float targetFrameTime = config.getTargetFrameTime();
+            if(targetFps > 0)
+                targetFrameTime = Math.max(targetFrameTime, 1000.f / targetFps);
+
+            // The configured divisor is only the starting point if adaptive resolution is
+            // enabled
+            governor.configure(targetFrameTime, minDivisor, maxDivisor, divisor, host.uptimeMillis());
+
+            // Frames arriving later than the frame rate cap allows count as jank. The display
+            // refresh rate is not known here, so the native rate is assumed to be 60 Hz.
+            metrics.setExpectedInterval(1000.f / (targetFps > 0 ? targetFps : 60));
+            maxFrameInterval = MAX_INTERVAL_FRAMES * 1000000000L / (targetFps > 0 ? targetFps : 60);
+
+            // Update render target and screen dimensions on the GPU
+            resizeRenderTarget(adaptiveResolution ? governor.getDivisor() : divisor);
+        }
+
+        if(previous == null || config.colorDiffers(previous))
+            setConfigUniforms();
+
+        // The baked loop depends on the colors and the surface size
+        if(previous == null || config.colorDiffers(previous)
+                || config.isBakedPlayback() != previous.isBakedPlayback())
+        {
+            updateBakedLoop(config);
+        }
+    }
+
+    /**
+     * Start baking the loop for given configuration if battery saver mode is enabled, and
+     * drop a loop that does not match it anymore
+     */
+    private void updateBakedLoop(Configuration config)
+    {
+        BakedLoop loop = null;
+
+        if(config.isBakedPlayback())
+        {
+            final int color = config.getCustomColor();
+            loop = new BakedLoop(host.getCacheDir(), width, height, config.isUseCustomColor(),
+                    channel(color, 16), channel(color, 8), channel(color, 0));
+
+            if(loop.isSameAs(bakedLoop))
+                return;
+        }
+
+        if(bakedLoop != null)
+            bakedLoop.cancel();
+
+        if(loopPlayer != null)
+        {
+            loopPlayer.release();
+            loopPlayer = null;
+        }
+
+        bakedLoop = loop;
+
+        if(bakedLoop != null)
+            bakedLoop.start();
     }
 
     /**
@@ -153,102 +665,575 @@ public class ConstellationsRenderer implements GLSurfaceView.Renderer
     @Override
     public void onDrawFrame(GL10 glUnused)
     {
-        // If this is the first frame, we have to remember
-        // the exact point in time for later calculations
-        if(firstFrame)
+        // Pick up changed settings and power policies. These are two atomic reads if nothing
+        // changed.
+        final Configuration config = Configuration.getCurrent();
+        final RenderPolicy policy = RenderPolicy.getCurrent();
+        if(config.getVersion() != appliedConfig.getVersion() || policy.getVersion() != appliedPolicy.getVersion()
+                || requestedStrategy != presentStrategy)
+        {
+            applyConfiguration(config, policy);
+        }
+
+        if(pendingPrograms != null)
+            pollPrograms();
+
+        // Present a placeholder until the programs are ready. The scene fades in from
+        // black, so a black frame is seamless.
+        if(!programsReady)
+        {
+            state.bindFramebuffer(0);
+            gl.glClear(GLES31.GL_COLOR_BUFFER_BIT);
+            return;
+        }
+
+        clock.beginFrame();
+
+        // The time the wallpaper was hidden is not a frame interval
+        if(resumed)
+        {
+            resumed = false;
+            lastFrameStart = 0;
+        }
+
+        final long frameStart = System.nanoTime();
+        final long interval = lastFrameStart != 0 ? frameStart - lastFrameStart : -1;
+        lastFrameStart = frameStart;
+
+        // Let the governor pick the resolution for this frame, based on the cost of the
+        // previous ones
+        updateResolution(interval);
+
+        // Send the scene time of this frame to the GPU, together with all other per-frame
+        // values that changed
+        final float time = clock.getSceneTime();
+        frameUniforms.setTime(time);
+
+        parallax.update(frameStart);
+        parallax.apply(frameUniforms);
+
+        if(interleaveMode != InterleaveMode.OFF)
         {
-            firstFrame = false;
-            startTime = SystemClock.uptimeMillis();
+            frameUniforms.setInterleave(interleaveMode.getPattern(),
+                    interleaveFrame % interleaveMode.getFieldCount(), historyValid);
         }
+        frameUniforms.upload();
 
-        // Calulcate new time-since-startup value and send it to the GPU
-        final long currentTime = SystemClock.uptimeMillis() - startTime;
-        setTimeUniform(currentTime);
+        // Replay the baked loop in battery saver mode, once it is complete and its first
+        // keyframe is decompressed. Until then, the scene is rendered live.
+        final boolean playback = bakedLoop != null && bakedLoop.isComplete() && prepareLoop(time);
 
         // Actually render the frame
-        renderFrame();
+        if(gpuTimer != null)
+            gpuTimer.begin();
+
+        final RenderTarget source = playback ? null : renderScene();
+
+        if(gpuTimer != null)
+        {
+            gpuTimer.end();
+            presentTimer.begin();
+        }
+
+        if(playback)
+            playLoop(time);
+        else if(source != null)
+            present(source);
+
+        if(gpuTimer != null)
+            presentTimer.end();
+
+        metrics.recordFrame(currentDivisor, (System.nanoTime() - frameStart) / 1e6f, interval / 1e6f);
+        metrics.update(host.uptimeMillis());
     }
 
     /**
-     * Render a new frame. This is done in two passes: first the scene is drawn to a GPU texture
-     * by using a framebuffer object, and then it the contents of that texture are drawn to a full
-     * screen quad covering the whole drawing surface. This is done in order to allow rendering at a
-     * lower resolution than the screen to save computing resources and to not strain the battery
-     * too much.
+     * The queue the engine feeds touches and launcher offsets into. The baked loop is
+     * pre-rendered, so it does not react to them.
      */
-    private void renderFrame()
+    public InputRing getInputRing()
     {
-        // === FIRST PASS
-        GLES31.glClear(GLES31.GL_COLOR_BUFFER_BIT);
+        return parallax.getInput();
+    }
 
-        firstPassProgram.useProgram();
+    /**
+     * Notify the renderer that the wallpaper became visible again. This may be called on any
+     * thread.
+     */
+    public void onResume()
+    {
+        resumed = true;
+    }
 
+    /**
+     * Set the way the scene gets to the screen. This may be called on any thread, and takes
+     * effect with the next frame. With {@link PresentStrategy#HARDWARE_SCALER}, the caller is
+     * responsible for sizing the surface down.
+     */
+    public void setPresentStrategy(PresentStrategy strategy)
+    {
+        requestedStrategy = strategy;
+    }
+
+    /**
+     * The way the scene gets to the screen, as last set with
+     * {@link #setPresentStrategy(PresentStrategy)}
+     */
+    public PresentStrategy getPresentStrategy()
+    {
+        return requestedStrategy;
+    }
+
+    /**
+     * Print the performance telemetry of this renderer
+     * @param out The writer to print to
+     * @param prefix Prefix of every line
+     */
+    public void dumpMetrics(PrintWriter out, String prefix)
+    {
+        metrics.dump(out, prefix);
+    }
+
+    /**
+     * Request the shared programs for given quality tier, which are built in the background
+     * if no other engine uses them yet. Without a share group, the programs are built on the
+     * render thread.
+     */
+    private void requestPrograms(QualityTier tier)
+    {
+        requestedTier = tier;
+
+        final Future<ScenePrograms> programs = sharing ? shared.acquirePrograms(tier) : null;
+
+        // Programs requested before are not needed anymore
+        releaseProgramRef(pendingTier);
+        pendingPrograms = programs;
+        pendingTier = (programs != null) ? tier : null;
+
+        if(programs == null)
+            buildPrograms(tier);
+    }
+
+    /**
+     * Give up the reference to the shared programs of given quality tier
+     * @param tier The quality tier, or null if no reference is held
+     */
+    private void releaseProgramRef(QualityTier tier)
+    {
+        if(tier != null)
+            shared.releasePrograms(tier);
+    }
+
+    /**
+     * Check whether the background compiler finished, and install the programs if so
+     */
+    private void pollPrograms()
+    {
+        if(!pendingPrograms.isDone())
+            return;
+
+        final Future<ScenePrograms> done = pendingPrograms;
+        final QualityTier tier = pendingTier;
+        pendingPrograms = null;
+        pendingTier = null;
+
+        try
+        {
+            installPrograms(done.get().share(state), tier);
+        }
+        catch(ExecutionException ex)
+        {
+            releaseProgramRef(tier);
+
+            if(ex.getCause() instanceof ShaderException)
+            {
+                // Keep presenting the current programs or the placeholder, building again
+                // would fail the same way
+                Logger.e(TAG, "Failed to create shader programs: \n" + ex.getCause().getMessage());
+            }
+            else
+            {
+                Logger.w(TAG, "Background compilation failed, building programs on the render thread", ex.getCause());
+                buildPrograms(requestedTier);
+            }
+        }
+        catch(InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Build and install the programs on the render thread
+     */
+    private void buildPrograms(QualityTier tier)
+    {
+        try
+        {
+            installPrograms(new ScenePrograms(new ProgramFactory(state, host, capabilities), tier), null);
+        }
+        catch(ShaderException ex)
+        {
+            Logger.e(TAG, "Failed to create shader programs: \n" + ex.getMessage());
+        }
+    }
+
+    /**
+     * Set up built programs and the passes depending on them
+     * @param programs The programs to install
+     * @param sharedTier The quality tier of the shared programs the given ones are a view of,
+     * or null if they are owned by this renderer
+     */
+    private void installPrograms(ScenePrograms programs, QualityTier sharedTier)
+    {
+        firstPassProgram = programs.getFirstPass();
+        quadPresenter.setPrograms(programs.getSecondPass(), programs.getUpscaleEdge());
+        resolveProgram = programs.getResolve();
+
+        firstPassProgram.bindUniformBlock(FrameUniforms.BLOCK_NAME, FrameUniforms.BINDING);
+        firstPassProgram.bindUniformBlock(LayerUniforms.BLOCK_NAME, LayerUniforms.BINDING);
+        resolveProgram.bindUniformBlock(FrameUniforms.BLOCK_NAME, FrameUniforms.BINDING);
+
+        final int layers = programs.getTier().getLayers();
+
+        if(positionPass == null)
+        {
+            positionPass = new PointPositionPass(state, programs.getPosition(), layers);
+            geometryRenderer = new GeometryRenderer(state, programs.getGeometry(), programs.getCompose(), layers,
+                    capabilities, texturePool);
+            layerCache = new LayerCache(state, programs.getLayerComposite(), layers, capabilities, texturePool);
+        }
+        else
+        {
+            positionPass.setProgram(programs.getPosition(), layers);
+            geometryRenderer.setPrograms(programs.getGeometry(), programs.getCompose(), layers);
+            layerCache.setPrograms(programs.getLayerComposite(), layers);
+        }
+
+        if(pointSimulation != null)
+            pointSimulation.setLayers(layers);
+
+        // Replace the programs of the previous quality tier. The loop player is recreated
+        // with the new playback program when needed.
+        if(loopPlayer != null)
+        {
+            loopPlayer.release();
+            loopPlayer = null;
+        }
+
+        if(scenePrograms != null && heldTier == null)
+            scenePrograms.release();
+        else if(scenePrograms != null)
+            scenePrograms.detach();
+
+        releaseProgramRef(heldTier);
+        scenePrograms = programs;
+        heldTier = sharedTier;
+
+        // The precomputed points are always bound to texture unit 2
+        firstPassProgram.getUniform("iCells").set(CELLS_TEXTURE_UNIT);
+
+        // The current field and the previous frame are bound to units 0 and 1
+        resolveProgram.getUniform("field_tex").set(0);
+        resolveProgram.getUniform("history_tex").set(1);
+
+        programsReady = true;
+
+        // The geometry renderer and the layer cache need to know the render target size
+        if(width > 0 && height > 0)
+            resizeRenderTarget(currentDivisor);
+    }
+
+    /**
+     * Feed the cost of the previous frame into the telemetry and the resolution governor, and
+     * resize the render target if the governor decided to change the resolution.
+     * @param interval Time since the previous frame started in nanoseconds, or -1 if there
+     * was no previous frame. Intervals longer than {@link #maxFrameInterval} are ignored.
+     */
+    private void updateResolution(long interval)
+    {
+        float cost = -1.f;
+
+        // The present pass finishes last, so once its result is available, the scene result
+        // of the same frame is as well
+        if(gpuTimer != null && presentTimer.isResultAvailable())
+        {
+            final long scene = gpuTimer.poll();
+            final long present = presentTimer.poll();
+
+            // Both results are read back, so the disjoint flag covers the two of them
+            if(scene >= 0 && present >= 0 && !gpuTimer.checkDisjoint())
+            {
+                metrics.recordGpu(currentDivisor, scene / 1e6f, present / 1e6f);
+                cost = (scene + present) / 1e6f;
+            }
+        }
+        else if(gpuTimer == null && interval >= 0 && interval <= maxFrameInterval)
+        {
+            cost = interval / 1e6f;
+        }
+
+        if(!adaptiveResolution)
+            return;
+
+        // The divisors used show up in the telemetry, so the change is not logged here
+        if(cost >= 0.f && governor.update(cost, host.uptimeMillis()))
+            resizeRenderTarget(governor.getDivisor());
+    }
+
+    /**
+     * Render the scene of a new frame. A frame is drawn in two passes: first the scene is drawn
+     * to a GPU texture by using a framebuffer object, and then the contents of that texture are
+     * drawn to a full screen quad covering the whole drawing surface (see {@link #present}).
+     * This is done in order to allow rendering at a lower resolution than the screen to save
+     * computing resources and to not strain the battery too much.
+     * @return The render target holding the scene, or null if the scene was rendered straight
+     * to the screen
+     */
+    private RenderTarget renderScene()
+    {
         // Use empty vbo and vao
-        GLES31.glBindBuffer(GLES31.GL_ARRAY_BUFFER, empty_vbo);
-        GLES31.glBindVertexArray(empty_vao);
+        state.bindBuffer(GLES31.GL_ARRAY_BUFFER, empty_vbo);
+        state.bindVertexArray(empty_vao);
 
-        // Redirect rendering output to a texture using our render target
-        // instance
-        renderTarget.enable();
+        if(useGeometry)
+        {
+            // === FIRST PASS
+            geometryRenderer.render(frameUniforms, renderTarget);
+            // ===============
+        }
+        else
+        {
+            // === POSITION PASS
+            if(useCpuPoints)
+            {
+                streamPoints();
+            }
+            else
+            {
+                positionPass.dispatch();
+            }
+            // ===============
 
-        GLES31.glDrawArraysInstanced(GLES31.GL_TRIANGLES, 0, 6, 1);
+            // === FIRST PASS
+            firstPassProgram.useProgram();
 
-        renderTarget.disable();
-        // ===============
+            if(useCpuPoints)
+                pointStream.useTexture(GLES31.GL_TEXTURE0 + CELLS_TEXTURE_UNIT);
+            else
+                positionPass.useTexture(GLES31.GL_TEXTURE0 + CELLS_TEXTURE_UNIT);
 
+            if(useLayers)
+            {
+                // Interleaving does not apply, so the composite is the final image
+                layerCache.render(frameUniforms, firstPassProgram, renderTarget);
+                return renderTarget;
+            }
 
-        // === SECOND PASS
-        GLES31.glViewport(0, 0, width, height);
+            if(renderToScreen)
+            {
+                // The surface has the reduced resolution, the compositor upscales it
+                beginScreenPass();
+                gl.glDrawArraysInstanced(GLES31.GL_TRIANGLES, 0, 6, 1);
+                endScreenPass();
+                return null;
+            }
 
-        secondPassProgram.useProgram();
+            // Redirect rendering output to a texture using our render target
+            // instance
+            renderTarget.enable();
+            renderTarget.discard();
 
-        // Use the render target as a source this time, allowing access to the
-        // texture with the previous render result
-        renderTarget.useTexture();
+            gl.glDrawArraysInstanced(GLES31.GL_TRIANGLES, 0, 6, 1);
 
-        GLES31.glDrawArraysInstanced(GLES31.GL_TRIANGLES, 0, 6, 1);
-        // ===============
+            renderTarget.disable();
+            // ===============
+        }
+
+        // The texture the second pass upscales to the screen
+        RenderTarget source = renderTarget;
+
+        if(interleaveMode != InterleaveMode.OFF)
+        {
+            // === RESOLVE PASS
+            // Combine the field shaded this frame with the previous frame
+            final RenderTarget resolved = historyTargets[historyIndex];
+            final RenderTarget history = historyTargets[historyIndex ^ 1];
+
+            resolveProgram.useProgram();
+
+            resolved.enable();
+            resolved.discard();
+
+            renderTarget.useTexture(GLES31.GL_TEXTURE0);
+            history.useTexture(GLES31.GL_TEXTURE1);
+
+            gl.glDrawArraysInstanced(GLES31.GL_TRIANGLES, 0, 6, 1);
+
+            resolved.disable();
+            // ===============
+
+            source = resolved;
+            historyIndex ^= 1;
+            historyValid = true;
+            ++interleaveFrame;
+        }
+
+        return source;
     }
 
-    private void setConfigUniforms()
+    /**
+     * Simulate the points of the current frame on the CPU and upload them to the cell texture.
+     * This uses the time from the frame uniforms.
+     */
+    private void streamPoints()
     {
-        firstPassProgram.useProgram();
+        if(pointSimulation == null)
+        {
+            // Lines fade out at a distance of 1.5 cells, so that is the radius usually queried
+            pointSimulation = new PointSimulation(scenePrograms.getTier().getLayers(), 1.5f);
+        }
+
+        if(pointStream == null)
+            pointStream = new PointStream(state);
 
-        final int useCustomColorPos = GLES31.glGetUniformLocation(firstPassProgram.getHandle(), "iUseCustomColor");
-        GLES31.glUniform1i(useCustomColorPos, Configuration.getInstance().isUseCustomColor() ? 1 : 0);
+        pointSimulation.step(frameUniforms.getTime());
+        pointStream.upload(pointSimulation);
+    }
 
-        Color customColor = Configuration.getInstance().getCustomColor();
+    /**
+     * Upload the keyframes of the baked loop that were decompressed in the background
+     * @param time Scene time in seconds
+     * @return Whether the loop can be played back
+     */
+    private boolean prepareLoop(float time)
+    {
+        if(loopPlayer == null)
+            loopPlayer = new LoopPlayer(state, scenePrograms.getPlayback(), bakedLoop);
 
-        final int customColorPos = GLES31.glGetUniformLocation(firstPassProgram.getHandle(), "iCustomColor");
-        GLES31.glUniform4f(customColorPos, customColor.red(), customColor.green(), customColor.blue(), customColor.alpha());
+        return loopPlayer.prepare(time);
     }
 
-    private void setQuadTexUniform()
+    /**
+     * Draw the baked loop to the screen. {@link #prepareLoop(float)} has to have succeeded.
+     * @param time Scene time in seconds
+     */
+    private void playLoop(float time)
     {
-        secondPassProgram.useProgram();
+        beginScreenPass();
 
-        final int quad_tex_pos = GLES31.glGetUniformLocation(secondPassProgram.getHandle(), "quad_tex");
-        GLES31.glUniform1i(quad_tex_pos, 0);
+        if(!loopPlayer.draw(time, width, height))
+        {
+            // A keyframe went missing, for example because the system cleared the cache. Show
+            // black for this frame and render live until the bake replaced it.
+            Logger.w(TAG, "Baked loop is incomplete, baking missing keyframes");
+
+            gl.glClear(GLES31.GL_COLOR_BUFFER_BIT);
+
+            loopPlayer.release();
+            loopPlayer = null;
+            bakedLoop.start();
+        }
+
+        endScreenPass();
     }
 
-    private void setDimensionsUniform()
+    /**
+     * Draw the rendered scene to the screen
+     * @param source The render target holding the scene
+     */
+    private void present(RenderTarget source)
     {
-        firstPassProgram.useProgram();
+        // === SECOND PASS
+        beginScreenPass();
+        presenter.present(source, width, height);
+        endScreenPass();
+        // ===============
+    }
 
-        int divisor = Configuration.getInstance().getResolutionDivisor();
+    /**
+     * Bind the screen for a pass overwriting every pixel. Tiled GPUs then do not have to load
+     * the previous frame.
+     */
+    private void beginScreenPass()
+    {
+        state.bindFramebuffer(0);
+        state.viewport(0, 0, width, height);
 
-        final int resolution_pos = GLES31.glGetUniformLocation(firstPassProgram.getHandle(), "iResolution");
-        GLES31.glUniform3f(resolution_pos, width/divisor, height/divisor, 0.f);
+        gl.glInvalidateFramebuffer(GLES31.GL_FRAMEBUFFER, SCREEN_ATTACHMENTS.length, SCREEN_ATTACHMENTS, 0);
+    }
 
-        //GLES31.glUniform3f(resolution_pos, width/10.f, height/10.f, 0.f);
-        // ^~~~ very nice effect
+    /**
+     * Finish a pass started with {@link #beginScreenPass()}. Depth and stencil are never used,
+     * so they do not have to be written back.
+     */
+    private void endScreenPass()
+    {
+        gl.glInvalidateFramebuffer(GLES31.GL_FRAMEBUFFER, UNUSED_SCREEN_ATTACHMENTS.length, UNUSED_SCREEN_ATTACHMENTS, 0);
+    }
+
+    private void setConfigUniforms()
+    {
+        final int customColor = appliedConfig.getCustomColor();
+
+        frameUniforms.setCustomColor(appliedConfig.isUseCustomColor(),
+                channel(customColor, 16), channel(customColor, 8), channel(customColor, 0), channel(customColor, 24));
+    }
+
+    /**
+     * Extract a channel of a packed color
+     * @param color The packed 0xAARRGGBB color
+     * @param shift Position of the channel, 24 for alpha down to 0 for blue
+     * @return The channel value in [0, 1]
+     */
+    private static float channel(int color, int shift)
+    {
+        return ((color >> shift) & 0xFF) / 255.f;
     }
 
-    private void setTimeUniform(long currentTime)
+    /**
+     * Resize the first-pass render target to the screen dimensions divided by given divisor,
+     * and update the screen dimensions on the GPU accordingly.
+     * @param divisor Resolution divisor
+     */
+    private void resizeRenderTarget(float divisor)
     {
-        firstPassProgram.useProgram();
+        currentDivisor = divisor;
+
+        final int w = Math.max(1, Math.round(width / divisor));
+        final int h = Math.max(1, Math.round(height / divisor));
+
+        // The governor may resize at any frame, so the sizes are passed in reused instances
+        targetSize.setWidth(w);
+        targetSize.setHeight(h);
+
+        if(interleaveMode == InterleaveMode.OFF)
+        {
+            renderTarget.resize(targetSize);
+            frameUniforms.setInterleave(0, 0, false);
+
+            if(useGeometry && geometryRenderer != null)
+                geometryRenderer.resize(targetSize);
+
+            if(useLayers && layerCache != null)
+                layerCache.resize(targetSize);
+        }
+        else
+        {
+            // Only one field is shaded per frame. The history targets hold the full image.
+            fieldSize.setWidth(interleaveMode.getFieldWidth(w));
+            fieldSize.setHeight(interleaveMode.getFieldHeight(h));
+
+            renderTarget.resize(fieldSize);
+            historyTargets[0].resize(targetSize);
+            historyTargets[1].resize(targetSize);
+
+            historyValid = false;
+            interleaveFrame = 0;
+        }
 
-        final int time_pos = GLES31.glGetUniformLocation(firstPassProgram.getHandle(), "iTime");
-        GLES31.glUniform1f(time_pos, ((float)currentTime)/1000.f);
+        // The scene shader maps field texels to render target texels, so it always works
+        // with the full dimensions
+        frameUniforms.setResolution(w, h);
     }
 }
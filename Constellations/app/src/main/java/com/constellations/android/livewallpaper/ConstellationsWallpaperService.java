@@ -1,32 +1,108 @@
 package com.constellations.android.livewallpaper;
 
-import android.content.SharedPreferences;
+import android.opengl.GLSurfaceView;
 import android.opengl.GLSurfaceView.Renderer;
-import android.preference.PreferenceManager;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 
 public class ConstellationsWallpaperService extends GLES31WallpaperService {
+	@Override
+	public void onCreate() {
+		super.onCreate();
+
+		// Limit the rendering cost when the device is hot or low on power
+		governor = new PowerGovernor(new SystemDeviceStateSource(this));
+		governor.start();
+	}
+
+	@Override
+	public void onDestroy() {
+		governor.stop();
+
+		super.onDestroy();
+	}
+
 	@Override
 	Renderer getNewRenderer()
 	{
-		registerSettingsListener();
-
 		//android.os.Debug.waitForDebugger();
 
-		return new ConstellationsRenderer(this);
+		final ConstellationsRenderer renderer = new ConstellationsRenderer(this);
+		renderers.add(renderer);
+
+		return renderer;
 	}
 
-	private void registerSettingsListener()
+	/**
+	 * Renderers share their programs through the context factory, see {@link SharedResources}
+	 */
+	@Override
+	GLSurfaceView.EGLContextFactory getContextFactory(Renderer renderer)
 	{
-		listener = new SharedPreferences.OnSharedPreferenceChangeListener() {
-			@Override
-			public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String s) {
-				Configuration.getInstance().update(sharedPreferences);
-			}
-		};
+		return ((ConstellationsRenderer) renderer).getContextFactory();
+	}
 
-		PreferenceManager.getDefaultSharedPreferences(this).registerOnSharedPreferenceChangeListener(listener);
+	@Override
+	protected VsyncFrameClock getFrameClock(Renderer renderer) {
+		return ((ConstellationsRenderer) renderer).getVsyncClock();
+	}
+
+	@Override
+	protected InputRing getInputRing(Renderer renderer) {
+		return ((ConstellationsRenderer) renderer).getInputRing();
 	}
 
-	private SharedPreferences.OnSharedPreferenceChangeListener listener;
+	@Override
+	protected boolean setPresentStrategy(Renderer renderer, PresentStrategy strategy) {
+		((ConstellationsRenderer) renderer).setPresentStrategy(strategy);
+		return true;
+	}
+
+	@Override
+	protected void onRendererResumed(Renderer renderer) {
+		((ConstellationsRenderer) renderer).onResume();
+	}
+
+	@Override
+	protected void onRendererDestroyed(Renderer renderer) {
+		renderers.remove(renderer);
+		((ConstellationsRenderer) renderer).release();
+	}
+
+	/**
+	 * Print the performance telemetry of all renderers, for example using
+	 * "adb shell dumpsys activity service ConstellationsWallpaperService"
+	 */
+	@Override
+	protected void dump(FileDescriptor fd, PrintWriter writer, String[] args)
+	{
+		final List<ConstellationsRenderer> current;
+		synchronized (renderers) {
+			current = new ArrayList<>(renderers);
+		}
+
+		writer.println("Render policy: " + RenderPolicy.getCurrent());
+		writer.println("Constellations renderers: " + current.size());
+
+		for (ConstellationsRenderer renderer : current) {
+			writer.println("  " + renderer + ":");
+			writer.println("    Present strategy: " + renderer.getPresentStrategy());
+			renderer.dumpMetrics(writer, "    ");
+		}
+	}
+
+	private PowerGovernor governor;
+
+	/**
+	 * The renderers of all engines that were not destroyed yet
+	 */
+	private final Set<ConstellationsRenderer> renderers =
+			Collections.synchronizedSet(new HashSet<ConstellationsRenderer>());
 }
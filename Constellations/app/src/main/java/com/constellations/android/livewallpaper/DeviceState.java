@@ -0,0 +1,71 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * Immutable snapshot of the device conditions the {@link PowerGovernor} reacts to
+ */
+public final class DeviceState
+{
+    /**
+     * Thermal status values, matching the THERMAL_STATUS constants of PowerManager
+     */
+    public static final int THERMAL_NONE = 0;
+    public static final int THERMAL_LIGHT = 1;
+    public static final int THERMAL_MODERATE = 2;
+    public static final int THERMAL_SEVERE = 3;
+    public static final int THERMAL_CRITICAL = 4;
+
+    /**
+     * The state assumed until a source reported the actual one
+     */
+    public static final DeviceState UNKNOWN = new DeviceState(false, THERMAL_NONE, -1.f, true);
+
+    private final boolean powerSave;
+    private final int thermalStatus;
+    private final float batteryLevel;
+    private final boolean charging;
+
+    /**
+     * Create new state
+     * @param powerSave Whether the system battery saver is enabled
+     * @param thermalStatus Thermal status, one of the THERMAL constants or higher
+     * @param batteryLevel Battery level between 0 and 1, or a negative value if unknown
+     * @param charging Whether the device is charging or fully charged
+     */
+    public DeviceState(boolean powerSave, int thermalStatus, float batteryLevel, boolean charging)
+    {
+        this.powerSave = powerSave;
+        this.thermalStatus = thermalStatus;
+        this.batteryLevel = batteryLevel;
+        this.charging = charging;
+    }
+
+    public boolean isPowerSave()
+    {
+        return powerSave;
+    }
+
+    public int getThermalStatus()
+    {
+        return thermalStatus;
+    }
+
+    /**
+     * Battery level between 0 and 1, or a negative value if unknown
+     */
+    public float getBatteryLevel()
+    {
+        return batteryLevel;
+    }
+
+    public boolean isCharging()
+    {
+        return charging;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "powerSave=" + powerSave + " thermal=" + thermalStatus + " battery=" + batteryLevel
+                + " charging=" + charging;
+    }
+}
@@ -0,0 +1,31 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * Source of {@link DeviceState} updates. The system implementation is
+ * {@link SystemDeviceStateSource}; other implementations can feed arbitrary states into a
+ * {@link PowerGovernor}.
+ */
+public interface DeviceStateSource
+{
+    /**
+     * Receives state updates
+     */
+    interface Listener
+    {
+        /**
+         * Called whenever the state changed, and once with the current state after
+         * {@link #start(Listener)}
+         */
+        void onDeviceStateChanged(DeviceState state);
+    }
+
+    /**
+     * Start reporting state changes to given listener
+     */
+    void start(Listener listener);
+
+    /**
+     * Stop reporting state changes
+     */
+    void stop();
+}
@@ -0,0 +1,32 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * Source of the scene time of each frame. The renderer asks for the time once per frame, so
+ * the clock decides which point in time a frame shows, independent of when the render thread
+ * gets to process it.
+ *
+ * The scene repeats every {@link SceneMath#SCENE_PERIOD} seconds and is black at both ends of
+ * the cycle, so clocks wrap the scene time into [0, SCENE_PERIOD). This keeps the precision
+ * of iTime the same no matter how long the wallpaper has been running.
+ *
+ * Implementations are {@link VsyncFrameClock} for live rendering and {@link ReplayFrameClock}
+ * for reproducible runs.
+ */
+public interface FrameClock
+{
+    /**
+     * Length of the scene cycle in nanoseconds
+     */
+    long PERIOD_NANOS = (long)(SceneMath.SCENE_PERIOD * 1e9);
+
+    /**
+     * Advance to the next frame. This is called on the render thread at the start of each
+     * frame that is actually rendered.
+     */
+    void beginFrame();
+
+    /**
+     * Scene time of the current frame in seconds, in [0, {@link SceneMath#SCENE_PERIOD})
+     */
+    float getSceneTime();
+}
@@ -0,0 +1,157 @@
+package com.constellations.android.livewallpaper;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of frame times with fixed buckets. Recording a sample never allocates, so it can
+ * be done every frame.
+ */
+public class FrameHistogram
+{
+    /**
+     * Upper bounds of the buckets in milliseconds. The buckets are aligned to common frame
+     * budgets. Samples above the last bound go into an additional, unbounded bucket.
+     */
+    private static final float[] BOUNDS = { 1.f, 2.f, 4.f, 8.f, 12.f, 16.7f, 25.f, 33.3f, 50.f, 66.7f, 100.f };
+
+    /**
+     * Number of samples per bucket
+     */
+    private final int[] counts = new int[BOUNDS.length + 1];
+
+    /**
+     * Total number of samples
+     */
+    private int count;
+
+    /**
+     * Sum of all samples in milliseconds
+     */
+    private double sum;
+
+    /**
+     * Largest sample in milliseconds
+     */
+    private float max;
+
+    /**
+     * Add a sample
+     * @param millis Frame time in milliseconds
+     */
+    public void record(float millis)
+    {
+        int bucket = 0;
+        while(bucket < BOUNDS.length && millis > BOUNDS[bucket])
+            ++bucket;
+
+        counts[bucket]++;
+        count++;
+        sum += millis;
+        max = Math.max(max, millis);
+    }
+
+    /**
+     * Remove all samples
+     */
+    public void reset()
+    {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0.;
+        max = 0.f;
+    }
+
+    /**
+     * Replace the samples of this histogram with the ones of given histogram
+     */
+    public void copyFrom(FrameHistogram other)
+    {
+        System.arraycopy(other.counts, 0, counts, 0, counts.length);
+        count = other.count;
+        sum = other.sum;
+        max = other.max;
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Mean of all samples in milliseconds, or 0 if there are none
+     */
+    public float getMean()
+    {
+        return count == 0 ? 0.f : (float)(sum / count);
+    }
+
+    public float getMax()
+    {
+        return max;
+    }
+
+    /**
+     * Estimate the given percentile. Since only bucket counts are stored, this is the upper
+     * bound of the bucket the percentile falls into, or the maximum for the last bucket.
+     * @param fraction The percentile as a fraction between 0 and 1
+     * @return The estimate in milliseconds, or 0 if there are no samples
+     */
+    public float getPercentile(float fraction)
+    {
+        if(count == 0)
+            return 0.f;
+
+        final int rank = Math.max(1, (int)Math.ceil(fraction * count));
+        int seen = 0;
+
+        for(int i = 0; i < BOUNDS.length; ++i)
+        {
+            seen += counts[i];
+
+            if(seen >= rank)
+                return Math.min(BOUNDS[i], max);
+        }
+
+        return max;
+    }
+
+    /**
+     * Append a short summary of the samples
+     */
+    public void appendSummary(StringBuilder builder)
+    {
+        builder.append("n=").append(count);
+
+        if(count == 0)
+            return;
+
+        builder.append(" mean=").append(round(getMean()))
+                .append(" p50=").append(round(getPercentile(.5f)))
+                .append(" p95=").append(round(getPercentile(.95f)))
+                .append(" max=").append(round(max));
+    }
+
+    /**
+     * Append the count of every bucket
+     */
+    public void appendBuckets(StringBuilder builder)
+    {
+        for(int i = 0; i < counts.length; ++i)
+        {
+            if(i > 0)
+                builder.append(' ');
+
+            if(i < BOUNDS.length)
+                builder.append("<=").append(BOUNDS[i]);
+            else
+                builder.append('>').append(BOUNDS[BOUNDS.length - 1]);
+
+            builder.append(':').append(counts[i]);
+        }
+    }
+
+    private static float round(float millis)
+    {
+        return Math.round(millis * 10.f) / 10.f;
+    }
+}
@@ -0,0 +1,365 @@
+package com.constellations.android.livewallpaper;
+
+import com.constellations.android.util.Logger;
+import com.constellations.android.util.LoggerConfig;
+
+import java.io.PrintWriter;
+
+/**
+ * Per-frame performance telemetry of a renderer. CPU frame times, GPU pass times, frame
+ * intervals and janky frames are recorded into {@link FrameHistogram}s, separately for each
+ * resolution divisor. All storage is allocated up front, so recording is allocation-free.
+ *
+ * Samples are collected over periods of {@link #PERIOD} milliseconds. At the end of each
+ * period, the samples are copied into a preallocated published copy and a new period starts.
+ * The published copy is what {@link #dump(PrintWriter, String)} reports, so other threads
+ * never touch the samples the render thread is writing. If logging is on, a background
+ * thread formats and logs a summary line of each published period, so the render thread
+ * never builds strings.
+ */
+public class FrameMetrics
+{
+    private static final String TAG = "FrameMetrics";
+
+    /**
+     * Length of a collection period in milliseconds
+     */
+    private static final long PERIOD = 60000;
+
+    /**
+     * Maximum number of distinct resolution divisors tracked per period. Samples for further
+     * divisors are added to the last one.
+     */
+    private static final int MAX_DIVISORS = 8;
+
+    /**
+     * A frame counts as janky if its interval exceeds the expected one by this factor, which
+     * means that at least one display refresh was missed
+     */
+    private static final float JANK_FACTOR = 1.5f;
+
+    /**
+     * The samples recorded while rendering at one resolution divisor
+     */
+    private static class Section
+    {
+        float divisor;
+        int frames;
+        int janks;
+        final FrameHistogram cpu = new FrameHistogram();
+        final FrameHistogram interval = new FrameHistogram();
+        final FrameHistogram gpuScene = new FrameHistogram();
+        final FrameHistogram gpuPresent = new FrameHistogram();
+
+        void copyFrom(Section other)
+        {
+            divisor = other.divisor;
+            frames = other.frames;
+            janks = other.janks;
+            cpu.copyFrom(other.cpu);
+            interval.copyFrom(other.interval);
+            gpuScene.copyFrom(other.gpuScene);
+            gpuPresent.copyFrom(other.gpuPresent);
+        }
+
+        void reset()
+        {
+            frames = 0;
+            janks = 0;
+            cpu.reset();
+            interval.reset();
+            gpuScene.reset();
+            gpuPresent.reset();
+        }
+    }
+
+    /**
+     * Sections of the current period, only accessed by the render thread
+     */
+    private final Section[] live = new Section[MAX_DIVISORS];
+    private int liveCount;
+    private long liveStart = -1;
+
+    /**
+     * Sections of the last completed period, guarded by themselves
+     */
+    private final Section[] published = new Section[MAX_DIVISORS];
+    private int publishedCount;
+    private long publishedStart;
+    private long publishedEnd;
+
+    /**
+     * Number of periods published so far, and the number the reporter thread has logged.
+     * Guarded by {@link #published}, which is notified when a period is published.
+     */
+    private int publishedPeriods;
+    private int reportedPeriods;
+
+    /**
+     * Whether the reporter thread has to exit, guarded by {@link #published}
+     */
+    private boolean stopped;
+
+    /**
+     * The frame interval the renderer aims for, in milliseconds
+     */
+    private float expectedInterval = 1000.f / 60.f;
+
+    /**
+     * Logs a summary of each published period, or null if logging is off
+     */
+    private final Thread reporter;
+
+    public FrameMetrics()
+    {
+        for(int i = 0; i < MAX_DIVISORS; ++i)
+        {
+            live[i] = new Section();
+            published[i] = new Section();
+        }
+
+        if(LoggerConfig.ON)
+        {
+            reporter = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    reportPeriods();
+                }
+            }, TAG);
+
+            reporter.setDaemon(true);
+            reporter.start();
+        }
+        else
+        {
+            reporter = null;
+        }
+    }
+
+    /**
+     * Set the frame interval the renderer aims for. Longer intervals count as jank.
+     * @param millis Expected interval in milliseconds
+     */
+    public void setExpectedInterval(float millis)
+    {
+        expectedInterval = millis;
+    }
+
+    /**
+     * Record the CPU side of a rendered frame
+     * @param divisor The resolution divisor the frame was rendered with
+     * @param cpuMillis Time spent on the render thread in milliseconds
+     * @param intervalMillis Time since the previous frame started in milliseconds, or a
+     * negative value if there was no previous frame
+     */
+    public void recordFrame(float divisor, float cpuMillis, float intervalMillis)
+    {
+        final Section section = section(divisor);
+
+        section.frames++;
+        section.cpu.record(cpuMillis);
+
+        if(intervalMillis >= 0.f)
+        {
+            section.interval.record(intervalMillis);
+
+            if(intervalMillis > expectedInterval * JANK_FACTOR)
+                section.janks++;
+        }
+    }
+
+    /**
+     * Record the GPU times of a frame. Timer results arrive a few frames late, so they are
+     * attributed to the divisor that is current when they arrive.
+     * @param divisor The current resolution divisor
+     * @param sceneMillis GPU time of the passes rendering the scene, in milliseconds
+     * @param presentMillis GPU time of the pass presenting it to the screen, in milliseconds
+     */
+    public void recordGpu(float divisor, float sceneMillis, float presentMillis)
+    {
+        final Section section = section(divisor);
+
+        section.gpuScene.record(sceneMillis);
+        section.gpuPresent.record(presentMillis);
+    }
+
+    /**
+     * End the current period if it is over. In that case, its samples are published and the
+     * reporter thread is woken up to log a summary. This never allocates.
+     * @param now Current time in milliseconds, from {@link android.os.SystemClock#uptimeMillis()}
+     */
+    public void update(long now)
+    {
+        if(liveStart < 0)
+            liveStart = now;
+
+        if(now - liveStart < PERIOD)
+            return;
+
+        synchronized(published)
+        {
+            for(int i = 0; i < liveCount; ++i)
+                published[i].copyFrom(live[i]);
+
+            publishedCount = liveCount;
+            publishedStart = liveStart;
+            publishedEnd = now;
+            publishedPeriods++;
+            published.notify();
+        }
+
+        for(int i = 0; i < liveCount; ++i)
+            live[i].reset();
+
+        liveCount = 0;
+        liveStart = now;
+    }
+
+    /**
+     * Stop the reporter thread. Periods published afterwards are not logged anymore.
+     */
+    public void release()
+    {
+        synchronized(published)
+        {
+            stopped = true;
+            published.notify();
+        }
+    }
+
+    /**
+     * Print the last completed period in detail
+     * @param out The writer to print to
+     * @param prefix Prefix of every line
+     */
+    public void dump(PrintWriter out, String prefix)
+    {
+        final StringBuilder line = new StringBuilder();
+
+        synchronized(published)
+        {
+            if(publishedCount == 0)
+            {
+                out.println(prefix + "no completed period yet");
+                return;
+            }
+
+            out.println(prefix + "period " + (publishedEnd - publishedStart) + "ms, expected interval "
+                    + expectedInterval + "ms");
+
+            for(int i = 0; i < publishedCount; ++i)
+            {
+                final Section section = published[i];
+
+                out.println(prefix + "divisor " + section.divisor + ": frames=" + section.frames
+                        + " janks=" + section.janks);
+
+                dumpHistogram(out, prefix + "  cpu ", section.cpu, line);
+                dumpHistogram(out, prefix + "  interval ", section.interval, line);
+                dumpHistogram(out, prefix + "  gpu scene ", section.gpuScene, line);
+                dumpHistogram(out, prefix + "  gpu present ", section.gpuPresent, line);
+            }
+        }
+    }
+
+    private static void dumpHistogram(PrintWriter out, String prefix, FrameHistogram histogram, StringBuilder line)
+    {
+        line.setLength(0);
+        histogram.appendSummary(line);
+
+        if(histogram.getCount() > 0)
+        {
+            line.append(" [");
+            histogram.appendBuckets(line);
+            line.append(']');
+        }
+
+        out.println(prefix + line);
+    }
+
+    /**
+     * Loop of the reporter thread: wait for a period to be published and log a summary line
+     * of it, until {@link #release()} is called
+     */
+    private void reportPeriods()
+    {
+        final StringBuilder builder = new StringBuilder(512);
+
+        while(true)
+        {
+            synchronized(published)
+            {
+                while(!stopped && reportedPeriods == publishedPeriods)
+                {
+                    try
+                    {
+                        published.wait();
+                    }
+                    catch(InterruptedException ex)
+                    {
+                        return;
+                    }
+                }
+
+                if(stopped)
+                    return;
+
+                // Periods published while the last summary was logged are skipped
+                reportedPeriods = publishedPeriods;
+
+                builder.setLength(0);
+                appendSummary(builder);
+            }
+
+            Logger.i(TAG, builder.toString());
+        }
+    }
+
+    /**
+     * Append one compact line summarizing the published sections. The caller has to hold
+     * the lock of {@link #published}.
+     */
+    private void appendSummary(StringBuilder builder)
+    {
+        builder.append("frames over ").append((publishedEnd - publishedStart) / 1000).append('s');
+
+        for(int i = 0; i < publishedCount; ++i)
+        {
+            final Section section = published[i];
+
+            builder.append(" | div=").append(section.divisor)
+                    .append(" frames=").append(section.frames)
+                    .append(" janks=").append(section.janks)
+                    .append(" cpu(");
+            section.cpu.appendSummary(builder);
+            builder.append(") interval(");
+            section.interval.appendSummary(builder);
+            builder.append(") gpu(");
+            section.gpuScene.appendSummary(builder);
+            builder.append(" + ");
+            section.gpuPresent.appendSummary(builder);
+            builder.append(')');
+        }
+    }
+
+    /**
+     * Find the section of given divisor in the current period, starting a new one if needed
+     */
+    private Section section(float divisor)
+    {
+        for(int i = 0; i < liveCount; ++i)
+        {
+            if(live[i].divisor == divisor)
+                return live[i];
+        }
+
+        if(liveCount == MAX_DIVISORS)
+            return live[MAX_DIVISORS - 1];
+
+        final Section section = live[liveCount++];
+        section.divisor = divisor;
+        return section;
+    }
+}
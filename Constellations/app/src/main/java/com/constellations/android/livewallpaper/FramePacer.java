@@ -0,0 +1,343 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLSurfaceView;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+
+import com.constellations.android.util.PlatformCompat;
+
+/**
+ * Drives a {@link GLSurfaceView} in RENDERMODE_WHEN_DIRTY at a capped frame rate. Frames are
+ * requested from Choreographer vsync callbacks, so rendering stays aligned to the display
+ * refresh instead of relying on sleeps. A frame is requested on the first vsync at which it
+ * is due, so the effective frame rate is the target rounded to whole vsync intervals.
+ *
+ * With a capped frame rate, the callback is posted with a delay that ends shortly before the
+ * next frame is due, so the main thread does not wake up on the vsyncs in between. The vsync
+ * period is measured from the timestamps of callbacks on consecutive vsyncs, which keeps the
+ * pacing correct if the display switches its refresh rate. With a capped frame rate, such
+ * pairs are only requested every {@link #PROBE_INTERVAL} frames.
+ *
+ * While the power policy pauses the animation, no callbacks are posted at all. The pacer
+ * listens for the next policy and starts again once the animation is unpaused. Callbacks
+ * that pick up a new configuration or policy notify the settings listener, so the engine can
+ * resize the surface while the wallpaper is visible.
+ *
+ * All methods have to be called on the main thread, and policies published there.
+ */
+public class FramePacer implements Choreographer.FrameCallback, RenderPolicy.Listener
+{
+    /**
+     * Number of vsync intervals the vsync period is measured over, at the native refresh rate
+     * and with a capped frame rate
+     */
+    private static final int WINDOW = 32;
+    private static final int PROBE_WINDOW = 4;
+
+    /**
+     * With a capped frame rate, the vsync interval is measured after every this many frames
+     */
+    private static final int PROBE_INTERVAL = 8;
+
+    private final GLSurfaceView view;
+    private final SurfaceHolder holder;
+
+    /**
+     * Target frame rate in Hz. 0 means the native refresh rate.
+     */
+    private int targetFps;
+
+    /**
+     * Time between two rendered frames in nanoseconds. 0 means every vsync.
+     */
+    private long framePeriod;
+
+    /**
+     * The measured vsync period in nanoseconds
+     */
+    private long vsyncPeriod;
+
+    /**
+     * Timestamp of the previous vsync callback, in nanoseconds
+     */
+    private long lastVsync;
+
+    /**
+     * Whether the current callback was posted for the next vsync, without a delay, so its
+     * distance to the previous one measures the vsync period
+     */
+    private boolean probing;
+
+    /**
+     * Number of frames requested since the vsync period was last measured
+     */
+    private int framesSinceProbe;
+
+    /**
+     * Smallest interval between two consecutive callbacks in the current measurement window,
+     * and the number of intervals in it. Skipped callbacks only make intervals longer, so the
+     * minimum is the vsync period.
+     */
+    private long windowMinimum = Long.MAX_VALUE;
+    private int windowCount;
+
+    /**
+     * The vsync timestamp the next frame is due at, in nanoseconds
+     */
+    private long nextFrameTime;
+
+    private boolean running;
+
+    /**
+     * Whether callbacks stopped because the animation is paused
+     */
+    private boolean suspended;
+
+    /**
+     * The clock the vsyncs of requested frames are reported to, or null
+     */
+    private VsyncFrameClock clock;
+
+    /**
+     * The input queue flushed before each requested frame, or null
+     */
+    private InputRing input;
+
+    /**
+     * Run when a new configuration or policy is picked up, or null
+     */
+    private Runnable settingsListener;
+
+    /**
+     * Versions of the configuration and the policy picked up last
+     */
+    private long configVersion = -1;
+    private long policyVersion = -1;
+
+    /**
+     * The frame rate that was last requested from the display, or -1 if none was requested
+     * for the current surface
+     */
+    private float requestedRate = -1.f;
+
+    /**
+     * Create new pacer
+     * @param view The view to request frames from
+     * @param holder The holder of the surface the view renders to
+     * @param refreshRate The display refresh rate in Hz, used until the vsync period was measured
+     */
+    public FramePacer(GLSurfaceView view, SurfaceHolder holder, float refreshRate)
+    {
+        this.view = view;
+        this.holder = holder;
+        this.vsyncPeriod = (long)(1e9 / (refreshRate > 0.f ? refreshRate : 60.f));
+    }
+
+    /**
+     * Set the target frame rate
+     * @param fps Target frame rate in Hz, or 0 for the native refresh rate
+     */
+    public void setTargetFps(int fps)
+    {
+        if(fps == targetFps)
+            return;
+
+        targetFps = fps;
+        framePeriod = (fps <= 0) ? 0 : (long)(1e9 / fps);
+
+        if(running)
+            requestDisplayFrameRate();
+    }
+
+    /**
+     * Report the vsync each frame is requested at to given clock, so the frame can show the
+     * scene at its presentation time
+     * @param clock The clock, or null
+     */
+    public void setClock(VsyncFrameClock clock)
+    {
+        this.clock = clock;
+    }
+
+    /**
+     * Flush the events that did not fit into given queue before each requested frame, so
+     * the latest input reaches the frame even while no new events arrive
+     * @param input The queue, or null
+     */
+    public void setInput(InputRing input)
+    {
+        this.input = input;
+    }
+
+    /**
+     * Run given listener on the main thread whenever a callback finds that a new
+     * configuration or policy was published since the previous one
+     * @param listener The listener, or null
+     */
+    public void setSettingsListener(Runnable listener)
+    {
+        this.settingsListener = listener;
+    }
+
+    /**
+     * The target frame rate in Hz, or 0 for the native refresh rate
+     */
+    public int getTargetFps()
+    {
+        return targetFps;
+    }
+
+    /**
+     * Start requesting frames
+     */
+    public void start()
+    {
+        if(running)
+            return;
+
+        running = true;
+        suspended = false;
+        nextFrameTime = 0;
+        lastVsync = 0;
+        probing = false;
+        requestDisplayFrameRate();
+
+        RenderPolicy.addListener(this);
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Stop requesting frames
+     */
+    public void stop()
+    {
+        if(!running)
+            return;
+
+        running = false;
+        RenderPolicy.removeListener(this);
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    /**
+     * Notify the pacer that the surface was recreated, which resets the frame rate request
+     */
+    public void onSurfaceChanged()
+    {
+        requestedRate = -1.f;
+
+        if(running)
+            requestDisplayFrameRate();
+    }
+
+    @Override
+    public void onPolicyChanged(RenderPolicy policy)
+    {
+        if(!running || !suspended || policy.isPaused())
+            return;
+
+        // The time since the last callback is not a vsync period
+        suspended = false;
+        lastVsync = 0;
+        probing = false;
+
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos)
+    {
+        if(!running)
+            return;
+
+        // Pick up changes of the frame rate setting and the power policy
+        final RenderPolicy policy = RenderPolicy.getCurrent();
+        final Configuration config = Configuration.getCurrent();
+        setTargetFps(policy.capFps(config.getTargetFps()));
+
+        if(config.getVersion() != configVersion || policy.getVersion() != policyVersion)
+        {
+            configVersion = config.getVersion();
+            policyVersion = policy.getVersion();
+
+            if(settingsListener != null)
+                settingsListener.run();
+        }
+
+        // Track the vsync period
+        if(probing && lastVsync != 0 && frameTimeNanos > lastVsync)
+        {
+            windowMinimum = Math.min(windowMinimum, frameTimeNanos - lastVsync);
+
+            if(++windowCount == (framePeriod == 0 ? WINDOW : PROBE_WINDOW))
+            {
+                vsyncPeriod = windowMinimum;
+                windowMinimum = Long.MAX_VALUE;
+                windowCount = 0;
+            }
+        }
+
+        lastVsync = frameTimeNanos;
+
+        // While the animation is paused, the last frame stays on screen until a policy that
+        // unpauses it is published
+        if(policy.isPaused())
+        {
+            suspended = true;
+            return;
+        }
+
+        // Render if the frame is due. Allow half a vsync of jitter in the timestamps.
+        if(frameTimeNanos >= nextFrameTime - vsyncPeriod / 2)
+        {
+            if(clock != null)
+                clock.onVsync(frameTimeNanos, vsyncPeriod);
+
+            if(input != null)
+                input.flush();
+
+            view.requestRender();
+            ++framesSinceProbe;
+
+            // Stay on the frame grid, but do not try to catch up after a stall
+            nextFrameTime += framePeriod;
+
+            if(nextFrameTime <= frameTimeNanos)
+                nextFrameTime = frameTimeNanos + framePeriod;
+        }
+
+        postCallback();
+    }
+
+    /**
+     * Post the callback for the vsync the next frame is due at. Choreographer requests the
+     * vsync once the delay has passed, so it ends half a vsync before the frame is due.
+     */
+    private void postCallback()
+    {
+        // Vsync timestamps use the same time base as System.nanoTime
+        final long delay = (nextFrameTime - vsyncPeriod / 2 - System.nanoTime()) / 1000000L;
+
+        // Wait for the next vsync if the frame is due by then, which also measures the vsync
+        // period. Do so every few frames even if it is not.
+        probing = delay <= 0 || framesSinceProbe >= PROBE_INTERVAL;
+
+        if(probing)
+        {
+            framesSinceProbe = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+        else
+        {
+            Choreographer.getInstance().postFrameCallbackDelayed(this, delay);
+        }
+    }
+
+    private void requestDisplayFrameRate()
+    {
+        final float rate = (targetFps <= 0) ? 0.f : targetFps;
+
+        if(rate != requestedRate && PlatformCompat.setFrameRate(holder.getSurface(), rate))
+            requestedRate = rate;
+    }
+}
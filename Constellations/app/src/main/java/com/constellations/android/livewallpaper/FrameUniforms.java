@@ -0,0 +1,103 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * The per-frame uniform block of the scene shader. This mirrors the std140 layout of
+ * FrameBlock in shader_fragment.glsl:
+ *
+ * <pre>
+ * vec3  iResolution;       // offset 0
+ * float iTime;             // offset 12
+ * vec4  iMouse;            // offset 16
+ * vec4  iCustomColor;      // offset 32
+ * int   iUseCustomColor;   // offset 48
+ * ivec4 iInterleave;       // offset 64
+ * </pre>
+ */
+public class FrameUniforms extends UniformBuffer
+{
+    /**
+     * Name of the uniform block in the shader source
+     */
+    public static final String BLOCK_NAME = "FrameBlock";
+
+    /**
+     * The uniform buffer binding point used for this block
+     */
+    public static final int BINDING = 0;
+
+    /**
+     * Size of the block in bytes, rounded up to a multiple of vec4
+     */
+    public static final int SIZE = 80;
+
+    private static final int OFFSET_RESOLUTION = 0;
+    private static final int OFFSET_TIME = 12;
+    private static final int OFFSET_MOUSE = 16;
+    private static final int OFFSET_CUSTOM_COLOR = 32;
+    private static final int OFFSET_USE_CUSTOM_COLOR = 48;
+    private static final int OFFSET_INTERLEAVE = 64;
+
+    public FrameUniforms(GLState state)
+    {
+        super(state, SIZE, BINDING);
+    }
+
+    public void setResolution(float width, float height)
+    {
+        putVec3(OFFSET_RESOLUTION, width, height, 0.f);
+    }
+
+    public void setTime(float time)
+    {
+        putFloat(OFFSET_TIME, time);
+    }
+
+    public void setMouse(float x, float y, float clickX, float clickY)
+    {
+        putVec4(OFFSET_MOUSE, x, y, clickX, clickY);
+    }
+
+    public void setCustomColor(boolean use, float r, float g, float b, float a)
+    {
+        putInt(OFFSET_USE_CUSTOM_COLOR, use ? 1 : 0);
+        putVec4(OFFSET_CUSTOM_COLOR, r, g, b, a);
+    }
+
+    /**
+     * Set the interleaving state of the current frame
+     * @param pattern The pattern identifier, see {@link InterleaveMode#getPattern()}
+     * @param phase The field rendered this frame
+     * @param historyValid Whether the history target contains a previous frame
+     */
+    public void setInterleave(int pattern, int phase, boolean historyValid)
+    {
+        putInt(OFFSET_INTERLEAVE, pattern);
+        putInt(OFFSET_INTERLEAVE + 4, phase);
+        putInt(OFFSET_INTERLEAVE + 8, historyValid ? 1 : 0);
+    }
+
+    public float getWidth()
+    {
+        return data.getFloat(OFFSET_RESOLUTION);
+    }
+
+    public float getHeight()
+    {
+        return data.getFloat(OFFSET_RESOLUTION + 4);
+    }
+
+    public float getTime()
+    {
+        return data.getFloat(OFFSET_TIME);
+    }
+
+    public float getMouseX()
+    {
+        return data.getFloat(OFFSET_MOUSE);
+    }
+
+    public float getMouseY()
+    {
+        return data.getFloat(OFFSET_MOUSE + 4);
+    }
+}
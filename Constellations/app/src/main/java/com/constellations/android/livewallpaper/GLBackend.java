@@ -0,0 +1,116 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * Abstraction of the OpenGL ES 3.1 entry points used by the renderer. All rendering code
+ * issues its GL calls through an instance of this interface instead of calling the static
+ * {@link android.opengl.GLES31} methods directly, which allows the command stream to be
+ * recorded and measured off-device (see {@link RecordingGLBackend}).
+ *
+ * The methods mirror the signatures of their {@link android.opengl.GLES31} counterparts.
+ */
+public interface GLBackend
+{
+    // === Shaders and programs
+    int glCreateProgram();
+    void glUseProgram(int program);
+    int glCreateShader(int type);
+    void glShaderSource(int shader, String source);
+    void glCompileShader(int shader);
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+    String glGetShaderInfoLog(int shader);
+    void glAttachShader(int program, int shader);
+    void glDetachShader(int program, int shader);
+    void glDeleteShader(int shader);
+    void glBindAttribLocation(int program, int index, String name);
+    void glLinkProgram(int program);
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+    String glGetProgramInfoLog(int program);
+    String glGetActiveUniform(int program, int index, int[] size, int sizeOffset, int[] type, int typeOffset);
+    int glGetUniformBlockIndex(int program, String uniformBlockName);
+    String glGetActiveUniformBlockName(int program, int uniformBlockIndex);
+    void glGetActiveUniformBlockiv(int program, int uniformBlockIndex, int pname, int[] params, int offset);
+    void glUniformBlockBinding(int program, int uniformBlockIndex, int uniformBlockBinding);
+    void glProgramParameteri(int program, int pname, int value);
+    void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat, int binaryFormatOffset, java.nio.Buffer binary);
+    void glProgramBinary(int program, int binaryFormat, java.nio.Buffer binary, int length);
+    void glDeleteProgram(int program);
+    // ===
+
+    // === Uniforms
+    int glGetUniformLocation(int program, String name);
+    void glUniform1i(int location, int x);
+    void glUniform1f(int location, float x);
+    void glUniform3f(int location, float x, float y, float z);
+    void glUniform4f(int location, float x, float y, float z, float w);
+    void glProgramUniform1i(int program, int location, int x);
+    void glProgramUniform1f(int program, int location, float x);
+    void glProgramUniform3f(int program, int location, float x, float y, float z);
+    void glProgramUniform4f(int program, int location, float x, float y, float z, float w);
+    // ===
+
+    // === Buffers and vertex arrays
+    void glGenBuffers(int n, int[] buffers, int offset);
+    void glBindBuffer(int target, int buffer);
+    void glBindBufferBase(int target, int index, int buffer);
+    void glBufferData(int target, int size, java.nio.Buffer data, int usage);
+    void glBufferSubData(int target, int offset, int size, java.nio.Buffer data);
+    void glGenVertexArrays(int n, int[] arrays, int offset);
+    void glBindVertexArray(int array);
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+    // ===
+
+    // === Textures
+    void glGenTextures(int n, int[] textures, int offset);
+    void glDeleteTextures(int n, int[] textures, int offset);
+    void glActiveTexture(int texture);
+    void glBindTexture(int target, int texture);
+    void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, java.nio.Buffer pixels);
+    void glTexParameteri(int target, int pname, int param);
+    void glTexStorage2D(int target, int levels, int internalformat, int width, int height);
+    void glBindImageTexture(int unit, int texture, int level, boolean layered, int layer, int access, int format);
+    void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, java.nio.Buffer pixels);
+    void glPixelStorei(int pname, int param);
+    void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, int offset);
+    // ===
+
+    // === Framebuffers
+    void glGenFramebuffers(int n, int[] framebuffers, int offset);
+    void glBindFramebuffer(int target, int framebuffer);
+    void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level);
+    void glInvalidateFramebuffer(int target, int numAttachments, int[] attachments, int offset);
+    void glBlitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1, int dstX0, int dstY0, int dstX1, int dstY1, int mask, int filter);
+    // ===
+
+    // === Queries
+    void glGenQueries(int n, int[] ids, int offset);
+    void glDeleteQueries(int n, int[] ids, int offset);
+    void glBeginQuery(int target, int id);
+    void glEndQuery(int target);
+    void glGetQueryObjectuiv(int id, int pname, int[] params, int offset);
+    // ===
+
+    // === State and drawing
+    void glGetIntegerv(int pname, int[] params, int offset);
+    void glViewport(int x, int y, int width, int height);
+    void glClearColor(float red, float green, float blue, float alpha);
+    void glClear(int mask);
+    void glDrawArraysInstanced(int mode, int first, int count, int instanceCount);
+    String glGetString(int name);
+    void glEnable(int cap);
+    void glDisable(int cap);
+    void glBlendFunc(int sfactor, int dfactor);
+    void glColorMask(boolean red, boolean green, boolean blue, boolean alpha);
+    void glFinish();
+    // ===
+
+    // === Compute
+    void glDispatchCompute(int numGroupsX, int numGroupsY, int numGroupsZ);
+    void glMemoryBarrier(int barriers);
+    // ===
+
+    // === Synchronization
+    long glFenceSync(int condition, int flags);
+    int glClientWaitSync(long sync, int flags, long timeout);
+    void glDeleteSync(long sync);
+    // ===
+}
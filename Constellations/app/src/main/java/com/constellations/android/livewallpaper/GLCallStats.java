@@ -0,0 +1,213 @@
+package com.constellations.android.livewallpaper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Statistics about a recorded stream of GL calls, as collected by {@link RecordingGLBackend}.
+ * Once every function was called, recording and resetting do not allocate, so measuring a
+ * frame does not show up in the allocations of the frame loop.
+ */
+public class GLCallStats
+{
+    /**
+     * Categories GL calls are sorted into
+     */
+    public enum Kind
+    {
+        /**
+         * Queries that require a round-trip to the driver, like glGetIntegerv or
+         * glGetUniformLocation. These can stall the pipeline.
+         */
+        QUERY,
+
+        /**
+         * Calls changing bound objects or fixed function state
+         */
+        STATE_CHANGE,
+
+        /**
+         * Uniform uploads
+         */
+        UNIFORM,
+
+        /**
+         * Creation of GL objects or (re)allocation of their storage
+         */
+        ALLOCATION,
+
+        /**
+         * Draw calls
+         */
+        DRAW,
+
+        /**
+         * Everything else, like shader compilation or clears
+         */
+        OTHER
+    }
+
+    /**
+     * Number of calls per category, indexed by {@link Kind#ordinal()}
+     */
+    private final int[] counts = new int[Kind.values().length];
+
+    /**
+     * Number of calls per GL function, in a single element array so it can be incremented
+     * in place
+     */
+    private final Map<String, int[]> functions = new TreeMap<>();
+
+    /**
+     * The values of {@link #functions}, which can be reset without an iterator
+     */
+    private final List<int[]> functionCounts = new ArrayList<>();
+
+    /**
+     * Register a single call
+     * @param function Name of the GL function
+     * @param kind Category of the call
+     */
+    void record(String function, Kind kind)
+    {
+        counts[kind.ordinal()]++;
+
+        int[] count = functions.get(function);
+
+        if(count == null)
+        {
+            count = new int[1];
+            functions.put(function, count);
+            functionCounts.add(count);
+        }
+
+        count[0]++;
+    }
+
+    /**
+     * Forget all registered calls. The functions stay known, so registering their calls
+     * again does not allocate.
+     */
+    void reset()
+    {
+        for(int i = 0; i < counts.length; ++i)
+            counts[i] = 0;
+
+        for(int i = 0; i < functionCounts.size(); ++i)
+            functionCounts.get(i)[0] = 0;
+    }
+
+    /**
+     * Total number of recorded calls
+     */
+    public int getCalls()
+    {
+        int sum = 0;
+        for(int count: counts)
+            sum += count;
+
+        return sum;
+    }
+
+    /**
+     * Number of recorded calls of given category
+     */
+    public int getCount(Kind kind)
+    {
+        return counts[kind.ordinal()];
+    }
+
+    /**
+     * Number of recorded calls of given GL function
+     * @param function Function name, for example "glGetIntegerv"
+     */
+    public int getCount(String function)
+    {
+        final int[] count = functions.get(function);
+        return count == null ? 0 : count[0];
+    }
+
+    public int getQueries()
+    {
+        return getCount(Kind.QUERY);
+    }
+
+    public int getStateChanges()
+    {
+        return getCount(Kind.STATE_CHANGE);
+    }
+
+    public int getAllocations()
+    {
+        return getCount(Kind.ALLOCATION);
+    }
+
+    public int getDrawCalls()
+    {
+        return getCount(Kind.DRAW);
+    }
+
+    /**
+     * Check whether any category of these statistics exceeds the corresponding count
+     * in given budget.
+     * @param budget Maximum allowed number of calls per category
+     */
+    public boolean exceeds(GLCallStats budget)
+    {
+        for(int i = 0; i < counts.length; ++i)
+        {
+            if(counts[i] > budget.counts[i])
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Create a budget allowing at most the given number of calls per category
+     * @param queries Allowed number of queries
+     * @param stateChanges Allowed number of state changes
+     * @param uniforms Allowed number of uniform uploads
+     * @param allocations Allowed number of allocations
+     * @param drawCalls Allowed number of draw calls
+     * @param other Allowed number of other calls
+     */
+    public static GLCallStats budget(int queries, int stateChanges, int uniforms, int allocations, int drawCalls, int other)
+    {
+        final GLCallStats budget = new GLCallStats();
+        budget.counts[Kind.QUERY.ordinal()] = queries;
+        budget.counts[Kind.STATE_CHANGE.ordinal()] = stateChanges;
+        budget.counts[Kind.UNIFORM.ordinal()] = uniforms;
+        budget.counts[Kind.ALLOCATION.ordinal()] = allocations;
+        budget.counts[Kind.DRAW.ordinal()] = drawCalls;
+        budget.counts[Kind.OTHER.ordinal()] = other;
+        return budget;
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("calls=").append(getCalls());
+
+        for(Kind kind: Kind.values())
+            builder.append(", ").append(kind.name().toLowerCase()).append('=').append(getCount(kind));
+
+        builder.append(" {");
+
+        String separator = "";
+        for(Map.Entry<String, int[]> function: functions.entrySet())
+        {
+            if(function.getValue()[0] == 0)
+                continue;
+
+            builder.append(separator).append(function.getKey()).append('=').append(function.getValue()[0]);
+            separator = ", ";
+        }
+
+        builder.append('}');
+        return builder.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Information about the GL implementation backing a context. This is queried once when the
+ * context is created, so the frame loop never has to ask the driver.
+ */
+public class GLCapabilities
+{
+    /**
+     * GPU timer queries, see {@link GpuTimer}
+     */
+    public static final String EXT_DISJOINT_TIMER_QUERY = "GL_EXT_disjoint_timer_query";
+
+    /**
+     * Rendering to 16 bit floating point color buffers
+     */
+    public static final String EXT_COLOR_BUFFER_HALF_FLOAT = "GL_EXT_color_buffer_half_float";
+
+    /**
+     * Rendering to 16 and 32 bit floating point color buffers
+     */
+    public static final String EXT_COLOR_BUFFER_FLOAT = "GL_EXT_color_buffer_float";
+
+    private final String renderer;
+    private final String version;
+    private final Set<String> extensions;
+
+    /**
+     * Query the capabilities of the context current on the calling thread
+     * @param gl The GL backend to issue all calls through
+     */
+    public GLCapabilities(GLBackend gl)
+    {
+        this.renderer = nonNull(gl.glGetString(GLES31.GL_RENDERER));
+        this.version = nonNull(gl.glGetString(GLES31.GL_VERSION));
+
+        final Set<String> names = new HashSet<>();
+        for(String name: nonNull(gl.glGetString(GLES31.GL_EXTENSIONS)).split(" "))
+        {
+            if(!name.isEmpty())
+                names.add(name);
+        }
+
+        this.extensions = Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * The GL_RENDERER string
+     */
+    public String getRenderer()
+    {
+        return renderer;
+    }
+
+    /**
+     * The GL_VERSION string
+     */
+    public String getVersion()
+    {
+        return version;
+    }
+
+    public Set<String> getExtensions()
+    {
+        return extensions;
+    }
+
+    public boolean hasExtension(String name)
+    {
+        return extensions.contains(name);
+    }
+
+    /**
+     * Whether GPU timer queries are available
+     */
+    public boolean hasTimerQuery()
+    {
+        return hasExtension(EXT_DISJOINT_TIMER_QUERY);
+    }
+
+    /**
+     * Whether GL_R16F and GL_RGBA16F textures can be rendered to
+     */
+    public boolean hasHalfFloatColorBuffer()
+    {
+        return hasExtension(EXT_COLOR_BUFFER_HALF_FLOAT) || hasExtension(EXT_COLOR_BUFFER_FLOAT);
+    }
+
+    /**
+     * Whether floating point textures like GL_R11F_G11F_B10F can be rendered to
+     */
+    public boolean hasFloatColorBuffer()
+    {
+        return hasExtension(EXT_COLOR_BUFFER_FLOAT);
+    }
+
+    private static String nonNull(String s)
+    {
+        return s == null ? "" : s;
+    }
+}
@@ -0,0 +1,474 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+import java.nio.Buffer;
+
+/**
+ * {@link GLBackend} implementation forwarding every call to the OpenGL ES 3.1 context
+ * current on the calling thread.
+ */
+public class GLES31Backend implements GLBackend
+{
+    @Override
+    public int glCreateProgram()
+    {
+        return GLES31.glCreateProgram();
+    }
+
+    @Override
+    public void glUseProgram(int program)
+    {
+        GLES31.glUseProgram(program);
+    }
+
+    @Override
+    public int glCreateShader(int type)
+    {
+        return GLES31.glCreateShader(type);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source)
+    {
+        GLES31.glShaderSource(shader, source);
+    }
+
+    @Override
+    public void glCompileShader(int shader)
+    {
+        GLES31.glCompileShader(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+    {
+        GLES31.glGetShaderiv(shader, pname, params, offset);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader)
+    {
+        return GLES31.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader)
+    {
+        GLES31.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glDetachShader(int program, int shader)
+    {
+        GLES31.glDetachShader(program, shader);
+    }
+
+    @Override
+    public void glDeleteShader(int shader)
+    {
+        GLES31.glDeleteShader(shader);
+    }
+
+    @Override
+    public void glBindAttribLocation(int program, int index, String name)
+    {
+        GLES31.glBindAttribLocation(program, index, name);
+    }
+
+    @Override
+    public void glLinkProgram(int program)
+    {
+        GLES31.glLinkProgram(program);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset)
+    {
+        GLES31.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program)
+    {
+        return GLES31.glGetProgramInfoLog(program);
+    }
+
+    @Override
+    public String glGetActiveUniform(int program, int index, int[] size, int sizeOffset, int[] type, int typeOffset)
+    {
+        return GLES31.glGetActiveUniform(program, index, size, sizeOffset, type, typeOffset);
+    }
+
+    @Override
+    public int glGetUniformBlockIndex(int program, String uniformBlockName)
+    {
+        return GLES31.glGetUniformBlockIndex(program, uniformBlockName);
+    }
+
+    @Override
+    public String glGetActiveUniformBlockName(int program, int uniformBlockIndex)
+    {
+        return GLES31.glGetActiveUniformBlockName(program, uniformBlockIndex);
+    }
+
+    @Override
+    public void glGetActiveUniformBlockiv(int program, int uniformBlockIndex, int pname, int[] params, int offset)
+    {
+        GLES31.glGetActiveUniformBlockiv(program, uniformBlockIndex, pname, params, offset);
+    }
+
+    @Override
+    public void glUniformBlockBinding(int program, int uniformBlockIndex, int uniformBlockBinding)
+    {
+        GLES31.glUniformBlockBinding(program, uniformBlockIndex, uniformBlockBinding);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name)
+    {
+        return GLES31.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x)
+    {
+        GLES31.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x)
+    {
+        GLES31.glUniform1f(location, x);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z)
+    {
+        GLES31.glUniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w)
+    {
+        GLES31.glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void glProgramUniform1i(int program, int location, int x)
+    {
+        GLES31.glProgramUniform1i(program, location, x);
+    }
+
+    @Override
+    public void glProgramUniform1f(int program, int location, float x)
+    {
+        GLES31.glProgramUniform1f(program, location, x);
+    }
+
+    @Override
+    public void glProgramUniform3f(int program, int location, float x, float y, float z)
+    {
+        GLES31.glProgramUniform3f(program, location, x, y, z);
+    }
+
+    @Override
+    public void glProgramUniform4f(int program, int location, float x, float y, float z, float w)
+    {
+        GLES31.glProgramUniform4f(program, location, x, y, z, w);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset)
+    {
+        GLES31.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer)
+    {
+        GLES31.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBindBufferBase(int target, int index, int buffer)
+    {
+        GLES31.glBindBufferBase(target, index, buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage)
+    {
+        GLES31.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data)
+    {
+        GLES31.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public void glGenVertexArrays(int n, int[] arrays, int offset)
+    {
+        GLES31.glGenVertexArrays(n, arrays, offset);
+    }
+
+    @Override
+    public void glBindVertexArray(int array)
+    {
+        GLES31.glBindVertexArray(array);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset)
+    {
+        GLES31.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset)
+    {
+        GLES31.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glActiveTexture(int texture)
+    {
+        GLES31.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture)
+    {
+        GLES31.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels)
+    {
+        GLES31.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param)
+    {
+        GLES31.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset)
+    {
+        GLES31.glGenFramebuffers(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer)
+    {
+        GLES31.glBindFramebuffer(target, framebuffer);
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level)
+    {
+        GLES31.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset)
+    {
+        GLES31.glGetIntegerv(pname, params, offset);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height)
+    {
+        GLES31.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha)
+    {
+        GLES31.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glClear(int mask)
+    {
+        GLES31.glClear(mask);
+    }
+
+    @Override
+    public void glDrawArraysInstanced(int mode, int first, int count, int instanceCount)
+    {
+        GLES31.glDrawArraysInstanced(mode, first, count, instanceCount);
+    }
+
+    @Override
+    public void glGenQueries(int n, int[] ids, int offset)
+    {
+        GLES31.glGenQueries(n, ids, offset);
+    }
+
+    @Override
+    public void glDeleteQueries(int n, int[] ids, int offset)
+    {
+        GLES31.glDeleteQueries(n, ids, offset);
+    }
+
+    @Override
+    public void glBeginQuery(int target, int id)
+    {
+        GLES31.glBeginQuery(target, id);
+    }
+
+    @Override
+    public void glEndQuery(int target)
+    {
+        GLES31.glEndQuery(target);
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset)
+    {
+        GLES31.glGetQueryObjectuiv(id, pname, params, offset);
+    }
+
+    @Override
+    public String glGetString(int name)
+    {
+        return GLES31.glGetString(name);
+    }
+
+    @Override
+    public void glTexStorage2D(int target, int levels, int internalformat, int width, int height)
+    {
+        GLES31.glTexStorage2D(target, levels, internalformat, width, height);
+    }
+
+    @Override
+    public void glBindImageTexture(int unit, int texture, int level, boolean layered, int layer, int access, int format)
+    {
+        GLES31.glBindImageTexture(unit, texture, level, layered, layer, access, format);
+    }
+
+    @Override
+    public void glDispatchCompute(int numGroupsX, int numGroupsY, int numGroupsZ)
+    {
+        GLES31.glDispatchCompute(numGroupsX, numGroupsY, numGroupsZ);
+    }
+
+    @Override
+    public void glMemoryBarrier(int barriers)
+    {
+        GLES31.glMemoryBarrier(barriers);
+    }
+
+    @Override
+    public void glEnable(int cap)
+    {
+        GLES31.glEnable(cap);
+    }
+
+    @Override
+    public void glDisable(int cap)
+    {
+        GLES31.glDisable(cap);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor)
+    {
+        GLES31.glBlendFunc(sfactor, dfactor);
+    }
+
+    @Override
+    public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha)
+    {
+        GLES31.glColorMask(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value)
+    {
+        GLES31.glProgramParameteri(program, pname, value);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat, int binaryFormatOffset, Buffer binary)
+    {
+        GLES31.glGetProgramBinary(program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length)
+    {
+        GLES31.glProgramBinary(program, binaryFormat, binary, length);
+    }
+
+    @Override
+    public void glFinish()
+    {
+        GLES31.glFinish();
+    }
+
+    @Override
+    public void glDeleteProgram(int program)
+    {
+        GLES31.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, Buffer pixels)
+    {
+        GLES31.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, pixels);
+    }
+
+    @Override
+    public void glPixelStorei(int pname, int param)
+    {
+        GLES31.glPixelStorei(pname, param);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset)
+    {
+        GLES31.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glInvalidateFramebuffer(int target, int numAttachments, int[] attachments, int offset)
+    {
+        GLES31.glInvalidateFramebuffer(target, numAttachments, attachments, offset);
+    }
+
+    @Override
+    public void glBlitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1, int dstX0, int dstY0, int dstX1, int dstY1, int mask, int filter)
+    {
+        GLES31.glBlitFramebuffer(srcX0, srcY0, srcX1, srcY1, dstX0, dstY0, dstX1, dstY1, mask, filter);
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, int offset)
+    {
+        GLES31.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, offset);
+    }
+
+    @Override
+    public long glFenceSync(int condition, int flags)
+    {
+        return GLES31.glFenceSync(condition, flags);
+    }
+
+    @Override
+    public int glClientWaitSync(long sync, int flags, long timeout)
+    {
+        return GLES31.glClientWaitSync(sync, flags, timeout);
+    }
+
+    @Override
+    public void glDeleteSync(long sync)
+    {
+        GLES31.glDeleteSync(sync);
+    }
+}
@@ -3,6 +3,7 @@ package com.constellations.android.livewallpaper;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.content.pm.ConfigurationInfo;
+import android.opengl.GLSurfaceView;
 import android.opengl.GLSurfaceView.Renderer;
 import android.util.Log;
 import android.view.GestureDetector;
@@ -37,8 +38,17 @@ public abstract class GLES31WallpaperService extends GLWallpaperService {
 				// leaving and resuming the live wallpaper.
 				setPreserveEGLContextOnPause(true);
 
+				// The context factory has to be set before the renderer. A custom factory
+				// has to request an OpenGL ES 3 context itself.
+				final Renderer renderer = getNewRenderer();
+				final GLSurfaceView.EGLContextFactory factory = getContextFactory(renderer);
+
+				if (factory != null) {
+					setEGLContextFactory(factory);
+				}
+
 				// Set the renderer to our user-defined renderer.
-				setRenderer(getNewRenderer());
+				setRenderer(renderer);
 			}
 			else
 			{
@@ -49,4 +59,12 @@ public abstract class GLES31WallpaperService extends GLWallpaperService {
 	}
 	
 	abstract Renderer getNewRenderer();
+
+	/**
+	 * The factory creating the render context of given renderer, or null to use the default
+	 * one
+	 */
+	GLSurfaceView.EGLContextFactory getContextFactory(Renderer renderer) {
+		return null;
+	}
 }
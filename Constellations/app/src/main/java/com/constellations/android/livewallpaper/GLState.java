@@ -0,0 +1,318 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+/**
+ * Shadow copy of the GL binding state of a single context. All binds are routed through
+ * this class, which drops binds that would not change anything and answers state queries
+ * from the shadow copy, so the frame loop never has to ask the driver for state.
+ *
+ * This only works if every bind of the tracked state goes through this instance. Code that
+ * bypasses it has to call {@link #invalidate()} afterwards.
+ */
+public class GLState
+{
+    /**
+     * Marker for shadowed state that is not known
+     */
+    private static final int UNKNOWN = -1;
+
+    /**
+     * Number of texture units whose 2D texture binding is tracked
+     */
+    private static final int TRACKED_TEXTURE_UNITS = 8;
+
+    /**
+     * The GL backend all calls are issued through
+     */
+    private final GLBackend gl;
+
+    private int program;
+    private int framebuffer;
+
+    /**
+     * The framebuffer bound to GL_READ_FRAMEBUFFER. It only differs from the one above while
+     * blitting.
+     */
+    private int readFramebuffer;
+    private int vertexArray;
+    private int arrayBuffer;
+    private int uniformBuffer;
+
+    /**
+     * The active texture unit, as GL_TEXTUREi value
+     */
+    private int activeTexture;
+
+    /**
+     * The 2D texture bound to each texture unit
+     */
+    private final int[] textures = new int[TRACKED_TEXTURE_UNITS];
+
+    private int viewportX, viewportY, viewportWidth, viewportHeight;
+
+    /**
+     * Whether GL_BLEND is enabled: 1 if enabled, 0 if disabled
+     */
+    private int blend;
+
+    /**
+     * Scratch storage for the few remaining driver queries
+     */
+    private final int[] query = new int[1];
+
+    /**
+     * Create new state tracker for the context that is current on the calling thread. The
+     * state is assumed to be unknown.
+     * @param gl The GL backend to issue all calls through
+     */
+    public GLState(GLBackend gl)
+    {
+        this.gl = gl;
+        invalidate();
+    }
+
+    /**
+     * The GL backend all calls are issued through
+     */
+    public GLBackend getBackend()
+    {
+        return gl;
+    }
+
+    /**
+     * Assume the initial state of a freshly created context: everything bound to zero,
+     * texture unit 0 active. The viewport stays unknown, since it depends on the surface.
+     */
+    public void reset()
+    {
+        invalidate();
+
+        program = 0;
+        framebuffer = 0;
+        readFramebuffer = 0;
+        vertexArray = 0;
+        arrayBuffer = 0;
+        uniformBuffer = 0;
+        activeTexture = GLES31.GL_TEXTURE0;
+        blend = 0;
+
+        for(int i = 0; i < textures.length; ++i)
+            textures[i] = 0;
+    }
+
+    /**
+     * Forget all shadowed state. The next bind of every kind will be issued to the driver.
+     */
+    public void invalidate()
+    {
+        program = UNKNOWN;
+        framebuffer = UNKNOWN;
+        readFramebuffer = UNKNOWN;
+        vertexArray = UNKNOWN;
+        arrayBuffer = UNKNOWN;
+        uniformBuffer = UNKNOWN;
+        activeTexture = UNKNOWN;
+        viewportX = viewportY = viewportWidth = viewportHeight = UNKNOWN;
+        blend = UNKNOWN;
+
+        for(int i = 0; i < textures.length; ++i)
+            textures[i] = UNKNOWN;
+    }
+
+    public void useProgram(int handle)
+    {
+        if(program != handle)
+        {
+            gl.glUseProgram(handle);
+            program = handle;
+        }
+    }
+
+    /**
+     * Notify the tracker that given program was deleted. Deleting the program in use does not
+     * unbind it, but it must not be relied on to stay bound either.
+     */
+    public void programDeleted(int handle)
+    {
+        if(program == handle)
+            program = UNKNOWN;
+    }
+
+    /**
+     * Bind given framebuffer to GL_FRAMEBUFFER, i.e. both for drawing and reading
+     */
+    public void bindFramebuffer(int handle)
+    {
+        if(framebuffer != handle || readFramebuffer != handle)
+        {
+            gl.glBindFramebuffer(GLES31.GL_FRAMEBUFFER, handle);
+            framebuffer = handle;
+            readFramebuffer = handle;
+        }
+    }
+
+    /**
+     * Bind given framebuffer to GL_READ_FRAMEBUFFER only, as the source of glBlitFramebuffer.
+     * The framebuffer drawn to stays bound.
+     */
+    public void bindReadFramebuffer(int handle)
+    {
+        if(readFramebuffer != handle)
+        {
+            gl.glBindFramebuffer(GLES31.GL_READ_FRAMEBUFFER, handle);
+            readFramebuffer = handle;
+        }
+    }
+
+    /**
+     * The framebuffer currently bound to GL_FRAMEBUFFER. The driver is only asked if the
+     * binding is not known, which does not happen after the first bind.
+     */
+    public int getFramebuffer()
+    {
+        if(framebuffer == UNKNOWN)
+        {
+            gl.glGetIntegerv(GLES31.GL_FRAMEBUFFER_BINDING, query, 0);
+            framebuffer = query[0];
+        }
+
+        return framebuffer;
+    }
+
+    public void bindVertexArray(int handle)
+    {
+        if(vertexArray != handle)
+        {
+            gl.glBindVertexArray(handle);
+            vertexArray = handle;
+        }
+    }
+
+    /**
+     * Bind buffer to given target. Only GL_ARRAY_BUFFER and GL_UNIFORM_BUFFER are shadowed,
+     * binds to other targets are always issued.
+     */
+    public void bindBuffer(int target, int handle)
+    {
+        if(target == GLES31.GL_ARRAY_BUFFER)
+        {
+            if(arrayBuffer == handle)
+                return;
+
+            arrayBuffer = handle;
+        }
+        else if(target == GLES31.GL_UNIFORM_BUFFER)
+        {
+            if(uniformBuffer == handle)
+                return;
+
+            uniformBuffer = handle;
+        }
+
+        gl.glBindBuffer(target, handle);
+    }
+
+    /**
+     * Bind buffer to an indexed binding point. This also changes the generic binding of the
+     * target, which is shadowed accordingly.
+     */
+    public void bindBufferBase(int target, int index, int handle)
+    {
+        gl.glBindBufferBase(target, index, handle);
+
+        if(target == GLES31.GL_UNIFORM_BUFFER)
+            uniformBuffer = handle;
+        else if(target == GLES31.GL_ARRAY_BUFFER)
+            arrayBuffer = handle;
+    }
+
+    /**
+     * Notify the tracker that given buffer was deleted. Deleting a buffer unbinds it from
+     * all targets.
+     */
+    public void bufferDeleted(int handle)
+    {
+        if(arrayBuffer == handle)
+            arrayBuffer = 0;
+
+        if(uniformBuffer == handle)
+            uniformBuffer = 0;
+    }
+
+    /**
+     * Select the active texture unit
+     * @param unit Texture unit as GL_TEXTUREi value
+     */
+    public void activeTexture(int unit)
+    {
+        if(activeTexture != unit)
+        {
+            gl.glActiveTexture(unit);
+            activeTexture = unit;
+        }
+    }
+
+    /**
+     * Bind 2D texture to given texture unit. This also makes the unit active.
+     * @param unit Texture unit as GL_TEXTUREi value
+     * @param handle Texture to bind
+     */
+    public void bindTexture(int unit, int handle)
+    {
+        final int index = unit - GLES31.GL_TEXTURE0;
+        final boolean tracked = index >= 0 && index < textures.length;
+
+        if(tracked && textures[index] == handle)
+            return;
+
+        activeTexture(unit);
+        gl.glBindTexture(GLES31.GL_TEXTURE_2D, handle);
+
+        if(tracked)
+            textures[index] = handle;
+    }
+
+    /**
+     * Notify the tracker that given texture was deleted. Deleting a texture unbinds it from
+     * all texture units.
+     */
+    public void textureDeleted(int handle)
+    {
+        for(int i = 0; i < textures.length; ++i)
+        {
+            if(textures[i] == handle)
+                textures[i] = 0;
+        }
+    }
+
+    public void viewport(int x, int y, int width, int height)
+    {
+        if(viewportX != x || viewportY != y || viewportWidth != width || viewportHeight != height)
+        {
+            gl.glViewport(x, y, width, height);
+            viewportX = x;
+            viewportY = y;
+            viewportWidth = width;
+            viewportHeight = height;
+        }
+    }
+
+    /**
+     * Enable or disable GL_BLEND
+     */
+    public void setBlending(boolean enabled)
+    {
+        final int value = enabled ? 1 : 0;
+
+        if(blend != value)
+        {
+            if(enabled)
+                gl.glEnable(GLES31.GL_BLEND);
+            else
+                gl.glDisable(GLES31.GL_BLEND);
+
+            blend = value;
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package com.constellations.android.livewallpaper;
 
 import android.content.Context;
+import android.graphics.Point;
 import android.opengl.GLSurfaceView;
 import android.opengl.GLSurfaceView.Renderer;
 import android.os.Build;
 import android.service.wallpaper.WallpaperService;
 import android.util.Log;
+import android.view.MotionEvent;
 import android.view.SurfaceHolder;
+import android.view.WindowManager;
 
 import com.constellations.android.util.LoggerConfig;
 
@@ -45,7 +48,20 @@ public abstract class GLWallpaperService extends WallpaperService {
 		private static final String TAG = "GLEngine";
 
 		private WallpaperGLSurfaceView glSurfaceView;
+		private Renderer renderer;
 		private boolean rendererHasBeenSet;		
+		private FramePacer framePacer;
+
+		// The strategy the renderer presents with, and the size the surface is fixed to for
+		// the hardware scaler, or 0 if it is sized by the layout
+		private PresentStrategy presentStrategy = PresentStrategy.QUAD;
+		private int fixedWidth;
+		private int fixedHeight;
+
+		// Touches and offsets are queued for the render thread, normalized by the size of
+		// the display the wallpaper covers
+		private InputRing input;
+		private final Point displaySize = new Point();
 
 		@Override
 		public void onCreate(SurfaceHolder surfaceHolder) {
@@ -55,6 +71,9 @@ public abstract class GLWallpaperService extends WallpaperService {
 
 			super.onCreate(surfaceHolder);
 
+			// The frame pacer needs the configured frame rate before the renderer loads it
+			Configuration.update(GLWallpaperService.this);
+
 			glSurfaceView = new WallpaperGLSurfaceView(GLWallpaperService.this);
 		}
 
@@ -68,13 +87,70 @@ public abstract class GLWallpaperService extends WallpaperService {
 
 			if (rendererHasBeenSet) {
 				if (visible) {
+					// The settings may have changed while the wallpaper was hidden
+					updatePresentStrategy();
+					onRendererResumed(renderer);
 					glSurfaceView.onResume();
+					framePacer.start();
 				} else {					
+					framePacer.stop();
 					glSurfaceView.onPause();														
 				}
 			}
 		}		
 
+		@Override
+		public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+			super.onSurfaceChanged(holder, format, width, height);
+
+			if (framePacer != null) {
+				framePacer.onSurfaceChanged();
+			}
+
+			// The display may have been rotated
+			updateDisplaySize();
+			updatePresentStrategy();
+		}
+
+		@Override
+		public void onTouchEvent(MotionEvent event) {
+			super.onTouchEvent(event);
+
+			if (input == null || displaySize.x <= 0 || displaySize.y <= 0) {
+				return;
+			}
+
+			final int type;
+
+			switch (event.getActionMasked()) {
+			case MotionEvent.ACTION_DOWN:
+				type = InputRing.TOUCH_DOWN;
+				break;
+			case MotionEvent.ACTION_MOVE:
+				type = InputRing.TOUCH_MOVE;
+				break;
+			case MotionEvent.ACTION_UP:
+			case MotionEvent.ACTION_CANCEL:
+				type = InputRing.TOUCH_UP;
+				break;
+			default:
+				return;
+			}
+
+			input.offer(type, event.getX() / displaySize.x, event.getY() / displaySize.y);
+		}
+
+		@Override
+		public void onOffsetsChanged(float xOffset, float yOffset, float xOffsetStep, float yOffsetStep,
+				int xPixelOffset, int yPixelOffset) {
+			super.onOffsetsChanged(xOffset, yOffset, xOffsetStep, yOffsetStep, xPixelOffset, yPixelOffset);
+
+			// Without pages in a direction, the launcher reports an arbitrary offset
+			if (input != null) {
+				input.offer(InputRing.OFFSETS, xOffsetStep > 0.f ? xOffset : .5f, yOffsetStep > 0.f ? yOffset : .5f);
+			}
+		}
+
 		@Override
 		public void onDestroy() {
 			if (LoggerConfig.ON) {
@@ -82,7 +158,18 @@ public abstract class GLWallpaperService extends WallpaperService {
 			}
 
 			super.onDestroy();
+
+			if (framePacer != null) {
+				framePacer.stop();
+			}
+
 			glSurfaceView.onDestroy();
+
+			// The render thread has exited, so the renderer can give up its resources
+			if (renderer != null) {
+				onRendererDestroyed(renderer);
+				renderer = null;
+			}
 		}
 		
 		protected void setRenderer(Renderer renderer) {
@@ -91,9 +178,103 @@ public abstract class GLWallpaperService extends WallpaperService {
 			}
 
 			glSurfaceView.setRenderer(renderer);
+			this.renderer = renderer;
 			rendererHasBeenSet = true;
+
+			// Frames are requested by the frame pacer, driven by vsync, instead of rendering
+			// continuously at the full display refresh rate
+			glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+
+			final WindowManager windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+			framePacer = new FramePacer(glSurfaceView, getSurfaceHolder(),
+					windowManager.getDefaultDisplay().getRefreshRate());
+			framePacer.setTargetFps(RenderPolicy.getCurrent().capFps(Configuration.getCurrent().getTargetFps()));
+			framePacer.setClock(getFrameClock(renderer));
+
+			input = getInputRing(renderer);
+			framePacer.setInput(input);
+
+			// The power policy and the settings change the size of a hardware scaled surface
+			framePacer.setSettingsListener(new Runnable() {
+				@Override
+				public void run() {
+					updatePresentStrategy();
+				}
+			});
+
+			if (input != null) {
+				setTouchEventsEnabled(true);
+			}
+
+			updateDisplaySize();
+			updatePresentStrategy();
+
+			if (isVisible()) {
+				framePacer.start();
+			}
 		}
 		
+		/**
+		 * The strategy the renderer presents frames with
+		 */
+		public PresentStrategy getPresentStrategy() {
+			return presentStrategy;
+		}
+
+		/**
+		 * Choose the present strategy for the current configuration, hand it to the renderer
+		 * and size the surface accordingly
+		 */
+		private void updatePresentStrategy() {
+			if (renderer == null) {
+				return;
+			}
+
+			final Configuration config = Configuration.getCurrent();
+			PresentStrategy strategy = PresentStrategy.choose(config);
+
+			if (!setPresentStrategy(renderer, strategy)) {
+				strategy = PresentStrategy.QUAD;
+			}
+
+			if (strategy != presentStrategy && LoggerConfig.ON) {
+				Log.i(TAG, "Presenting with " + strategy);
+			}
+
+			presentStrategy = strategy;
+
+			final int divisor = (strategy == PresentStrategy.HARDWARE_SCALER)
+					? Math.max(1, Math.round(RenderPolicy.getCurrent().clampDivisor(config.getResolutionDivisor())))
+					: 0;
+
+			if (divisor == 0) {
+				if (fixedWidth != 0) {
+					fixedWidth = 0;
+					fixedHeight = 0;
+					getSurfaceHolder().setSizeFromLayout();
+				}
+
+				return;
+			}
+
+			final int width = Math.max(1, displaySize.x / divisor);
+			final int height = Math.max(1, displaySize.y / divisor);
+
+			if (width != fixedWidth || height != fixedHeight) {
+				fixedWidth = width;
+				fixedHeight = height;
+				getSurfaceHolder().setFixedSize(width, height);
+			}
+		}
+
+		/**
+		 * A wallpaper covers the whole display, independent of the size of its surface
+		 */
+		private void updateDisplaySize() {
+			final WindowManager windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+			windowManager.getDefaultDisplay().getRealSize(displaySize);
+		}
+
 		protected void setPreserveEGLContextOnPause(boolean preserve) {
 			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
 				if (LoggerConfig.ON) {
@@ -111,5 +292,54 @@ public abstract class GLWallpaperService extends WallpaperService {
 
 			glSurfaceView.setEGLContextClientVersion(version);
 		}
+
+		protected void setEGLContextFactory(GLSurfaceView.EGLContextFactory factory) {
+			if (LoggerConfig.ON) {
+				Log.d(TAG, "setEGLContextFactory(" + factory + ")");
+			}
+
+			glSurfaceView.setEGLContextFactory(factory);
+		}
+	}
+
+	/**
+	 * The clock the frame pacer reports the vsyncs of requested frames to, or null if the
+	 * renderer does not use one
+	 */
+	protected VsyncFrameClock getFrameClock(Renderer renderer) {
+		return null;
+	}
+
+	/**
+	 * The queue the engine of given renderer feeds touches and launcher offsets into, or null
+	 * if the renderer does not react to input
+	 */
+	protected InputRing getInputRing(Renderer renderer) {
+		return null;
+	}
+
+	/**
+	 * Hand the present strategy chosen by the engine to given renderer. With
+	 * {@link PresentStrategy#HARDWARE_SCALER}, the engine sizes the surface down by the
+	 * resolution divisor, and the renderer has to render at the surface size.
+	 * @return Whether the renderer supports the strategy. The engine falls back to
+	 * {@link PresentStrategy#QUAD} otherwise.
+	 */
+	protected boolean setPresentStrategy(Renderer renderer, PresentStrategy strategy) {
+		return strategy == PresentStrategy.QUAD;
+	}
+
+	/**
+	 * Called when the engine of given renderer becomes visible again, before its render
+	 * thread is resumed
+	 */
+	protected void onRendererResumed(Renderer renderer) {
+	}
+
+	/**
+	 * Called when the engine of given renderer was destroyed, after its render thread has
+	 * exited
+	 */
+	protected void onRendererDestroyed(Renderer renderer) {
 	}
 }
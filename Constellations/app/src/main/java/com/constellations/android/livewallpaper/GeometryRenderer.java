@@ -0,0 +1,205 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+/**
+ * Alternative scene renderer drawing the constellation segments and the sparkles of all
+ * layers as instanced quads, instead of evaluating every segment and sparkle of the
+ * surrounding cells at every pixel. The cost therefore depends on the number of visible
+ * points rather than on the number of pixels.
+ *
+ * The quads are drawn with additive blending into a single channel accumulation target,
+ * which holds the scene intensity. A compose pass then turns it into the final color. If
+ * the context supports it, the accumulation target uses a half float format, otherwise
+ * bright spots saturate.
+ *
+ * All quads are generated in the vertex shader, so this uses the same empty vertex array
+ * as the other passes, which has to be bound when {@link #render(FrameUniforms, RenderTarget)}
+ * is called.
+ */
+public class GeometryRenderer
+{
+    /**
+     * Number of instances drawn per cell, see geometry_vertex.glsl
+     */
+    private static final int INSTANCES_PER_CELL = 5;
+
+    /**
+     * Number of extra cells drawn around the visible area. Points can move .4 away from the
+     * center of their cell and their sparkles reach up to one unit further.
+     */
+    private static final int CELL_MARGIN = 3;
+
+    private final GLBackend gl;
+    private final GLState state;
+
+    private ShaderProgram geometryProgram;
+    private ShaderProgram composeProgram;
+    private final GeometryUniforms uniforms;
+
+    /**
+     * Number of layers the current programs were built for
+     */
+    private int layers;
+
+    /**
+     * Target the scene intensity is accumulated in
+     */
+    private final RenderTarget accumulation;
+
+    /**
+     * Number of instances to draw this frame, over all layers
+     */
+    private int instanceCount;
+
+    /**
+     * Create the accumulation target
+     * @param state The state tracker of the context to create the renderer in
+     * @param geometryProgram The accumulation program, built from geometry_vertex.glsl and
+     *                        geometry_fragment.glsl
+     * @param composeProgram The compose program, built from shader_vertex.glsl and
+     *                       compose_fragment.glsl
+     * @param layers Number of layers the programs were built for
+     * @param capabilities Capabilities of the context
+     * @param pool The pool the texture of the accumulation target is taken from
+     */
+    public GeometryRenderer(GLState state, ShaderProgram geometryProgram, ShaderProgram composeProgram,
+                            int layers, GLCapabilities capabilities, TexturePool pool)
+    {
+        this.state = state;
+        this.gl = state.getBackend();
+
+        uniforms = new GeometryUniforms(state);
+        setPrograms(geometryProgram, composeProgram, layers);
+
+        accumulation = new RenderTarget(state, pool,
+                TargetFormat.R16F.isRenderable(capabilities) ? TargetFormat.R16F : TargetFormat.RGBA8);
+
+        // This is the only user of blending, so the function can stay in place
+        gl.glBlendFunc(GLES31.GL_ONE, GLES31.GL_ONE);
+    }
+
+    /**
+     * Replace the programs, for example with variants for another quality tier
+     * @param geometryProgram The accumulation program
+     * @param composeProgram The compose program
+     * @param layers Number of layers the programs were built for
+     */
+    public void setPrograms(ShaderProgram geometryProgram, ShaderProgram composeProgram, int layers)
+    {
+        this.geometryProgram = geometryProgram;
+        this.composeProgram = composeProgram;
+        this.layers = Math.min(layers, SceneMath.NUM_LAYERS);
+
+        geometryProgram.bindUniformBlock(FrameUniforms.BLOCK_NAME, FrameUniforms.BINDING);
+        geometryProgram.bindUniformBlock(GeometryUniforms.BLOCK_NAME, GeometryUniforms.BINDING);
+        composeProgram.bindUniformBlock(FrameUniforms.BLOCK_NAME, FrameUniforms.BINDING);
+
+        // The accumulation target is always bound to texture unit 0
+        composeProgram.getUniform("accum_tex").set(0);
+    }
+
+    /**
+     * Resize the accumulation target. This has to match the target the scene is rendered to.
+     */
+    public void resize(Dimensions d)
+    {
+        accumulation.resize(d);
+    }
+
+    /**
+     * Render the scene
+     * @param frame The per-frame values, which have to be uploaded already
+     * @param target The target to render the scene to
+     */
+    public void render(FrameUniforms frame, RenderTarget target)
+    {
+        updateCellRanges(frame);
+        uniforms.upload();
+
+        // === ACCUMULATION PASS
+        accumulation.enable();
+        gl.glClear(GLES31.GL_COLOR_BUFFER_BIT);
+
+        geometryProgram.useProgram();
+        state.setBlending(true);
+
+        gl.glDrawArraysInstanced(GLES31.GL_TRIANGLES, 0, 6, instanceCount);
+
+        state.setBlending(false);
+        accumulation.disable();
+        // ===============
+
+        // === COMPOSE PASS
+        target.enable();
+        target.discard();
+
+        composeProgram.useProgram();
+        accumulation.useTexture(GLES31.GL_TEXTURE0);
+
+        gl.glDrawArraysInstanced(GLES31.GL_TRIANGLES, 0, 6, 1);
+
+        target.disable();
+        // ===============
+    }
+
+    /**
+     * Determine the cells of each layer that can contribute to the visible area. This mirrors
+     * the transformation in mainImage of shader_fragment.glsl for the corners of the screen.
+     */
+    private void updateCellRanges(FrameUniforms frame)
+    {
+        final float width = frame.getWidth();
+        final float height = frame.getHeight();
+        final float time = frame.getTime();
+
+        final float t = time * .1f;
+        final float s = SceneMath.sin(t);
+        final float c = SceneMath.cos(t);
+
+        // M = (iMouse.xy / iResolution.xy - .5) * rot * 2
+        final float mx = frame.getMouseX() / width - .5f;
+        final float my = frame.getMouseY() / height - .5f;
+        final float rotatedMx = (mx * c - my * s) * 2.f;
+        final float rotatedMy = (mx * s + my * c) * 2.f;
+
+        // Corners of the screen in uv coordinates, rotated: uv * rot
+        final float halfWidth = width / height * .5f;
+        final float halfHeight = .5f;
+        final float extentX = Math.abs(halfWidth * c) + Math.abs(halfHeight * s);
+        final float extentY = Math.abs(halfWidth * s) + Math.abs(halfHeight * c);
+
+        int instance = 0;
+
+        for(int layer = 0; layer < layers; ++layer)
+        {
+            final float z = SceneMath.fract(t + (float)layer / layers);
+            final float size = SceneMath.mix(15.f, 1.f, z);
+
+            final float centerX = -rotatedMx * z;
+            final float centerY = -rotatedMy * z;
+
+            final int x0 = (int)Math.floor(centerX - extentX * size) - CELL_MARGIN;
+            final int y0 = (int)Math.floor(centerY - extentY * size) - CELL_MARGIN;
+            final int x1 = (int)Math.floor(centerX + extentX * size) + CELL_MARGIN;
+            final int y1 = (int)Math.floor(centerY + extentY * size) + CELL_MARGIN;
+
+            final int columns = x1 - x0 + 1;
+            final int rows = y1 - y0 + 1;
+
+            uniforms.setCellRange(layer, x0, y0, columns, rows);
+            uniforms.setLayerStart(layer, instance);
+
+            instance += columns * rows * INSTANCES_PER_CELL;
+        }
+
+        // Unused layers start after the last instance, so no instance belongs to them
+        for(int layer = layers; layer < SceneMath.NUM_LAYERS; ++layer)
+        {
+            uniforms.setCellRange(layer, 0, 0, 0, 0);
+            uniforms.setLayerStart(layer, instance);
+        }
+
+        instanceCount = instance;
+    }
+}
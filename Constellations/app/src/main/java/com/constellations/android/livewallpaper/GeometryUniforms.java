@@ -0,0 +1,67 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * The uniform block of the geometry scene renderer. This mirrors the std140 layout of
+ * GeometryBlock in geometry_vertex.glsl:
+ *
+ * <pre>
+ * ivec4 iCellRange[4];     // offset 0, stride 16
+ * ivec4 iLayerStart;       // offset 64
+ * </pre>
+ */
+public class GeometryUniforms extends UniformBuffer
+{
+    /**
+     * Name of the uniform block in the shader source
+     */
+    public static final String BLOCK_NAME = "GeometryBlock";
+
+    /**
+     * The uniform buffer binding point used for this block
+     */
+    public static final int BINDING = 1;
+
+    /**
+     * Size of the block in bytes
+     */
+    public static final int SIZE = 80;
+
+    private static final int OFFSET_CELL_RANGE = 0;
+    private static final int OFFSET_LAYER_START = 64;
+
+    /**
+     * Size of an ivec4 array element in std140 layout
+     */
+    private static final int STRIDE = 16;
+
+    public GeometryUniforms(GLState state)
+    {
+        super(state, SIZE, BINDING);
+    }
+
+    /**
+     * Set the cells of a layer that are drawn
+     * @param layer The layer index
+     * @param x First cell in x direction
+     * @param y First cell in y direction
+     * @param columns Number of cells in x direction
+     * @param rows Number of cells in y direction
+     */
+    public void setCellRange(int layer, int x, int y, int columns, int rows)
+    {
+        final int offset = OFFSET_CELL_RANGE + layer * STRIDE;
+
+        putInt(offset, x);
+        putInt(offset + 4, y);
+        putInt(offset + 8, columns);
+        putInt(offset + 12, rows);
+    }
+
+    /**
+     * Set the index of the first instance belonging to given layer
+     */
+    public void setLayerStart(int layer, int instance)
+    {
+        putInt(OFFSET_LAYER_START + layer * 4, instance);
+    }
+}
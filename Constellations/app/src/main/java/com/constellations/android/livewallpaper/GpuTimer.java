@@ -0,0 +1,161 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+/**
+ * Measures the GPU time of a section of the command stream using GL_EXT_disjoint_timer_query.
+ * Results become available a few frames later, so a small ring of query objects is used and
+ * results are only ever read once the driver reports them as available. This way measuring
+ * never stalls the pipeline.
+ */
+public class GpuTimer
+{
+    /**
+     * GL_TIME_ELAPSED_EXT
+     */
+    private static final int GL_TIME_ELAPSED = 0x88BF;
+
+    /**
+     * GL_GPU_DISJOINT_EXT
+     */
+    private static final int GL_GPU_DISJOINT = 0x8FBB;
+
+    private final GLBackend gl;
+
+    /**
+     * The ring of query objects
+     */
+    private final int[] queries;
+
+    /**
+     * Whether the query in the corresponding slot was issued and not read back yet
+     */
+    private final boolean[] pending;
+
+    /**
+     * The slot the next measurement will use
+     */
+    private int next;
+
+    /**
+     * The slot whose result will be read next
+     */
+    private int oldest;
+
+    /**
+     * Whether the result of the oldest slot is known to be available
+     */
+    private boolean oldestAvailable;
+
+    /**
+     * Whether a measurement is currently running
+     */
+    private boolean running;
+
+    /**
+     * Scratch storage for query results
+     */
+    private final int[] result = new int[1];
+
+    /**
+     * Create new timer
+     * @param gl The GL backend to issue all calls through
+     * @param depth Number of measurements that may be in flight at the same time
+     */
+    public GpuTimer(GLBackend gl, int depth)
+    {
+        this.gl = gl;
+        this.queries = new int[depth];
+        this.pending = new boolean[depth];
+
+        gl.glGenQueries(depth, queries, 0);
+    }
+
+    /**
+     * Start measuring. If all query objects are still in flight, this measurement is skipped.
+     */
+    public void begin()
+    {
+        if(pending[next])
+            return;
+
+        gl.glBeginQuery(GL_TIME_ELAPSED, queries[next]);
+        running = true;
+    }
+
+    /**
+     * Stop measuring
+     */
+    public void end()
+    {
+        if(!running)
+            return;
+
+        gl.glEndQuery(GL_TIME_ELAPSED);
+        running = false;
+
+        pending[next] = true;
+        next = (next + 1) % queries.length;
+    }
+
+    /**
+     * Check whether the oldest measurement is available without consuming it. This allows
+     * timers of consecutive sections to be read back in pairs.
+     */
+    public boolean isResultAvailable()
+    {
+        if(!pending[oldest])
+            return false;
+
+        // Once available, a result stays available, so there is no need to ask twice
+        if(!oldestAvailable)
+        {
+            gl.glGetQueryObjectuiv(queries[oldest], GLES31.GL_QUERY_RESULT_AVAILABLE, result, 0);
+            oldestAvailable = result[0] != 0;
+        }
+
+        return oldestAvailable;
+    }
+
+    /**
+     * Retrieve the oldest measurement, if it is available. Check {@link #checkDisjoint()}
+     * before trusting it.
+     * @return Elapsed GPU time in nanoseconds, or -1 if no result is available (yet)
+     */
+    public long poll()
+    {
+        if(!isResultAvailable())
+            return -1;
+
+        gl.glGetQueryObjectuiv(queries[oldest], GLES31.GL_QUERY_RESULT, result, 0);
+        final long elapsed = result[0] & 0xFFFFFFFFL;
+
+        pending[oldest] = false;
+        oldestAvailable = false;
+        oldest = (oldest + 1) % queries.length;
+
+        return elapsed;
+    }
+
+    /**
+     * Check whether a disjoint event like a frequency change occurred since the last check,
+     * which invalidates all measurements read back since then. Reading the flag also resets it.
+     *
+     * This is the single glGetIntegerv the frame loop is meant to issue. It is a round-trip to
+     * the driver, so call it only after results were actually read back with {@link #poll()},
+     * and only once for all timers read back together, since the flag is global.
+     */
+    public boolean checkDisjoint()
+    {
+        gl.glGetIntegerv(GL_GPU_DISJOINT, result, 0);
+        return result[0] != 0;
+    }
+
+    /**
+     * Delete all query objects
+     */
+    public void release()
+    {
+        gl.glDeleteQueries(queries.length, queries, 0);
+    }
+}
@@ -0,0 +1,157 @@
+package com.constellations.android.livewallpaper;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size lock-free queue handing input events from the main thread to the render thread.
+ * There has to be exactly one producer thread and one consumer thread. Events are stored in
+ * preallocated primitive arrays, so neither side allocates, and the render thread never waits
+ * for the main thread.
+ *
+ * Events describe absolute state, like the current touch position, so the consumer can
+ * coalesce everything that arrived since the previous frame into a single value. If the
+ * queue is full, for example while rendering is paused, the latest event of each type is kept
+ * aside by the producer and offered again with the next event or {@link #flush()}.
+ */
+public class InputRing
+{
+    /**
+     * A finger touched the screen. x and y are its position in [0, 1], y pointing down.
+     */
+    public static final int TOUCH_DOWN = 0;
+
+    /**
+     * The finger moved, with its position like {@link #TOUCH_DOWN}
+     */
+    public static final int TOUCH_MOVE = 1;
+
+    /**
+     * The finger was lifted, with its last position like {@link #TOUCH_DOWN}
+     */
+    public static final int TOUCH_UP = 2;
+
+    /**
+     * The launcher scrolled. x and y are the wallpaper offsets in [0, 1].
+     */
+    public static final int OFFSETS = 3;
+
+    /**
+     * Number of slots. This has to be a power of two.
+     */
+    static final int CAPACITY = 64;
+
+    private static final int MASK = CAPACITY - 1;
+
+    /**
+     * Receives the events drained by {@link #drain(Handler)}
+     */
+    public interface Handler
+    {
+        void onInput(int type, float x, float y);
+    }
+
+    private final int[] types = new int[CAPACITY];
+    private final float[] xs = new float[CAPACITY];
+    private final float[] ys = new float[CAPACITY];
+
+    /**
+     * Number of events ever written, only advanced by the producer. Publishing it with
+     * lazySet orders the slot writes before it.
+     */
+    private final AtomicInteger head = new AtomicInteger();
+
+    /**
+     * Number of events ever read, only advanced by the consumer
+     */
+    private final AtomicInteger tail = new AtomicInteger();
+
+    /**
+     * Events of the producer that did not fit, per type group. Only accessed by the producer.
+     */
+    private boolean touchPending;
+    private int pendingTouchType;
+    private float pendingTouchX, pendingTouchY;
+    private boolean offsetsPending;
+    private float pendingOffsetX, pendingOffsetY;
+
+    /**
+     * Queue an event. Only call this on the producer thread.
+     * @param type {@link #TOUCH_DOWN}, {@link #TOUCH_MOVE}, {@link #TOUCH_UP} or {@link #OFFSETS}
+     * @param x First value of the event
+     * @param y Second value of the event
+     */
+    public void offer(int type, float x, float y)
+    {
+        flush();
+
+        // Older pending events are superseded, so they can be dropped
+        if(type == OFFSETS)
+        {
+            if(!offsetsPending && write(type, x, y))
+                return;
+
+            offsetsPending = true;
+            pendingOffsetX = x;
+            pendingOffsetY = y;
+        }
+        else
+        {
+            if(!touchPending && write(type, x, y))
+                return;
+
+            touchPending = true;
+            pendingTouchType = type;
+            pendingTouchX = x;
+            pendingTouchY = y;
+        }
+    }
+
+    /**
+     * Queue the events that did not fit before, as far as there is room now. Only call this
+     * on the producer thread.
+     */
+    public void flush()
+    {
+        if(touchPending && write(pendingTouchType, pendingTouchX, pendingTouchY))
+            touchPending = false;
+
+        if(offsetsPending && write(OFFSETS, pendingOffsetX, pendingOffsetY))
+            offsetsPending = false;
+    }
+
+    private boolean write(int type, float x, float y)
+    {
+        final int h = head.get();
+
+        if(h - tail.get() == CAPACITY)
+            return false;
+
+        final int slot = h & MASK;
+        types[slot] = type;
+        xs[slot] = x;
+        ys[slot] = y;
+
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * Hand all queued events to given handler, oldest first. Only call this on the consumer
+     * thread.
+     * @return Number of events
+     */
+    public int drain(Handler handler)
+    {
+        final int t = tail.get();
+        final int h = head.get();
+
+        for(int i = t; i != h; ++i)
+        {
+            final int slot = i & MASK;
+            handler.onInput(types[slot], xs[slot], ys[slot]);
+        }
+
+        tail.lazySet(h);
+        return h - t;
+    }
+}
@@ -0,0 +1,94 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * Enumeration of the interleaving patterns the first pass can be rendered with. With
+ * interleaving, only one field (a subset of the texels of the render target) is shaded each
+ * frame. The remaining texels are taken from the previous frame, which works well since the
+ * scene is slow-moving.
+ */
+public enum InterleaveMode
+{
+    /**
+     * Every texel is shaded every frame
+     */
+    OFF("off", 0, 1, 1),
+
+    /**
+     * Every second texel of each row is shaded, alternating between rows and frames
+     */
+    CHECKERBOARD("checkerboard", 1, 2, 1),
+
+    /**
+     * One texel of each 2x2 block is shaded, cycling through the block over four frames
+     */
+    QUARTER("quarter", 2, 2, 2);
+
+    InterleaveMode(String key, int pattern, int divisorX, int divisorY)
+    {
+        this.key = key;
+        this.pattern = pattern;
+        this.divisorX = divisorX;
+        this.divisorY = divisorY;
+    }
+
+    /**
+     * The value used for this mode in the preferences
+     */
+    private final String key;
+
+    /**
+     * The pattern identifier used by the shaders, see iInterleave in shader_fragment.glsl
+     */
+    private final int pattern;
+
+    /**
+     * Factors the field dimensions are smaller than the render target dimensions
+     */
+    private final int divisorX;
+    private final int divisorY;
+
+    public int getPattern()
+    {
+        return pattern;
+    }
+
+    /**
+     * Number of frames it takes until every texel was shaded once
+     */
+    public int getFieldCount()
+    {
+        return divisorX * divisorY;
+    }
+
+    /**
+     * Width of a field for a render target of given width
+     */
+    public int getFieldWidth(int width)
+    {
+        return (width + divisorX - 1) / divisorX;
+    }
+
+    /**
+     * Height of a field for a render target of given height
+     */
+    public int getFieldHeight(int height)
+    {
+        return (height + divisorY - 1) / divisorY;
+    }
+
+    /**
+     * Find the mode with given preference value
+     * @param key Preference value
+     * @return The matching mode, or {@link #OFF} if there is none
+     */
+    public static InterleaveMode fromKey(String key)
+    {
+        for(InterleaveMode mode: values())
+        {
+            if(mode.key.equals(key))
+                return mode;
+        }
+
+        return OFF;
+    }
+}
@@ -0,0 +1,272 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+/**
+ * Alternative first pass keeping every parallax layer in its own channel of a cache target,
+ * instead of evaluating all layers at every pixel each frame. The far layers move in
+ * sub-pixel steps and the fading ones barely contribute, so a slightly stale copy of them is
+ * indistinguishable from the live one.
+ *
+ * Each frame, the scene shader renders only the layers that are due (see
+ * {@link #schedule(FrameUniforms)}) into their channels, using the color mask to keep the
+ * others. A composite pass then warps every cached layer to the current rotation, zoom and
+ * touch offset, applies its current fade, and turns the sum into the final color. The
+ * shading cost therefore scales with the number of layers refreshed per frame, normally
+ * one, instead of the total number of layers.
+ *
+ * If the context supports it, the cache uses a half float format, otherwise bright spots
+ * saturate. The renderer has to bind the inputs of the scene shader before
+ * {@link #render(FrameUniforms, ShaderProgram, RenderTarget)} is called, just like for a
+ * regular first pass.
+ */
+public class LayerCache
+{
+    private final GLBackend gl;
+    private final GLState state;
+
+    private ShaderProgram compositeProgram;
+    private final LayerUniforms uniforms;
+
+    /**
+     * Number of layers the current programs were built for
+     */
+    private int layers;
+
+    /**
+     * Holds the unfaded intensity of layer i in channel i
+     */
+    private final RenderTarget cache;
+
+    /**
+     * Whether each layer holds a picture that can be warped to the current frame
+     */
+    private final boolean[] valid = new boolean[SceneMath.NUM_LAYERS];
+
+    /**
+     * The scene time each layer was rendered at, and its depth, scale, rotation and touch
+     * offset at that time, see mainImage in shader_fragment.glsl
+     */
+    private final float[] cachedTime = new float[SceneMath.NUM_LAYERS];
+    private final float[] cachedZ = new float[SceneMath.NUM_LAYERS];
+    private final float[] cachedSize = new float[SceneMath.NUM_LAYERS];
+    private final float[] cachedAngle = new float[SceneMath.NUM_LAYERS];
+    private final float[] cachedCos = new float[SceneMath.NUM_LAYERS];
+    private final float[] cachedSin = new float[SceneMath.NUM_LAYERS];
+    private final float[] cachedOffsetX = new float[SceneMath.NUM_LAYERS];
+    private final float[] cachedOffsetY = new float[SceneMath.NUM_LAYERS];
+
+    /**
+     * Create the cache target
+     * @param state The state tracker of the context to create the cache in
+     * @param compositeProgram The composite program, built from shader_vertex.glsl and
+     *                         layer_composite_fragment.glsl
+     * @param layers Number of layers the programs were built for
+     * @param capabilities Capabilities of the context
+     * @param pool The pool the texture of the cache target is taken from
+     */
+    public LayerCache(GLState state, ShaderProgram compositeProgram, int layers,
+                      GLCapabilities capabilities, TexturePool pool)
+    {
+        this.state = state;
+        this.gl = state.getBackend();
+
+        uniforms = new LayerUniforms(state);
+        setPrograms(compositeProgram, layers);
+
+        cache = new RenderTarget(state, pool,
+                TargetFormat.RGBA16F.isRenderable(capabilities) ? TargetFormat.RGBA16F : TargetFormat.RGBA8);
+
+        // The layers are warped, so they are sampled between texels
+        cache.setFilter(GLES31.GL_LINEAR);
+    }
+
+    /**
+     * Replace the composite program, for example with a variant for another quality tier.
+     * This drops all cached layers.
+     * @param compositeProgram The composite program
+     * @param layers Number of layers the programs were built for
+     */
+    public void setPrograms(ShaderProgram compositeProgram, int layers)
+    {
+        this.compositeProgram = compositeProgram;
+        this.layers = Math.min(layers, SceneMath.NUM_LAYERS);
+
+        compositeProgram.bindUniformBlock(FrameUniforms.BLOCK_NAME, FrameUniforms.BINDING);
+        compositeProgram.bindUniformBlock(LayerUniforms.BLOCK_NAME, LayerUniforms.BINDING);
+
+        // The cache target is always bound to texture unit 0
+        compositeProgram.getUniform("layer_tex").set(0);
+
+        reset();
+    }
+
+    /**
+     * Resize the cache target. This has to match the target the scene is rendered to.
+     */
+    public void resize(Dimensions d)
+    {
+        cache.resize(d);
+        reset();
+    }
+
+    /**
+     * Drop all cached layers, and let the scene shader render the full image again until
+     * the next call to {@link #render(FrameUniforms, ShaderProgram, RenderTarget)}
+     */
+    public void reset()
+    {
+        for(int layer = 0; layer < SceneMath.NUM_LAYERS; ++layer)
+        {
+            valid[layer] = false;
+            uniforms.setLayerTransform(layer, 1.f, 0.f, 0.f, 1.f, 0.f, 0.f, 0.f);
+        }
+
+        uniforms.setLayerMask(0);
+        uniforms.upload();
+    }
+
+    /**
+     * Render the scene
+     * @param frame The per-frame values, which have to be uploaded already
+     * @param firstPass The scene program, with its inputs bound
+     * @param target The target to render the scene to
+     */
+    public void render(FrameUniforms frame, ShaderProgram firstPass, RenderTarget target)
+    {
+        final int mask = schedule(frame);
+        uniforms.upload();
+
+        // === LAYER PASS
+        if(mask != 0)
+        {
+            cache.enable();
+            gl.glColorMask((mask & 1) != 0, (mask & 2) != 0, (mask & 4) != 0, (mask & 8) != 0);
+
+            firstPass.useProgram();
+            gl.glDrawArraysInstanced(GLES31.GL_TRIANGLES, 0, 6, 1);
+
+            gl.glColorMask(true, true, true, true);
+            cache.disable();
+        }
+        // ===============
+
+        // === COMPOSITE PASS
+        target.enable();
+        target.discard();
+
+        compositeProgram.useProgram();
+        cache.useTexture(GLES31.GL_TEXTURE0);
+
+        gl.glDrawArraysInstanced(GLES31.GL_TRIANGLES, 0, 6, 1);
+
+        target.disable();
+        // ===============
+    }
+
+    /**
+     * Choose the layers to render this frame and update the transformations of all others.
+     * Layers that cannot be warped anymore are always rendered once they are visible. Of the
+     * rest, only the one whose picture is off the most is rendered. That is estimated from
+     * its age, its scale, since points of near layers cover more distance on screen, and its
+     * fade, since faint layers hide their errors.
+     * @return Bit mask of the layers to render
+     */
+    private int schedule(FrameUniforms frame)
+    {
+        final float width = frame.getWidth();
+        final float height = frame.getHeight();
+        final float time = frame.getTime();
+
+        final float t = time * .1f;
+        final float s = SceneMath.sin(t);
+        final float c = SceneMath.cos(t);
+
+        // M = (iMouse.xy / iResolution.xy - .5) * rot * 2
+        final float mx = frame.getMouseX() / width - .5f;
+        final float my = frame.getMouseY() / height - .5f;
+        final float rotatedMx = (mx * c - my * s) * 2.f;
+        final float rotatedMy = (mx * s + my * c) * 2.f;
+
+        int mask = 0;
+        int stalest = -1;
+        float stalestError = 0.f;
+
+        for(int layer = 0; layer < layers; ++layer)
+        {
+            final float z = SceneMath.fract(t + (float)layer / layers);
+            final float size = SceneMath.mix(15.f, 1.f, z);
+            final float fade = SceneMath.smoothstep(0.f, .6f, z) * SceneMath.smoothstep(1.f, .8f, z);
+
+            // Neither a jump of the scene time nor the wrap of the layer from the front to the
+            // back can be warped
+            if(valid[layer] && (time < cachedTime[layer] || z < cachedZ[layer]))
+                valid[layer] = false;
+
+            if(fade <= 0.f)
+                continue;
+
+            if(!valid[layer])
+            {
+                mask |= 1 << layer;
+                continue;
+            }
+
+            final float error = fade * (time - cachedTime[layer]) / size;
+
+            if(error > stalestError)
+            {
+                stalest = layer;
+                stalestError = error;
+            }
+        }
+
+        if(mask == 0 && stalest >= 0)
+            mask = 1 << stalest;
+
+        for(int layer = 0; layer < layers; ++layer)
+        {
+            final float z = SceneMath.fract(t + (float)layer / layers);
+            final float size = SceneMath.mix(15.f, 1.f, z);
+            final float fade = SceneMath.smoothstep(0.f, .6f, z) * SceneMath.smoothstep(1.f, .8f, z);
+            final float offsetX = rotatedMx * z;
+            final float offsetY = rotatedMy * z;
+
+            if((mask & (1 << layer)) != 0)
+            {
+                valid[layer] = true;
+                cachedTime[layer] = time;
+                cachedZ[layer] = z;
+                cachedSize[layer] = size;
+                cachedAngle[layer] = t;
+                cachedCos[layer] = c;
+                cachedSin[layer] = s;
+                cachedOffsetX[layer] = offsetX;
+                cachedOffsetY[layer] = offsetY;
+            }
+
+            if(!valid[layer])
+            {
+                uniforms.setLayerTransform(layer, 1.f, 0.f, 0.f, 1.f, 0.f, 0.f, 0.f);
+                continue;
+            }
+
+            // The layer shows NetLayer(size * rot(t) * uv - offset), so the point now at uv
+            // was cached at uv0 = size / size0 * rot(t - t0) * uv + rot(t0)^T * (offset0 - offset) / size0
+            final float scale = size / cachedSize[layer];
+            final float deltaCos = SceneMath.cos(t - cachedAngle[layer]) * scale;
+            final float deltaSin = SceneMath.sin(t - cachedAngle[layer]) * scale;
+
+            final float dx = (cachedOffsetX[layer] - offsetX) / cachedSize[layer];
+            final float dy = (cachedOffsetY[layer] - offsetY) / cachedSize[layer];
+            final float c0 = cachedCos[layer];
+            final float s0 = cachedSin[layer];
+
+            uniforms.setLayerTransform(layer, deltaCos, -deltaSin, deltaSin, deltaCos,
+                    c0 * dx + s0 * dy, -s0 * dx + c0 * dy, fade);
+        }
+
+        uniforms.setLayerMask(mask);
+        return mask;
+    }
+}
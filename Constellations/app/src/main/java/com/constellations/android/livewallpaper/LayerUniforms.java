@@ -0,0 +1,72 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * The uniform block of the layer cache. This mirrors the std140 layout of LayerBlock in
+ * shader_fragment.glsl and layer_composite_fragment.glsl:
+ *
+ * <pre>
+ * ivec4 iLayerMask;        // offset 0
+ * vec4  iLayerMatrix[4];   // offset 16, stride 16
+ * vec4  iLayerOffset[4];   // offset 80, stride 16
+ * </pre>
+ */
+public class LayerUniforms extends UniformBuffer
+{
+    /**
+     * Name of the uniform block in the shader source
+     */
+    public static final String BLOCK_NAME = "LayerBlock";
+
+    /**
+     * The uniform buffer binding point used for this block
+     */
+    public static final int BINDING = 3;
+
+    /**
+     * Size of the block in bytes
+     */
+    public static final int SIZE = 144;
+
+    private static final int OFFSET_MASK = 0;
+    private static final int OFFSET_MATRIX = 16;
+    private static final int OFFSET_OFFSET = 80;
+
+    /**
+     * Size of a vec4 array element in std140 layout
+     */
+    private static final int STRIDE = 16;
+
+    public LayerUniforms(GLState state)
+    {
+        super(state, SIZE, BINDING);
+    }
+
+    /**
+     * Set the layers the scene shader renders, each into its own channel
+     * @param mask Bit mask of the layers, or 0 to render the full image instead
+     */
+    public void setLayerMask(int mask)
+    {
+        putInt(OFFSET_MASK, mask);
+    }
+
+    /**
+     * Set the transformation from the current uv coordinates of a layer to those at the time
+     * it was cached: cached = matrix * uv + offset
+     * @param layer The layer index
+     * @param m00 Matrix row 0, column 0
+     * @param m01 Matrix row 0, column 1
+     * @param m10 Matrix row 1, column 0
+     * @param m11 Matrix row 1, column 1
+     * @param offsetX Offset in x direction
+     * @param offsetY Offset in y direction
+     * @param weight The fade the cached intensity is multiplied with
+     */
+    public void setLayerTransform(int layer, float m00, float m01, float m10, float m11,
+                                  float offsetX, float offsetY, float weight)
+    {
+        // GLSL matrices are column major
+        putVec4(OFFSET_MATRIX + layer * STRIDE, m00, m10, m01, m11);
+        putVec4(OFFSET_OFFSET + layer * STRIDE, offsetX, offsetY, weight, 0.f);
+    }
+}
@@ -0,0 +1,391 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Inflater;
+
+/**
+ * Plays back a {@link BakedLoop}. Each frame is a blend of the two keyframes surrounding the
+ * current point in the loop, so the scene shader does not run at all.
+ *
+ * Keyframe f is always held by texture f % 2, so advancing to the next keyframe only
+ * requires a single texture upload. Keyframes are decompressed on a background thread one
+ * step ahead of playback. The render thread never waits for it: if a keyframe is not
+ * decompressed in time, the last keyframe stays on screen until it is. Requests are handed
+ * to the decoder thread through a monitor and a single preallocated buffer, so playback does
+ * not allocate.
+ */
+public class LoopPlayer
+{
+    private final GLBackend gl;
+    private final GLState state;
+    private final ShaderProgram program;
+    private final BakedLoop loop;
+
+    /**
+     * The two keyframe textures
+     */
+    private final int[] textures = new int[2];
+
+    /**
+     * The keyframe each texture holds, or -1
+     */
+    private final int[] loaded = { -1, -1 };
+
+    /**
+     * Decompresses keyframes in the background
+     */
+    private final Thread decoder;
+
+    /**
+     * State of the decoder thread
+     */
+    private final Inflater inflater = new Inflater();
+    private byte[] scratch;
+
+    /**
+     * Receives the keyframe being decompressed. Only one keyframe is requested at a time, and
+     * it is uploaded or dropped before the next one is requested.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Guards the fields shared with the decoder thread, and is notified when a keyframe is
+     * requested
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The keyframe the decoder thread has to decompress next, or -1
+     */
+    private int requested = -1;
+
+    /**
+     * Whether the last requested keyframe is decompressed, and whether reading it failed
+     */
+    private boolean decoded;
+    private boolean decodeFailed;
+
+    /**
+     * Whether the decoder thread has to exit
+     */
+    private boolean stopped;
+
+    /**
+     * The keyframe requested from the decoder thread and not uploaded or dropped yet, or -1
+     */
+    private int pendingIndex = -1;
+
+    /**
+     * The keyframe drawn last, on its own or as the first of a blend, or -1
+     */
+    private int shown = -1;
+
+    /**
+     * Whether a keyframe could not be read
+     */
+    private boolean failed;
+
+    /**
+     * Holds the blend factor. The program may be shared with other engines, so per-engine
+     * values cannot be stored in the program itself.
+     */
+    private final PlaybackUniforms uniforms;
+
+    /**
+     * Create textures for playing back given loop
+     * @param state The state tracker of the render context
+     * @param program The playback program, built from quad_vertex.glsl and playback_fragment.glsl
+     * @param loop The loop to play back. It does not have to be complete yet.
+     */
+    public LoopPlayer(GLState state, ShaderProgram program, BakedLoop loop)
+    {
+        this.state = state;
+        this.gl = state.getBackend();
+        this.program = program;
+        this.loop = loop;
+
+        program.getUniform("frame_a").set(0);
+        program.getUniform("frame_b").set(1);
+        program.bindUniformBlock(PlaybackUniforms.BLOCK_NAME, PlaybackUniforms.BINDING);
+
+        uniforms = new PlaybackUniforms(state);
+
+        gl.glGenTextures(2, textures, 0);
+
+        for(int texture: textures)
+        {
+            state.bindTexture(GLES31.GL_TEXTURE0, texture);
+            gl.glTexStorage2D(GLES31.GL_TEXTURE_2D, 1, GLES31.GL_RGB8, loop.getWidth(), loop.getHeight());
+            gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MAG_FILTER, GLES31.GL_LINEAR);
+            gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MIN_FILTER, GLES31.GL_LINEAR);
+            gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_WRAP_S, GLES31.GL_CLAMP_TO_EDGE);
+            gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_WRAP_T, GLES31.GL_CLAMP_TO_EDGE);
+        }
+
+        buffer = ByteBuffer.allocate(loop.getFrameSize());
+
+        decoder = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                decodeRequests();
+            }
+        }, "LoopPlayer");
+
+        decoder.setDaemon(true);
+        decoder.start();
+    }
+
+    public BakedLoop getLoop()
+    {
+        return loop;
+    }
+
+    /**
+     * Upload the keyframe decompressed in the background if it is needed at given point in
+     * time, and start decompressing the next missing one. This never waits for the decoder.
+     * @param time Scene time in seconds, like iTime. It is in [0, SCENE_PERIOD).
+     * @return Whether {@link #draw(float, int, int)} can be called. This is false until the
+     * first keyframe was decompressed.
+     */
+    public boolean prepare(float time)
+    {
+        final int a = keyframe(time);
+        final int b = (a + 1) % BakedLoop.FRAMES;
+        final int next = (b + 1) % BakedLoop.FRAMES;
+
+        // Keyframes are uploaded in the order they are needed in, so the texture of the
+        // keyframe drawn last is only replaced by one that can be drawn instead. A keyframe
+        // decompressed ahead of time is kept until it is needed, as long as nothing else is.
+        if(pendingIndex >= 0 && isDecoded())
+        {
+            if(pendingIndex == a || (pendingIndex == b && isLoaded(a)))
+                upload();
+            else if(pendingIndex != next || !isLoaded(a) || !isLoaded(b))
+                discardPending();
+        }
+
+        if(pendingIndex < 0 && !failed)
+        {
+            if(!isLoaded(a))
+                decode(a);
+            else if(!isLoaded(b))
+                decode(b);
+            else if(!isLoaded(next))
+                decode(next);
+        }
+
+        return failed || isLoaded(a) || isLoaded(shown);
+    }
+
+    /**
+     * Draw the loop at given point in time to the current framebuffer. If the keyframes are
+     * not decompressed yet, the last keyframe is drawn instead. {@link #prepare(float)} has
+     * to be called for the same point in time first.
+     * @param time Scene time in seconds, like iTime. It is in [0, SCENE_PERIOD).
+     * @param width Width of the framebuffer in pixels
+     * @param height Height of the framebuffer in pixels
+     * @return Whether the frame was drawn. If not, a keyframe could not be read and the loop
+     * has to be baked again.
+     */
+    public boolean draw(float time, int width, int height)
+    {
+        if(failed)
+            return false;
+
+        final float position = time * BakedLoop.FRAME_RATE;
+        final int a = keyframe(time);
+        final int b = (a + 1) % BakedLoop.FRAMES;
+
+        final int first, second;
+        final float blend;
+
+        if(isLoaded(a) && isLoaded(b))
+        {
+            first = a;
+            second = b;
+            blend = position - a;
+        }
+        else
+        {
+            first = second = isLoaded(a) ? a : shown;
+            blend = 0.f;
+        }
+
+        shown = first;
+
+        state.viewport(0, 0, width, height);
+
+        uniforms.setBlend(blend);
+        uniforms.upload();
+
+        program.useProgram();
+
+        state.bindTexture(GLES31.GL_TEXTURE0, textures[first % 2]);
+        state.bindTexture(GLES31.GL_TEXTURE1, textures[second % 2]);
+
+        gl.glDrawArraysInstanced(GLES31.GL_TRIANGLES, 0, 6, 1);
+        return true;
+    }
+
+    /**
+     * The keyframe at or before given point in time
+     */
+    private static int keyframe(float time)
+    {
+        return Math.min((int)(time * BakedLoop.FRAME_RATE), BakedLoop.FRAMES - 1);
+    }
+
+    /**
+     * Whether given keyframe is in its texture
+     */
+    private boolean isLoaded(int index)
+    {
+        return index >= 0 && loaded[index % 2] == index;
+    }
+
+    /**
+     * Upload the keyframe decompressed in the background to its texture. The decoder has to
+     * be done with it.
+     */
+    private void upload()
+    {
+        final int index = pendingIndex;
+        pendingIndex = -1;
+
+        synchronized(lock)
+        {
+            if(decodeFailed)
+            {
+                failed = true;
+                return;
+            }
+        }
+
+        final int slot = index % 2;
+
+        state.bindTexture(GLES31.GL_TEXTURE0, textures[slot]);
+        gl.glPixelStorei(GLES31.GL_UNPACK_ALIGNMENT, 1);
+        gl.glTexSubImage2D(GLES31.GL_TEXTURE_2D, 0, 0, 0, loop.getWidth(), loop.getHeight(),
+                GLES31.GL_RGB, GLES31.GL_UNSIGNED_BYTE, buffer);
+        gl.glPixelStorei(GLES31.GL_UNPACK_ALIGNMENT, 4);
+
+        loaded[slot] = index;
+    }
+
+    /**
+     * Drop the keyframe decompressed in the background. The decoder has to be done with it.
+     */
+    private void discardPending()
+    {
+        pendingIndex = -1;
+    }
+
+    /**
+     * Whether the decoder thread is done with the requested keyframe
+     */
+    private boolean isDecoded()
+    {
+        synchronized(lock)
+        {
+            return decoded;
+        }
+    }
+
+    /**
+     * Ask the decoder thread to decompress given keyframe into the buffer
+     */
+    private void decode(int index)
+    {
+        pendingIndex = index;
+
+        synchronized(lock)
+        {
+            requested = index;
+            decoded = false;
+            decodeFailed = false;
+            lock.notify();
+        }
+    }
+
+    /**
+     * Body of the decoder thread: decompress the requested keyframes until stopped
+     */
+    private void decodeRequests()
+    {
+        while(true)
+        {
+            final int index;
+
+            synchronized(lock)
+            {
+                while(requested < 0 && !stopped)
+                {
+                    try
+                    {
+                        lock.wait();
+                    }
+                    catch(InterruptedException ex)
+                    {
+                        stopped = true;
+                    }
+                }
+
+                if(stopped)
+                    break;
+
+                index = requested;
+                requested = -1;
+            }
+
+            boolean failure = false;
+
+            try
+            {
+                scratch = loop.readFrame(index, buffer, inflater, scratch);
+            }
+            catch(IOException ex)
+            {
+                failure = true;
+            }
+
+            synchronized(lock)
+            {
+                decoded = true;
+                decodeFailed = failure;
+            }
+        }
+
+        inflater.end();
+    }
+
+    /**
+     * Stop the decoder thread. Use this instead of {@link #release()} if the context was lost
+     * along with the textures.
+     */
+    public void shutdown()
+    {
+        synchronized(lock)
+        {
+            stopped = true;
+            lock.notify();
+        }
+    }
+
+    /**
+     * Delete the textures and stop the decoder thread
+     */
+    public void release()
+    {
+        shutdown();
+
+        uniforms.release();
+        gl.glDeleteTextures(2, textures, 0);
+        state.textureDeleted(textures[0]);
+        state.textureDeleted(textures[1]);
+    }
+}
@@ -0,0 +1,147 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * Turns the touches and launcher scroll offsets queued in an {@link InputRing} into the
+ * iMouse uniform. All events since the previous frame are coalesced into one value.
+ *
+ * Without input, iMouse stays at the origin like it always was, so the baked loop and the
+ * live scene look the same. Scrolling between launcher pages moves the pointer sideways, and
+ * dragging a finger moves it along with the finger relative to where it went down. Both
+ * apply in the frame right after the event. When the finger is lifted, its share glides
+ * back to rest instead of jumping.
+ *
+ * Everything except {@link #getInput()} has to be called on the render thread.
+ */
+public class ParallaxInput implements InputRing.Handler
+{
+    /**
+     * How far the pointer moves from the first to the last launcher page, as a fraction of
+     * the screen
+     */
+    private static final float PAGE_PARALLAX = .25f;
+
+    /**
+     * How far the pointer moves per finger travel
+     */
+    private static final float DRAG_PARALLAX = .5f;
+
+    /**
+     * Time constant of the glide back after the finger was lifted, in seconds
+     */
+    private static final float RELEASE_TIME = .25f;
+
+    private final InputRing input = new InputRing();
+
+    /**
+     * The launcher offsets
+     */
+    private float offsetX = .5f;
+    private float offsetY = .5f;
+
+    /**
+     * Whether a finger is down, where it went down and where it is, in [0, 1] with y pointing
+     * up like in OpenGL
+     */
+    private boolean touching;
+    private float downX, downY;
+    private float touchX, touchY;
+
+    /**
+     * The pointer displacement of the current or last drag
+     */
+    private float dragX, dragY;
+
+    /**
+     * Time of the previous update in nanoseconds, or 0
+     */
+    private long lastUpdate;
+
+    /**
+     * The queue the main thread feeds events into
+     */
+    public InputRing getInput()
+    {
+        return input;
+    }
+
+    /**
+     * Apply all events that arrived since the previous frame
+     * @param now Current time in nanoseconds, from {@link System#nanoTime()}
+     */
+    public void update(long now)
+    {
+        input.drain(this);
+
+        final float elapsed = lastUpdate != 0 ? (now - lastUpdate) / 1e9f : 0.f;
+        lastUpdate = now;
+
+        if(touching)
+        {
+            dragX = (touchX - downX) * DRAG_PARALLAX;
+            dragY = (touchY - downY) * DRAG_PARALLAX;
+        }
+        else if(dragX != 0.f || dragY != 0.f)
+        {
+            final float decay = (float)Math.exp(-elapsed / RELEASE_TIME);
+            dragX = Math.abs(dragX * decay) < 1e-4f ? 0.f : dragX * decay;
+            dragY = Math.abs(dragY * decay) < 1e-4f ? 0.f : dragY * decay;
+        }
+    }
+
+    @Override
+    public void onInput(int type, float x, float y)
+    {
+        switch(type)
+        {
+            case InputRing.OFFSETS:
+                offsetX = x;
+                offsetY = y;
+                break;
+            case InputRing.TOUCH_DOWN:
+                touching = true;
+                downX = touchX = x;
+                downY = touchY = 1.f - y;
+                break;
+            case InputRing.TOUCH_MOVE:
+                // A move without a down only happens if the down was dropped
+                if(!touching)
+                {
+                    touching = true;
+                    downX = x;
+                    downY = 1.f - y;
+                }
+
+                touchX = x;
+                touchY = 1.f - y;
+                break;
+            case InputRing.TOUCH_UP:
+                if(touching)
+                {
+                    touchX = x;
+                    touchY = 1.f - y;
+                    dragX = (touchX - downX) * DRAG_PARALLAX;
+                    dragY = (touchY - downY) * DRAG_PARALLAX;
+                }
+
+                touching = false;
+                break;
+        }
+    }
+
+    /**
+     * Write the pointer to the iMouse uniform. Like on Shadertoy, zw hold the position the
+     * finger went down at, negated once it was lifted.
+     * @param frame The per-frame values, with the resolution of the current frame
+     */
+    public void apply(FrameUniforms frame)
+    {
+        final float width = frame.getWidth();
+        final float height = frame.getHeight();
+
+        final float x = (offsetX - .5f) * PAGE_PARALLAX + dragX;
+        final float y = (offsetY - .5f) * PAGE_PARALLAX + dragY;
+        final float sign = touching ? 1.f : -1.f;
+
+        frame.setMouse(x * width, y * height, sign * downX * width, sign * downY * height);
+    }
+}
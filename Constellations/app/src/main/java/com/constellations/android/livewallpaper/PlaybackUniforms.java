@@ -0,0 +1,42 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * The uniform block of the loop playback program. This mirrors the std140 layout of
+ * PlaybackBlock in playback_fragment.glsl:
+ *
+ * <pre>
+ * float iBlend;            // offset 0
+ * </pre>
+ */
+public class PlaybackUniforms extends UniformBuffer
+{
+    /**
+     * Name of the uniform block in the shader source
+     */
+    public static final String BLOCK_NAME = "PlaybackBlock";
+
+    /**
+     * The uniform buffer binding point used for this block
+     */
+    public static final int BINDING = 2;
+
+    /**
+     * Size of the block in bytes
+     */
+    public static final int SIZE = 16;
+
+    private static final int OFFSET_BLEND = 0;
+
+    public PlaybackUniforms(GLState state)
+    {
+        super(state, SIZE, BINDING);
+    }
+
+    /**
+     * Set the position between the two keyframes, from 0 to 1
+     */
+    public void setBlend(float blend)
+    {
+        putFloat(OFFSET_BLEND, blend);
+    }
+}
@@ -0,0 +1,114 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+/**
+ * Compute pass precomputing the animated point of every grid cell of every layer once per
+ * frame. Without it, the scene shader evaluates the cell hash and the sine and cosine of
+ * each of the nine points surrounding a pixel for all layers, at every single pixel, even
+ * though neighbouring pixels share the same points.
+ *
+ * The results are stored in an RGBA32F texture with one texel per cell: the offset of the
+ * point inside its cell and its sparkle pulse. Cells are centered around the origin of the
+ * scene, with {@link #CELL_GRID} cells in each direction per layer and the layers stacked
+ * vertically. The scene shader computes points outside of that grid itself.
+ */
+public class PointPositionPass
+{
+    /**
+     * Number of cells per layer in each direction. This has to match CELL_GRID in the shaders.
+     */
+    public static final int CELL_GRID = 48;
+
+    /**
+     * Number of layers the scene is made of
+     */
+    public static final int LAYERS = SceneMath.NUM_LAYERS;
+
+    /**
+     * Work group size of the compute shader in each direction
+     */
+    private static final int LOCAL_SIZE = 8;
+
+    /**
+     * The image unit the cell texture is bound to while the compute shader writes it
+     */
+    private static final int IMAGE_UNIT = 0;
+
+    private final GLBackend gl;
+    private final GLState state;
+    private ShaderProgram program;
+
+    /**
+     * Number of layers the current program computes
+     */
+    private int layers;
+
+    /**
+     * The native OpenGL handle of the cell texture
+     */
+    private final int texture;
+
+    /**
+     * Create the cell texture
+     * @param state The state tracker of the context to create the pass in
+     * @param program The compute program, built from position_compute.glsl
+     * @param layers Number of layers the program was built for, at most {@link #LAYERS}
+     */
+    public PointPositionPass(GLState state, ShaderProgram program, int layers)
+    {
+        this.state = state;
+        this.gl = state.getBackend();
+
+        setProgram(program, layers);
+
+        int[] ids = new int[1];
+        gl.glGenTextures(1, ids, 0);
+        texture = ids[0];
+
+        // Image load/store requires immutable storage
+        state.bindTexture(GLES31.GL_TEXTURE0, texture);
+        gl.glTexStorage2D(GLES31.GL_TEXTURE_2D, 1, GLES31.GL_RGBA32F, CELL_GRID, CELL_GRID * LAYERS);
+        gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MAG_FILTER, GLES31.GL_NEAREST);
+        gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MIN_FILTER, GLES31.GL_NEAREST);
+
+        // Nothing else uses image units, so the binding can stay in place for all frames
+        gl.glBindImageTexture(IMAGE_UNIT, texture, 0, false, 0, GLES31.GL_WRITE_ONLY, GLES31.GL_RGBA32F);
+    }
+
+    /**
+     * Replace the compute program, for example with a variant for another quality tier
+     * @param program The compute program, built from position_compute.glsl
+     * @param layers Number of layers the program was built for, at most {@link #LAYERS}
+     */
+    public void setProgram(ShaderProgram program, int layers)
+    {
+        this.program = program;
+        this.layers = Math.min(layers, LAYERS);
+
+        program.bindUniformBlock(FrameUniforms.BLOCK_NAME, FrameUniforms.BINDING);
+    }
+
+    /**
+     * Update the cells for the current frame. This uses the time from the frame uniform block,
+     * which has to be uploaded already.
+     */
+    public void dispatch()
+    {
+        program.useProgram();
+
+        gl.glDispatchCompute(CELL_GRID / LOCAL_SIZE, CELL_GRID * layers / LOCAL_SIZE, 1);
+
+        // The scene shader reads the results with texelFetch
+        gl.glMemoryBarrier(GLES31.GL_TEXTURE_FETCH_BARRIER_BIT);
+    }
+
+    /**
+     * Bind the cell texture to given texture unit
+     * @param texUnit Texture unit to bind the cell texture to
+     */
+    public void useTexture(int texUnit)
+    {
+        state.bindTexture(texUnit, texture);
+    }
+}
@@ -0,0 +1,331 @@
+package com.constellations.android.livewallpaper;
+
+import java.nio.FloatBuffer;
+
+/**
+ * CPU counterpart of {@link PointPositionPass}: animates the point of every grid cell of every
+ * layer with the same motion as GetPos in shader_fragment.glsl, and indexes the points in a
+ * uniform grid so that neighbours within any radius can be found without looking at every
+ * point. The shader only ever connects the points of the 3x3 cells around a pixel, a
+ * simulation on the CPU can apply other rules.
+ *
+ * All state is kept in flat primitive arrays with one entry per point, so stepping and
+ * querying never allocate. Point i belongs to layer i / (CELL_GRID * CELL_GRID), and its
+ * index inside the layer is laid out like the texels of the cell texture. Positions are in
+ * the cell coordinates of their layer, with the cell grid centered around the origin.
+ *
+ * This class does not touch OpenGL, see {@link PointStream} for uploading the points.
+ */
+public class PointSimulation
+{
+    /**
+     * Number of cells per layer in each direction
+     */
+    public static final int CELL_GRID = PointPositionPass.CELL_GRID;
+
+    /**
+     * Number of points per layer
+     */
+    public static final int POINTS_PER_LAYER = CELL_GRID * CELL_GRID;
+
+    /**
+     * Maximum number of layers
+     */
+    public static final int LAYERS = PointPositionPass.LAYERS;
+
+    /**
+     * Points never leave this distance from the center of their cell
+     */
+    private static final float MAX_OFFSET = .4f;
+
+    /**
+     * Number of layers simulated
+     */
+    private int layers;
+
+    /**
+     * Center of the cell of each point, and the hash values GetPos derives from the cell id.
+     * These only change with the number of layers.
+     */
+    private final float[] centerX = new float[POINTS_PER_LAYER * LAYERS];
+    private final float[] centerY = new float[POINTS_PER_LAYER * LAYERS];
+    private final float[] phase = new float[POINTS_PER_LAYER * LAYERS];
+    private final float[] frequencyX = new float[POINTS_PER_LAYER * LAYERS];
+    private final float[] frequencyY = new float[POINTS_PER_LAYER * LAYERS];
+
+    /**
+     * Offset of each point from the center of its cell, and its sparkle pulse
+     */
+    private final float[] offsetX = new float[POINTS_PER_LAYER * LAYERS];
+    private final float[] offsetY = new float[POINTS_PER_LAYER * LAYERS];
+    private final float[] pulse = new float[POINTS_PER_LAYER * LAYERS];
+
+    /**
+     * Edge length of a grid bucket in cells, and number of buckets per layer in each direction
+     */
+    private float bucketSize;
+    private int buckets;
+
+    /**
+     * The grid index: the points of bucket b are bucketPoints[bucketStart[b]] up to
+     * bucketPoints[bucketStart[b + 1] - 1]. Buckets are numbered per layer, row by row.
+     */
+    private int[] bucketStart;
+    private int[] bucketFill;
+    private final int[] bucketPoints = new int[POINTS_PER_LAYER * LAYERS];
+
+    /**
+     * Create a simulation
+     * @param layers Number of layers, at most {@link #LAYERS}
+     * @param bucketSize Edge length of a grid bucket in cells. Queries are fastest if this is
+     *                   close to the radius that is usually queried.
+     */
+    public PointSimulation(int layers, float bucketSize)
+    {
+        setLayers(layers);
+        setBucketSize(bucketSize);
+    }
+
+    /**
+     * Change the number of layers. The cell ids GetPos hashes depend on it, just like in the
+     * shader variants of the quality tiers.
+     * @param layers Number of layers, at most {@link #LAYERS}
+     */
+    public void setLayers(int layers)
+    {
+        this.layers = Math.min(layers, LAYERS);
+
+        for(int layer = 0; layer < this.layers; ++layer)
+        {
+            // Same as the cell id position_compute.glsl hashes
+            final float layerOffset = (float)layer / this.layers;
+
+            for(int y = 0; y < CELL_GRID; ++y)
+            {
+                for(int x = 0; x < CELL_GRID; ++x)
+                {
+                    final int i = layer * POINTS_PER_LAYER + y * CELL_GRID + x;
+                    final float cellX = x - CELL_GRID / 2;
+                    final float cellY = y - CELL_GRID / 2;
+
+                    final float n = SceneMath.n21(cellX + layerOffset, cellY + layerOffset);
+
+                    centerX[i] = cellX + .5f;
+                    centerY[i] = cellY + .5f;
+                    phase[i] = n;
+                    frequencyX[i] = SceneMath.fract(n * 10.f);
+                    frequencyY[i] = SceneMath.fract(n * 100.f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Change the edge length of the grid buckets. This allocates the index, so it should not
+     * be called for every frame.
+     * @param bucketSize Edge length of a grid bucket in cells
+     */
+    public void setBucketSize(float bucketSize)
+    {
+        if(bucketSize <= 0.f)
+            throw new IllegalArgumentException("Bucket size must be positive: " + bucketSize);
+
+        this.bucketSize = bucketSize;
+        buckets = Math.max(1, (int)Math.ceil(CELL_GRID / bucketSize));
+
+        bucketStart = new int[buckets * buckets * LAYERS + 1];
+        bucketFill = new int[buckets * buckets * LAYERS];
+    }
+
+    /**
+     * Number of layers simulated
+     */
+    public int getLayers()
+    {
+        return layers;
+    }
+
+    /**
+     * Number of points simulated
+     */
+    public int getPointCount()
+    {
+        return layers * POINTS_PER_LAYER;
+    }
+
+    /**
+     * Position of point i in the cell coordinates of its layer
+     */
+    public float getX(int i)
+    {
+        return centerX[i] + offsetX[i];
+    }
+
+    /**
+     * Position of point i in the cell coordinates of its layer
+     */
+    public float getY(int i)
+    {
+        return centerY[i] + offsetY[i];
+    }
+
+    /**
+     * Sparkle pulse of point i
+     */
+    public float getPulse(int i)
+    {
+        return pulse[i];
+    }
+
+    /**
+     * Move all points to their positions at given time and rebuild the grid index
+     * @param time The scene time in seconds, iTime
+     */
+    public void step(float time)
+    {
+        final int count = getPointCount();
+
+        for(int i = 0; i < count; ++i)
+        {
+            // GetPos: vec2(sin(a*n1), cos(a*n2))*.4 with a = t+n
+            final float a = time + phase[i];
+            final float x = (float)Math.sin(a * frequencyX[i]) * MAX_OFFSET;
+            final float y = (float)Math.cos(a * frequencyY[i]) * MAX_OFFSET;
+
+            offsetX[i] = x;
+            offsetY[i] = y;
+
+            // Pulse: pow(sin((fract(p.x)+fract(p.y)+t)*5.)*.4+.6, 20.), by squaring
+            final float base = (float)Math.sin((SceneMath.fract(x) + SceneMath.fract(y) + time) * 5.f) * .4f + .6f;
+            final float p2 = base * base;
+            final float p5 = p2 * p2 * base;
+            final float p10 = p5 * p5;
+            pulse[i] = p10 * p10;
+        }
+
+        buildIndex();
+    }
+
+    /**
+     * Sort the points into their buckets with a counting sort
+     */
+    private void buildIndex()
+    {
+        final int count = getPointCount();
+        final int bucketCount = buckets * buckets * layers;
+
+        for(int b = 0; b < bucketCount; ++b)
+            bucketFill[b] = 0;
+
+        for(int i = 0; i < count; ++i)
+            ++bucketFill[bucketOf(i)];
+
+        int start = 0;
+
+        for(int b = 0; b < bucketCount; ++b)
+        {
+            bucketStart[b] = start;
+            start += bucketFill[b];
+            bucketFill[b] = bucketStart[b];
+        }
+
+        bucketStart[bucketCount] = start;
+
+        for(int i = 0; i < count; ++i)
+            bucketPoints[bucketFill[bucketOf(i)]++] = i;
+    }
+
+    private int bucketOf(int i)
+    {
+        final int layer = i / POINTS_PER_LAYER;
+        return (layer * buckets + bucketCoordinate(getY(i))) * buckets + bucketCoordinate(getX(i));
+    }
+
+    private int bucketCoordinate(float position)
+    {
+        final int b = (int)Math.floor((position + CELL_GRID / 2) / bucketSize);
+        return b < 0 ? 0 : (b < buckets ? b : buckets - 1);
+    }
+
+    /**
+     * Find the points of a layer within given distance of a position. Distances are compared
+     * squared, so no square root is taken.
+     * @param layer The layer to search
+     * @param x Position in the cell coordinates of the layer
+     * @param y Position in the cell coordinates of the layer
+     * @param radius Maximum distance
+     * @param exclude Index of a point to leave out, or -1
+     * @param out Receives the indices of the points found, in no particular order. The search
+     *            stops once it is full.
+     * @return Number of points written to out
+     */
+    public int query(int layer, float x, float y, float radius, int exclude, int[] out)
+    {
+        final float radiusSquared = radius * radius;
+
+        final int minX = bucketCoordinate(x - radius);
+        final int maxX = bucketCoordinate(x + radius);
+        final int minY = bucketCoordinate(y - radius);
+        final int maxY = bucketCoordinate(y + radius);
+
+        int found = 0;
+
+        for(int by = minY; by <= maxY; ++by)
+        {
+            for(int bx = minX; bx <= maxX; ++bx)
+            {
+                final int b = (layer * buckets + by) * buckets + bx;
+
+                for(int k = bucketStart[b]; k < bucketStart[b + 1]; ++k)
+                {
+                    final int i = bucketPoints[k];
+
+                    if(i == exclude)
+                        continue;
+
+                    final float dx = getX(i) - x;
+                    final float dy = getY(i) - y;
+
+                    if(dx * dx + dy * dy > radiusSquared)
+                        continue;
+
+                    if(found == out.length)
+                        return found;
+
+                    out[found++] = i;
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Find the points of the same layer within given distance of point i, without point i
+     * itself. See {@link #query(int, float, float, float, int, int[])}.
+     */
+    public int neighbours(int i, float radius, int[] out)
+    {
+        return query(i / POINTS_PER_LAYER, getX(i), getY(i), radius, i, out);
+    }
+
+    /**
+     * Write the points in the layout of the cell texture: one RGBA texel per point, holding
+     * its offset from the center of its cell and its sparkle pulse
+     * @param out Receives 4 floats per point, starting at its position. The position is not
+     *            changed.
+     */
+    public void write(FloatBuffer out)
+    {
+        final int count = getPointCount();
+        int index = out.position();
+
+        for(int i = 0; i < count; ++i)
+        {
+            out.put(index++, offsetX[i]);
+            out.put(index++, offsetY[i]);
+            out.put(index++, pulse[i]);
+            out.put(index++, 0.f);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Uploads the points of a {@link PointSimulation} into a cell texture with the same layout
+ * as the one of {@link PointPositionPass}, so the scene shader can read them instead.
+ *
+ * The texture is updated from a pixel unpack buffer split into {@link #SEGMENTS} segments
+ * that are used in turn. Each segment is guarded by a fence, so new points are never written
+ * into a segment the GPU may still be copying from, and the CPU normally never waits: by the
+ * time a segment comes around again, the frames that used it have long finished.
+ *
+ * The points are staged in a single preallocated direct buffer, so uploading does not
+ * allocate.
+ */
+public class PointStream
+{
+    /**
+     * Number of segments of the unpack buffer
+     */
+    private static final int SEGMENTS = 3;
+
+    /**
+     * Longest time to wait for the GPU to release a segment, in nanoseconds. If that is not
+     * enough, the driver synchronizes the upload itself.
+     */
+    private static final long WAIT_TIMEOUT = 1000000L;
+
+    /**
+     * Size of the points of all layers in bytes, 4 floats per point
+     */
+    private static final int SEGMENT_SIZE = PointSimulation.POINTS_PER_LAYER * PointSimulation.LAYERS * 16;
+
+    private final GLBackend gl;
+    private final GLState state;
+
+    /**
+     * The native OpenGL handles of the cell texture and the unpack buffer
+     */
+    private final int texture;
+    private final int buffer;
+
+    /**
+     * Fence of the last upload from each segment, or 0
+     */
+    private final long[] fences = new long[SEGMENTS];
+
+    /**
+     * The segment the next upload uses
+     */
+    private int segment;
+
+    /**
+     * The points of the next upload
+     */
+    private final ByteBuffer staging;
+    private final FloatBuffer stagingFloats;
+
+    /**
+     * Create the cell texture and the unpack buffer
+     * @param state The state tracker of the context to create the stream in
+     */
+    public PointStream(GLState state)
+    {
+        this.state = state;
+        this.gl = state.getBackend();
+
+        staging = ByteBuffer.allocateDirect(SEGMENT_SIZE).order(ByteOrder.nativeOrder());
+        stagingFloats = staging.asFloatBuffer();
+
+        int[] ids = new int[1];
+        gl.glGenTextures(1, ids, 0);
+        texture = ids[0];
+
+        state.bindTexture(GLES31.GL_TEXTURE0, texture);
+        gl.glTexStorage2D(GLES31.GL_TEXTURE_2D, 1, GLES31.GL_RGBA32F,
+                PointSimulation.CELL_GRID, PointSimulation.CELL_GRID * PointSimulation.LAYERS);
+        gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MAG_FILTER, GLES31.GL_NEAREST);
+        gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MIN_FILTER, GLES31.GL_NEAREST);
+
+        gl.glGenBuffers(1, ids, 0);
+        buffer = ids[0];
+
+        state.bindBuffer(GLES31.GL_PIXEL_UNPACK_BUFFER, buffer);
+        gl.glBufferData(GLES31.GL_PIXEL_UNPACK_BUFFER, SEGMENT_SIZE * SEGMENTS, null, GLES31.GL_STREAM_DRAW);
+        state.bindBuffer(GLES31.GL_PIXEL_UNPACK_BUFFER, 0);
+    }
+
+    /**
+     * Upload the current points of given simulation to the cell texture
+     * @param simulation The simulation, stepped to the current frame
+     */
+    public void upload(PointSimulation simulation)
+    {
+        final int rows = PointSimulation.CELL_GRID * simulation.getLayers();
+        final int size = simulation.getPointCount() * 16;
+        final int offset = segment * SEGMENT_SIZE;
+
+        simulation.write(stagingFloats);
+
+        if(fences[segment] != 0)
+        {
+            gl.glClientWaitSync(fences[segment], GLES31.GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_TIMEOUT);
+            gl.glDeleteSync(fences[segment]);
+            fences[segment] = 0;
+        }
+
+        state.bindBuffer(GLES31.GL_PIXEL_UNPACK_BUFFER, buffer);
+        gl.glBufferSubData(GLES31.GL_PIXEL_UNPACK_BUFFER, offset, size, staging);
+
+        // With an unpack buffer bound, the last argument is an offset into it
+        state.bindTexture(GLES31.GL_TEXTURE0, texture);
+        gl.glTexSubImage2D(GLES31.GL_TEXTURE_2D, 0, 0, 0, PointSimulation.CELL_GRID, rows,
+                GLES31.GL_RGBA, GLES31.GL_FLOAT, offset);
+
+        // Other uploads pass client memory, which they cannot while this is bound
+        state.bindBuffer(GLES31.GL_PIXEL_UNPACK_BUFFER, 0);
+
+        fences[segment] = gl.glFenceSync(GLES31.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        segment = (segment + 1) % SEGMENTS;
+    }
+
+    /**
+     * Bind the cell texture to given texture unit
+     * @param texUnit Texture unit to bind the cell texture to
+     */
+    public void useTexture(int texUnit)
+    {
+        state.bindTexture(texUnit, texture);
+    }
+}
@@ -0,0 +1,104 @@
+package com.constellations.android.livewallpaper;
+
+import com.constellations.android.util.Logger;
+import com.constellations.android.util.LoggerConfig;
+
+/**
+ * Maps the device state to a {@link RenderPolicy}: when the device gets hot, the system
+ * battery saver is on or the battery runs low, the frame rate is capped, the resolution and
+ * the quality tier are lowered, and at critical temperatures the animation is paused. The
+ * decided policy is published through {@link RenderPolicy#publish(RenderPolicy)}, where the
+ * frame pacer and the renderer pick it up without recreating the surface.
+ *
+ * The state comes from a {@link DeviceStateSource}, so the governor can be driven by a fake
+ * source as well as by {@link SystemDeviceStateSource}.
+ */
+public class PowerGovernor implements DeviceStateSource.Listener
+{
+    private static final String TAG = "PowerGovernor";
+
+    /**
+     * Battery level below which the battery counts as low, if not charging
+     */
+    private static final float LOW_BATTERY = .15f;
+
+    /**
+     * The policies of all levels, from no limits to paused
+     */
+    private static final RenderPolicy[] POLICIES = {
+            RenderPolicy.NORMAL,
+            new RenderPolicy(30, 1.f, QualityTier.HIGH, false),
+            new RenderPolicy(20, 2.f, QualityTier.MEDIUM, false),
+            new RenderPolicy(15, 4.f, QualityTier.LOW, false),
+            new RenderPolicy(0, 4.f, QualityTier.LOW, true)
+    };
+
+    private final DeviceStateSource source;
+
+    public PowerGovernor(DeviceStateSource source)
+    {
+        this.source = source;
+    }
+
+    /**
+     * Start following the device state
+     */
+    public void start()
+    {
+        source.start(this);
+    }
+
+    /**
+     * Stop following the device state and lift all limits
+     */
+    public void stop()
+    {
+        source.stop();
+        RenderPolicy.publish(RenderPolicy.NORMAL);
+    }
+
+    @Override
+    public void onDeviceStateChanged(DeviceState state)
+    {
+        final RenderPolicy policy = policyFor(state);
+
+        if(LoggerConfig.ON && !policy.hasSameLimits(RenderPolicy.getCurrent()))
+        {
+            Logger.d(TAG, state + " -> " + policy);
+        }
+
+        RenderPolicy.publish(policy);
+    }
+
+    /**
+     * Decide the policy for given device state. The most restrictive condition wins.
+     */
+    public static RenderPolicy policyFor(DeviceState state)
+    {
+        int level = 0;
+
+        if(state.getBatteryLevel() >= 0.f && state.getBatteryLevel() < LOW_BATTERY && !state.isCharging())
+            level = Math.max(level, 1);
+
+        if(state.isPowerSave())
+            level = Math.max(level, 2);
+
+        switch(Math.min(state.getThermalStatus(), DeviceState.THERMAL_CRITICAL))
+        {
+            case DeviceState.THERMAL_LIGHT:
+                level = Math.max(level, 1);
+                break;
+            case DeviceState.THERMAL_MODERATE:
+                level = Math.max(level, 2);
+                break;
+            case DeviceState.THERMAL_SEVERE:
+                level = Math.max(level, 3);
+                break;
+            case DeviceState.THERMAL_CRITICAL:
+                level = Math.max(level, 4);
+                break;
+        }
+
+        return POLICIES[level];
+    }
+}
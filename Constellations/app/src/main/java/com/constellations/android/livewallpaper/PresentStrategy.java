@@ -0,0 +1,88 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * Enumeration of the ways the low resolution scene can get to the screen. The engine chooses
+ * one with {@link #choose(Configuration)} and hands it to the renderer.
+ */
+public enum PresentStrategy
+{
+    /**
+     * Choose automatically. This is only a preference value and never active.
+     */
+    AUTO("auto"),
+
+    /**
+     * A full screen quad samples the render target with the {@link UpscaleFilter}. Supports all
+     * filters and formats, but shades every screen pixel.
+     */
+    QUAD("quad"),
+
+    /**
+     * glBlitFramebuffer copies the render target to the screen with nearest or bilinear
+     * filtering, without switching programs. Not possible with floating point targets or the
+     * edge-adaptive filter.
+     */
+    BLIT("blit"),
+
+    /**
+     * The surface is sized down with SurfaceHolder.setFixedSize, and the scene is rendered
+     * straight into it. The display compositor upscales it with its hardware scaler, so there
+     * is no full resolution pass at all. The resolution divisor is then fixed by the surface
+     * size, so adaptive resolution does not apply, and the compositor decides the filter.
+     */
+    HARDWARE_SCALER("scaler");
+
+    PresentStrategy(String key)
+    {
+        this.key = key;
+    }
+
+    /**
+     * The value used for this strategy in the preferences
+     */
+    private final String key;
+
+    /**
+     * Choose the strategy to use for given configuration
+     * @param config The configuration
+     * @return The preferred strategy if it supports the configuration, otherwise the best one
+     * that does. This is never {@link #AUTO}.
+     */
+    public static PresentStrategy choose(Configuration config)
+    {
+        final boolean edge = config.getUpscaleFilter().usesEdgeProgram();
+        final boolean canBlit = !edge && !config.getTargetFormat().isFloat();
+
+        switch(config.getPresentStrategy())
+        {
+            case QUAD:
+                return QUAD;
+            case BLIT:
+                return canBlit ? BLIT : QUAD;
+            case HARDWARE_SCALER:
+                return edge ? QUAD : HARDWARE_SCALER;
+            default:
+                // Only give up adaptive resolution if it is disabled anyway
+                if(!edge && !config.isAdaptiveResolution())
+                    return HARDWARE_SCALER;
+
+                return canBlit ? BLIT : QUAD;
+        }
+    }
+
+    /**
+     * Find the strategy with given preference value
+     * @param key Preference value
+     * @return The matching strategy, or {@link #AUTO} if there is none
+     */
+    public static PresentStrategy fromKey(String key)
+    {
+        for(PresentStrategy strategy: values())
+        {
+            if(strategy.key.equals(key))
+                return strategy;
+        }
+
+        return AUTO;
+    }
+}
@@ -0,0 +1,15 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * Draws the rendered scene to the screen, see {@link PresentStrategy}
+ */
+public interface Presenter
+{
+    /**
+     * Draw given render target to the default framebuffer, which has to be bound already
+     * @param source The render target holding the scene
+     * @param width Width of the default framebuffer in pixels
+     * @param height Height of the default framebuffer in pixels
+     */
+    void present(RenderTarget source, int width, int height);
+}
@@ -0,0 +1,205 @@
+package com.constellations.android.livewallpaper;
+
+import com.constellations.android.util.Logger;
+import com.constellations.android.util.LoggerConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Persistent cache of linked program binaries, stored as one file per program in a
+ * directory. Entries are keyed by a hash of the shader sources and the GL_RENDERER and
+ * GL_VERSION strings, so a changed shader or a driver update never picks up a stale binary.
+ *
+ * The cache is best effort: all I/O errors are logged and treated as a cache miss.
+ */
+public class ProgramBinaryCache
+{
+    private static final String TAG = "ProgramBinaryCache";
+
+    /**
+     * Marker at the start of every cache file, also acting as file format version
+     */
+    private static final int MAGIC = 0x434E5031;
+
+    /**
+     * Upper bound for the size of a program binary. Anything larger is considered corrupt.
+     */
+    private static final int MAX_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * A program binary as returned by glGetProgramBinary
+     */
+    public static class Entry
+    {
+        private final int format;
+        private final byte[] data;
+
+        public Entry(int format, byte[] data)
+        {
+            this.format = format;
+            this.data = data;
+        }
+
+        /**
+         * The driver specific binary format
+         */
+        public int getFormat()
+        {
+            return format;
+        }
+
+        public byte[] getData()
+        {
+            return data;
+        }
+    }
+
+    private final File directory;
+
+    /**
+     * Identifies the driver the binaries were created by
+     */
+    private final String driver;
+
+    /**
+     * Create new cache
+     * @param directory Directory the cache files are stored in. It is created if necessary.
+     * @param capabilities Capabilities of the context the programs are used in
+     */
+    public ProgramBinaryCache(File directory, GLCapabilities capabilities)
+    {
+        this.directory = directory;
+        this.driver = capabilities.getRenderer() + "\n" + capabilities.getVersion();
+    }
+
+    /**
+     * Compute the cache key of a program
+     * @param types The types of the shaders making up the program
+     * @param sources The sources of these shaders
+     * @return The key, or null if no hash function is available
+     */
+    public String key(ShaderType[] types, String[] sources)
+    {
+        try
+        {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(driver.getBytes(StandardCharsets.UTF_8));
+
+            for(int i = 0; i < sources.length; ++i)
+            {
+                digest.update((byte)0);
+                digest.update(types[i].name().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte)0);
+                digest.update(sources[i].getBytes(StandardCharsets.UTF_8));
+            }
+
+            final StringBuilder key = new StringBuilder();
+            for(byte b: digest.digest())
+                key.append(String.format("%02x", b));
+
+            return key.toString();
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Retrieve the binary stored under given key
+     * @return The binary, or null if there is no valid entry
+     */
+    public Entry load(String key)
+    {
+        final File file = fileOf(key);
+
+        if(!file.isFile())
+            return null;
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if(in.readInt() != MAGIC)
+                throw new IOException("Bad magic");
+
+            final int format = in.readInt();
+            final int length = in.readInt();
+
+            if(length <= 0 || length > MAX_SIZE)
+                throw new IOException("Bad length " + length);
+
+            final byte[] data = new byte[length];
+            in.readFully(data);
+
+            return new Entry(format, data);
+        }
+        catch(IOException e)
+        {
+            if(LoggerConfig.ON)
+            {
+                Logger.w(TAG, "Discarding unreadable cache entry " + key + ": " + e.getMessage());
+            }
+
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Store a binary under given key. The file is written under a temporary name first, so
+     * an interrupted write never leaves a truncated entry behind. The temporary name is unique
+     * to the writing thread, since the compilers of several engines may store the same key at
+     * the same time.
+     */
+    public void store(String key, Entry entry)
+    {
+        if(!directory.isDirectory() && !directory.mkdirs())
+            return;
+
+        final File file = fileOf(key);
+        final File temporary = new File(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(entry.getFormat());
+            out.writeInt(entry.getData().length);
+            out.write(entry.getData());
+        }
+        catch(IOException e)
+        {
+            if(LoggerConfig.ON)
+            {
+                Logger.w(TAG, "Failed to write cache entry " + key + ": " + e.getMessage());
+            }
+
+            temporary.delete();
+            return;
+        }
+
+        if(!temporary.renameTo(file))
+            temporary.delete();
+    }
+
+    /**
+     * Remove the entry stored under given key, for example because the driver rejected it
+     */
+    public void remove(String key)
+    {
+        fileOf(key).delete();
+    }
+
+    private File fileOf(String key)
+    {
+        return new File(directory, key + ".bin");
+    }
+}
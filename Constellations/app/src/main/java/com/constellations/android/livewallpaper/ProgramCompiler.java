@@ -0,0 +1,192 @@
+package com.constellations.android.livewallpaper;
+
+import android.util.Log;
+
+import com.constellations.android.util.LoggerConfig;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+/**
+ * Builds shader programs on a background thread, using an EGL context of the same share
+ * group as the render contexts. This keeps compiling and linking off the render thread,
+ * which can present frames in the meantime.
+ *
+ * Program objects are shared between the contexts, but their binding state is not. Programs
+ * built here have to be used through views bound to the state tracker of the render context,
+ * see {@link ScenePrograms#share(GLState)}.
+ */
+public class ProgramCompiler
+{
+    private static final String TAG = "ProgramCompiler";
+
+    /**
+     * EGL_CONTEXT_CLIENT_VERSION
+     */
+    static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+    /**
+     * A unit of work executed on the compiler thread
+     */
+    public interface Job<T>
+    {
+        T run(ProgramFactory programs) throws ShaderException;
+    }
+
+    private final EGL10 egl;
+    private final EGLDisplay display;
+    private final EGLContext eglContext;
+    private final EGLSurface surface;
+
+    private final GLBackend gl;
+    private final RenderHost host;
+    private final ExecutorService executor;
+
+    /**
+     * Creates the programs. The capabilities of the context are only known once it is
+     * current, so this is created by the first job.
+     */
+    private ProgramFactory programs;
+
+    /**
+     * Whether the shared context was made current on the compiler thread
+     */
+    private boolean current;
+
+    private ProgramCompiler(EGL10 egl, EGLDisplay display, EGLContext eglContext, EGLSurface surface,
+                            GLBackend gl, RenderHost host)
+    {
+        this.egl = egl;
+        this.display = display;
+        this.eglContext = eglContext;
+        this.surface = surface;
+        this.gl = gl;
+        this.host = host;
+
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                return new Thread(r, TAG);
+            }
+        });
+    }
+
+    /**
+     * Create compiler with a new OpenGL ES 3 context
+     * @param egl The EGL instance
+     * @param display The display to create the context on
+     * @param config The configuration of the render contexts
+     * @param shared The context to share objects with, or EGL_NO_CONTEXT to start a new share
+     * group. Render contexts can join it by sharing with {@link #getEGLContext()}.
+     * @param gl The GL backend to issue all calls through
+     * @param host Platform services used to retrieve shader resources
+     * @return The compiler, or null if the context could not be created
+     */
+    public static ProgramCompiler create(EGL10 egl, EGLDisplay display, EGLConfig config, EGLContext shared,
+                                         GLBackend gl, RenderHost host)
+    {
+        final EGLContext eglContext = egl.eglCreateContext(display, config, shared,
+                new int[]{ EGL_CONTEXT_CLIENT_VERSION, 3, EGL10.EGL_NONE });
+
+        if(eglContext == null || eglContext == EGL10.EGL_NO_CONTEXT)
+        {
+            if(LoggerConfig.ON)
+            {
+                Log.w(TAG, "Failed to create compiler context: 0x" + Integer.toHexString(egl.eglGetError()));
+            }
+
+            return null;
+        }
+
+        // The context never renders anything. If the configuration does not support pbuffers,
+        // try to do without a surface (EGL_KHR_surfaceless_context).
+        EGLSurface surface = egl.eglCreatePbufferSurface(display, config,
+                new int[]{ EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE });
+
+        if(surface == null)
+            surface = EGL10.EGL_NO_SURFACE;
+
+        return new ProgramCompiler(egl, display, eglContext, surface, gl, host);
+    }
+
+    /**
+     * The context of the compiler thread
+     */
+    public EGLContext getEGLContext()
+    {
+        return eglContext;
+    }
+
+    /**
+     * Run given job on the compiler thread. When the returned future completes, all GL
+     * commands issued by the job have finished, so its results can be used on the render
+     * context right away.
+     * @param job The job to run
+     * @return Future of the job result. It fails with {@link ShaderException} if a program could
+     * not be built, and with {@link IllegalStateException} if the shared context could not be
+     * used at all.
+     */
+    public <T> Future<T> submit(final Job<T> job)
+    {
+        return executor.submit(new Callable<T>()
+        {
+            @Override
+            public T call() throws ShaderException
+            {
+                makeCurrent();
+
+                final T result = job.run(programs);
+
+                // Make sure the objects are complete before another context uses them
+                gl.glFinish();
+
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Destroy the shared context once all submitted jobs are done
+     */
+    public void release()
+    {
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                egl.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+
+                if(surface != EGL10.EGL_NO_SURFACE)
+                    egl.eglDestroySurface(display, surface);
+
+                egl.eglDestroyContext(display, eglContext);
+            }
+        });
+
+        executor.shutdown();
+    }
+
+    private void makeCurrent()
+    {
+        if(current)
+            return;
+
+        if(!egl.eglMakeCurrent(display, surface, surface, eglContext))
+            throw new IllegalStateException("eglMakeCurrent failed: 0x" + Integer.toHexString(egl.eglGetError()));
+
+        current = true;
+        programs = new ProgramFactory(new GLState(gl), host, new GLCapabilities(gl));
+    }
+}
@@ -0,0 +1,166 @@
+package com.constellations.android.livewallpaper;
+
+import com.constellations.android.util.Logger;
+import com.constellations.android.util.LoggerConfig;
+
+import java.io.File;
+
+/**
+ * Creates the shader programs of a context. Linked programs are saved to a
+ * {@link ProgramBinaryCache} in the cache directory of the app and restored from there the
+ * next time a context is created, which skips compiling and linking entirely. If the driver
+ * rejects a cached binary, the program is built from source and the entry is replaced.
+ */
+public class ProgramFactory
+{
+    private static final String TAG = "ProgramFactory";
+
+    /**
+     * Name of the directory inside the app cache directory the binaries are stored in
+     */
+    private static final String CACHE_DIRECTORY = "programs";
+
+    private final GLState state;
+    private final RenderHost host;
+    private final ProgramBinaryCache cache;
+
+    /**
+     * Create new factory
+     * @param state The state tracker of the context to create the programs in
+     * @param host Platform services used to retrieve shader resources and the cache directory
+     * @param capabilities Capabilities of the context
+     */
+    public ProgramFactory(GLState state, RenderHost host, GLCapabilities capabilities)
+    {
+        this.state = state;
+        this.host = host;
+        this.cache = new ProgramBinaryCache(new File(host.getCacheDir(), CACHE_DIRECTORY), capabilities);
+    }
+
+    /**
+     * Create program from a vertex and a fragment shader
+     * @param vertexShader Resource id of the vertex shader source
+     * @param fragmentShader Resource id of the fragment shader source
+     * @return The linked program
+     * @throws ShaderException If the program could not be built
+     */
+    public ShaderProgram create(int vertexShader, int fragmentShader) throws ShaderException
+    {
+        return create(vertexShader, fragmentShader, null);
+    }
+
+    /**
+     * Create variant of a program from a vertex and a fragment shader
+     * @param vertexShader Resource id of the vertex shader source
+     * @param fragmentShader Resource id of the fragment shader source
+     * @param defines The defines selecting the variant, or null
+     * @return The linked program
+     * @throws ShaderException If the program could not be built
+     */
+    public ShaderProgram create(int vertexShader, int fragmentShader, ShaderDefines defines) throws ShaderException
+    {
+        return create(new ShaderType[]{ ShaderType.VERTEX_SHADER, ShaderType.FRAGMENT_SHADER },
+                new int[]{ vertexShader, fragmentShader }, defines);
+    }
+
+    /**
+     * Create compute program
+     * @param computeShader Resource id of the compute shader source
+     * @return The linked program
+     * @throws ShaderException If the program could not be built
+     */
+    public ShaderProgram createCompute(int computeShader) throws ShaderException
+    {
+        return createCompute(computeShader, null);
+    }
+
+    /**
+     * Create variant of a compute program
+     * @param computeShader Resource id of the compute shader source
+     * @param defines The defines selecting the variant, or null
+     * @return The linked program
+     * @throws ShaderException If the program could not be built
+     */
+    public ShaderProgram createCompute(int computeShader, ShaderDefines defines) throws ShaderException
+    {
+        return create(new ShaderType[]{ ShaderType.COMPUTE_SHADER }, new int[]{ computeShader }, defines);
+    }
+
+    /**
+     * Create program from given shaders
+     * @param types The shader types
+     * @param resources Resource ids of the corresponding shader sources
+     * @param defines The defines injected into all shaders, or null
+     * @return The linked program
+     * @throws ShaderException If the program could not be built
+     */
+    public ShaderProgram create(ShaderType[] types, int[] resources, ShaderDefines defines) throws ShaderException
+    {
+        final String[] sources = new String[resources.length];
+        for(int i = 0; i < resources.length; ++i)
+        {
+            sources[i] = host.loadShaderSource(resources[i]);
+
+            if(defines != null)
+                sources[i] = defines.apply(sources[i]);
+        }
+
+        return create(types, sources);
+    }
+
+    /**
+     * Create program from given shader sources
+     * @param types The shader types
+     * @param sources The corresponding shader sources
+     * @return The linked program
+     * @throws ShaderException If the program could not be built
+     */
+    public ShaderProgram create(ShaderType[] types, String[] sources) throws ShaderException
+    {
+        final ShaderProgram program = new ShaderProgram(state);
+        final String key = cache.key(types, sources);
+
+        if(key != null)
+        {
+            final ProgramBinaryCache.Entry binary = cache.load(key);
+
+            if(binary != null)
+            {
+                if(program.loadBinary(binary))
+                    return program;
+
+                if(LoggerConfig.ON)
+                {
+                    Logger.d(TAG, "Cached program binary " + key + " was rejected, building from source");
+                }
+
+                cache.remove(key);
+            }
+        }
+
+        try
+        {
+            for(int i = 0; i < sources.length; ++i)
+                program.attachShader(types[i], sources[i]);
+
+            program.setBinaryRetrievable();
+            program.linkProgram();
+        }
+        catch(ShaderException e)
+        {
+            // Do not leak the program and the shaders compiled so far
+            program.release();
+            throw e;
+        }
+
+        if(key != null)
+        {
+            final ProgramBinaryCache.Entry binary = program.getBinary();
+
+            if(binary != null)
+                cache.store(key, binary);
+        }
+
+        return program;
+    }
+}
@@ -0,0 +1,70 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+/**
+ * {@link Presenter} upscaling the scene with a full screen quad, see
+ * {@link PresentStrategy#QUAD}
+ */
+public class QuadPresenter implements Presenter
+{
+    private final GLBackend gl;
+    private final GLState state;
+
+    /**
+     * The program sampling the render target with the filter of its texture
+     */
+    private ShaderProgram quadProgram;
+
+    /**
+     * The program implementing {@link UpscaleFilter#EDGE_ADAPTIVE}
+     */
+    private ShaderProgram edgeProgram;
+
+    private UpscaleFilter filter = UpscaleFilter.BILINEAR;
+
+    public QuadPresenter(GLState state)
+    {
+        this.state = state;
+        this.gl = state.getBackend();
+    }
+
+    /**
+     * Replace the programs, for example with the ones of another quality tier
+     * @param quadProgram The program built from quad_vertex.glsl and quad_fragment.glsl
+     * @param edgeProgram The program built from quad_vertex.glsl and upscale_edge_fragment.glsl
+     */
+    public void setPrograms(ShaderProgram quadProgram, ShaderProgram edgeProgram)
+    {
+        this.quadProgram = quadProgram;
+        this.edgeProgram = edgeProgram;
+
+        // The render target is always bound to texture unit 0
+        quadProgram.getUniform("quad_tex").set(0);
+        edgeProgram.getUniform("quad_tex").set(0);
+    }
+
+    /**
+     * Set the filter to upscale with. Nearest and bilinear filtering are done by the texture
+     * unit, so the render target has to use {@link UpscaleFilter#getTextureFilter()}.
+     */
+    public void setFilter(UpscaleFilter filter)
+    {
+        this.filter = filter;
+    }
+
+    @Override
+    public void present(RenderTarget source, int width, int height)
+    {
+        if(filter.usesEdgeProgram())
+            edgeProgram.useProgram();
+        else
+            quadProgram.useProgram();
+
+        // Use the render target as a source this time, allowing access to the
+        // texture with the previous render result
+        source.useTexture();
+
+        gl.glDrawArraysInstanced(GLES31.GL_TRIANGLES, 0, 6, 1);
+    }
+}
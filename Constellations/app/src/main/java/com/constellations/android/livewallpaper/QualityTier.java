@@ -0,0 +1,82 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * Enumeration of the quality tiers the scene shaders can be built with. Each tier maps to a
+ * set of {@link ShaderDefines}, so weaker GPUs can use a cheaper shader instead of only
+ * rendering at a lower resolution.
+ */
+public enum QualityTier
+{
+    /**
+     * Two layers, no diagonal neighbours, no sparkles and no vignette
+     */
+    LOW("low", 2, 5, false, false, 1),
+
+    /**
+     * Three layers without diagonal neighbours
+     */
+    MEDIUM("medium", 3, 5, true, true, 1),
+
+    /**
+     * The full scene
+     */
+    HIGH("high", 4, 9, true, true, 1),
+
+    /**
+     * The full scene with four samples per pixel
+     */
+    ULTRA("ultra", 4, 9, true, true, 4);
+
+    QualityTier(String key, int layers, int neighbours, boolean sparkles, boolean vignette, int samples)
+    {
+        this.key = key;
+        this.layers = layers;
+        this.defines = new ShaderDefines()
+                .set("NUM_LAYERS", layers)
+                .set("NEIGHBOURS", neighbours)
+                .set("SPARKLES", sparkles)
+                .set("VIGNETTE", vignette)
+                .set("SAMPLES", samples);
+    }
+
+    /**
+     * The value used for this tier in the preferences
+     */
+    private final String key;
+
+    /**
+     * Number of layers the scene is made of
+     */
+    private final int layers;
+
+    private final ShaderDefines defines;
+
+    public int getLayers()
+    {
+        return layers;
+    }
+
+    /**
+     * The defines the shaders are built with for this tier
+     */
+    public ShaderDefines getDefines()
+    {
+        return defines;
+    }
+
+    /**
+     * Find the tier with given preference value
+     * @param key Preference value
+     * @return The matching tier, or {@link #HIGH} if there is none
+     */
+    public static QualityTier fromKey(String key)
+    {
+        for(QualityTier tier: values())
+        {
+            if(tier.key.equals(key))
+                return tier;
+        }
+
+        return HIGH;
+    }
+}
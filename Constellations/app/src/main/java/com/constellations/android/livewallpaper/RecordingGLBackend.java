@@ -0,0 +1,582 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+import java.nio.Buffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.constellations.android.livewallpaper.GLCallStats.Kind;
+
+/**
+ * A {@link GLBackend} that does not talk to any driver, but records and categorizes all
+ * calls made through it. Object names are handed out sequentially and queries return
+ * plausible values (compilation and linking always succeed), so the renderer can be driven
+ * headlessly to measure its per-frame command stream.
+ *
+ * Calls are accumulated both in a total and in a per-frame statistic, which is reset by
+ * {@link #beginFrame()}. Recording does not allocate once every function was called, so the
+ * allocations of the frame loop can be measured through this backend.
+ */
+public class RecordingGLBackend implements GLBackend
+{
+    /**
+     * Statistics of all calls ever recorded
+     */
+    private final GLCallStats total = new GLCallStats();
+
+    /**
+     * Statistics of all calls since the last call to {@link #beginFrame()}
+     */
+    private final GLCallStats frame = new GLCallStats();
+
+    /**
+     * The next object name that will be handed out
+     */
+    private int nextName = 1;
+
+    /**
+     * Uniform locations that were handed out, per program and uniform name
+     */
+    private final Map<String, Integer> uniformLocations = new HashMap<>();
+
+    /**
+     * The currently bound framebuffer, reported by glGetIntegerv(GL_FRAMEBUFFER_BINDING)
+     */
+    private int boundFramebuffer;
+
+    /**
+     * Start a new frame, resetting the per-frame statistics. Statistics retrieved with
+     * {@link #getFrameStats()} before are reset as well.
+     */
+    public void beginFrame()
+    {
+        frame.reset();
+    }
+
+    /**
+     * Statistics of all calls since the last call to {@link #beginFrame()}
+     */
+    public GLCallStats getFrameStats()
+    {
+        return frame;
+    }
+
+    /**
+     * Statistics of all calls ever recorded
+     */
+    public GLCallStats getTotalStats()
+    {
+        return total;
+    }
+
+    private void record(String function, Kind kind)
+    {
+        total.record(function, kind);
+        frame.record(function, kind);
+    }
+
+    private void generate(int n, int[] names, int offset)
+    {
+        for(int i = 0; i < n; ++i)
+            names[offset + i] = nextName++;
+    }
+
+    @Override
+    public int glCreateProgram()
+    {
+        record("glCreateProgram", Kind.ALLOCATION);
+        return nextName++;
+    }
+
+    @Override
+    public void glUseProgram(int program)
+    {
+        record("glUseProgram", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public int glCreateShader(int type)
+    {
+        record("glCreateShader", Kind.ALLOCATION);
+        return nextName++;
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source)
+    {
+        record("glShaderSource", Kind.OTHER);
+    }
+
+    @Override
+    public void glCompileShader(int shader)
+    {
+        record("glCompileShader", Kind.OTHER);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+    {
+        record("glGetShaderiv", Kind.QUERY);
+        params[offset] = (pname == GLES31.GL_COMPILE_STATUS) ? 1 : 0;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader)
+    {
+        record("glGetShaderInfoLog", Kind.QUERY);
+        return "";
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader)
+    {
+        record("glAttachShader", Kind.OTHER);
+    }
+
+    @Override
+    public void glDetachShader(int program, int shader)
+    {
+        record("glDetachShader", Kind.OTHER);
+    }
+
+    @Override
+    public void glDeleteShader(int shader)
+    {
+        record("glDeleteShader", Kind.ALLOCATION);
+    }
+
+    @Override
+    public void glBindAttribLocation(int program, int index, String name)
+    {
+        record("glBindAttribLocation", Kind.OTHER);
+    }
+
+    @Override
+    public void glLinkProgram(int program)
+    {
+        record("glLinkProgram", Kind.OTHER);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset)
+    {
+        record("glGetProgramiv", Kind.QUERY);
+        params[offset] = (pname == GLES31.GL_LINK_STATUS) ? 1 : 0;
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program)
+    {
+        record("glGetProgramInfoLog", Kind.QUERY);
+        return "";
+    }
+
+    @Override
+    public String glGetActiveUniform(int program, int index, int[] size, int sizeOffset, int[] type, int typeOffset)
+    {
+        record("glGetActiveUniform", Kind.QUERY);
+        size[sizeOffset] = 0;
+        type[typeOffset] = 0;
+        return "";
+    }
+
+    @Override
+    public int glGetUniformBlockIndex(int program, String uniformBlockName)
+    {
+        record("glGetUniformBlockIndex", Kind.QUERY);
+        return 0;
+    }
+
+    @Override
+    public String glGetActiveUniformBlockName(int program, int uniformBlockIndex)
+    {
+        record("glGetActiveUniformBlockName", Kind.QUERY);
+        return "";
+    }
+
+    @Override
+    public void glGetActiveUniformBlockiv(int program, int uniformBlockIndex, int pname, int[] params, int offset)
+    {
+        record("glGetActiveUniformBlockiv", Kind.QUERY);
+        params[offset] = 0;
+    }
+
+    @Override
+    public void glUniformBlockBinding(int program, int uniformBlockIndex, int uniformBlockBinding)
+    {
+        record("glUniformBlockBinding", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name)
+    {
+        record("glGetUniformLocation", Kind.QUERY);
+
+        final String key = program + "/" + name;
+        Integer location = uniformLocations.get(key);
+
+        if(location == null)
+        {
+            location = uniformLocations.size();
+            uniformLocations.put(key, location);
+        }
+
+        return location;
+    }
+
+    @Override
+    public void glUniform1i(int location, int x)
+    {
+        record("glUniform1i", Kind.UNIFORM);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x)
+    {
+        record("glUniform1f", Kind.UNIFORM);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z)
+    {
+        record("glUniform3f", Kind.UNIFORM);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w)
+    {
+        record("glUniform4f", Kind.UNIFORM);
+    }
+
+    @Override
+    public void glProgramUniform1i(int program, int location, int x)
+    {
+        record("glProgramUniform1i", Kind.UNIFORM);
+    }
+
+    @Override
+    public void glProgramUniform1f(int program, int location, float x)
+    {
+        record("glProgramUniform1f", Kind.UNIFORM);
+    }
+
+    @Override
+    public void glProgramUniform3f(int program, int location, float x, float y, float z)
+    {
+        record("glProgramUniform3f", Kind.UNIFORM);
+    }
+
+    @Override
+    public void glProgramUniform4f(int program, int location, float x, float y, float z, float w)
+    {
+        record("glProgramUniform4f", Kind.UNIFORM);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset)
+    {
+        record("glGenBuffers", Kind.ALLOCATION);
+        generate(n, buffers, offset);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer)
+    {
+        record("glBindBuffer", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glBindBufferBase(int target, int index, int buffer)
+    {
+        record("glBindBufferBase", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage)
+    {
+        record("glBufferData", Kind.ALLOCATION);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data)
+    {
+        record("glBufferSubData", Kind.UNIFORM);
+    }
+
+    @Override
+    public void glGenVertexArrays(int n, int[] arrays, int offset)
+    {
+        record("glGenVertexArrays", Kind.ALLOCATION);
+        generate(n, arrays, offset);
+    }
+
+    @Override
+    public void glBindVertexArray(int array)
+    {
+        record("glBindVertexArray", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset)
+    {
+        record("glGenTextures", Kind.ALLOCATION);
+        generate(n, textures, offset);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset)
+    {
+        record("glDeleteTextures", Kind.ALLOCATION);
+    }
+
+    @Override
+    public void glActiveTexture(int texture)
+    {
+        record("glActiveTexture", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture)
+    {
+        record("glBindTexture", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels)
+    {
+        record("glTexImage2D", Kind.ALLOCATION);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param)
+    {
+        record("glTexParameteri", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset)
+    {
+        record("glGenFramebuffers", Kind.ALLOCATION);
+        generate(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer)
+    {
+        record("glBindFramebuffer", Kind.STATE_CHANGE);
+        boundFramebuffer = framebuffer;
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level)
+    {
+        record("glFramebufferTexture2D", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset)
+    {
+        record("glGetIntegerv", Kind.QUERY);
+        params[offset] = (pname == GLES31.GL_FRAMEBUFFER_BINDING) ? boundFramebuffer : 0;
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height)
+    {
+        record("glViewport", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha)
+    {
+        record("glClearColor", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glClear(int mask)
+    {
+        record("glClear", Kind.OTHER);
+    }
+
+    @Override
+    public void glDrawArraysInstanced(int mode, int first, int count, int instanceCount)
+    {
+        record("glDrawArraysInstanced", Kind.DRAW);
+    }
+
+    @Override
+    public void glGenQueries(int n, int[] ids, int offset)
+    {
+        record("glGenQueries", Kind.ALLOCATION);
+        generate(n, ids, offset);
+    }
+
+    @Override
+    public void glDeleteQueries(int n, int[] ids, int offset)
+    {
+        record("glDeleteQueries", Kind.ALLOCATION);
+    }
+
+    @Override
+    public void glBeginQuery(int target, int id)
+    {
+        record("glBeginQuery", Kind.OTHER);
+    }
+
+    @Override
+    public void glEndQuery(int target)
+    {
+        record("glEndQuery", Kind.OTHER);
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset)
+    {
+        record("glGetQueryObjectuiv", Kind.QUERY);
+        params[offset] = (pname == GLES31.GL_QUERY_RESULT_AVAILABLE) ? 1 : 0;
+    }
+
+    @Override
+    public String glGetString(int name)
+    {
+        record("glGetString", Kind.QUERY);
+        return "";
+    }
+
+    @Override
+    public void glTexStorage2D(int target, int levels, int internalformat, int width, int height)
+    {
+        record("glTexStorage2D", Kind.ALLOCATION);
+    }
+
+    @Override
+    public void glBindImageTexture(int unit, int texture, int level, boolean layered, int layer, int access, int format)
+    {
+        record("glBindImageTexture", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glDispatchCompute(int numGroupsX, int numGroupsY, int numGroupsZ)
+    {
+        record("glDispatchCompute", Kind.DRAW);
+    }
+
+    @Override
+    public void glMemoryBarrier(int barriers)
+    {
+        record("glMemoryBarrier", Kind.OTHER);
+    }
+
+    @Override
+    public void glEnable(int cap)
+    {
+        record("glEnable", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glDisable(int cap)
+    {
+        record("glDisable", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor)
+    {
+        record("glBlendFunc", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glColorMask(boolean red, boolean green, boolean blue, boolean alpha)
+    {
+        record("glColorMask", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value)
+    {
+        record("glProgramParameteri", Kind.OTHER);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat, int binaryFormatOffset, Buffer binary)
+    {
+        record("glGetProgramBinary", Kind.QUERY);
+        length[lengthOffset] = 0;
+        binaryFormat[binaryFormatOffset] = 0;
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length)
+    {
+        record("glProgramBinary", Kind.OTHER);
+    }
+
+    @Override
+    public void glFinish()
+    {
+        record("glFinish", Kind.OTHER);
+    }
+
+    @Override
+    public void glDeleteProgram(int program)
+    {
+        record("glDeleteProgram", Kind.ALLOCATION);
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, Buffer pixels)
+    {
+        record("glTexSubImage2D", Kind.UNIFORM);
+    }
+
+    @Override
+    public void glPixelStorei(int pname, int param)
+    {
+        record("glPixelStorei", Kind.STATE_CHANGE);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset)
+    {
+        record("glDeleteBuffers", Kind.ALLOCATION);
+    }
+
+    @Override
+    public void glInvalidateFramebuffer(int target, int numAttachments, int[] attachments, int offset)
+    {
+        record("glInvalidateFramebuffer", Kind.OTHER);
+    }
+
+    @Override
+    public void glBlitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1, int dstX0, int dstY0, int dstX1, int dstY1, int mask, int filter)
+    {
+        record("glBlitFramebuffer", Kind.DRAW);
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, int offset)
+    {
+        record("glTexSubImage2D", Kind.UNIFORM);
+    }
+
+    @Override
+    public long glFenceSync(int condition, int flags)
+    {
+        record("glFenceSync", Kind.OTHER);
+        return nextName++;
+    }
+
+    @Override
+    public int glClientWaitSync(long sync, int flags, long timeout)
+    {
+        record("glClientWaitSync", Kind.QUERY);
+        return GLES31.GL_ALREADY_SIGNALED;
+    }
+
+    @Override
+    public void glDeleteSync(long sync)
+    {
+        record("glDeleteSync", Kind.ALLOCATION);
+    }
+}
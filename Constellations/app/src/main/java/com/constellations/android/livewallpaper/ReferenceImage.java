@@ -0,0 +1,208 @@
+package com.constellations.android.livewallpaper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An RGB image produced by the {@link ReferenceRenderer}. Pixels are stored as packed
+ * 0xRRGGBB integers, with the first row being the top of the image.
+ */
+public class ReferenceImage
+{
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    /**
+     * Work performed while rendering the current contents of this image
+     */
+    private final ShadingWork work = new ShadingWork();
+
+    /**
+     * Create new black image with given dimensions
+     * @param width Width in pixels
+     * @param height Height in pixels
+     */
+    public ReferenceImage(int width, int height)
+    {
+        if(width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Image dimensions have to be positive");
+
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * The packed 0xRRGGBB pixel data, row by row, starting at the top
+     */
+    public int[] getPixels()
+    {
+        return pixels;
+    }
+
+    public int getPixel(int x, int y)
+    {
+        return pixels[y * width + x];
+    }
+
+    /**
+     * Work performed while rendering the current contents of this image
+     */
+    public ShadingWork getWork()
+    {
+        return work;
+    }
+
+    /**
+     * Calculate the largest per-channel difference to given image
+     * @param other Image to compare to. Has to have the same dimensions.
+     * @return Largest absolute channel difference, in [0, 255]
+     */
+    public int maxChannelError(ReferenceImage other)
+    {
+        checkDimensions(other);
+
+        int max = 0;
+        for(int i = 0; i < pixels.length; ++i)
+        {
+            final int a = pixels[i], b = other.pixels[i];
+
+            for(int shift = 0; shift <= 16; shift += 8)
+            {
+                final int diff = Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF));
+                max = Math.max(max, diff);
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * Calculate the mean squared per-channel error relative to given image
+     * @param other Image to compare to. Has to have the same dimensions.
+     * @return Mean squared error, with channels in [0, 255]
+     */
+    public double meanSquaredError(ReferenceImage other)
+    {
+        checkDimensions(other);
+
+        double sum = 0.0;
+        for(int i = 0; i < pixels.length; ++i)
+        {
+            final int a = pixels[i], b = other.pixels[i];
+
+            for(int shift = 0; shift <= 16; shift += 8)
+            {
+                final int diff = ((a >> shift) & 0xFF) - ((b >> shift) & 0xFF);
+                sum += diff * diff;
+            }
+        }
+
+        return sum / (pixels.length * 3.0);
+    }
+
+    /**
+     * Write this image as binary PPM (P6). This format is used since it does not need any image
+     * libraries, which are not available on every platform this code runs on.
+     * @param stream Stream to write to. It is not closed.
+     * @throws IOException If writing fails
+     */
+    public void writePpm(OutputStream stream) throws IOException
+    {
+        stream.write(("P6\n" + width + " " + height + "\n255\n").getBytes("US-ASCII"));
+
+        final byte[] row = new byte[width * 3];
+        for(int y = 0; y < height; ++y)
+        {
+            for(int x = 0; x < width; ++x)
+            {
+                final int pixel = pixels[y * width + x];
+                row[x * 3] = (byte)(pixel >> 16);
+                row[x * 3 + 1] = (byte)(pixel >> 8);
+                row[x * 3 + 2] = (byte)pixel;
+            }
+
+            stream.write(row);
+        }
+    }
+
+    /**
+     * Read an image written by {@link #writePpm(OutputStream)}. Only binary PPM files with a
+     * maximum value of 255 and without comments are supported.
+     * @param stream Stream to read from. It is not closed.
+     * @return The image
+     * @throws IOException If reading fails or the stream does not hold a supported image
+     */
+    public static ReferenceImage readPpm(InputStream stream) throws IOException
+    {
+        if(!"P6".equals(readPpmToken(stream)))
+            throw new IOException("Not a binary PPM image");
+
+        final int width = Integer.parseInt(readPpmToken(stream));
+        final int height = Integer.parseInt(readPpmToken(stream));
+
+        if(!"255".equals(readPpmToken(stream)))
+            throw new IOException("Unsupported PPM maximum value");
+
+        final ReferenceImage image = new ReferenceImage(width, height);
+        final byte[] row = new byte[width * 3];
+
+        for(int y = 0; y < height; ++y)
+        {
+            for(int read = 0; read < row.length; )
+            {
+                final int count = stream.read(row, read, row.length - read);
+                if(count < 0)
+                    throw new IOException("Unexpected end of PPM image");
+
+                read += count;
+            }
+
+            for(int x = 0; x < width; ++x)
+            {
+                image.pixels[y * width + x] = ((row[x * 3] & 0xFF) << 16)
+                        | ((row[x * 3 + 1] & 0xFF) << 8)
+                        | (row[x * 3 + 2] & 0xFF);
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * Read a header token, and the single whitespace character following it
+     */
+    private static String readPpmToken(InputStream stream) throws IOException
+    {
+        final StringBuilder token = new StringBuilder();
+
+        for(int c = stream.read(); ; c = stream.read())
+        {
+            if(c < 0)
+                throw new IOException("Unexpected end of PPM header");
+
+            if(!Character.isWhitespace(c))
+                token.append((char)c);
+            else if(token.length() > 0)
+                return token.toString();
+        }
+    }
+
+    private void checkDimensions(ReferenceImage other)
+    {
+        if(other.width != width || other.height != height)
+            throw new IllegalArgumentException("Image dimensions do not match");
+    }
+}
@@ -0,0 +1,316 @@
+package com.constellations.android.livewallpaper;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static com.constellations.android.livewallpaper.SceneMath.*;
+
+/**
+ * A headless CPU implementation of the scene fragment shader (res/raw/shader_fragment.glsl).
+ * It does not depend on OpenGL and produces deterministic results, which makes it usable to
+ * create golden images, to compare optimized shaders against and to count the shading work
+ * a frame requires. Frames are split into square tiles that are rendered in parallel on a
+ * fork-join pool.
+ */
+public class ReferenceRenderer
+{
+    /**
+     * Default edge length of a tile, in pixels
+     */
+    public static final int DEFAULT_TILE_SIZE = 32;
+
+    /**
+     * The pool used to render tiles in parallel
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Edge length of a tile, in pixels
+     */
+    private final int tileSize;
+
+    /**
+     * Value of the iUseCustomColor uniform
+     */
+    private boolean useCustomColor;
+
+    /**
+     * Value of the iCustomColor uniform (rgb)
+     */
+    private final float[] customColor = { 1.f, 1.f, 1.f };
+
+    /**
+     * Value of the iMouse uniform (xy)
+     */
+    private float mouseX, mouseY;
+
+    /**
+     * Create renderer that uses the common fork-join pool and the default tile size
+     */
+    public ReferenceRenderer()
+    {
+        this(ForkJoinPool.commonPool(), DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Create renderer using given pool and tile size
+     * @param pool Pool used to render tiles in parallel
+     * @param tileSize Edge length of a tile, in pixels
+     */
+    public ReferenceRenderer(ForkJoinPool pool, int tileSize)
+    {
+        if(tileSize <= 0)
+            throw new IllegalArgumentException("Tile size has to be positive");
+
+        this.pool = pool;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Set the custom color configuration, corresponding to the iUseCustomColor and
+     * iCustomColor uniforms
+     */
+    public void setCustomColor(boolean use, float r, float g, float b)
+    {
+        useCustomColor = use;
+        customColor[0] = r;
+        customColor[1] = g;
+        customColor[2] = b;
+    }
+
+    /**
+     * Set the mouse position, corresponding to iMouse.xy, in pixels
+     */
+    public void setMouse(float x, float y)
+    {
+        mouseX = x;
+        mouseY = y;
+    }
+
+    /**
+     * Render a frame the way the wallpaper would for a screen of given size and resolution
+     * divisor.
+     * @param screenWidth Screen width in pixels
+     * @param screenHeight Screen height in pixels
+     * @param divisor Resolution divisor, as configured in the settings
+     * @param time Value of iTime, in seconds
+     * @return The rendered image, with dimensions of the first-pass render target
+     */
+    public ReferenceImage renderForScreen(int screenWidth, int screenHeight, int divisor, float time)
+    {
+        return render(screenWidth / divisor, screenHeight / divisor, time);
+    }
+
+    /**
+     * Render a frame with given dimensions
+     * @param width Width in pixels (iResolution.x)
+     * @param height Height in pixels (iResolution.y)
+     * @param time Value of iTime, in seconds
+     * @return The rendered image
+     */
+    public ReferenceImage render(int width, int height, float time)
+    {
+        final ReferenceImage image = new ReferenceImage(width, height);
+        render(image, time);
+        return image;
+    }
+
+    /**
+     * Render a frame into given image, overwriting its contents and work counters
+     * @param image Target image. Its dimensions define iResolution.
+     * @param time Value of iTime, in seconds
+     */
+    public void render(ReferenceImage image, float time)
+    {
+        final int tilesX = (image.getWidth() + tileSize - 1) / tileSize;
+        final int tilesY = (image.getHeight() + tileSize - 1) / tileSize;
+
+        final ShadingWork work = pool.invoke(new TileTask(image, time, tilesX, 0, tilesX * tilesY));
+
+        image.getWork().clear();
+        image.getWork().add(work);
+    }
+
+    /**
+     * Task rendering a contiguous range of tiles. Ranges are split in half until only a single
+     * tile is left.
+     */
+    private class TileTask extends RecursiveTask<ShadingWork>
+    {
+        private final ReferenceImage image;
+        private final float time;
+        private final int tilesX;
+        private final int begin;
+        private final int end;
+
+        TileTask(ReferenceImage image, float time, int tilesX, int begin, int end)
+        {
+            this.image = image;
+            this.time = time;
+            this.tilesX = tilesX;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        @Override
+        protected ShadingWork compute()
+        {
+            if(end - begin == 1)
+            {
+                return renderTile(image, time, begin % tilesX, begin / tilesX);
+            }
+
+            final int middle = (begin + end) >>> 1;
+
+            final TileTask left = new TileTask(image, time, tilesX, begin, middle);
+            final TileTask right = new TileTask(image, time, tilesX, middle, end);
+            left.fork();
+
+            final ShadingWork work = right.compute();
+            work.add(left.join());
+            return work;
+        }
+    }
+
+    private ShadingWork renderTile(ReferenceImage image, float time, int tileX, int tileY)
+    {
+        final ShadingWork work = new ShadingWork();
+        final float[] points = new float[18];
+
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] pixels = image.getPixels();
+
+        final int x0 = tileX * tileSize, x1 = Math.min(x0 + tileSize, width);
+        final int y0 = tileY * tileSize, y1 = Math.min(y0 + tileSize, height);
+
+        for(int y = y0; y < y1; ++y)
+        {
+            // Image rows start at the top, while gl_FragCoord starts at the bottom
+            final float fragY = (height - 1 - y) + .5f;
+
+            for(int x = x0; x < x1; ++x)
+            {
+                pixels[y * width + x] = mainImage(x + .5f, fragY, width, height, time, points, work);
+            }
+        }
+
+        return work;
+    }
+
+    /**
+     * Port of mainImage
+     * @return Packed 0xRRGGBB color, quantized like a GL_RGB8 render target would
+     */
+    private int mainImage(float fragX, float fragY, float resX, float resY, float time, float[] points, ShadingWork work)
+    {
+        final float uvX = (fragX - resX * .5f) / resY;
+        final float uvY = (fragY - resY * .5f) / resY;
+        final float mX = mouseX / resX - .5f;
+        final float mY = mouseY / resY - .5f;
+
+        float t = time * .1f;
+
+        final float s = sin(t);
+        final float c = cos(t);
+
+        // st = uv * rot, M *= rot * 2.
+        final float stX = uvX * c - uvY * s;
+        final float stY = uvX * s + uvY * c;
+        final float rmX = (mX * c - mY * s) * 2.f;
+        final float rmY = (mX * s + mY * c) * 2.f;
+
+        float m = 0.f;
+        for(float i = 0.f; i < 1.f; i += 1.f / NUM_LAYERS)
+        {
+            final float z = fract(t + i);
+            final float size = mix(15.f, 1.f, z);
+            final float fade = smoothstep(0.f, .6f, z) * smoothstep(1.f, .8f, z);
+
+            m += fade * netLayer(stX * size - rmX * z, stY * size - rmY * z, i, time, points, work);
+        }
+
+        final float glow = -uvY * .2f * 2.f;
+
+        final float baseR, baseG, baseB;
+        if(useCustomColor)
+        {
+            baseR = customColor[0];
+            baseG = customColor[1];
+            baseB = customColor[2];
+        }
+        else
+        {
+            baseR = s * .4f + .6f;
+            baseG = cos(t * .4f) * .4f + .6f;
+            baseB = -sin(t * .24f) * .4f + .6f;
+        }
+
+        float factor = 1.f - (uvX * uvX + uvY * uvY);
+        t = mod(time, SCENE_PERIOD);
+        factor *= smoothstep(0.f, 20.f, t) * smoothstep(224.f, 200.f, t);
+
+        work.pixels++;
+
+        return (quantize((baseR * m + baseR * glow) * factor) << 16)
+                | (quantize((baseG * m + baseG * glow) * factor) << 8)
+                | quantize((baseB * m + baseB * glow) * factor);
+    }
+
+    /**
+     * Port of NetLayer
+     */
+    private static float netLayer(float stX, float stY, float n, float t, float[] p, ShadingWork work)
+    {
+        final float idX = (float)Math.floor(stX) + n;
+        final float idY = (float)Math.floor(stY) + n;
+
+        stX = fract(stX) - .5f;
+        stY = fract(stY) - .5f;
+
+        int i = 0;
+        for(float y = -1.f; y <= 1.f; y++)
+        {
+            for(float x = -1.f; x <= 1.f; x++)
+            {
+                getPos(idX, idY, x, y, t, p, i);
+                i += 2;
+            }
+        }
+
+        float m = 0.f;
+        float sparkle = 0.f;
+
+        for(i = 0; i < 18; i += 2)
+        {
+            m += line(p[8], p[9], p[i], p[i + 1], stX, stY);
+
+            final float d = length(stX - p[i], stY - p[i + 1]);
+
+            float s = .005f / (d * d);
+            s *= smoothstep(1.f, .7f, d);
+            s *= sparklePulse(p[i], p[i + 1], t);
+            sparkle += s;
+        }
+
+        m += line(p[2], p[3], p[6], p[7], stX, stY);
+        m += line(p[2], p[3], p[10], p[11], stX, stY);
+        m += line(p[14], p[15], p[10], p[11], stX, stY);
+        m += line(p[14], p[15], p[6], p[7], stX, stY);
+
+        m += sparkle * sparklePhase(n, t);
+
+        work.layers++;
+        work.hashes += 9;
+        work.positions += 9;
+        work.lines += 13;
+        work.sparkles += 9;
+
+        return m;
+    }
+
+    private static int quantize(float value)
+    {
+        return Math.round(clamp01(value) * 255.f);
+    }
+}
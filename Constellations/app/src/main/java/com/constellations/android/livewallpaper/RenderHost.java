@@ -0,0 +1,37 @@
+package com.constellations.android.livewallpaper;
+
+import java.io.File;
+
+/**
+ * The services of the Android framework the renderer depends on. Together with
+ * {@link GLBackend} and {@link com.constellations.android.util.Logger}, this is the only way
+ * the renderer reaches the platform, so it can be driven on a plain JVM, for example with a
+ * {@link RecordingGLBackend}. {@link AndroidRenderHost} implements this on top of a
+ * {@link android.content.Context}.
+ */
+public interface RenderHost
+{
+    /**
+     * Load the source of a shader
+     * @param resourceId Resource id of the shader source
+     * @return The source code
+     * @throws ShaderException If the source could not be loaded
+     */
+    String loadShaderSource(int resourceId) throws ShaderException;
+
+    /**
+     * The directory program binaries and baked loops are cached in
+     */
+    File getCacheDir();
+
+    /**
+     * Read the current settings and publish them with {@link Configuration#update}
+     */
+    void updateConfiguration();
+
+    /**
+     * Milliseconds since boot, not counting time spent in deep sleep, like
+     * {@link android.os.SystemClock#uptimeMillis()}
+     */
+    long uptimeMillis();
+}
@@ -0,0 +1,181 @@
+package com.constellations.android.livewallpaper;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Immutable set of limits the renderer has to respect on top of the user settings, as
+ * decided by the {@link PowerGovernor}. Like {@link Configuration}, the current policy is
+ * published atomically with a version number, so the render thread can pick up changes once
+ * per frame without locking. Components that are idle while the animation is paused, like the
+ * {@link FramePacer}, register a {@link Listener} to be woken up instead.
+ */
+public final class RenderPolicy
+{
+    /**
+     * Receives published policies
+     */
+    public interface Listener
+    {
+        /**
+         * Called on the thread that published the policy, which is the main thread for the
+         * {@link PowerGovernor}
+         */
+        void onPolicyChanged(RenderPolicy policy);
+    }
+
+    /**
+     * The policy without any limits
+     */
+    public static final RenderPolicy NORMAL = new RenderPolicy(0, 1.f, QualityTier.ULTRA, false);
+
+    /**
+     * The most recently published policy
+     */
+    private static final AtomicReference<RenderPolicy> current = new AtomicReference<>(NORMAL);
+
+    /**
+     * The listeners notified of every published policy
+     */
+    private static final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final long version;
+    private final int maxFps;
+    private final float minDivisor;
+    private final QualityTier maxTier;
+    private final boolean paused;
+
+    /**
+     * Retrieve the most recently published policy. This never blocks.
+     */
+    public static RenderPolicy getCurrent()
+    {
+        return current.get();
+    }
+
+    /**
+     * Notify given listener of all policies published from now on
+     */
+    public static void addListener(Listener listener)
+    {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Stop notifying given listener
+     */
+    public static void removeListener(Listener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Publish given policy, unless it has the same limits as the current one, and notify the
+     * listeners
+     */
+    public static void publish(RenderPolicy policy)
+    {
+        RenderPolicy previous;
+        RenderPolicy next;
+
+        do
+        {
+            previous = current.get();
+
+            if(previous.hasSameLimits(policy))
+                return;
+
+            next = new RenderPolicy(policy, previous.version + 1);
+        }
+        while(!current.compareAndSet(previous, next));
+
+        for(Listener listener: listeners)
+            listener.onPolicyChanged(next);
+    }
+
+    /**
+     * Create new policy
+     * @param maxFps Frame rate cap in Hz, or 0 for none
+     * @param minDivisor Smallest resolution divisor the renderer may use
+     * @param maxTier Highest quality tier the renderer may use
+     * @param paused Whether the animation is paused entirely
+     */
+    public RenderPolicy(int maxFps, float minDivisor, QualityTier maxTier, boolean paused)
+    {
+        this.version = 0;
+        this.maxFps = maxFps;
+        this.minDivisor = minDivisor;
+        this.maxTier = maxTier;
+        this.paused = paused;
+    }
+
+    private RenderPolicy(RenderPolicy other, long version)
+    {
+        this.version = version;
+        this.maxFps = other.maxFps;
+        this.minDivisor = other.minDivisor;
+        this.maxTier = other.maxTier;
+        this.paused = other.paused;
+    }
+
+    /**
+     * Whether this policy imposes the same limits as given one
+     */
+    public boolean hasSameLimits(RenderPolicy other)
+    {
+        return maxFps == other.maxFps && minDivisor == other.minDivisor && maxTier == other.maxTier
+                && paused == other.paused;
+    }
+
+    /**
+     * The version of this policy. Each published policy has a higher version than the
+     * previous one.
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Apply the frame rate cap to a configured frame rate
+     * @param fps Configured frame rate in Hz, or 0 for the native refresh rate
+     * @return The frame rate to use, or 0 for the native refresh rate
+     */
+    public int capFps(int fps)
+    {
+        if(maxFps <= 0)
+            return fps;
+
+        return fps <= 0 ? maxFps : Math.min(fps, maxFps);
+    }
+
+    /**
+     * Apply the resolution limit to a configured resolution divisor
+     */
+    public float clampDivisor(float divisor)
+    {
+        return Math.max(divisor, minDivisor);
+    }
+
+    /**
+     * Apply the quality limit to a configured quality tier
+     */
+    public QualityTier capTier(QualityTier tier)
+    {
+        return tier.ordinal() > maxTier.ordinal() ? maxTier : tier;
+    }
+
+    /**
+     * Whether the animation is paused entirely. The last frame stays on screen.
+     */
+    public boolean isPaused()
+    {
+        return paused;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "maxFps=" + maxFps + " minDivisor=" + minDivisor + " maxTier=" + maxTier + " paused=" + paused;
+    }
+}
@@ -1,17 +1,85 @@
 package com.constellations.android.livewallpaper;
 
 import android.opengl.GLES31;
-import android.util.Log;
-
-import java.nio.ByteBuffer;
+import com.constellations.android.util.Logger;
 
+/**
+ * A framebuffer object rendering to a texture. The texture has immutable storage of a
+ * {@link TargetFormat} and is taken from a {@link TexturePool}, so switching between a few
+ * sizes does not allocate anything.
+ */
 public class RenderTarget
 {
+    /**
+     * The attachment passed to glInvalidateFramebuffer
+     */
+    private static final int[] COLOR_ATTACHMENT = { GLES31.GL_COLOR_ATTACHMENT0 };
+
+    protected GLBackend gl;
+    protected GLState state;
+    protected TexturePool pool;
     protected int destTexture;
     protected int frameBuffer;
     protected boolean initialized = false;
     protected int previousBuffer;
-    protected Dimensions dims;  //< Dimensions in pixels
+    protected final Dimensions dims = new Dimensions();  //< Dimensions in pixels
+    protected TargetFormat format;
+
+    /**
+     * The format the texture was allocated with
+     */
+    protected TargetFormat textureFormat;
+
+    /**
+     * The filter the texture is sampled with, GL_NEAREST or GL_LINEAR
+     */
+    protected int filter = GLES31.GL_NEAREST;
+
+    /**
+     * Create new render target with given texture format. Its texture is not allocated until
+     * the first call to {@link #resize(Dimensions)}.
+     * @param state The state tracker of the context to create the render target in
+     * @param pool The pool the texture is taken from
+     * @param format The texture format. It has to be renderable on the context.
+     */
+    public RenderTarget(GLState state, TexturePool pool, TargetFormat format)
+    {
+        this.state = state;
+        this.gl = state.getBackend();
+        this.pool = pool;
+        this.format = format;
+    }
+
+    /**
+     * Change the texture format. This takes effect with the next call to
+     * {@link #resize(Dimensions)}.
+     */
+    public void setFormat(TargetFormat format)
+    {
+        this.format = format;
+    }
+
+    /**
+     * Change the filter the texture is sampled with
+     * @param filter GL_NEAREST or GL_LINEAR
+     */
+    public void setFilter(int filter)
+    {
+        if(filter == this.filter)
+            return;
+
+        this.filter = filter;
+
+        if(initialized)
+            applyFilter();
+    }
+
+    private void applyFilter()
+    {
+        state.bindTexture(GLES31.GL_TEXTURE0, destTexture);
+        gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MAG_FILTER, filter);
+        gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MIN_FILTER, filter);
+    }
 
     /**
      * Set this instance as the currently active render target. This will cause all
@@ -24,10 +92,10 @@ public class RenderTarget
         save_fbo();
 
         // Bind framebuffer
-        GLES31.glBindFramebuffer(GLES31.GL_FRAMEBUFFER, frameBuffer);
+        state.bindFramebuffer(frameBuffer);
 
         // Set viewport
-        GLES31.glViewport(0, 0, dims.getWidth(), dims.getHeight());
+        state.viewport(0, 0, dims.getWidth(), dims.getHeight());
     }
 
     /**
@@ -39,6 +107,41 @@ public class RenderTarget
         restore_fbo();
     }
 
+    /**
+     * Tell the driver that the current contents are not needed anymore. Tiled GPUs then do not
+     * load them into tile memory. Call this right after {@link #enable()} if the pass
+     * overwrites every pixel.
+     */
+    public void discard()
+    {
+        gl.glInvalidateFramebuffer(GLES31.GL_FRAMEBUFFER, 1, COLOR_ATTACHMENT, 0);
+    }
+
+    /**
+     * The handle of the framebuffer object
+     */
+    public int getFramebufferHandle()
+    {
+        return frameBuffer;
+    }
+
+    /**
+     * The format the texture is currently allocated with, or null if it is not allocated yet
+     */
+    public TargetFormat getTextureFormat()
+    {
+        return textureFormat;
+    }
+
+    /**
+     * The current dimensions in pixels, or null if the texture is not allocated yet. The
+     * instance is updated in place by {@link #resize(Dimensions)}.
+     */
+    public Dimensions getDimensions()
+    {
+        return initialized ? dims : null;
+    }
+
     public int getTexHandle()
     {
         return destTexture;
@@ -46,60 +149,58 @@ public class RenderTarget
 
     protected void save_fbo()
     {
-        int[] retVal = new int[1];
-        GLES31.glGetIntegerv(GLES31.GL_FRAMEBUFFER_BINDING, retVal, 0);
-        this.previousBuffer = retVal[0];
+        // Answered by the state tracker, so this does not stall the pipeline
+        this.previousBuffer = state.getFramebuffer();
     }
 
     protected void restore_fbo()
     {
-        GLES31.glBindFramebuffer(GLES31.GL_FRAMEBUFFER, 0 /*previousBuffer*/);
+        state.bindFramebuffer(previousBuffer);
         previousBuffer = 0;
     }
 
     /**
      * Change the dimension of the texture associated with the managed frame buffer object.
-     * @param d New texture dimensions
+     * The previous texture goes back to the pool, and the contents of the new one are
+     * undefined.
+     * @param d New texture dimensions. They are copied, so the caller may reuse the instance.
      */
     public void resize(Dimensions d)
     {
-        this.dims = d;
-
-        if(initialized)
+        if(initialized && d.getWidth() == dims.getWidth() && d.getHeight() == dims.getHeight()
+                && format == textureFormat)
         {
-            GLES31.glDeleteTextures(1, new int[]{destTexture}, 0);
+            return;
         }
 
-        // --- Destination texture
-        int[] texId = new int[1];
-        GLES31.glGenTextures(1, texId, 0);
-        this.destTexture = texId[0];
-
-        GLES31.glActiveTexture(GLES31.GL_TEXTURE0);
-        GLES31.glBindTexture(GLES31.GL_TEXTURE_2D, this.destTexture);
+        if(initialized)
+            pool.recycle(destTexture, dims.getWidth(), dims.getHeight(), textureFormat);
 
-        ByteBuffer buffer = ByteBuffer.allocate(dims.getWidth() * dims.getHeight() * 3);
+        dims.setWidth(d.getWidth());
+        dims.setHeight(d.getHeight());
+        this.textureFormat = format;
 
-        GLES31.glTexImage2D(GLES31.GL_TEXTURE_2D, 0, GLES31.GL_RGB, d.getWidth(), d.getHeight(), 0, GLES31.GL_RGB, GLES31.GL_UNSIGNED_BYTE, buffer);
+        // --- Destination texture
+        this.destTexture = pool.acquire(d.getWidth(), d.getHeight(), format);
 
-        GLES31.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MAG_FILTER, GLES31.GL_NEAREST);
-        GLES31.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MIN_FILTER, GLES31.GL_NEAREST);
+        // Pooled textures may have been used with another filter
+        applyFilter();
         // ---
 
         if(!initialized)
         {
-            Log.d("RenderTarget", "Creating frame buffer object");
+            Logger.d("RenderTarget", "Creating frame buffer object");
 
             // --- Framebuffer object
             int[] fbo = new int[1];
-            GLES31.glGenFramebuffers(1, fbo, 0);
+            gl.glGenFramebuffers(1, fbo, 0);
             this.frameBuffer = fbo[0];
             // ---
         }
 
         save_fbo();
-        GLES31.glBindFramebuffer(GLES31.GL_FRAMEBUFFER, this.frameBuffer);
-        GLES31.glFramebufferTexture2D(GLES31.GL_FRAMEBUFFER, GLES31.GL_COLOR_ATTACHMENT0, GLES31.GL_TEXTURE_2D, destTexture, 0);
+        state.bindFramebuffer(this.frameBuffer);
+        gl.glFramebufferTexture2D(GLES31.GL_FRAMEBUFFER, GLES31.GL_COLOR_ATTACHMENT0, GLES31.GL_TEXTURE_2D, destTexture, 0);
         restore_fbo();
 
         initialized = true;
@@ -120,7 +221,6 @@ public class RenderTarget
      */
     public void useTexture(int texUnit)
     {
-        GLES31.glActiveTexture(texUnit);
-        GLES31.glBindTexture(GLES31.GL_TEXTURE_2D, destTexture);
+        state.bindTexture(texUnit, destTexture);
     }
 }
@@ -0,0 +1,87 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * {@link FrameClock} playing back a script of frame timestamps, for reproducible benchmark
+ * runs and comparisons against golden frames. Frame n shows the scene at the n-th timestamp,
+ * no matter how long rendering takes. After the last timestamp, the clock stays there.
+ */
+public class ReplayFrameClock implements FrameClock
+{
+    /**
+     * Scene timestamps of all frames in nanoseconds
+     */
+    private final long[] timestamps;
+
+    /**
+     * Index of the current frame, or -1 before the first one
+     */
+    private int frame = -1;
+
+    /**
+     * Create clock replaying given timestamps
+     * @param timestamps Scene time of each frame in nanoseconds. Values beyond the scene period
+     * wrap around.
+     */
+    public ReplayFrameClock(long[] timestamps)
+    {
+        if(timestamps.length == 0)
+            throw new IllegalArgumentException("At least one timestamp is required");
+
+        this.timestamps = timestamps.clone();
+    }
+
+    /**
+     * Create clock stepping through the scene at a fixed frame rate
+     * @param start Scene time of the first frame in seconds
+     * @param fps Frame rate in Hz
+     * @param frames Number of frames
+     */
+    public static ReplayFrameClock fixedRate(float start, float fps, int frames)
+    {
+        final long[] timestamps = new long[frames];
+        final long first = (long)(start * 1e9);
+
+        for(int i = 0; i < frames; ++i)
+            timestamps[i] = first + (long)(i * 1e9 / fps);
+
+        return new ReplayFrameClock(timestamps);
+    }
+
+    @Override
+    public void beginFrame()
+    {
+        if(frame < timestamps.length - 1)
+            ++frame;
+    }
+
+    @Override
+    public float getSceneTime()
+    {
+        final long time = timestamps[Math.max(frame, 0)] % PERIOD_NANOS;
+        return (time < 0 ? time + PERIOD_NANOS : time) / 1e9f;
+    }
+
+    /**
+     * Index of the current frame, or -1 before the first one
+     */
+    public int getFrame()
+    {
+        return frame;
+    }
+
+    /**
+     * Whether the last scripted frame was reached
+     */
+    public boolean isFinished()
+    {
+        return frame == timestamps.length - 1;
+    }
+
+    /**
+     * Start over with the first timestamp
+     */
+    public void rewind()
+    {
+        frame = -1;
+    }
+}
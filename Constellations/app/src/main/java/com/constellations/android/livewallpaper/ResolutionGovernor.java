@@ -0,0 +1,231 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * Closed-loop controller choosing the resolution divisor of the first render pass so that
+ * the measured frame cost stays close to a target frame time.
+ *
+ * Frame cost samples are averaged over a window of frames. If a window is over budget, the
+ * divisor is increased by one step. If there is enough headroom, it is decreased again.
+ * Changes are rate limited, and raising the quality needs a bigger margin than lowering it
+ * (hysteresis), so the resolution does not oscillate.
+ *
+ * When only frame intervals are available (no GPU timer), the measured cost can never fall
+ * below the display refresh interval, so headroom is not observable. In that case the
+ * governor periodically probes the next higher quality step and backs off exponentially
+ * if the probe turns out to be over budget.
+ */
+public class ResolutionGovernor
+{
+    /**
+     * All divisors the governor can choose from, from highest to lowest quality
+     */
+    private static final float[] LADDER = { 1.f, 1.5f, 2.f, 3.f, 4.f, 6.f, 8.f };
+
+    /**
+     * Number of frames averaged before a decision is made
+     */
+    private static final int WINDOW = 30;
+
+    /**
+     * A window is over budget if its average exceeds the target by this factor
+     */
+    private static final float OVER_BUDGET = 1.15f;
+
+    /**
+     * A window has headroom if its average is below the target by this factor
+     */
+    private static final float HEADROOM = .65f;
+
+    /**
+     * Minimum time between two resolution changes, in milliseconds
+     */
+    private static final long MIN_CHANGE_INTERVAL = 2000;
+
+    /**
+     * Minimum time before the quality is raised after the last change, in milliseconds
+     */
+    private static final long MIN_RAISE_INTERVAL = 5000;
+
+    /**
+     * Initial and maximum time between two probes, in milliseconds
+     */
+    private static final long MIN_PROBE_INTERVAL = 10000;
+    private static final long MAX_PROBE_INTERVAL = 120000;
+
+    /**
+     * Kind of frame cost samples fed into the governor
+     */
+    public enum Source
+    {
+        /**
+         * GPU execution time of the frame, from timer queries
+         */
+        GPU_TIME,
+
+        /**
+         * Time between two consecutive frames, measured on the CPU
+         */
+        FRAME_INTERVAL
+    }
+
+    private float targetFrameTime;
+    private int minLevel;
+    private int maxLevel;
+    private int level;
+    private Source source = Source.FRAME_INTERVAL;
+
+    private float windowSum;
+    private int windowCount;
+
+    /**
+     * Whether the first window after a change should be discarded, since it contains the
+     * cost of the resize itself
+     */
+    private boolean warmup;
+
+    private long lastChange;
+    private long probeInterval = MIN_PROBE_INTERVAL;
+
+    /**
+     * Whether the last change was a probe that still has to prove itself
+     */
+    private boolean probing;
+
+    /**
+     * Configure the governor
+     * @param targetFrameTime Target frame time in milliseconds
+     * @param minDivisor The smallest divisor (highest quality) the governor may choose
+     * @param maxDivisor The largest divisor (lowest quality) the governor may choose
+     * @param initialDivisor The divisor to start with
+     * @param now The current time in milliseconds
+     */
+    public void configure(float targetFrameTime, float minDivisor, float maxDivisor, float initialDivisor, long now)
+    {
+        this.targetFrameTime = targetFrameTime;
+        this.minLevel = levelOf(Math.min(minDivisor, maxDivisor));
+        this.maxLevel = levelOf(Math.max(minDivisor, maxDivisor));
+        this.level = Math.max(minLevel, Math.min(maxLevel, levelOf(initialDivisor)));
+
+        restart(now);
+        probeInterval = MIN_PROBE_INTERVAL;
+        probing = false;
+    }
+
+    /**
+     * Set the kind of samples that will be passed to {@link #update(float, long)}
+     */
+    public void setSource(Source source)
+    {
+        if(this.source != source)
+        {
+            this.source = source;
+            windowSum = 0.f;
+            windowCount = 0;
+        }
+    }
+
+    /**
+     * The currently chosen resolution divisor
+     */
+    public float getDivisor()
+    {
+        return LADDER[level];
+    }
+
+    /**
+     * Feed a frame cost sample into the governor
+     * @param frameCost Frame cost in milliseconds, of the kind set by {@link #setSource(Source)}
+     * @param now The current time in milliseconds
+     * @return Whether the divisor changed
+     */
+    public boolean update(float frameCost, long now)
+    {
+        windowSum += frameCost;
+
+        if(++windowCount < WINDOW)
+            return false;
+
+        final float average = windowSum / windowCount;
+        windowSum = 0.f;
+        windowCount = 0;
+
+        if(warmup)
+        {
+            warmup = false;
+            return false;
+        }
+
+        final long sinceChange = now - lastChange;
+
+        if(average > targetFrameTime * OVER_BUDGET)
+        {
+            if(probing)
+            {
+                // The probe failed, go back and wait longer before the next one
+                probing = false;
+                probeInterval = Math.min(probeInterval * 2, MAX_PROBE_INTERVAL);
+                return change(level + 1, now);
+            }
+
+            if(sinceChange >= MIN_CHANGE_INTERVAL)
+                return change(level + 1, now);
+
+            return false;
+        }
+
+        if(probing)
+        {
+            // The probe survived a full window in budget
+            probing = false;
+            probeInterval = MIN_PROBE_INTERVAL;
+        }
+
+        if(source == Source.GPU_TIME)
+        {
+            if(average < targetFrameTime * HEADROOM && sinceChange >= MIN_RAISE_INTERVAL)
+                return change(level - 1, now);
+        }
+        else if(sinceChange >= probeInterval && level > minLevel)
+        {
+            probing = true;
+            return change(level - 1, now);
+        }
+
+        return false;
+    }
+
+    private boolean change(int newLevel, long now)
+    {
+        newLevel = Math.max(minLevel, Math.min(maxLevel, newLevel));
+
+        if(newLevel == level)
+            return false;
+
+        level = newLevel;
+        restart(now);
+        return true;
+    }
+
+    private void restart(long now)
+    {
+        windowSum = 0.f;
+        windowCount = 0;
+        warmup = true;
+        lastChange = now;
+    }
+
+    /**
+     * Find the ladder step closest to given divisor
+     */
+    private static int levelOf(float divisor)
+    {
+        int best = 0;
+        for(int i = 1; i < LADDER.length; ++i)
+        {
+            if(Math.abs(LADDER[i] - divisor) < Math.abs(LADDER[best] - divisor))
+                best = i;
+        }
+
+        return best;
+    }
+}
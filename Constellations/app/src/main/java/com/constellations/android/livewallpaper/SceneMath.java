@@ -0,0 +1,165 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * Java ports of the scalar helper functions used by the scene fragment shader
+ * (res/raw/shader_fragment.glsl). All transcendental functions go through {@link StrictMath}
+ * so that results are bit-for-bit reproducible on every JVM.
+ */
+public final class SceneMath
+{
+    /**
+     * Number of parallax layers the scene shader renders by default (NUM_LAYERS)
+     */
+    public static final int NUM_LAYERS = 4;
+
+    /**
+     * Length of the scene cycle in seconds. The shader fades the whole image in and out
+     * based on mod(iTime, 230.)
+     */
+    public static final float SCENE_PERIOD = 230.f;
+
+    private SceneMath()
+    {
+    }
+
+    /**
+     * GLSL fract(x)
+     */
+    public static float fract(float x)
+    {
+        return x - (float)Math.floor(x);
+    }
+
+    /**
+     * GLSL mod(x, y)
+     */
+    public static float mod(float x, float y)
+    {
+        return x - y * (float)Math.floor(x / y);
+    }
+
+    /**
+     * GLSL mix(a, b, t)
+     */
+    public static float mix(float a, float b, float t)
+    {
+        return a + (b - a) * t;
+    }
+
+    /**
+     * GLSL clamp(x, 0., 1.). A NaN argument results in 0, which is what GPUs do in practice,
+     * since max(NaN, 0.) returns the non-NaN operand there. The shader relies on this when
+     * drawing the line from a point to itself.
+     */
+    public static float clamp01(float x)
+    {
+        return x > 0.f ? (x < 1.f ? x : 1.f) : 0.f;
+    }
+
+    /**
+     * GLSL smoothstep(edge0, edge1, x). Like most GPU implementations, this also works for
+     * edge0 > edge1, which the shader uses to express falloffs.
+     */
+    public static float smoothstep(float edge0, float edge1, float x)
+    {
+        final float t = clamp01((x - edge0) / (edge1 - edge0));
+        return t * t * (3.f - 2.f * t);
+    }
+
+    public static float sin(float x)
+    {
+        return (float)StrictMath.sin(x);
+    }
+
+    public static float cos(float x)
+    {
+        return (float)StrictMath.cos(x);
+    }
+
+    public static float pow(float x, float y)
+    {
+        return (float)StrictMath.pow(x, y);
+    }
+
+    public static float length(float x, float y)
+    {
+        return (float)Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Port of N21: hashes a 2D cell id to a pseudo random value in [0, 1)
+     */
+    public static float n21(float px, float py)
+    {
+        float p3x = fract(px * 443.897f);
+        float p3y = fract(py * 441.423f);
+        float p3z = fract(px * 437.195f);
+
+        final float d = p3x * (p3y + 19.19f) + p3y * (p3z + 19.19f) + p3z * (p3x + 19.19f);
+        p3x += d;
+        p3y += d;
+        p3z += d;
+
+        return fract((p3x + p3y) * p3z);
+    }
+
+    /**
+     * Port of GetPos: calculates the animated position of the point belonging to the cell
+     * id + offs, relative to the cell id. The result is stored in out[index] and out[index + 1].
+     */
+    public static void getPos(float idX, float idY, float offsX, float offsY, float t, float[] out, int index)
+    {
+        final float n = n21(idX + offsX, idY + offsY);
+        final float n1 = fract(n * 10.f);
+        final float n2 = fract(n * 100.f);
+        final float a = t + n;
+
+        out[index] = offsX + sin(a * n1) * .4f;
+        out[index + 1] = offsY + cos(a * n2) * .4f;
+    }
+
+    /**
+     * Port of df_line: distance from p to the line segment a-b
+     */
+    public static float lineDistance(float ax, float ay, float bx, float by, float px, float py)
+    {
+        final float pax = px - ax, pay = py - ay;
+        final float bax = bx - ax, bay = by - ay;
+        final float h = clamp01((pax * bax + pay * bay) / (bax * bax + bay * bay));
+
+        return length(pax - bax * h, pay - bay * h);
+    }
+
+    /**
+     * Port of line: intensity of the segment a-b at position p
+     */
+    public static float line(float ax, float ay, float bx, float by, float px, float py)
+    {
+        final float d = lineDistance(ax, ay, bx, by, px, py);
+        final float d2 = length(ax - bx, ay - by);
+
+        float fade = smoothstep(1.5f, .5f, d2);
+        fade += smoothstep(.05f, .02f, Math.abs(d2 - .75f));
+
+        return smoothstep(.04f, .01f, d) * fade;
+    }
+
+    /**
+     * Brightness pulse applied to the sparkle of a point at position (px, py)
+     */
+    public static float sparklePulse(float px, float py, float t)
+    {
+        final float pulse = sin((fract(px) + fract(py) + t) * 5.f) * .4f + .6f;
+        return pow(pulse, 20.f);
+    }
+
+    /**
+     * Layer-wide sparkle intensity (sPhase in NetLayer)
+     */
+    public static float sparklePhase(float n, float t)
+    {
+        float phase = (sin(t + n) + sin(t * .1f)) * .25f + .5f;
+        phase += pow(sin(t * .1f) * .5f + .5f, 50.f) * 5.f;
+        return phase;
+    }
+}
@@ -0,0 +1,190 @@
+package com.constellations.android.livewallpaper;
+
+import com.constellations.android.R;
+
+/**
+ * All shader programs the renderer needs. They are built together, so they can be handed
+ * from the thread that built them to the render thread in one go.
+ *
+ * Programs built on one context of a share group can be used by the renderers of all other
+ * contexts in the group through views created with {@link #share(GLState)}.
+ */
+public class ScenePrograms
+{
+    private final QualityTier tier;
+
+    private final ShaderProgram firstPass;
+    private final ShaderProgram secondPass;
+    private final ShaderProgram upscaleEdge;
+    private final ShaderProgram resolve;
+    private final ShaderProgram position;
+    private final ShaderProgram geometry;
+    private final ShaderProgram compose;
+    private final ShaderProgram layerComposite;
+    private final ShaderProgram playback;
+
+    /**
+     * Build all programs
+     * @param programs The factory to create the programs with
+     * @param tier The quality tier to build the scene programs for
+     * @throws ShaderException If a program could not be built
+     */
+    public ScenePrograms(ProgramFactory programs, QualityTier tier) throws ShaderException
+    {
+        final ShaderDefines defines = tier.getDefines();
+
+        this.tier = tier;
+
+        firstPass = programs.create(R.raw.shader_vertex, R.raw.shader_fragment, defines);
+        secondPass = programs.create(R.raw.quad_vertex, R.raw.quad_fragment);
+        upscaleEdge = programs.create(R.raw.quad_vertex, R.raw.upscale_edge_fragment);
+        resolve = programs.create(R.raw.shader_vertex, R.raw.resolve_fragment);
+        position = programs.createCompute(R.raw.position_compute, defines);
+        geometry = programs.create(R.raw.geometry_vertex, R.raw.geometry_fragment, defines);
+        compose = programs.create(R.raw.shader_vertex, R.raw.compose_fragment, defines);
+        layerComposite = programs.create(R.raw.shader_vertex, R.raw.layer_composite_fragment, defines);
+        playback = programs.create(R.raw.quad_vertex, R.raw.playback_fragment);
+    }
+
+    /**
+     * Create view of given programs
+     */
+    private ScenePrograms(ScenePrograms shared, GLState state)
+    {
+        tier = shared.tier;
+
+        firstPass = new ShaderProgram(shared.firstPass, state);
+        secondPass = new ShaderProgram(shared.secondPass, state);
+        upscaleEdge = new ShaderProgram(shared.upscaleEdge, state);
+        resolve = new ShaderProgram(shared.resolve, state);
+        position = new ShaderProgram(shared.position, state);
+        geometry = new ShaderProgram(shared.geometry, state);
+        compose = new ShaderProgram(shared.compose, state);
+        layerComposite = new ShaderProgram(shared.layerComposite, state);
+        playback = new ShaderProgram(shared.playback, state);
+    }
+
+    /**
+     * The quality tier the scene programs were built for
+     */
+    public QualityTier getTier()
+    {
+        return tier;
+    }
+
+    /**
+     * Create a view of the programs for a context of the same share group. The view uses the
+     * state tracker of that context. The programs stay owned by this instance, so the view
+     * has to be dropped with {@link #detach()} before they are released.
+     * @param state The state tracker of the render context
+     */
+    public ScenePrograms share(GLState state)
+    {
+        return new ScenePrograms(this, state);
+    }
+
+    /**
+     * Stop using a view created with {@link #share(GLState)}, without deleting the programs
+     */
+    public void detach()
+    {
+        firstPass.detach();
+        secondPass.detach();
+        upscaleEdge.detach();
+        resolve.detach();
+        position.detach();
+        geometry.detach();
+        compose.detach();
+        layerComposite.detach();
+        playback.detach();
+    }
+
+    /**
+     * Delete all programs
+     */
+    public void release()
+    {
+        firstPass.release();
+        secondPass.release();
+        upscaleEdge.release();
+        resolve.release();
+        position.release();
+        geometry.release();
+        compose.release();
+        layerComposite.release();
+        playback.release();
+    }
+
+    /**
+     * The per-pixel scene program
+     */
+    public ShaderProgram getFirstPass()
+    {
+        return firstPass;
+    }
+
+    /**
+     * The program upscaling the render target to the screen
+     */
+    public ShaderProgram getSecondPass()
+    {
+        return secondPass;
+    }
+
+    /**
+     * The program upscaling the render target to the screen with
+     * {@link UpscaleFilter#EDGE_ADAPTIVE}
+     */
+    public ShaderProgram getUpscaleEdge()
+    {
+        return upscaleEdge;
+    }
+
+    /**
+     * The program recombining interleaved fields, see {@link InterleaveMode}
+     */
+    public ShaderProgram getResolve()
+    {
+        return resolve;
+    }
+
+    /**
+     * The compute program of the {@link PointPositionPass}
+     */
+    public ShaderProgram getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * The accumulation program of the {@link GeometryRenderer}
+     */
+    public ShaderProgram getGeometry()
+    {
+        return geometry;
+    }
+
+    /**
+     * The compose program of the {@link GeometryRenderer}
+     */
+    public ShaderProgram getCompose()
+    {
+        return compose;
+    }
+
+    /**
+     * The composite program of the {@link LayerCache}
+     */
+    public ShaderProgram getLayerComposite()
+    {
+        return layerComposite;
+    }
+
+    /**
+     * The program of the {@link LoopPlayer}
+     */
+    public ShaderProgram getPlayback()
+    {
+        return playback;
+    }
+}
@@ -0,0 +1,83 @@
+package com.constellations.android.livewallpaper;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A set of preprocessor defines selecting a shader variant. The defines are injected right
+ * after the #version line of each shader source, which has to stay the first line.
+ *
+ * The injected source is part of the program cache key, so every define set gets its own
+ * cached program binary.
+ */
+public class ShaderDefines
+{
+    /**
+     * The defines, sorted by name so equal sets always produce the same source
+     */
+    private final Map<String, String> values = new TreeMap<>();
+
+    /**
+     * Set define with given name
+     * @return This instance
+     */
+    public ShaderDefines set(String name, int value)
+    {
+        values.put(name, Integer.toString(value));
+        return this;
+    }
+
+    /**
+     * Set define with given name
+     * @return This instance
+     */
+    public ShaderDefines set(String name, boolean value)
+    {
+        return set(name, value ? 1 : 0);
+    }
+
+    /**
+     * Retrieve the value of given define
+     * @param name Name of the define
+     * @param fallback Value returned if the define is not set
+     */
+    public int getInt(String name, int fallback)
+    {
+        final String value = values.get(name);
+        return value == null ? fallback : Integer.parseInt(value);
+    }
+
+    /**
+     * Inject the defines into given shader source
+     * @param source The shader source
+     * @return The source with the defines following the #version line
+     */
+    public String apply(String source)
+    {
+        if(values.isEmpty())
+            return source;
+
+        final StringBuilder defines = new StringBuilder();
+        for(Map.Entry<String, String> entry: values.entrySet())
+            defines.append("#define ").append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+
+        // The #version directive has to come before anything else
+        final int version = source.indexOf("#version");
+
+        if(version < 0)
+            return defines + source;
+
+        final int lineEnd = source.indexOf('\n', version);
+
+        if(lineEnd < 0)
+            return source + '\n' + defines;
+
+        return source.substring(0, lineEnd + 1) + defines + source.substring(lineEnd + 1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return values.toString();
+    }
+}
@@ -2,16 +2,32 @@ package com.constellations.android.livewallpaper;
 
 import android.content.Context;
 import android.opengl.GLES31;
-import android.util.Log;
+import com.constellations.android.util.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A class managing the creation and usage of a OpenGL program object.
  */
 public class ShaderProgram
 {
+    /**
+     * The GL backend all calls are issued through
+     */
+    protected GLBackend gl;
+
+    /**
+     * The state tracker of the context this program is used in
+     */
+    protected GLState state;
+
     /**
      * The native OpenGL handle of this program object
      */
@@ -22,14 +38,35 @@ public class ShaderProgram
      */
     protected boolean isLinked;
 
+    /**
+     * All active uniforms outside of uniform blocks, by name. This is filled once the program
+     * was linked.
+     */
+    protected final Map<String, Uniform> uniforms = new HashMap<>();
+
+    /**
+     * Indices of all active uniform blocks, by name. This is filled once the program was linked.
+     */
+    protected final Map<String, Integer> uniformBlocks = new HashMap<>();
+
+    /**
+     * The native OpenGL handles of the shader objects attached to the program object. They
+     * are only needed until the program is linked.
+     */
+    protected final List<Integer> shaders = new ArrayList<>();
+
     /**
      * Create new empty shader program object
+     * @param state The state tracker of the context to create the program in
      */
-    public ShaderProgram() throws ShaderException
+    public ShaderProgram(GLState state) throws ShaderException
     {
+        this.state = state;
+        this.gl = state.getBackend();
+
         // Attempt to create shader program object and check if it
         // succeeded
-        handle = GLES31.glCreateProgram();
+        handle = gl.glCreateProgram();
 
         if(handle == 0)
         {
@@ -37,6 +74,33 @@ public class ShaderProgram
         }
     }
 
+    /**
+     * Create a view of a linked program for use on another context. Program objects are
+     * shared between all contexts of a share group, so a program built on one context can be
+     * used on any other context of the group. The view refers to the same program object, but
+     * uses the state tracker of its own context and has its own cache of uniform values.
+     * @param shared The linked program
+     * @param state The state tracker of the context the view will be used in
+     */
+    public ShaderProgram(ShaderProgram shared, GLState state)
+    {
+        if(!shared.isLinked)
+            throw new IllegalStateException("Tried to share a program object that was not linked yet");
+
+        this.state = state;
+        this.gl = state.getBackend();
+        this.handle = shared.handle;
+        this.isLinked = true;
+
+        for(Uniform uniform: shared.uniforms.values())
+        {
+            uniforms.put(uniform.getName(),
+                    new Uniform(gl, handle, uniform.getName(), uniform.getLocation(), uniform.getType()));
+        }
+
+        uniformBlocks.putAll(shared.uniformBlocks);
+    }
+
     /**
      * Mark the program object managed by this instance as the currently used program
      */
@@ -44,7 +108,7 @@ public class ShaderProgram
     {
         if(isLinked)
         {
-            GLES31.glUseProgram(handle);
+            state.useProgram(handle);
         }
         else
         {
@@ -60,11 +124,23 @@ public class ShaderProgram
      * @throws ShaderException
      */
     public void attachShader(ShaderType type, Context context, int resourceId) throws ShaderException
+    {
+        attachShader(type, loadSource(context, resourceId));
+    }
+
+    /**
+     * Read shader source code from resource with given ID
+     * @param context Context used to retrieve resource
+     * @param resourceId Resource id of shader source code file
+     * @return The shader source code
+     * @throws ShaderException If the resource could not be read
+     */
+    public static String loadSource(Context context, int resourceId) throws ShaderException
     {
         // Open resource stream
         InputStream stream = context.getResources().openRawResource(resourceId);
 
-        // Read contents and attach as shader
+        // Read contents
         try
         {
             java.util.Scanner s = new java.util.Scanner(stream).useDelimiter("\\A");
@@ -72,7 +148,7 @@ public class ShaderProgram
 
             stream.close();
 
-            attachShader(type, contents);
+            return contents;
         }
         catch(IOException e)
         {
@@ -90,34 +166,37 @@ public class ShaderProgram
     public void attachShader(ShaderType type, String source) throws ShaderException
     {
         // Create empty shader object
-        int shaderHandle = GLES31.glCreateShader(type.getOpenglValue());
+        int shaderHandle = gl.glCreateShader(type.getOpenglValue());
 
         // Check for success
         if(shaderHandle != 0)
         {
             // Attach shader source and attempt to compile it
-            GLES31.glShaderSource(shaderHandle, source);
-            GLES31.glCompileShader(shaderHandle);
+            gl.glShaderSource(shaderHandle, source);
+            gl.glCompileShader(shaderHandle);
 
             // Check for success
             int[] status = new int[1];
-            GLES31.glGetShaderiv(shaderHandle, GLES31.GL_COMPILE_STATUS, status, 0);
+            gl.glGetShaderiv(shaderHandle, GLES31.GL_COMPILE_STATUS, status, 0);
 
             if(status[0] == 0)
             {
                 // Retrieve compile log
-                String shaderLog = GLES31.glGetShaderInfoLog(shaderHandle);
+                String shaderLog = gl.glGetShaderInfoLog(shaderHandle);
 
                 // Build error message and signal error
                 String error = "Failed to compile shader:\n" + shaderLog;
 
-                Log.d("ShaderProgram", error);
+                Logger.d("ShaderProgram", error);
+
+                gl.glDeleteShader(shaderHandle);
                 throw new ShaderException(error);
             }
             else
             {
                 // Everything went okay, attach it to the program object
-                GLES31.glAttachShader(handle, shaderHandle);
+                gl.glAttachShader(handle, shaderHandle);
+                shaders.add(shaderHandle);
             }
         }
         else
@@ -149,34 +228,240 @@ public class ShaderProgram
         {
             for(int i = 0; i < attributes.length; ++i)
             {
-                GLES31.glBindAttribLocation(handle, i, attributes[i]);
+                gl.glBindAttribLocation(handle, i, attributes[i]);
             }
         }
 
-        // Attempt to link program
-        GLES31.glLinkProgram(handle);
+        // Attempt to link program. The linked program does not need the shader objects
+        // anymore, and a program that failed to link is discarded.
+        gl.glLinkProgram(handle);
+        deleteShaders();
 
         // Check for success
         int[] status = new int[1];
-        GLES31.glGetProgramiv(handle, GLES31.GL_LINK_STATUS, status, 0);
+        gl.glGetProgramiv(handle, GLES31.GL_LINK_STATUS, status, 0);
 
         if(status[0] == 0)
         {
             // Retrieve link log
-            String programLog = GLES31.glGetProgramInfoLog(handle);
+            String programLog = gl.glGetProgramInfoLog(handle);
 
             // Build error message and signal error
             String error = "Failed to link shader program:\n" + programLog;
 
-            Log.d("ShaderProgram", error);
+            Logger.d("ShaderProgram", error);
             throw new ShaderException(error);
         }
         else // Linking succeeded
         {
             isLinked = true;
+            introspect();
         }
     }
 
+    /**
+     * Ask the driver to keep the program binary retrievable after linking, so it can be saved
+     * with {@link #getBinary()}. This has to be called before the program is linked.
+     */
+    public void setBinaryRetrievable()
+    {
+        gl.glProgramParameteri(handle, GLES31.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES31.GL_TRUE);
+    }
+
+    /**
+     * Retrieve the binary of the linked program
+     * @return The binary, or null if the driver does not provide one
+     */
+    public ProgramBinaryCache.Entry getBinary()
+    {
+        if(!isLinked)
+            throw new IllegalStateException("Tried to retrieve binary of a program object that was not linked yet");
+
+        int[] length = new int[1];
+        int[] format = new int[1];
+
+        gl.glGetProgramiv(handle, GLES31.GL_PROGRAM_BINARY_LENGTH, length, 0);
+
+        if(length[0] <= 0)
+            return null;
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+        gl.glGetProgramBinary(handle, length[0], length, 0, format, 0, buffer);
+
+        if(length[0] <= 0)
+            return null;
+
+        byte[] data = new byte[length[0]];
+        buffer.get(data);
+
+        return new ProgramBinaryCache.Entry(format[0], data);
+    }
+
+    /**
+     * Load a previously retrieved program binary instead of linking attached shaders. The
+     * driver may reject the binary, for example after a driver update. In that case the
+     * program stays unlinked, and can still be built from source.
+     * @param binary The program binary
+     * @return Whether the binary was accepted
+     */
+    public boolean loadBinary(ProgramBinaryCache.Entry binary)
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(binary.getData().length).order(ByteOrder.nativeOrder());
+        buffer.put(binary.getData());
+        buffer.position(0);
+
+        gl.glProgramBinary(handle, binary.getFormat(), buffer, binary.getData().length);
+
+        int[] status = new int[1];
+        gl.glGetProgramiv(handle, GLES31.GL_LINK_STATUS, status, 0);
+
+        if(status[0] == 0)
+            return false;
+
+        // Shaders attached before are not part of the loaded program
+        deleteShaders();
+
+        isLinked = true;
+        introspect();
+        return true;
+    }
+
+    /**
+     * Detach and delete all attached shader objects
+     */
+    protected void deleteShaders()
+    {
+        for(int shader: shaders)
+        {
+            gl.glDetachShader(handle, shader);
+            gl.glDeleteShader(shader);
+        }
+
+        shaders.clear();
+    }
+
+    /**
+     * Enumerate all active uniforms and uniform blocks of the linked program and cache their
+     * locations and indices
+     */
+    protected void introspect()
+    {
+        uniforms.clear();
+        uniformBlocks.clear();
+
+        int[] count = new int[1];
+        int[] size = new int[1];
+        int[] type = new int[1];
+
+        gl.glGetProgramiv(handle, GLES31.GL_ACTIVE_UNIFORMS, count, 0);
+
+        for(int i = 0; i < count[0]; ++i)
+        {
+            String name = gl.glGetActiveUniform(handle, i, size, 0, type, 0);
+
+            if(name == null || name.isEmpty())
+                continue;
+
+            // Arrays are reported with the subscript of their first element
+            if(name.endsWith("[0]"))
+                name = name.substring(0, name.length() - 3);
+
+            // Members of uniform blocks do not have a location
+            final int location = gl.glGetUniformLocation(handle, name);
+
+            if(location >= 0)
+                uniforms.put(name, new Uniform(gl, handle, name, location, type[0]));
+        }
+
+        gl.glGetProgramiv(handle, GLES31.GL_ACTIVE_UNIFORM_BLOCKS, count, 0);
+
+        for(int i = 0; i < count[0]; ++i)
+        {
+            final String name = gl.glGetActiveUniformBlockName(handle, i);
+
+            if(name != null && !name.isEmpty())
+                uniformBlocks.put(name, i);
+        }
+    }
+
+    /**
+     * Retrieve the uniform with given name. Uniforms are resolved when the program is linked,
+     * so this does not query the driver for active uniforms. The returned instance should be
+     * kept by the caller.
+     * @param name Name of the uniform
+     * @return The uniform. If there is no such active uniform, the returned instance ignores
+     * all values set on it.
+     */
+    public Uniform getUniform(String name)
+    {
+        if(!isLinked)
+            throw new IllegalStateException("Tried to retrieve uniform of a program object that was not linked yet");
+
+        Uniform uniform = uniforms.get(name);
+
+        if(uniform == null)
+        {
+            // Not reported by the introspection. Ask the driver once and remember the result.
+            uniform = new Uniform(gl, handle, name, gl.glGetUniformLocation(handle, name), 0);
+            uniforms.put(name, uniform);
+        }
+
+        return uniform;
+    }
+
+    /**
+     * Assign the uniform block with given name to given uniform buffer binding point
+     * @param name Name of the uniform block
+     * @param binding The uniform buffer binding point
+     * @return Whether the block is active in this program
+     */
+    public boolean bindUniformBlock(String name, int binding)
+    {
+        if(!isLinked)
+            throw new IllegalStateException("Tried to bind uniform block of a program object that was not linked yet");
+
+        Integer index = uniformBlocks.get(name);
+
+        if(index == null)
+        {
+            final int queried = gl.glGetUniformBlockIndex(handle, name);
+
+            if(queried == GLES31.GL_INVALID_INDEX)
+                return false;
+
+            index = queried;
+            uniformBlocks.put(name, index);
+        }
+
+        gl.glUniformBlockBinding(handle, index, binding);
+        return true;
+    }
+
+    /**
+     * Stop using this instance without deleting the program object, which is still in use
+     * elsewhere. This instance must not be used afterwards.
+     */
+    public void detach()
+    {
+        state.programDeleted(handle);
+        handle = 0;
+        isLinked = false;
+    }
+
+    /**
+     * Delete the program object. This instance must not be used afterwards.
+     */
+    public void release()
+    {
+        if(state != null)
+            state.programDeleted(handle);
+
+        deleteShaders();
+        gl.glDeleteProgram(handle);
+        handle = 0;
+        isLinked = false;
+    }
+
     /**
      * The native OpenGL handle of this program object
      */
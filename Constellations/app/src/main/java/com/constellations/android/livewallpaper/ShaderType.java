@@ -9,7 +9,8 @@ import android.opengl.GLES31;
 public enum ShaderType
 {
     FRAGMENT_SHADER(GLES31.GL_FRAGMENT_SHADER),
-    VERTEX_SHADER(GLES31.GL_VERTEX_SHADER);
+    VERTEX_SHADER(GLES31.GL_VERTEX_SHADER),
+    COMPUTE_SHADER(GLES31.GL_COMPUTE_SHADER);
 
     ShaderType(int value)
     {
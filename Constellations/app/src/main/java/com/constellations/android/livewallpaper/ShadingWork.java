@@ -0,0 +1,82 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * Counts the work the scene fragment shader performs, as measured by the reference renderer.
+ */
+public class ShadingWork
+{
+    /**
+     * Number of shaded pixels
+     */
+    public long pixels;
+
+    /**
+     * Number of NetLayer evaluations
+     */
+    public long layers;
+
+    /**
+     * Number of N21 hash evaluations
+     */
+    public long hashes;
+
+    /**
+     * Number of GetPos evaluations
+     */
+    public long positions;
+
+    /**
+     * Number of line segment evaluations
+     */
+    public long lines;
+
+    /**
+     * Number of sparkle (1/d^2) evaluations
+     */
+    public long sparkles;
+
+    /**
+     * Add all counters of given instance to this one
+     * @param other Counters to add
+     */
+    public void add(ShadingWork other)
+    {
+        pixels += other.pixels;
+        layers += other.layers;
+        hashes += other.hashes;
+        positions += other.positions;
+        lines += other.lines;
+        sparkles += other.sparkles;
+    }
+
+    /**
+     * Reset all counters to zero
+     */
+    public void clear()
+    {
+        pixels = layers = hashes = positions = lines = sparkles = 0;
+    }
+
+    /**
+     * Average number of line segment evaluations per pixel
+     */
+    public double linesPerPixel()
+    {
+        return pixels == 0 ? 0.0 : (double)lines / pixels;
+    }
+
+    /**
+     * Average number of GetPos evaluations per pixel
+     */
+    public double positionsPerPixel()
+    {
+        return pixels == 0 ? 0.0 : (double)positions / pixels;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "pixels=" + pixels + ", layers=" + layers + ", hashes=" + hashes
+                + ", positions=" + positions + ", lines=" + lines + ", sparkles=" + sparkles;
+    }
+}
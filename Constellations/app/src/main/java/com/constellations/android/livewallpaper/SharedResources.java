@@ -0,0 +1,287 @@
+package com.constellations.android.livewallpaper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.opengl.GLSurfaceView;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.constellations.android.util.LoggerConfig;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * Resources shared by all wallpaper engines of the process. The system may run several
+ * engines at once, for example for the home screen, the lock screen and the preview, and
+ * none of them should pay again for what another one already set up.
+ *
+ * As an {@link GLSurfaceView.EGLContextFactory}, this puts the render contexts of all
+ * engines into one share group, rooted at the context of a single {@link ProgramCompiler}.
+ * The scene programs of each quality tier are built once on the compiler thread and
+ * reference-counted, and each renderer uses them through a view bound to its own state
+ * tracker. Objects that are not shared between contexts or depend on the surface size, like
+ * framebuffers, render targets and uniform buffers, stay with each renderer.
+ *
+ * This also owns the single listener publishing changed settings as a new
+ * {@link Configuration}.
+ *
+ * Each renderer calls {@link #acquire(Context)} once and {@link #release()} when its engine
+ * is destroyed. Everything is torn down when the last renderer is released.
+ */
+public class SharedResources implements GLSurfaceView.EGLContextFactory
+{
+    private static final String TAG = "SharedResources";
+
+    /**
+     * The instance of the process, or null if no renderer exists
+     */
+    private static SharedResources instance;
+
+    /**
+     * Number of renderers holding the instance
+     */
+    private static int references;
+
+    /**
+     * Scene programs of one quality tier and the number of renderers using them
+     */
+    private static class Entry
+    {
+        final Future<ScenePrograms> programs;
+        int references;
+
+        Entry(Future<ScenePrograms> programs)
+        {
+            this.programs = programs;
+        }
+    }
+
+    private final Context context;
+
+    private final SharedPreferences preferences;
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener listener =
+            new SharedPreferences.OnSharedPreferenceChangeListener()
+    {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key)
+        {
+            Configuration.update(sharedPreferences);
+        }
+    };
+
+    /**
+     * Builds the shared programs. Its context is the root of the share group. This is
+     * created along with the first render context, and is null before or if that failed.
+     */
+    private ProgramCompiler compiler;
+
+    /**
+     * The programs built for each quality tier that is in use
+     */
+    private final Map<QualityTier, Entry> programs = new EnumMap<>(QualityTier.class);
+
+    /**
+     * All render contexts that joined the share group
+     */
+    private final Set<EGLContext> sharedContexts = Collections.synchronizedSet(new HashSet<EGLContext>());
+
+    private SharedResources(Context context)
+    {
+        this.context = context;
+        this.preferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        preferences.registerOnSharedPreferenceChangeListener(listener);
+        Configuration.update(preferences);
+    }
+
+    /**
+     * Retrieve the instance of the process, creating it if necessary. Every call has to be
+     * paired with a call to {@link #release()}.
+     * @param c Any context of the application
+     */
+    public static synchronized SharedResources acquire(Context c)
+    {
+        if(instance == null)
+            instance = new SharedResources(c.getApplicationContext());
+
+        ++references;
+        return instance;
+    }
+
+    /**
+     * Give up a reference obtained by {@link #acquire(Context)}. The last one tears down the
+     * share group and unregisters the settings listener.
+     */
+    public void release()
+    {
+        synchronized(SharedResources.class)
+        {
+            if(instance != this || --references > 0)
+                return;
+
+            instance = null;
+        }
+
+        preferences.unregisterOnSharedPreferenceChangeListener(listener);
+
+        synchronized(this)
+        {
+            for(Entry entry: programs.values())
+                releaseLater(entry.programs);
+
+            programs.clear();
+
+            if(compiler != null)
+            {
+                compiler.release();
+                compiler = null;
+            }
+        }
+    }
+
+    @Override
+    public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig config)
+    {
+        final int[] attributes = { ProgramCompiler.EGL_CONTEXT_CLIENT_VERSION, 3, EGL10.EGL_NONE };
+        final EGLContext root = getRootContext(egl, display, config);
+
+        if(root != EGL10.EGL_NO_CONTEXT)
+        {
+            final EGLContext shared = egl.eglCreateContext(display, config, root, attributes);
+
+            if(shared != null && shared != EGL10.EGL_NO_CONTEXT)
+            {
+                sharedContexts.add(shared);
+                return shared;
+            }
+
+            if(LoggerConfig.ON)
+            {
+                Log.w(TAG, "Failed to join share group: 0x" + Integer.toHexString(egl.eglGetError()));
+            }
+        }
+
+        // The renderer builds its own programs on this one
+        return egl.eglCreateContext(display, config, EGL10.EGL_NO_CONTEXT, attributes);
+    }
+
+    @Override
+    public void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context)
+    {
+        sharedContexts.remove(context);
+
+        if(!egl.eglDestroyContext(display, context))
+            Log.e(TAG, "eglDestroyContext failed: 0x" + Integer.toHexString(egl.eglGetError()));
+    }
+
+    /**
+     * The context render contexts share objects with, creating the compiler if necessary
+     */
+    private synchronized EGLContext getRootContext(EGL10 egl, EGLDisplay display, EGLConfig config)
+    {
+        if(compiler == null && instance == this)
+        {
+            compiler = ProgramCompiler.create(egl, display, config, EGL10.EGL_NO_CONTEXT,
+                    new GLES31Backend(), new AndroidRenderHost(context));
+        }
+
+        return compiler != null ? compiler.getEGLContext() : EGL10.EGL_NO_CONTEXT;
+    }
+
+    /**
+     * Whether the context current on the calling thread is part of the share group, so it can
+     * use the programs of {@link #acquirePrograms(QualityTier)}
+     */
+    public boolean sharesCurrentContext()
+    {
+        return sharedContexts.contains(((EGL10) EGLContext.getEGL()).eglGetCurrentContext());
+    }
+
+    /**
+     * Retrieve the programs of given quality tier, building them in the background if no
+     * other renderer uses them yet. Every call has to be paired with a call to
+     * {@link #releasePrograms(QualityTier)}.
+     * @param tier The quality tier
+     * @return Future of the programs, which fails like {@link ProgramCompiler#submit}. This is
+     * null if there is no share group.
+     */
+    public synchronized Future<ScenePrograms> acquirePrograms(final QualityTier tier)
+    {
+        if(compiler == null)
+            return null;
+
+        Entry entry = programs.get(tier);
+
+        if(entry == null)
+        {
+            entry = new Entry(compiler.submit(new ProgramCompiler.Job<ScenePrograms>()
+            {
+                @Override
+                public ScenePrograms run(ProgramFactory factory) throws ShaderException
+                {
+                    return new ScenePrograms(factory, tier);
+                }
+            }));
+
+            programs.put(tier, entry);
+        }
+
+        ++entry.references;
+        return entry.programs;
+    }
+
+    /**
+     * Give up a reference obtained by {@link #acquirePrograms(QualityTier)}. The programs are
+     * deleted once no renderer uses them anymore, so views of them have to be detached first.
+     */
+    public synchronized void releasePrograms(QualityTier tier)
+    {
+        final Entry entry = programs.get(tier);
+
+        if(entry == null || --entry.references > 0)
+            return;
+
+        programs.remove(tier);
+        releaseLater(entry.programs);
+    }
+
+    /**
+     * Delete given programs on the compiler thread once they are built
+     */
+    private void releaseLater(final Future<ScenePrograms> future)
+    {
+        compiler.submit(new ProgramCompiler.Job<Void>()
+        {
+            @Override
+            public Void run(ProgramFactory factory)
+            {
+                try
+                {
+                    future.get().release();
+                }
+                catch(ExecutionException ex)
+                {
+                    // Nothing was built
+                }
+                catch(InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+
+                return null;
+            }
+        });
+    }
+}
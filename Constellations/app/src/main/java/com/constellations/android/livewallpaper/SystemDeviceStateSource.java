@@ -0,0 +1,128 @@
+package com.constellations.android.livewallpaper;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+
+import com.constellations.android.util.PlatformCompat;
+
+/**
+ * Reports the actual device state: the system battery saver, the thermal status and the
+ * battery level. On platforms that do not report a thermal status, it is estimated from the
+ * battery temperature. All callbacks happen on the main thread.
+ */
+public class SystemDeviceStateSource implements DeviceStateSource
+{
+    /**
+     * Battery temperatures in tenths of a degree Celsius from which on the thermal status is
+     * assumed to be light, moderate and severe, if the platform does not report it
+     */
+    private static final int[] TEMPERATURE_THRESHOLDS = { 400, 430, 460 };
+
+    private final Context context;
+    private final PowerManager powerManager;
+
+    private Listener listener;
+
+    /**
+     * The thermal status listener registered with the platform, or null
+     */
+    private Object thermalListener;
+
+    private float batteryLevel = -1.f;
+    private boolean charging = true;
+    private int batteryTemperature;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver()
+    {
+        @Override
+        public void onReceive(Context c, Intent intent)
+        {
+            if(Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction()))
+                readBattery(intent);
+
+            report();
+        }
+    };
+
+    public SystemDeviceStateSource(Context context)
+    {
+        this.context = context.getApplicationContext();
+        this.powerManager = (PowerManager)context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    @Override
+    public void start(Listener listener)
+    {
+        this.listener = listener;
+
+        final IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+
+        // The battery broadcast is sticky, so the current values are returned right away
+        final Intent battery = context.registerReceiver(receiver, filter);
+        if(battery != null)
+            readBattery(battery);
+
+        thermalListener = PlatformCompat.addThermalStatusListener(powerManager, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                report();
+            }
+        });
+
+        report();
+    }
+
+    @Override
+    public void stop()
+    {
+        if(listener == null)
+            return;
+
+        context.unregisterReceiver(receiver);
+        PlatformCompat.removeThermalStatusListener(powerManager, thermalListener);
+
+        thermalListener = null;
+        listener = null;
+    }
+
+    private void readBattery(Intent intent)
+    {
+        final int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        final int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        final int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+
+        batteryLevel = (level >= 0 && scale > 0) ? (float)level / scale : -1.f;
+        charging = status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+        batteryTemperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0);
+    }
+
+    private int thermalStatus()
+    {
+        final int status = PlatformCompat.getThermalStatus(powerManager);
+
+        if(status >= 0)
+            return status;
+
+        int estimate = DeviceState.THERMAL_NONE;
+        while(estimate < TEMPERATURE_THRESHOLDS.length && batteryTemperature >= TEMPERATURE_THRESHOLDS[estimate])
+            ++estimate;
+
+        return estimate;
+    }
+
+    private void report()
+    {
+        if(listener == null)
+            return;
+
+        listener.onDeviceStateChanged(new DeviceState(powerManager.isPowerSaveMode(), thermalStatus(),
+                batteryLevel, charging));
+    }
+}
@@ -0,0 +1,127 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+import com.constellations.android.util.Logger;
+
+/**
+ * Enumeration of the texture formats render targets can be allocated with. Smaller formats
+ * save memory bandwidth in every pass reading or writing the target, at the cost of colour
+ * precision.
+ */
+public enum TargetFormat
+{
+    /**
+     * 16 bits per pixel. Gradients may show banding.
+     */
+    RGB565("rgb565", GLES31.GL_RGB565, 2),
+
+    /**
+     * 32 bits per pixel, renderable everywhere
+     */
+    RGBA8("rgba8", GLES31.GL_RGBA8, 4),
+
+    /**
+     * 32 bits per pixel with floating point precision. Requires GL_EXT_color_buffer_float.
+     */
+    R11F_G11F_B10F("r11f_g11f_b10f", GLES31.GL_R11F_G11F_B10F, 4),
+
+    /**
+     * A single half float channel, used to accumulate intensities. Requires
+     * GL_EXT_color_buffer_half_float. This is not selectable in the preferences.
+     */
+    R16F("r16f", GLES31.GL_R16F, 2),
+
+    /**
+     * Four half float channels, used to cache the intensities of up to four layers.
+     * Requires GL_EXT_color_buffer_half_float. This is not selectable in the preferences.
+     */
+    RGBA16F("rgba16f", GLES31.GL_RGBA16F, 8);
+
+    private static final String TAG = "TargetFormat";
+
+    TargetFormat(String key, int internalFormat, int bytesPerPixel)
+    {
+        this.key = key;
+        this.internalFormat = internalFormat;
+        this.bytesPerPixel = bytesPerPixel;
+    }
+
+    /**
+     * The value used for this format in the preferences
+     */
+    private final String key;
+
+    /**
+     * The sized internal format passed to glTexStorage2D
+     */
+    private final int internalFormat;
+
+    private final int bytesPerPixel;
+
+    public int getInternalFormat()
+    {
+        return internalFormat;
+    }
+
+    public int getBytesPerPixel()
+    {
+        return bytesPerPixel;
+    }
+
+    /**
+     * Whether this is a floating point format. Those cannot be blitted to the fixed point
+     * default framebuffer.
+     */
+    public boolean isFloat()
+    {
+        return this == R11F_G11F_B10F || this == R16F || this == RGBA16F;
+    }
+
+    /**
+     * Whether textures of this format can be rendered to on a context with given capabilities
+     */
+    public boolean isRenderable(GLCapabilities capabilities)
+    {
+        switch(this)
+        {
+            case R11F_G11F_B10F:
+                return capabilities.hasFloatColorBuffer();
+            case R16F:
+            case RGBA16F:
+                return capabilities.hasHalfFloatColorBuffer();
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Choose the format to use on a context with given capabilities
+     * @param preferred The preferred format
+     * @param capabilities Capabilities of the context
+     * @return The preferred format if it is renderable, {@link #RGBA8} otherwise
+     */
+    public static TargetFormat negotiate(TargetFormat preferred, GLCapabilities capabilities)
+    {
+        if(preferred.isRenderable(capabilities))
+            return preferred;
+
+        Logger.i(TAG, preferred + " is not renderable, falling back to " + RGBA8);
+        return RGBA8;
+    }
+
+    /**
+     * Find the format with given preference value
+     * @param key Preference value
+     * @return The matching format, or {@link #RGBA8} if there is none
+     */
+    public static TargetFormat fromKey(String key)
+    {
+        for(TargetFormat format: values())
+        {
+            if(format.key.equals(key))
+                return format;
+        }
+
+        return RGBA8;
+    }
+}
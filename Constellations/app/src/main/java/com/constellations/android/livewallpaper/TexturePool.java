@@ -0,0 +1,134 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recycles the textures of render targets. Textures are allocated with immutable storage, so
+ * resizing a render target means replacing its texture. When the resolution switches back and
+ * forth between a few sizes, for example under adaptive resolution, the textures of recently
+ * used sizes are taken from the pool instead of being allocated again.
+ *
+ * At most {@link #CAPACITY} unused textures are kept. Beyond that, the least recently recycled
+ * one is deleted.
+ */
+public class TexturePool
+{
+    /**
+     * Maximum number of unused textures kept
+     */
+    private static final int CAPACITY = 3;
+
+    /**
+     * An unused texture
+     */
+    private static class Entry
+    {
+        int texture;
+        int width;
+        int height;
+        TargetFormat format;
+    }
+
+    private final GLBackend gl;
+    private final GLState state;
+
+    /**
+     * The unused textures, least recently recycled first
+     */
+    private final List<Entry> free = new ArrayList<>(CAPACITY + 1);
+
+    /**
+     * Entries not in use. The adaptive resolution governor may resize at any frame, so
+     * recycling a texture does not allocate.
+     */
+    private final List<Entry> spare = new ArrayList<>(CAPACITY + 1);
+
+    private final int[] handle = new int[1];
+
+    /**
+     * Create new pool
+     * @param state The state tracker of the context the textures live in
+     */
+    public TexturePool(GLState state)
+    {
+        this.state = state;
+        this.gl = state.getBackend();
+
+        for(int i = 0; i < CAPACITY + 1; ++i)
+            spare.add(new Entry());
+    }
+
+    /**
+     * Retrieve a texture of given size and format, allocating it if the pool has none. Its
+     * contents are undefined.
+     */
+    public int acquire(int width, int height, TargetFormat format)
+    {
+        for(int i = free.size() - 1; i >= 0; --i)
+        {
+            final Entry entry = free.get(i);
+
+            if(entry.width == width && entry.height == height && entry.format == format)
+            {
+                free.remove(i);
+                spare.add(entry);
+                return entry.texture;
+            }
+        }
+
+        gl.glGenTextures(1, handle, 0);
+
+        state.bindTexture(GLES31.GL_TEXTURE0, handle[0]);
+        gl.glTexStorage2D(GLES31.GL_TEXTURE_2D, 1, format.getInternalFormat(), width, height);
+
+        gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MAG_FILTER, GLES31.GL_NEAREST);
+        gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_MIN_FILTER, GLES31.GL_NEAREST);
+        gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_WRAP_S, GLES31.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(GLES31.GL_TEXTURE_2D, GLES31.GL_TEXTURE_WRAP_T, GLES31.GL_CLAMP_TO_EDGE);
+
+        return handle[0];
+    }
+
+    /**
+     * Return a texture obtained by {@link #acquire(int, int, TargetFormat)} that is not used
+     * anymore
+     */
+    public void recycle(int texture, int width, int height, TargetFormat format)
+    {
+        final Entry entry = spare.remove(spare.size() - 1);
+        entry.texture = texture;
+        entry.width = width;
+        entry.height = height;
+        entry.format = format;
+        free.add(entry);
+
+        if(free.size() > CAPACITY)
+        {
+            final Entry oldest = free.remove(0);
+            delete(oldest);
+            spare.add(oldest);
+        }
+    }
+
+    /**
+     * Delete all unused textures
+     */
+    public void clear()
+    {
+        for(Entry entry: free)
+            delete(entry);
+
+        spare.addAll(free);
+        free.clear();
+    }
+
+    private void delete(Entry entry)
+    {
+        handle[0] = entry.texture;
+        gl.glDeleteTextures(1, handle, 0);
+        state.textureDeleted(entry.texture);
+    }
+}
@@ -0,0 +1,118 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * A single uniform of a linked {@link ShaderProgram}. The location is resolved once when the
+ * program is linked, and the last uploaded value is remembered, so setting the same value
+ * again does not cause any GL call. Values are uploaded using glProgramUniform*, which means
+ * the program does not need to be bound.
+ *
+ * Uniforms that are not active in the program have location -1. Setting them is a no-op,
+ * just like in OpenGL.
+ */
+public class Uniform
+{
+    private final GLBackend gl;
+
+    /**
+     * Handle of the program this uniform belongs to
+     */
+    private final int program;
+
+    private final String name;
+
+    private final int location;
+
+    /**
+     * The OpenGL type of this uniform, as reported by glGetActiveUniform. This is 0 if the
+     * type is unknown.
+     */
+    private final int type;
+
+    /**
+     * The last uploaded value
+     */
+    private final float[] values = new float[4];
+    private int intValue;
+
+    /**
+     * Whether a value was uploaded yet
+     */
+    private boolean hasValue;
+
+    Uniform(GLBackend gl, int program, String name, int location, int type)
+    {
+        this.gl = gl;
+        this.program = program;
+        this.name = name;
+        this.location = location;
+        this.type = type;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getLocation()
+    {
+        return location;
+    }
+
+    public int getType()
+    {
+        return type;
+    }
+
+    /**
+     * Whether this uniform is active in its program
+     */
+    public boolean isActive()
+    {
+        return location >= 0;
+    }
+
+    public void set(int x)
+    {
+        if(location < 0 || (hasValue && intValue == x))
+            return;
+
+        intValue = x;
+        hasValue = true;
+        gl.glProgramUniform1i(program, location, x);
+    }
+
+    public void set(float x)
+    {
+        if(location < 0 || (hasValue && values[0] == x))
+            return;
+
+        values[0] = x;
+        hasValue = true;
+        gl.glProgramUniform1f(program, location, x);
+    }
+
+    public void set(float x, float y, float z)
+    {
+        if(location < 0 || (hasValue && values[0] == x && values[1] == y && values[2] == z))
+            return;
+
+        values[0] = x;
+        values[1] = y;
+        values[2] = z;
+        hasValue = true;
+        gl.glProgramUniform3f(program, location, x, y, z);
+    }
+
+    public void set(float x, float y, float z, float w)
+    {
+        if(location < 0 || (hasValue && values[0] == x && values[1] == y && values[2] == z && values[3] == w))
+            return;
+
+        values[0] = x;
+        values[1] = y;
+        values[2] = z;
+        values[3] = w;
+        hasValue = true;
+        gl.glProgramUniform4f(program, location, x, y, z, w);
+    }
+}
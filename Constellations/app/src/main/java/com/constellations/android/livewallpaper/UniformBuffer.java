@@ -0,0 +1,131 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A uniform buffer object with a client-side copy of its contents. Values are written into
+ * the client-side copy at their std140 offsets, and the whole block is uploaded with a
+ * single glBufferSubData call the next time {@link #upload()} is called, but only if
+ * anything actually changed.
+ */
+public class UniformBuffer
+{
+    protected final GLBackend gl;
+    protected final GLState state;
+
+    /**
+     * The native OpenGL handle of the buffer object
+     */
+    protected final int handle;
+
+    /**
+     * The uniform buffer binding point this buffer is bound to
+     */
+    protected final int binding;
+
+    /**
+     * Size of the buffer in bytes
+     */
+    protected final int size;
+
+    /**
+     * Client-side copy of the buffer contents
+     */
+    protected final ByteBuffer data;
+
+    /**
+     * Whether the client-side copy differs from the buffer contents
+     */
+    protected boolean dirty = true;
+
+    /**
+     * Create new uniform buffer and bind it to given binding point
+     * @param state The state tracker of the context to create the buffer in
+     * @param size Size of the buffer in bytes
+     * @param binding The uniform buffer binding point to use
+     */
+    public UniformBuffer(GLState state, int size, int binding)
+    {
+        this.state = state;
+        this.gl = state.getBackend();
+        this.size = size;
+        this.binding = binding;
+        this.data = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+
+        int[] ids = new int[1];
+        gl.glGenBuffers(1, ids, 0);
+        this.handle = ids[0];
+
+        state.bindBuffer(GLES31.GL_UNIFORM_BUFFER, handle);
+        gl.glBufferData(GLES31.GL_UNIFORM_BUFFER, size, data, GLES31.GL_DYNAMIC_DRAW);
+        state.bindBufferBase(GLES31.GL_UNIFORM_BUFFER, binding, handle);
+    }
+
+    /**
+     * Upload the client-side copy to the GPU, if it changed since the last upload
+     * @return Whether an upload was necessary
+     */
+    public boolean upload()
+    {
+        if(!dirty)
+            return false;
+
+        state.bindBuffer(GLES31.GL_UNIFORM_BUFFER, handle);
+        gl.glBufferSubData(GLES31.GL_UNIFORM_BUFFER, 0, size, data);
+        dirty = false;
+        return true;
+    }
+
+    /**
+     * Delete the buffer object
+     */
+    public void release()
+    {
+        gl.glDeleteBuffers(1, new int[]{ handle }, 0);
+        state.bufferDeleted(handle);
+    }
+
+    public int getHandle()
+    {
+        return handle;
+    }
+
+    public int getBinding()
+    {
+        return binding;
+    }
+
+    protected void putFloat(int offset, float value)
+    {
+        if(data.getFloat(offset) != value)
+        {
+            data.putFloat(offset, value);
+            dirty = true;
+        }
+    }
+
+    protected void putInt(int offset, int value)
+    {
+        if(data.getInt(offset) != value)
+        {
+            data.putInt(offset, value);
+            dirty = true;
+        }
+    }
+
+    protected void putVec3(int offset, float x, float y, float z)
+    {
+        putFloat(offset, x);
+        putFloat(offset + 4, y);
+        putFloat(offset + 8, z);
+    }
+
+    protected void putVec4(int offset, float x, float y, float z, float w)
+    {
+        putVec3(offset, x, y, z);
+        putFloat(offset + 12, w);
+    }
+}
@@ -0,0 +1,77 @@
+package com.constellations.android.livewallpaper;
+
+import android.opengl.GLES31;
+
+/**
+ * Enumeration of the filters the second pass can upscale the render target to the screen
+ * with. Better filters make higher resolution divisors acceptable, which saves far more
+ * shading work in the first pass than they cost in the second one. The cost of each filter
+ * is per screen pixel and does not depend on the divisor.
+ */
+public enum UpscaleFilter
+{
+    /**
+     * One unfiltered texture fetch. Blocky above divisor 2.
+     */
+    NEAREST("nearest", GLES31.GL_NEAREST, false),
+
+    /**
+     * One bilinearly filtered texture fetch, which costs the same as an unfiltered one on
+     * current GPUs. Thin lines get dim and wide at high divisors.
+     */
+    BILINEAR("bilinear", GLES31.GL_LINEAR, false),
+
+    /**
+     * Four texel fetches and about 30 ALU instructions, see upscale_edge_fragment.glsl. Keeps
+     * thin bright lines narrow, so divisors of 4 to 6 look acceptable.
+     */
+    EDGE_ADAPTIVE("edge", GLES31.GL_NEAREST, true);
+
+    UpscaleFilter(String key, int textureFilter, boolean edgeProgram)
+    {
+        this.key = key;
+        this.textureFilter = textureFilter;
+        this.edgeProgram = edgeProgram;
+    }
+
+    /**
+     * The value used for this filter in the preferences
+     */
+    private final String key;
+
+    /**
+     * The filter the render target texture is sampled with
+     */
+    private final int textureFilter;
+
+    /**
+     * Whether the second pass uses the edge-adaptive program instead of quad_fragment.glsl
+     */
+    private final boolean edgeProgram;
+
+    public int getTextureFilter()
+    {
+        return textureFilter;
+    }
+
+    public boolean usesEdgeProgram()
+    {
+        return edgeProgram;
+    }
+
+    /**
+     * Find the filter with given preference value
+     * @param key Preference value
+     * @return The matching filter, or {@link #BILINEAR} if there is none
+     */
+    public static UpscaleFilter fromKey(String key)
+    {
+        for(UpscaleFilter filter: values())
+        {
+            if(filter.key.equals(key))
+                return filter;
+        }
+
+        return BILINEAR;
+    }
+}
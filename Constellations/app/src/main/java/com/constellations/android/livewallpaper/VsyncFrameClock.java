@@ -0,0 +1,74 @@
+package com.constellations.android.livewallpaper;
+
+/**
+ * {@link FrameClock} following the display. Each frame shows the scene at the time it is
+ * predicted to be presented, derived from the Choreographer vsync timestamp the frame was
+ * requested at. Frames are thereby spaced exactly like the vsyncs they are shown at, instead
+ * of jittering with the moment the render thread happens to process them.
+ *
+ * Vsyncs are reported by the {@link FramePacer} on the main thread and picked up by the render
+ * thread. Frames rendered without a reported vsync, for example right after the surface was
+ * created, fall back to the current time.
+ */
+public class VsyncFrameClock implements FrameClock
+{
+    /**
+     * Number of vsync periods between the vsync a frame is requested at and the one it is
+     * presented at. The frame is rendered during the first period and queued for composition
+     * during the second one.
+     */
+    private static final int PRESENT_LATENCY = 2;
+
+    /**
+     * Predicted presentation time of the most recently requested frame, on the
+     * {@link System#nanoTime()} time base, or 0 if no vsync was reported yet
+     */
+    private volatile long predictedPresent;
+
+    /**
+     * Presentation time the scene started at, or 0 if no frame was rendered yet
+     */
+    private long origin;
+
+    /**
+     * Presentation time of the current frame
+     */
+    private long frameTime;
+
+    /**
+     * Report the vsync a frame was requested at. This may be called on any thread.
+     * @param frameTimeNanos The Choreographer frame time, which uses the System.nanoTime()
+     * time base
+     * @param vsyncPeriod The vsync period in nanoseconds
+     */
+    public void onVsync(long frameTimeNanos, long vsyncPeriod)
+    {
+        predictedPresent = frameTimeNanos + PRESENT_LATENCY * vsyncPeriod;
+    }
+
+    @Override
+    public void beginFrame()
+    {
+        long time = predictedPresent;
+
+        if(time == 0)
+            time = System.nanoTime();
+
+        if(origin == 0)
+        {
+            // The scene always starts at the beginning of its cycle with the first frame,
+            // independent of a possibly varying startup time
+            origin = time;
+        }
+
+        // Time never runs backwards, even if a frame is rendered twice for the same vsync
+        frameTime = Math.max(frameTime, time);
+    }
+
+    @Override
+    public float getSceneTime()
+    {
+        // Wrap in integer nanoseconds, so no precision is lost before the conversion
+        return ((frameTime - origin) % PERIOD_NANOS) / 1e9f;
+    }
+}
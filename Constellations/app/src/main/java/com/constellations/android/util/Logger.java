@@ -0,0 +1,84 @@
+package com.constellations.android.util;
+
+/**
+ * Logging facade for the code that does not otherwise depend on the Android framework, like
+ * the renderer. Messages go to {@link android.util.Log} by default. Tests running on a plain
+ * JVM, where the framework is not available, install their own {@link Sink}.
+ */
+public final class Logger
+{
+    /**
+     * Priorities, with the same values as the constants of {@link android.util.Log}
+     */
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    /**
+     * Receives all logged messages
+     */
+    public interface Sink
+    {
+        /**
+         * Log a message
+         * @param priority One of {@link #DEBUG}, {@link #INFO}, {@link #WARN} and {@link #ERROR}
+         * @param tag Identifies the source of the message
+         * @param message The message
+         * @param error An exception to log along with the message, or null
+         */
+        void log(int priority, String tag, String message, Throwable error);
+    }
+
+    private static volatile Sink sink = new AndroidSink();
+
+    private Logger()
+    {
+    }
+
+    /**
+     * Replace the sink all messages are sent to
+     * @param sink The new sink, or null to send messages to {@link android.util.Log} again
+     */
+    public static void setSink(Sink sink)
+    {
+        Logger.sink = (sink != null) ? sink : new AndroidSink();
+    }
+
+    public static void d(String tag, String message)
+    {
+        sink.log(DEBUG, tag, message, null);
+    }
+
+    public static void i(String tag, String message)
+    {
+        sink.log(INFO, tag, message, null);
+    }
+
+    public static void w(String tag, String message)
+    {
+        sink.log(WARN, tag, message, null);
+    }
+
+    public static void w(String tag, String message, Throwable error)
+    {
+        sink.log(WARN, tag, message, error);
+    }
+
+    public static void e(String tag, String message)
+    {
+        sink.log(ERROR, tag, message, null);
+    }
+
+    private static final class AndroidSink implements Sink
+    {
+        @Override
+        public void log(int priority, String tag, String message, Throwable error)
+        {
+            if(error != null)
+                message += '\n' + android.util.Log.getStackTraceString(error);
+
+            android.util.Log.println(priority, tag, message);
+        }
+    }
+}
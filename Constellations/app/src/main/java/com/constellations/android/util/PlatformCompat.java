@@ -0,0 +1,173 @@
+package com.constellations.android.util;
+
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+import android.view.Surface;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Access to platform APIs that are newer than the SDK the app is compiled against. All
+ * methods are looked up reflectively and degrade to a no-op on older platforms.
+ */
+public final class PlatformCompat
+{
+    private static final String TAG = "PlatformCompat";
+
+    /**
+     * Build.VERSION_CODES.Q
+     */
+    private static final int API_Q = 29;
+
+    /**
+     * Build.VERSION_CODES.R
+     */
+    private static final int API_R = 30;
+
+    /**
+     * Surface.FRAME_RATE_COMPATIBILITY_DEFAULT
+     */
+    private static final int FRAME_RATE_COMPATIBILITY_DEFAULT = 0;
+
+    private PlatformCompat()
+    {
+    }
+
+    /**
+     * Tell the display compositor which frame rate the content of given surface is
+     * rendered at, so it can pick a matching display refresh rate (Surface.setFrameRate).
+     * @param surface The surface
+     * @param frameRate Frame rate in Hz. 0 means no preference.
+     * @return Whether the platform supports this request
+     */
+    public static boolean setFrameRate(Surface surface, float frameRate)
+    {
+        if(Build.VERSION.SDK_INT < API_R || surface == null || !surface.isValid())
+            return false;
+
+        try
+        {
+            final Method method = Surface.class.getMethod("setFrameRate", float.class, int.class);
+            method.invoke(surface, frameRate, FRAME_RATE_COMPATIBILITY_DEFAULT);
+            return true;
+        }
+        catch(ReflectiveOperationException | RuntimeException e)
+        {
+            if(LoggerConfig.ON)
+            {
+                Log.w(TAG, "Surface.setFrameRate failed", e);
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Query the current thermal status (PowerManager.getCurrentThermalStatus)
+     * @param powerManager The power manager
+     * @return One of the PowerManager.THERMAL_STATUS constants, or -1 if the platform does
+     * not report the thermal status
+     */
+    public static int getThermalStatus(PowerManager powerManager)
+    {
+        if(Build.VERSION.SDK_INT < API_Q || powerManager == null)
+            return -1;
+
+        try
+        {
+            final Method method = PowerManager.class.getMethod("getCurrentThermalStatus");
+            return (Integer)method.invoke(powerManager);
+        }
+        catch(ReflectiveOperationException | RuntimeException e)
+        {
+            if(LoggerConfig.ON)
+            {
+                Log.w(TAG, "PowerManager.getCurrentThermalStatus failed", e);
+            }
+
+            return -1;
+        }
+    }
+
+    /**
+     * Get notified on the main thread whenever the thermal status changes
+     * (PowerManager.addThermalStatusListener)
+     * @param powerManager The power manager
+     * @param onChanged Called on every change
+     * @return The registered listener, to be passed to {@link #removeThermalStatusListener},
+     * or null if the platform does not support this
+     */
+    public static Object addThermalStatusListener(PowerManager powerManager, final Runnable onChanged)
+    {
+        if(Build.VERSION.SDK_INT < API_Q || powerManager == null)
+            return null;
+
+        try
+        {
+            final Class<?> type = Class.forName("android.os.PowerManager$OnThermalStatusChangedListener");
+
+            final Object listener = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                    new InvocationHandler()
+                    {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args)
+                        {
+                            if(method.getDeclaringClass() == Object.class)
+                            {
+                                switch(method.getName())
+                                {
+                                    case "equals":
+                                        return proxy == args[0];
+                                    case "hashCode":
+                                        return System.identityHashCode(proxy);
+                                    default:
+                                        return "ThermalStatusListener";
+                                }
+                            }
+
+                            onChanged.run();
+                            return null;
+                        }
+                    });
+
+            PowerManager.class.getMethod("addThermalStatusListener", type).invoke(powerManager, listener);
+            return listener;
+        }
+        catch(ReflectiveOperationException | RuntimeException e)
+        {
+            if(LoggerConfig.ON)
+            {
+                Log.w(TAG, "PowerManager.addThermalStatusListener failed", e);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Unregister a listener registered with {@link #addThermalStatusListener}
+     * @param powerManager The power manager
+     * @param listener The listener, may be null
+     */
+    public static void removeThermalStatusListener(PowerManager powerManager, Object listener)
+    {
+        if(listener == null)
+            return;
+
+        try
+        {
+            final Class<?> type = Class.forName("android.os.PowerManager$OnThermalStatusChangedListener");
+            PowerManager.class.getMethod("removeThermalStatusListener", type).invoke(powerManager, listener);
+        }
+        catch(ReflectiveOperationException | RuntimeException e)
+        {
+            if(LoggerConfig.ON)
+            {
+                Log.w(TAG, "PowerManager.removeThermalStatusListener failed", e);
+            }
+        }
+    }
+}
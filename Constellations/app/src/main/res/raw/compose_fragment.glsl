@@ -0,0 +1,59 @@
+#version 310 es
+
+precision highp float;
+
+// Per-frame values, uploaded as a single std140 uniform buffer (see FrameUniforms.java)
+layout (std140) uniform FrameBlock
+{
+    vec3      iResolution;
+    float     iTime;
+    vec4      iMouse;
+    vec4      iCustomColor;
+    int       iUseCustomColor;
+    ivec4     iInterleave;
+};
+
+// Scene intensity accumulated by the geometry pass
+uniform highp sampler2D accum_tex;
+
+layout (location = 0) out vec4 fragmentColor;
+
+#define S(a, b, t) smoothstep(a, b, t)
+
+// Whether the image gets darker towards the edges, see QualityTier.java
+#ifndef VIGNETTE
+#define VIGNETTE 1
+#endif
+
+// Turns the accumulated intensity into the final color, exactly like the end of mainImage
+// in shader_fragment.glsl
+void main()
+{
+    vec2 uv = (gl_FragCoord.xy-iResolution.xy*.5)/iResolution.y;
+    float t = iTime*.1;
+
+    float m = texelFetch(accum_tex, ivec2(gl_FragCoord.xy), 0).r;
+    float glow = -uv.y*0.2*2.;
+
+    vec3 baseCol;
+
+    if(iUseCustomColor > 0)
+    {
+        baseCol = iCustomColor.rgb;
+    }
+    else
+    {
+        baseCol = vec3(sin(t), cos(t*.4), -sin(t*.24))*.4+.6;
+    }
+
+    vec3 col = baseCol*m;
+    col += baseCol*glow;
+
+#if VIGNETTE
+    col *= 1.-dot(uv,uv);
+#endif
+    t = mod(iTime, 230.);
+    col *= S(0., 20., t)*S(224., 200., t);
+
+    fragmentColor = vec4(col,1);
+}
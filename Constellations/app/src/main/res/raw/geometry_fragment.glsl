@@ -0,0 +1,39 @@
+#version 310 es
+
+precision highp float;
+
+in vec2 v_st;
+flat in int v_kind;
+flat in vec4 v_ends;
+flat in vec2 v_weights;
+
+// Scene intensity, accumulated with additive blending
+layout (location = 0) out vec4 fragmentColor;
+
+#define S(a, b, t) smoothstep(a, b, t)
+
+float df_line( in vec2 a, in vec2 b, in vec2 p)
+{
+    vec2 pa = p - a, ba = b - a;
+	float h = clamp(dot(pa,ba) / dot(ba,ba), 0., 1.);
+	return length(pa - ba * h);
+}
+
+void main()
+{
+    float m;
+
+    if(v_kind == 0)
+    {
+        float d = length(v_st-v_ends.xy);
+
+        m = S(.04, .01, d)*v_weights.x;
+        m += v_weights.y*(.005/max(d*d, 1e-6))*S(1., .7, d);
+    }
+    else
+    {
+        m = S(.04, .01, df_line(v_ends.xy, v_ends.zw, v_st))*v_weights.x;
+    }
+
+    fragmentColor = vec4(m, 0., 0., 0.);
+}
@@ -0,0 +1,158 @@
+#version 310 es
+
+precision highp float;
+
+// Per-frame values, uploaded as a single std140 uniform buffer (see FrameUniforms.java)
+layout (std140) uniform FrameBlock
+{
+    vec3      iResolution;
+    float     iTime;
+    vec4      iMouse;
+    vec4      iCustomColor;
+    int       iUseCustomColor;
+    ivec4     iInterleave;
+};
+
+// The visible cells of each layer (see GeometryUniforms.java)
+layout (std140) uniform GeometryBlock
+{
+    ivec4     iCellRange[4];         // xy: first cell, zw: number of cells in each direction
+    ivec4     iLayerStart;           // first instance of each layer
+};
+
+#define S(a, b, t) smoothstep(a, b, t)
+
+// Quality settings. These are injected after the #version line for each quality tier (see
+// QualityTier.java), the defaults correspond to the high tier.
+#ifndef NUM_LAYERS
+#define NUM_LAYERS 4
+#endif
+
+// Whether points sparkle
+#ifndef SPARKLES
+#define SPARKLES 1
+#endif
+
+// Each cell is drawn as one sparkle quad around its point, followed by one segment quad for
+// each of the neighbours in SEGMENT_DIRS. Together, the cells cover all segments between
+// neighbouring points exactly once.
+#define INSTANCES_PER_CELL 5
+
+// Radius of the line falloff, r1 in line() of shader_fragment.glsl
+#define LINE_RADIUS .04
+
+// Sparkle contributions below this value are not drawn
+#define SPARKLE_THRESHOLD (1./1024.)
+
+const ivec2 SEGMENT_DIRS[] = ivec2[4](ivec2(1, 0), ivec2(0, 1), ivec2(1, 1), ivec2(-1, 1));
+
+// Quad corners, x along the quad from 0 to 1, y across it from -1 to 1
+const vec2 CORNERS[] = vec2[6](
+	vec2(0, -1),
+	vec2(1, -1),
+	vec2(1, 1),
+
+	vec2(0, -1),
+	vec2(1, 1),
+	vec2(0, 1)
+);
+
+out vec2 v_st;              // position in layer coordinates
+flat out int v_kind;        // 0: sparkle, 1: segment
+flat out vec4 v_ends;       // xy: point or first end point, zw: second end point
+flat out vec2 v_weights;    // x: weight of the line term, y: weight of the sparkle term
+
+float N21(vec2 p)
+{
+	vec3 p3  = fract(vec3(p.xyx) * vec3(443.897, 441.423, 437.195));
+    p3 += dot(p3, p3.yzx + 19.19);
+    return fract((p3.x + p3.y) * p3.z);
+}
+
+// The animated point of given cell in layer coordinates, see GetPos in shader_fragment.glsl
+vec2 GetPoint(ivec2 cell, float n)
+{
+    float h = N21(vec2(cell)+n);
+    float n1 = fract(h*10.);
+    float n2 = fract(h*100.);
+    float a = iTime+h;
+    return vec2(cell) + .5 + vec2(sin(a*n1), cos(a*n2))*.4;
+}
+
+void main()
+{
+    int layer = 0;
+    for(int i = 1; i < NUM_LAYERS; ++i)
+    {
+        if(gl_InstanceID >= iLayerStart[i])
+            layer = i;
+    }
+
+    ivec4 range = iCellRange[layer];
+    int index = gl_InstanceID - iLayerStart[layer];
+    int kind = index % INSTANCES_PER_CELL;
+    int c = index / INSTANCES_PER_CELL;
+    ivec2 cell = range.xy + ivec2(c % range.z, c / range.z);
+
+    // Layer parameters, as in mainImage and NetLayer
+    float n = float(layer)/float(NUM_LAYERS);
+    float t = iTime*.1;
+    float z = fract(t+n);
+    float size = mix(15., 1., z);
+    float fade = S(0., .6, z)*S(1., .8, z);
+
+    vec2 a = GetPoint(cell, n);
+    vec2 corner = CORNERS[gl_VertexID];
+    vec2 pos;
+
+    if(kind == 0)
+    {
+        float sPhase = (sin(iTime+n)+sin(iTime*.1))*.25+.5;
+        sPhase += pow(sin(iTime*.1)*.5+.5, 50.)*5.;
+
+        float pulse = sin((fract(a.x)+fract(a.y)+iTime)*5.)*.4+.6;
+        pulse = pow(pulse, 20.);
+
+        // The sparkle falls off with .005/d^2 and is cut off at a distance of 1. The quad
+        // only has to cover the area where it is visible, but at least the dot every point
+        // gets from the zero-length segment to itself.
+#if SPARKLES
+        float weight = fade*pulse*sPhase;
+#else
+        float weight = 0.;
+#endif
+        float radius = clamp(sqrt(.005*weight/SPARKLE_THRESHOLD), LINE_RADIUS, 1.);
+
+        pos = a + vec2(corner.x*2.-1., corner.y)*radius;
+
+        v_kind = 0;
+        v_ends = vec4(a, a);
+        v_weights = vec2(fade, weight);
+    }
+    else
+    {
+        vec2 b = GetPoint(cell + SEGMENT_DIRS[kind-1], n);
+        vec2 dir = normalize(b-a);
+        vec2 nrm = vec2(-dir.y, dir.x);
+
+        pos = mix(a-dir*LINE_RADIUS, b+dir*LINE_RADIUS, corner.x) + nrm*corner.y*LINE_RADIUS;
+
+        float d2 = length(a-b);
+        float lineFade = S(1.5, .5, d2) + S(.05, .02, abs(d2-.75));
+
+        v_kind = 1;
+        v_ends = vec4(a, b);
+        v_weights = vec2(fade*lineFade, 0.);
+    }
+
+    v_st = pos;
+
+    // Layer coordinates to clip space, the inverse of the transformation in mainImage
+    float s = sin(t);
+    float co = cos(t);
+    mat2 rot = mat2(co, -s, s, co);
+    vec2 M = (iMouse.xy/iResolution.xy-.5)*rot*2.;
+    vec2 uv = rot*((pos+M*z)/size);
+
+    gl_Position = vec4(uv*2.*iResolution.y/iResolution.xy, 0., 1.);
+}
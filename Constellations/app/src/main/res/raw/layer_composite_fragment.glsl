@@ -0,0 +1,79 @@
+#version 310 es
+
+precision highp float;
+
+// Per-frame values, uploaded as a single std140 uniform buffer (see FrameUniforms.java)
+layout (std140) uniform FrameBlock
+{
+    vec3      iResolution;
+    float     iTime;
+    vec4      iMouse;
+    vec4      iCustomColor;
+    int       iUseCustomColor;
+    ivec4     iInterleave;
+};
+
+// Where each cached layer has moved since it was rendered (see LayerUniforms.java)
+layout (std140) uniform LayerBlock
+{
+    ivec4     iLayerMask;
+    vec4      iLayerMatrix[4];       // maps current uv to uv at the time the layer was cached
+    vec4      iLayerOffset[4];       // xy: offset added after the matrix, z: fade of the layer
+};
+
+// Unfaded intensity of each layer, one per channel
+uniform highp sampler2D layer_tex;
+
+layout (location = 0) out vec4 fragmentColor;
+
+#define S(a, b, t) smoothstep(a, b, t)
+
+// Quality settings, see QualityTier.java
+#ifndef NUM_LAYERS
+#define NUM_LAYERS 4
+#endif
+
+#ifndef VIGNETTE
+#define VIGNETTE 1
+#endif
+
+// Warps the cached layers to the current rotation and zoom, and turns their sum into the
+// final color exactly like the end of mainImage in shader_fragment.glsl
+void main()
+{
+    vec2 uv = (gl_FragCoord.xy-iResolution.xy*.5)/iResolution.y;
+    float t = iTime*.1;
+
+    float m = 0.;
+    for(int layer=0; layer<NUM_LAYERS; layer++) {
+        vec4 matrix = iLayerMatrix[layer];
+        vec2 cached = mat2(matrix.xy, matrix.zw)*uv + iLayerOffset[layer].xy;
+        vec2 coords = (cached*iResolution.y + iResolution.xy*.5)/iResolution.xy;
+
+        m += iLayerOffset[layer].z * texture(layer_tex, coords)[layer];
+    }
+
+    float glow = -uv.y*0.2*2.;
+
+    vec3 baseCol;
+
+    if(iUseCustomColor > 0)
+    {
+        baseCol = iCustomColor.rgb;
+    }
+    else
+    {
+        baseCol = vec3(sin(t), cos(t*.4), -sin(t*.24))*.4+.6;
+    }
+
+    vec3 col = baseCol*m;
+    col += baseCol*glow;
+
+#if VIGNETTE
+    col *= 1.-dot(uv,uv);
+#endif
+    t = mod(iTime, 230.);
+    col *= S(0., 20., t)*S(224., 200., t);
+
+    fragmentColor = vec4(col,1);
+}
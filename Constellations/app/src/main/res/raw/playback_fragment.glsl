@@ -0,0 +1,22 @@
+#version 310 es
+
+precision mediump float;
+
+in vec2 tex_coords;
+
+// The keyframes of a baked loop surrounding the current point in time (see LoopPlayer.java)
+uniform sampler2D frame_a;
+uniform sampler2D frame_b;
+
+// Per-engine values, uploaded as a std140 uniform buffer (see PlaybackUniforms.java)
+layout (std140) uniform PlaybackBlock
+{
+    float iBlend;
+};
+
+layout (location = 0) out vec4 fragmentColor;
+
+void main()
+{
+    fragmentColor = mix(texture(frame_a, tex_coords), texture(frame_b, tex_coords), iBlend);
+}
@@ -0,0 +1,63 @@
+#version 310 es
+
+precision highp float;
+
+// Precomputes the animated point of every grid cell of every layer, so the scene shader
+// does not have to evaluate the hash and the trigonometry for each of the nine points of
+// each layer at every pixel.
+layout (local_size_x = 8, local_size_y = 8) in;
+
+// Per-frame values, uploaded as a single std140 uniform buffer (see FrameUniforms.java)
+layout (std140) uniform FrameBlock
+{
+    vec3      iResolution;
+    float     iTime;
+    vec4      iMouse;
+    vec4      iCustomColor;
+    int       iUseCustomColor;
+    ivec4     iInterleave;
+};
+
+// One texel per cell, CELL_GRID x CELL_GRID cells per layer, layers stacked vertically.
+// xy: offset of the point inside its cell, z: sparkle pulse of the point
+layout (rgba32f, binding = 0) writeonly uniform highp image2D cells;
+
+// Must match shader_fragment.glsl and PointPositionPass.java
+#define CELL_GRID 48
+
+// Quality settings. These are injected after the #version line for each quality tier (see
+// QualityTier.java), the defaults correspond to the high tier.
+#ifndef NUM_LAYERS
+#define NUM_LAYERS 4
+#endif
+
+float N21(vec2 p)
+{
+	vec3 p3  = fract(vec3(p.xyx) * vec3(443.897, 441.423, 437.195));
+    p3 += dot(p3, p3.yzx + 19.19);
+    return fract((p3.x + p3.y) * p3.z);
+}
+
+void main()
+{
+    ivec2 texel = ivec2(gl_GlobalInvocationID.xy);
+    int layer = texel.y / CELL_GRID;
+
+    // Cell coordinates are centered around the origin. The layer offset is the same as the
+    // one NetLayer adds to the cell id.
+    vec2 id = vec2(texel.x - CELL_GRID/2, texel.y - layer*CELL_GRID - CELL_GRID/2)
+            + float(layer)/float(NUM_LAYERS);
+
+    // Same as GetPos in shader_fragment.glsl, without the cell offset
+    float n = N21(id);
+    float n1 = fract(n*10.);
+    float n2 = fract(n*100.);
+    float a = iTime+n;
+    vec2 p = vec2(sin(a*n1), cos(a*n2))*.4;
+
+    // The pulse only depends on the fractional part of the point position
+    float pulse = sin((fract(p.x)+fract(p.y)+iTime)*5.)*.4+.6;
+    pulse = pow(pulse, 20.);
+
+    imageStore(cells, texel, vec4(p, pulse, 0.));
+}
@@ -0,0 +1,52 @@
+#version 310 es
+
+precision mediump float;
+
+// Per-frame values, uploaded as a single std140 uniform buffer (see FrameUniforms.java)
+layout (std140) uniform FrameBlock
+{
+    vec3      iResolution;
+    float     iTime;
+    vec4      iMouse;
+    vec4      iCustomColor;
+    int       iUseCustomColor;
+    ivec4     iInterleave;           // x: pattern (1: checkerboard, 2: quarter), y: field, z: history valid
+};
+
+// The field shaded this frame
+uniform sampler2D field_tex;
+
+// The previous resolved frame
+uniform sampler2D history_tex;
+
+layout (location = 0) out vec4 fragmentColor;
+
+// Field index for each texel of a 2x2 block in the quarter pattern, the inverse of
+// QUARTER_OFFSETS in shader_fragment.glsl
+const int QUARTER_FIELDS[] = int[4](0, 2, 3, 1);
+
+void main()
+{
+    ivec2 p = ivec2(gl_FragCoord.xy);
+
+    int field;
+    ivec2 fieldCoord;
+
+    if(iInterleave.x == 1)
+    {
+        field = (p.x + p.y) & 1;
+        fieldCoord = ivec2(p.x / 2, p.y);
+    }
+    else
+    {
+        field = QUARTER_FIELDS[(p.y & 1) * 2 + (p.x & 1)];
+        fieldCoord = p / 2;
+    }
+
+    // Texels not shaded this frame are taken from the previous frame. Without history, the
+    // nearest texel of the current field is used instead.
+    if(field == iInterleave.y || iInterleave.z == 0)
+        fragmentColor = texelFetch(field_tex, fieldCoord, 0);
+    else
+        fragmentColor = texelFetch(history_tex, p, 0);
+}
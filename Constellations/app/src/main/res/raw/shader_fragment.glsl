@@ -2,16 +2,62 @@
 
 precision highp float;
 
-uniform vec3      iResolution;
-uniform float     iTime;
-uniform vec4      iMouse;                // mouse pixel coords. xy: current (if MLB down), zw: click
-uniform int       iUseCustomColor;
-uniform vec4      iCustomColor;
+// Per-frame values, uploaded as a single std140 uniform buffer (see FrameUniforms.java)
+layout (std140) uniform FrameBlock
+{
+    vec3      iResolution;
+    float     iTime;
+    vec4      iMouse;                // mouse pixel coords. xy: current (if MLB down), zw: click
+    vec4      iCustomColor;
+    int       iUseCustomColor;
+    ivec4     iInterleave;           // x: pattern (0: off, 1: checkerboard, 2: quarter), y: field
+};
+
+// Layers rendered separately into the layer cache (see LayerUniforms.java). Only the mask is
+// used here, the transformations are applied by layer_composite_fragment.glsl.
+layout (std140) uniform LayerBlock
+{
+    ivec4     iLayerMask;            // x: bit mask of the layers to render, 0: the full image
+    vec4      iLayerMatrix[4];
+    vec4      iLayerOffset[4];
+};
+
+// Point offsets (xy) and sparkle pulses (z) of all grid cells, written by position_compute.glsl
+uniform highp sampler2D iCells;
 
 layout (location = 0) out vec4 fragmentColor;
 
 #define S(a, b, t) smoothstep(a, b, t)
-#define NUM_LAYERS 4.
+
+// Quality settings. These are injected after the #version line for each quality tier (see
+// QualityTier.java), the defaults correspond to the high tier.
+#ifndef NUM_LAYERS
+#define NUM_LAYERS 4
+#endif
+
+// Number of neighbouring points each pixel connects to: 9 for the full 3x3 block, 5 to
+// leave out the diagonal neighbours
+#ifndef NEIGHBOURS
+#define NEIGHBOURS 9
+#endif
+
+// Whether points sparkle
+#ifndef SPARKLES
+#define SPARKLES 1
+#endif
+
+// Whether the image gets darker towards the edges
+#ifndef VIGNETTE
+#define VIGNETTE 1
+#endif
+
+// Samples per pixel, 1 or 4
+#ifndef SAMPLES
+#define SAMPLES 1
+#endif
+
+// Number of precomputed cells per layer in each direction, see position_compute.glsl
+#define CELL_GRID 48
 
 //#define SIMPLE
 
@@ -31,6 +77,23 @@ vec2 GetPos(vec2 id, vec2 offs, float t) {
     return offs + vec2(sin(a*n1), cos(a*n2))*.4;
 }
 
+float Pulse(vec2 p, float t) {
+    float pulse = sin((fract(p.x)+fract(p.y)+t)*5.)*.4+.6;
+    return pow(pulse, 20.);
+}
+
+// Point offset and sparkle pulse of the neighbouring cell at offs. These are fetched from
+// the precomputed cells if possible, and only calculated here for cells outside of the grid.
+vec3 CellData(vec2 cell, vec2 offs, float n, int layer, float t) {
+    ivec2 texel = ivec2(cell+offs) + CELL_GRID/2;
+
+    if(all(greaterThanEqual(texel, ivec2(0))) && all(lessThan(texel, ivec2(CELL_GRID))))
+        return texelFetch(iCells, texel + ivec2(0, layer*CELL_GRID), 0).xyz;
+
+    vec2 p = GetPos(cell+n, offs, t)-offs;
+    return vec3(p, Pulse(p, t));
+}
+
 float GetT(vec2 ro, vec2 rd, vec2 p) {
 	return dot(p-ro, rd);
 }
@@ -58,16 +121,31 @@ float line(vec2 a, vec2 b, vec2 uv) {
     return S(r1, r2, d)*fade;
 }
 
-float NetLayer(vec2 st, float n, float t) {
-    vec2 id = floor(st)+n;
+// Whether the neighbour with given index in the 3x3 block is used
+bool UsedNeighbour(int i) {
+#if NEIGHBOURS == 5
+    return (i & 1) == 1 || i == 4;
+#else
+    return true;
+#endif
+}
+
+float NetLayer(vec2 st, float n, int layer, float t) {
+    vec2 cell = floor(st);
 
     st = fract(st)-.5;
 
     vec2 p[9];
+    float pulses[9];
     int i=0;
     for(float y=-1.; y<=1.; y++) {
     	for(float x=-1.; x<=1.; x++) {
-            p[i++] = GetPos(id, vec2(x,y), t);
+            if(UsedNeighbour(i)) {
+                vec3 c = CellData(cell, vec2(x,y), n, layer, t);
+                pulses[i] = c.z;
+                p[i] = vec2(x,y)+c.xy;
+            }
+            i++;
     	}
     }
 
@@ -75,17 +153,19 @@ float NetLayer(vec2 st, float n, float t) {
     float sparkle = 0.;
 
     for(int i=0; i<9; i++) {
+        if(!UsedNeighbour(i))
+            continue;
+
         m += line(p[4], p[i], st);
 
+#if SPARKLES
         float d = length(st-p[i]);
 
         float s = (.005/(d*d));
         s *= S(1., .7, d);
-        float pulse = sin((fract(p[i].x)+fract(p[i].y)+t)*5.)*.4+.6;
-        pulse = pow(pulse, 20.);
-
-        s *= pulse;
+        s *= pulses[i];
         sparkle += s;
+#endif
     }
 
     m += line(p[1], p[3], st);
@@ -93,9 +173,11 @@ float NetLayer(vec2 st, float n, float t) {
     m += line(p[7], p[5], st);
     m += line(p[7], p[3], st);
 
+#if SPARKLES
     float sPhase = (sin(t+n)+sin(t*.1))*.25+.5;
     sPhase += pow(sin(t*.1)*.5+.5, 50.)*5.;
     m += sparkle*sPhase;//(*.5+.5);
+#endif
 
     return m;
 }
@@ -113,13 +195,32 @@ void mainImage( out vec4 fragColor, in vec2 fragCoord )
     vec2 st = uv*rot;
 	M *= rot*2.;
 
+    // Render the requested layers without fade, each into its own channel
+    if(iLayerMask.x != 0) {
+        vec4 layers = vec4(0.);
+        for(int layer=0; layer<NUM_LAYERS; layer++) {
+            if((iLayerMask.x & (1 << layer)) == 0)
+                continue;
+
+            float i = float(layer)/float(NUM_LAYERS);
+            float z = fract(t+i);
+            float size = mix(15., 1., z);
+
+            layers[layer] = NetLayer(st*size-M*z, i, layer, iTime);
+        }
+
+        fragColor = layers;
+        return;
+    }
+
     float m = 0.;
-    for(float i=0.; i<1.; i+=1./NUM_LAYERS) {
+    for(int layer=0; layer<NUM_LAYERS; layer++) {
+        float i = float(layer)/float(NUM_LAYERS);
         float z = fract(t+i);
         float size = mix(15., 1., z);
         float fade = S(0., .6, z)*S(1., .8, z);
 
-        m += fade * NetLayer(st*size-M*z, i, iTime);
+        m += fade * NetLayer(st*size-M*z, i, layer, iTime);
     }
 
     float glow = -uv.y*0.2f*2.;
@@ -128,7 +229,7 @@ void mainImage( out vec4 fragColor, in vec2 fragCoord )
 
     if(iUseCustomColor > 0)
     {
-        baseCol = iCustomColor.rgb;1
+        baseCol = iCustomColor.rgb;
     }
     else
     {
@@ -140,11 +241,13 @@ void mainImage( out vec4 fragColor, in vec2 fragCoord )
 
     #ifdef SIMPLE
     uv *= 10.;
-    col = vec3(1)*NetLayer(uv, 0., iTime);
+    col = vec3(1)*NetLayer(uv, 0., 0, iTime);
     uv = fract(uv);
     //if(uv.x>.98 || uv.y>.98) col += 1.;
     #else
+    #if VIGNETTE
     col *= 1.-dot(uv,uv);
+    #endif
     t = mod(iTime, 230.);
     col *= S(0., 20., t)*S(224., 200., t);
     #endif
@@ -152,7 +255,39 @@ void mainImage( out vec4 fragColor, in vec2 fragCoord )
     fragColor = vec4(col,1);
 }
 
+// Texel offsets inside each 2x2 block for the fields of the quarter pattern
+const ivec2 QUARTER_OFFSETS[] = ivec2[4](ivec2(0, 0), ivec2(1, 1), ivec2(1, 0), ivec2(0, 1));
+
+// Map a texel of the current field to the render target texel it stands for. The fields
+// are recombined in resolve_fragment.glsl.
+vec2 targetCoord(vec2 fieldCoord)
+{
+    ivec2 p = ivec2(fieldCoord);
+
+    if(iInterleave.x == 1)
+        p = ivec2(p.x*2 + ((p.y + iInterleave.y) & 1), p.y);
+    else if(iInterleave.x == 2)
+        p = p*2 + QUARTER_OFFSETS[iInterleave.y];
+
+    return vec2(p) + .5;
+}
+
+// Rotated grid sample positions for SAMPLES 4, relative to the texel center
+const vec2 SAMPLE_OFFSETS[] = vec2[4](vec2(-.125, -.375), vec2(.375, -.125), vec2(.125, .375), vec2(-.375, .125));
+
 void main()
 {
-    mainImage(fragmentColor, gl_FragCoord.xy);
+    vec2 coord = targetCoord(gl_FragCoord.xy);
+
+#if SAMPLES == 4
+    vec4 sum = vec4(0.);
+    for(int i=0; i<4; i++) {
+        vec4 c;
+        mainImage(c, coord+SAMPLE_OFFSETS[i]);
+        sum += c;
+    }
+    fragmentColor = sum*.25;
+#else
+    mainImage(fragmentColor, coord);
+#endif
 }
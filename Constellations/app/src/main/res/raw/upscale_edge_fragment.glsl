@@ -0,0 +1,51 @@
+#version 310 es
+
+// Texel coordinates of the full screen need more than mediump precision
+precision highp float;
+
+in vec2 tex_coords;
+
+// The low resolution scene (see RenderTarget.java)
+uniform sampler2D quad_tex;
+
+layout (location = 0) out vec4 fragmentColor;
+
+const vec3 LUMA = vec3(.299, .587, .114);
+
+// How much the interpolation is steepened across a full contrast edge. 0 is plain bilinear.
+const float SHARPNESS = 1.;
+
+// Contrast-adaptive upscaler for thin bright lines on a dark background. Bilinear filtering
+// smears a one texel wide line over two texels of the render target, which at divisors of 4
+// and above is a wide, dim band. Here, the interpolation between the four texels surrounding
+// the pixel is steepened in proportion to their local contrast, so lines and stars stay
+// narrow and bright while flat and dark areas are filtered bilinearly.
+//
+// Cost: four texelFetch and about 30 ALU instructions per pixel, independent of the divisor.
+void main()
+{
+    ivec2 size = textureSize(quad_tex, 0);
+    vec2 p = tex_coords * vec2(size) - .5;
+    ivec2 base = ivec2(floor(p));
+    vec2 f = p - floor(p);
+
+    ivec2 last = size - 1;
+    ivec2 p0 = clamp(base, ivec2(0), last);
+    ivec2 p1 = clamp(base + 1, ivec2(0), last);
+
+    vec3 a = texelFetch(quad_tex, p0, 0).rgb;
+    vec3 b = texelFetch(quad_tex, ivec2(p1.x, p0.y), 0).rgb;
+    vec3 c = texelFetch(quad_tex, ivec2(p0.x, p1.y), 0).rgb;
+    vec3 d = texelFetch(quad_tex, p1, 0).rgb;
+
+    vec4 luma = vec4(dot(a, LUMA), dot(b, LUMA), dot(c, LUMA), dot(d, LUMA));
+    float lumaMin = min(min(luma.x, luma.y), min(luma.z, luma.w));
+    float lumaMax = max(max(luma.x, luma.y), max(luma.z, luma.w));
+
+    // 0 in flat areas, close to 1 at a bright line on black
+    float contrast = (lumaMax - lumaMin) / (lumaMax + 1e-3);
+
+    f = mix(f, f * f * (3. - 2. * f), contrast * SHARPNESS);
+
+    fragmentColor = vec4(mix(mix(a, b, f.x), mix(c, d, f.x), f.y), 1.);
+}
@@ -0,0 +1,226 @@
+package com.constellations.android.livewallpaper;
+
+import com.constellations.android.R;
+import com.constellations.android.util.Logger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Renders frames through a {@link RecordingGLBackend} and checks that the frame loop does not
+ * allocate on the heap, so it never causes garbage collections while the wallpaper animates.
+ * Allocations are measured per thread, so only the render thread is covered.
+ *
+ * The tests run without the C2 compiler (see build.gradle). Requesting a C2 compilation
+ * resolves all string constants of the class on the requesting thread, which would show up
+ * as allocations at random frames, and its escape analysis could hide allocations that the
+ * Android runtime does make.
+ */
+public class FrameAllocationTest
+{
+    /**
+     * Frames rendered before allocations are measured, while programs, targets and caches are
+     * set up and the JIT compiles the frame loop. At the 30 fps of the harness, this spans
+     * more than one telemetry period of a minute, so ending a period is compiled as well.
+     */
+    private static final int WARMUP_FRAMES = 3000;
+
+    /**
+     * Frames whose allocations are measured. At the 30 fps of the harness, this spans more
+     * than a minute, so at least one telemetry period ends while allocations are measured.
+     */
+    private static final int FRAMES = 2000;
+
+    /**
+     * Frames of the baked loop whose allocations are measured
+     */
+    private static final int LOOP_FRAMES = 100;
+
+    /**
+     * Scene time between two frames of the baked loop, in seconds. This crosses a keyframe
+     * every few frames.
+     */
+    private static final float LOOP_FRAME_TIME = .1f;
+
+    /**
+     * Looking the bean up allocates, so it is only done once
+     */
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private RendererHarness harness;
+
+    @After
+    public void release()
+    {
+        if(harness != null)
+            harness.release();
+
+        Logger.setSink(null);
+    }
+
+    @Test
+    public void defaultPipeline() throws IOException
+    {
+        check(settings());
+    }
+
+    @Test
+    public void interleaved() throws IOException
+    {
+        check(settings().put("interleave_mode", "checkerboard"));
+    }
+
+    @Test
+    public void layerCache() throws IOException
+    {
+        check(settings().put("layer_cache", true));
+    }
+
+    @Test
+    public void geometryRenderer() throws IOException
+    {
+        check(settings().put("geometry_renderer", true));
+    }
+
+    @Test
+    public void cpuPoints() throws IOException
+    {
+        check(settings().put("cpu_points", true));
+    }
+
+    @Test
+    public void adaptiveResolution() throws IOException
+    {
+        check(new TestPreferences().put("adaptive_resolution", true));
+    }
+
+    @Test(timeout = 120000)
+    public void loopPlayback() throws Exception
+    {
+        Logger.setSink(new Logger.Sink()
+        {
+            @Override
+            public void log(int priority, String tag, String message, Throwable error)
+            {
+                if(priority >= Logger.ERROR)
+                    throw new AssertionError(tag + ": " + message, error);
+            }
+        });
+
+        final File cacheDir = folder.newFolder();
+
+        // A small loop, so baking it is quick
+        final BakedLoop loop = new BakedLoop(cacheDir, 64, 64, false, 0.f, 0.f, 0.f);
+        loop.start();
+
+        while(!loop.isComplete())
+            Thread.sleep(10);
+
+        final GLState state = new GLState(new RecordingGLBackend());
+        final ProgramFactory programs = new ProgramFactory(state,
+                new TestRenderHost(cacheDir, new TestPreferences()), new GLCapabilities(state.getBackend()));
+        final LoopPlayer player = new LoopPlayer(state, programs.create(R.raw.quad_vertex, R.raw.playback_fragment), loop);
+
+        final Runnable frames = new Runnable()
+        {
+            private int frame;
+
+            @Override
+            public void run()
+            {
+                for(int i = 0; i < LOOP_FRAMES; ++i)
+                {
+                    final float time = (frame++ * LOOP_FRAME_TIME) % SceneMath.SCENE_PERIOD;
+
+                    if(player.prepare(time))
+                        assertTrue("Keyframes could not be read", player.draw(time, 64, 64));
+
+                    // Give the decoder thread time to keep up, like the frame interval does
+                    try
+                    {
+                        Thread.sleep(1);
+                    }
+                    catch(InterruptedException ex)
+                    {
+                        throw new AssertionError(ex);
+                    }
+                }
+            }
+        };
+
+        try
+        {
+            for(int i = 0; i < WARMUP_FRAMES / LOOP_FRAMES; ++i)
+                frames.run();
+
+            assertNoAllocations(frames, LOOP_FRAMES);
+        }
+        finally
+        {
+            player.release();
+        }
+    }
+
+    /**
+     * Settings with a fixed resolution, so the governor does not resize targets while
+     * allocations are measured
+     */
+    private static TestPreferences settings()
+    {
+        return new TestPreferences().put("adaptive_resolution", false);
+    }
+
+    private void check(TestPreferences settings) throws IOException
+    {
+        harness = new RendererHarness(folder.newFolder(), settings, 1080, 1920);
+        harness.renderFrames(WARMUP_FRAMES);
+
+        assertNoAllocations(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                harness.renderFrames(FRAMES);
+            }
+        }, FRAMES);
+    }
+
+    /**
+     * Check that running given frames does not allocate
+     * @param frames Renders the frames
+     * @param count Number of frames rendered, for the failure message
+     */
+    private static void assertNoAllocations(Runnable frames, int count)
+    {
+        // Measuring may allocate itself, so that is measured first and subtracted
+        final long start = allocatedBytes();
+        final long overhead = allocatedBytes() - start;
+
+        final long before = allocatedBytes();
+        frames.run();
+        final long allocated = allocatedBytes() - before - overhead;
+
+        assertEquals(count + " frames allocated " + allocated + " bytes", 0, allocated);
+    }
+
+    /**
+     * Bytes allocated by the current thread so far
+     */
+    private static long allocatedBytes()
+    {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,95 @@
+package com.constellations.android.livewallpaper;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Renders frames through a {@link RecordingGLBackend} and checks that no frame issues more GL
+ * calls of any kind than its budget allows. The budgets are the current call counts, so
+ * adding a call to the frame loop fails this test until the budget is raised deliberately.
+ */
+public class GLCallBudgetTest
+{
+    /**
+     * Frames rendered before the calls are counted, while programs, targets and caches are
+     * set up
+     */
+    private static final int WARMUP_FRAMES = 5;
+
+    /**
+     * Frames whose calls are counted
+     */
+    private static final int FRAMES = 60;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private RendererHarness harness;
+
+    @After
+    public void release()
+    {
+        if(harness != null)
+            harness.release();
+    }
+
+    @Test
+    public void defaultPipeline() throws IOException
+    {
+        check(settings(), GLCallStats.budget(0, 7, 1, 0, 3, 4));
+    }
+
+    @Test
+    public void interleaved() throws IOException
+    {
+        check(settings().put("interleave_mode", "checkerboard"), GLCallStats.budget(0, 16, 1, 0, 4, 5));
+    }
+
+    @Test
+    public void layerCache() throws IOException
+    {
+        check(settings().put("layer_cache", true), GLCallStats.budget(0, 16, 2, 0, 4, 4));
+    }
+
+    @Test
+    public void geometryRenderer() throws IOException
+    {
+        check(settings().put("geometry_renderer", true), GLCallStats.budget(0, 15, 2, 0, 3, 4));
+    }
+
+    @Test
+    public void cpuPoints() throws IOException
+    {
+        // Waiting for and deleting the fence of the reused upload segment
+        check(settings().put("cpu_points", true), GLCallStats.budget(1, 10, 3, 1, 2, 4));
+    }
+
+    /**
+     * Settings with a fixed resolution, so the governor does not resize targets while the
+     * calls are counted
+     */
+    private static TestPreferences settings()
+    {
+        return new TestPreferences().put("adaptive_resolution", false);
+    }
+
+    private void check(TestPreferences settings, GLCallStats budget) throws IOException
+    {
+        harness = new RendererHarness(folder.newFolder(), settings, 1080, 1920);
+        harness.renderFrames(WARMUP_FRAMES);
+
+        for(int frame = 0; frame < FRAMES; ++frame)
+        {
+            harness.renderFrames(1);
+
+            final GLCallStats stats = harness.getFrameStats();
+            assertFalse("Frame " + frame + " exceeds the budget: " + stats, stats.exceeds(budget));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.constellations.android.livewallpaper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link InputRing} hands events over in order across the end of its slot
+ * arrays, and that the latest touch and offsets events survive a full queue
+ */
+public class InputRingTest
+{
+    /**
+     * Events of the concurrent test
+     */
+    private static final int EVENTS = 200000;
+
+    /**
+     * Collects drained events as (type, x, y) triples
+     */
+    private static class Recorder implements InputRing.Handler
+    {
+        final List<float[]> events = new ArrayList<>();
+
+        @Override
+        public void onInput(int type, float x, float y)
+        {
+            events.add(new float[] { type, x, y });
+        }
+    }
+
+    private final InputRing ring = new InputRing();
+    private final Recorder recorder = new Recorder();
+
+    @Test
+    public void wrapsAround()
+    {
+        int next = 0;
+
+        // Batches that do not divide the capacity, so writes and reads straddle the end
+        for(int batch = 0; batch < 5 * InputRing.CAPACITY / 7; ++batch)
+        {
+            for(int i = 0; i < 7; ++i)
+                ring.offer(InputRing.TOUCH_MOVE, next + i, -(next + i));
+
+            assertEquals(7, ring.drain(recorder));
+
+            for(int i = 0; i < 7; ++i)
+                assertEvent(next + i, InputRing.TOUCH_MOVE, next + i, -(next + i));
+
+            next += 7;
+        }
+
+        assertEquals(0, ring.drain(recorder));
+    }
+
+    @Test
+    public void keepsLatestEventsOfFullQueue()
+    {
+        for(int i = 0; i < InputRing.CAPACITY; ++i)
+            ring.offer(InputRing.TOUCH_MOVE, i, 0.f);
+
+        // None of these fit, only the latest touch and offsets events are kept
+        ring.offer(InputRing.TOUCH_MOVE, 100.f, 0.f);
+        ring.offer(InputRing.OFFSETS, .1f, .2f);
+        ring.offer(InputRing.TOUCH_UP, 101.f, 1.f);
+        ring.offer(InputRing.OFFSETS, .3f, .4f);
+
+        assertEquals(InputRing.CAPACITY, ring.drain(recorder));
+
+        for(int i = 0; i < InputRing.CAPACITY; ++i)
+            assertEvent(i, InputRing.TOUCH_MOVE, i, 0.f);
+
+        // The kept events are queued by the next flush, like the frame pacer does before
+        // each frame
+        assertEquals(0, ring.drain(recorder));
+        ring.flush();
+        assertEquals(2, ring.drain(recorder));
+
+        assertEvent(InputRing.CAPACITY, InputRing.TOUCH_UP, 101.f, 1.f);
+        assertEvent(InputRing.CAPACITY + 1, InputRing.OFFSETS, .3f, .4f);
+    }
+
+    @Test
+    public void queuesKeptEventsBeforeNewOnes()
+    {
+        for(int i = 0; i < InputRing.CAPACITY; ++i)
+            ring.offer(InputRing.OFFSETS, i, 0.f);
+
+        ring.offer(InputRing.TOUCH_DOWN, 1.f, 2.f);
+        ring.offer(InputRing.OFFSETS, 100.f, 0.f);
+
+        assertEquals(InputRing.CAPACITY, ring.drain(recorder));
+
+        // The next event finds room again, behind the ones kept aside
+        ring.offer(InputRing.TOUCH_MOVE, 3.f, 4.f);
+        ring.offer(InputRing.OFFSETS, 101.f, 0.f);
+        assertEquals(4, ring.drain(recorder));
+
+        assertEvent(InputRing.CAPACITY, InputRing.TOUCH_DOWN, 1.f, 2.f);
+        assertEvent(InputRing.CAPACITY + 1, InputRing.OFFSETS, 100.f, 0.f);
+        assertEvent(InputRing.CAPACITY + 2, InputRing.TOUCH_MOVE, 3.f, 4.f);
+        assertEvent(InputRing.CAPACITY + 3, InputRing.OFFSETS, 101.f, 0.f);
+    }
+
+    @Test(timeout = 60000)
+    public void concurrentProducerAndConsumer() throws InterruptedException
+    {
+        final Thread producer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for(int i = 1; i <= EVENTS; ++i)
+                    ring.offer(i % 3 == 0 ? InputRing.OFFSETS : InputRing.TOUCH_MOVE, i, 0.f);
+
+                ring.offer(InputRing.TOUCH_UP, EVENTS + 1, 0.f);
+                ring.offer(InputRing.OFFSETS, EVENTS + 2, 0.f);
+
+                // Keep offering what did not fit until the consumer made room
+                while(!Thread.currentThread().isInterrupted())
+                    ring.flush();
+            }
+        });
+
+        producer.start();
+
+        float lastTouch = 0.f;
+        float lastOffsets = 0.f;
+        int lastType = -1;
+
+        try
+        {
+            while(lastType != InputRing.TOUCH_UP || lastOffsets != EVENTS + 2)
+            {
+                recorder.events.clear();
+                ring.drain(recorder);
+
+                // Events may be dropped while the queue is full, but never reordered
+                for(float[] event: recorder.events)
+                {
+                    if(event[0] == InputRing.OFFSETS)
+                    {
+                        assertTrue(event[1] > lastOffsets);
+                        lastOffsets = event[1];
+                    }
+                    else
+                    {
+                        assertTrue(event[1] > lastTouch);
+                        lastTouch = event[1];
+                        lastType = (int)event[0];
+                    }
+                }
+
+                // Let the queue fill up now and then, like a slow frame does
+                Thread.sleep(recorder.events.isEmpty() ? 0 : 1);
+            }
+        }
+        finally
+        {
+            producer.interrupt();
+            producer.join();
+        }
+
+        assertEquals(EVENTS + 1, lastTouch, 0.f);
+    }
+
+    private void assertEvent(int index, int type, float x, float y)
+    {
+        final float[] event = recorder.events.get(index);
+
+        assertEquals(type, (int)event[0]);
+        assertEquals(x, event[1], 0.f);
+        assertEquals(y, event[2], 0.f);
+    }
+}
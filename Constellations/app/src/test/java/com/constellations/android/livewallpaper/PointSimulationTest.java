@@ -0,0 +1,205 @@
+package com.constellations.android.livewallpaper;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the motion of {@link PointSimulation} against the port of GetPos in {@link SceneMath},
+ * and its grid index against a brute force search over all points
+ */
+public class PointSimulationTest
+{
+    /**
+     * Largest accepted difference between the simulated positions and GetPos, in cells
+     */
+    private static final float EPSILON = 1e-5f;
+
+    /**
+     * Scene times the points are stepped to
+     */
+    private static final float[] TIMES = { 0.f, 7.25f, 93.5f };
+
+    /**
+     * Bucket edge lengths in cells: smaller and larger than the queried radii, one that does
+     * not divide the grid, and one covering the whole grid with a single bucket
+     */
+    private static final float[] BUCKET_SIZES = { .5f, 1.f, 1.7f, 100.f };
+
+    private static final float[] RADII = { .3f, 1.f, 2.5f };
+
+    /**
+     * Half the edge length of the cell grid, where the buckets at the border start clamping
+     */
+    private static final float EDGE = PointSimulation.CELL_GRID / 2;
+
+    @Test
+    public void stepMatchesGetPos()
+    {
+        final float[] position = new float[2];
+
+        for(int layers = 1; layers <= PointSimulation.LAYERS; ++layers)
+        {
+            final PointSimulation simulation = new PointSimulation(layers, 1.f);
+
+            for(float time: TIMES)
+            {
+                simulation.step(time);
+
+                for(int i = 0; i < simulation.getPointCount(); ++i)
+                {
+                    // The cell id hashed by GetPos is offset by the layer
+                    final int layer = i / PointSimulation.POINTS_PER_LAYER;
+                    final int cell = i % PointSimulation.POINTS_PER_LAYER;
+                    final float cellX = cell % PointSimulation.CELL_GRID - PointSimulation.CELL_GRID / 2;
+                    final float cellY = cell / PointSimulation.CELL_GRID - PointSimulation.CELL_GRID / 2;
+                    final float layerOffset = (float)layer / layers;
+
+                    SceneMath.getPos(cellX + layerOffset, cellY + layerOffset, 0.f, 0.f, time, position, 0);
+
+                    assertEquals(cellX + .5f + position[0], simulation.getX(i), EPSILON);
+                    assertEquals(cellY + .5f + position[1], simulation.getY(i), EPSILON);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void queryMatchesBruteForce()
+    {
+        final PointSimulation simulation = new PointSimulation(PointSimulation.LAYERS, 1.f);
+        final int[] out = new int[PointSimulation.POINTS_PER_LAYER];
+
+        // The center, the border cells, the corners and positions outside the grid, whose
+        // buckets are clamped
+        final float[] positions = { 0.f, .5f, EDGE - .5f, EDGE, EDGE + 1.5f, 3.f * EDGE };
+
+        for(float bucketSize: BUCKET_SIZES)
+        {
+            simulation.setBucketSize(bucketSize);
+
+            for(float time: TIMES)
+            {
+                simulation.step(time);
+
+                for(int layer = 0; layer < simulation.getLayers(); ++layer)
+                {
+                    for(float x: positions)
+                    {
+                        for(float y: positions)
+                        {
+                            for(float radius: RADII)
+                            {
+                                checkQuery(simulation, layer, x, y, radius, out);
+                                checkQuery(simulation, layer, -x, y, radius, out);
+                                checkQuery(simulation, layer, x, -y, radius, out);
+                                checkQuery(simulation, layer, -x, -y, radius, out);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void neighboursExcludePoint()
+    {
+        final PointSimulation simulation = new PointSimulation(2, 1.f);
+        final int[] out = new int[PointSimulation.POINTS_PER_LAYER];
+        simulation.step(TIMES[1]);
+
+        // Points in the middle, along the borders and in the corners of both layers
+        final int last = PointSimulation.CELL_GRID - 1;
+        final int[] cells = { 0, last, last * PointSimulation.CELL_GRID, PointSimulation.POINTS_PER_LAYER - 1,
+                PointSimulation.POINTS_PER_LAYER / 2 + PointSimulation.CELL_GRID / 2, 5 };
+
+        for(int layer = 0; layer < simulation.getLayers(); ++layer)
+        {
+            for(int cell: cells)
+            {
+                final int i = layer * PointSimulation.POINTS_PER_LAYER + cell;
+
+                for(float radius: RADII)
+                {
+                    final int found = simulation.neighbours(i, radius, out);
+                    final int[] expected = bruteForce(simulation, layer, simulation.getX(i), simulation.getY(i),
+                            radius, i);
+
+                    assertArrayEquals(expected, sorted(out, found));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void queryStopsWhenOutputIsFull()
+    {
+        final PointSimulation simulation = new PointSimulation(1, 1.f);
+        simulation.step(TIMES[2]);
+
+        final float radius = 3.f;
+        final int[] all = bruteForce(simulation, 0, 0.f, 0.f, radius, -1);
+        assertTrue(all.length > 4);
+
+        // The points returned are some of the ones in range, without duplicates
+        final int[] out = new int[4];
+        assertEquals(out.length, simulation.query(0, 0.f, 0.f, radius, -1, out));
+
+        final int[] found = sorted(out, out.length);
+
+        for(int k = 0; k < found.length; ++k)
+        {
+            assertTrue(Arrays.binarySearch(all, found[k]) >= 0);
+            assertTrue(k == 0 || found[k] != found[k - 1]);
+        }
+
+        // An output that fits exactly receives all of them
+        final int[] exact = new int[all.length];
+        assertEquals(all.length, simulation.query(0, 0.f, 0.f, radius, -1, exact));
+        assertArrayEquals(all, sorted(exact, exact.length));
+    }
+
+    private static void checkQuery(PointSimulation simulation, int layer, float x, float y, float radius, int[] out)
+    {
+        final int found = simulation.query(layer, x, y, radius, -1, out);
+        final int[] expected = bruteForce(simulation, layer, x, y, radius, -1);
+
+        assertArrayEquals("layer " + layer + " at " + x + ", " + y + " within " + radius,
+                expected, sorted(out, found));
+    }
+
+    /**
+     * Find the points of a layer within given distance by checking every one of them
+     * @return The indices of the points found, in ascending order
+     */
+    private static int[] bruteForce(PointSimulation simulation, int layer, float x, float y, float radius,
+            int exclude)
+    {
+        final int[] found = new int[PointSimulation.POINTS_PER_LAYER];
+        int count = 0;
+
+        for(int k = 0; k < PointSimulation.POINTS_PER_LAYER; ++k)
+        {
+            final int i = layer * PointSimulation.POINTS_PER_LAYER + k;
+            final float dx = simulation.getX(i) - x;
+            final float dy = simulation.getY(i) - y;
+
+            if(i != exclude && dx * dx + dy * dy <= radius * radius)
+                found[count++] = i;
+        }
+
+        return Arrays.copyOf(found, count);
+    }
+
+    private static int[] sorted(int[] values, int count)
+    {
+        final int[] copy = Arrays.copyOf(values, count);
+        Arrays.sort(copy);
+        return copy;
+    }
+}
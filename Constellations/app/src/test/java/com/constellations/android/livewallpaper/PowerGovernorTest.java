@@ -0,0 +1,212 @@
+package com.constellations.android.livewallpaper;
+
+import com.constellations.android.util.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds device states into a {@link PowerGovernor} through a fake {@link DeviceStateSource}
+ * and checks the limits of the policies it publishes
+ */
+public class PowerGovernorTest
+{
+    /**
+     * Reports the states the test sets, like the system would report changes
+     */
+    private static class FakeDeviceStateSource implements DeviceStateSource
+    {
+        private DeviceStateSource.Listener listener;
+        private DeviceState state = DeviceState.UNKNOWN;
+
+        void setState(DeviceState state)
+        {
+            this.state = state;
+
+            if(listener != null)
+                listener.onDeviceStateChanged(state);
+        }
+
+        @Override
+        public void start(DeviceStateSource.Listener listener)
+        {
+            this.listener = listener;
+            listener.onDeviceStateChanged(state);
+        }
+
+        @Override
+        public void stop()
+        {
+            listener = null;
+        }
+    }
+
+    private final FakeDeviceStateSource source = new FakeDeviceStateSource();
+    private final PowerGovernor governor = new PowerGovernor(source);
+
+    @Before
+    public void start()
+    {
+        Logger.setSink(new Logger.Sink()
+        {
+            @Override
+            public void log(int priority, String tag, String message, Throwable error)
+            {
+            }
+        });
+
+        governor.start();
+    }
+
+    @After
+    public void stop()
+    {
+        governor.stop();
+        Logger.setSink(null);
+    }
+
+    @Test
+    public void unknownStateHasNoLimits()
+    {
+        assertLimits(60, 1.f, QualityTier.ULTRA, false);
+    }
+
+    @Test
+    public void lowBattery()
+    {
+        source.setState(new DeviceState(false, DeviceState.THERMAL_NONE, .1f, false));
+        assertLimits(30, 1.f, QualityTier.HIGH, false);
+
+        // The limits are lifted as soon as the device is plugged in
+        source.setState(new DeviceState(false, DeviceState.THERMAL_NONE, .1f, true));
+        assertLimits(60, 1.f, QualityTier.ULTRA, false);
+
+        source.setState(new DeviceState(false, DeviceState.THERMAL_NONE, .5f, false));
+        assertLimits(60, 1.f, QualityTier.ULTRA, false);
+    }
+
+    @Test
+    public void powerSave()
+    {
+        source.setState(new DeviceState(true, DeviceState.THERMAL_NONE, .5f, false));
+        assertLimits(20, 2.f, QualityTier.MEDIUM, false);
+    }
+
+    @Test
+    public void thermal()
+    {
+        source.setState(new DeviceState(false, DeviceState.THERMAL_LIGHT, -1.f, true));
+        assertLimits(30, 1.f, QualityTier.HIGH, false);
+
+        source.setState(new DeviceState(false, DeviceState.THERMAL_MODERATE, -1.f, true));
+        assertLimits(20, 2.f, QualityTier.MEDIUM, false);
+
+        source.setState(new DeviceState(false, DeviceState.THERMAL_SEVERE, -1.f, true));
+        assertLimits(15, 4.f, QualityTier.LOW, false);
+
+        source.setState(new DeviceState(false, DeviceState.THERMAL_CRITICAL, -1.f, true));
+        assertTrue(RenderPolicy.getCurrent().isPaused());
+
+        // Emergency and shutdown are beyond critical
+        source.setState(new DeviceState(false, DeviceState.THERMAL_CRITICAL + 2, -1.f, true));
+        assertTrue(RenderPolicy.getCurrent().isPaused());
+
+        source.setState(new DeviceState(false, DeviceState.THERMAL_NONE, -1.f, true));
+        assertLimits(60, 1.f, QualityTier.ULTRA, false);
+    }
+
+    @Test
+    public void mostRestrictiveConditionWins()
+    {
+        source.setState(new DeviceState(true, DeviceState.THERMAL_LIGHT, .1f, false));
+        assertLimits(20, 2.f, QualityTier.MEDIUM, false);
+
+        source.setState(new DeviceState(true, DeviceState.THERMAL_SEVERE, .1f, false));
+        assertLimits(15, 4.f, QualityTier.LOW, false);
+    }
+
+    @Test
+    public void limitsOnlyAllowLowerSettings()
+    {
+        source.setState(new DeviceState(true, DeviceState.THERMAL_NONE, .5f, false));
+
+        final RenderPolicy policy = RenderPolicy.getCurrent();
+        assertEquals(15, policy.capFps(15));
+        assertEquals(20, policy.capFps(0));
+        assertEquals(4.f, policy.clampDivisor(4.f), 0.f);
+        assertSame(QualityTier.LOW, policy.capTier(QualityTier.LOW));
+    }
+
+    @Test
+    public void samePolicyIsNotPublishedAgain()
+    {
+        final RenderPolicy[] notified = new RenderPolicy[1];
+        final RenderPolicy.Listener listener = new RenderPolicy.Listener()
+        {
+            @Override
+            public void onPolicyChanged(RenderPolicy policy)
+            {
+                notified[0] = policy;
+            }
+        };
+
+        RenderPolicy.addListener(listener);
+
+        try
+        {
+            source.setState(new DeviceState(false, DeviceState.THERMAL_LIGHT, -1.f, true));
+            final RenderPolicy light = notified[0];
+            assertSame(RenderPolicy.getCurrent(), light);
+
+            // Low battery leads to the same limits as light throttling
+            notified[0] = null;
+            source.setState(new DeviceState(false, DeviceState.THERMAL_LIGHT, .1f, false));
+            assertNull(notified[0]);
+            assertEquals(light.getVersion(), RenderPolicy.getCurrent().getVersion());
+
+            source.setState(new DeviceState(false, DeviceState.THERMAL_MODERATE, -1.f, true));
+            assertTrue(notified[0].getVersion() > light.getVersion());
+        }
+        finally
+        {
+            RenderPolicy.removeListener(listener);
+        }
+    }
+
+    @Test
+    public void stopLiftsLimits()
+    {
+        source.setState(new DeviceState(false, DeviceState.THERMAL_CRITICAL, -1.f, true));
+        governor.stop();
+
+        assertLimits(60, 1.f, QualityTier.ULTRA, false);
+
+        // Later states are not reported anymore
+        source.setState(new DeviceState(false, DeviceState.THERMAL_CRITICAL, -1.f, true));
+        assertFalse(RenderPolicy.getCurrent().isPaused());
+    }
+
+    /**
+     * Check the limits of the current policy, by applying it to the highest settings
+     * @param fps Expected frame rate for a configured rate of 60 Hz
+     * @param divisor Expected resolution divisor for a configured divisor of 1
+     * @param tier Expected quality tier for the ultra tier
+     * @param paused Whether the animation is expected to be paused
+     */
+    private static void assertLimits(int fps, float divisor, QualityTier tier, boolean paused)
+    {
+        final RenderPolicy policy = RenderPolicy.getCurrent();
+
+        assertEquals(fps, policy.capFps(60));
+        assertEquals(divisor, policy.clampDivisor(1.f), 0.f);
+        assertSame(tier, policy.capTier(QualityTier.ULTRA));
+        assertEquals(paused, policy.isPaused());
+    }
+}
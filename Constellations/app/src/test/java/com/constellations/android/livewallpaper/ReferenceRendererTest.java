@@ -0,0 +1,121 @@
+package com.constellations.android.livewallpaper;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares frames of the {@link ReferenceRenderer} at fixed timestamps to the golden images
+ * in src/test/resources/golden. After an intended change of the scene, run the tests with
+ * -DupdateGoldenImages=true to write new golden images, and check them in.
+ */
+public class ReferenceRendererTest
+{
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 64;
+
+    /**
+     * Largest channel difference to the golden image that is accepted. The renderer only
+     * uses StrictMath, so it is exact on every JVM, but small changes like a reordered sum
+     * should not require new golden images.
+     */
+    private static final int MAX_CHANNEL_ERROR = 2;
+
+    private static final String GOLDEN_DIRECTORY = "golden";
+
+    private static final boolean UPDATE = Boolean.getBoolean("updateGoldenImages");
+
+    @Test
+    public void fadeIn()
+    {
+        checkFrame("fade_in", new ReferenceRenderer(), 12.5f);
+    }
+
+    @Test
+    public void midCycle()
+    {
+        checkFrame("mid_cycle", new ReferenceRenderer(), 47.25f);
+    }
+
+    @Test
+    public void lateCycle()
+    {
+        checkFrame("late_cycle", new ReferenceRenderer(), 133.f);
+    }
+
+    @Test
+    public void customColorAndMouse()
+    {
+        final ReferenceRenderer renderer = new ReferenceRenderer();
+        renderer.setCustomColor(true, .9f, .3f, .1f);
+        renderer.setMouse(WIDTH * .75f, HEIGHT * .25f);
+
+        checkFrame("custom_color_mouse", renderer, 80.f);
+    }
+
+    @Test
+    public void tilingDoesNotChangeTheImage()
+    {
+        final ReferenceImage tiled = new ReferenceRenderer(new ForkJoinPool(3), 7).render(WIDTH, HEIGHT, 47.25f);
+        final ReferenceImage single = new ReferenceRenderer(new ForkJoinPool(1), WIDTH).render(WIDTH, HEIGHT, 47.25f);
+
+        assertEquals(0, tiled.maxChannelError(single));
+    }
+
+    private void checkFrame(String name, ReferenceRenderer renderer, float time)
+    {
+        final ReferenceImage image = renderer.render(WIDTH, HEIGHT, time);
+        final String file = name + ".ppm";
+
+        if(UPDATE)
+        {
+            write(image, file);
+            return;
+        }
+
+        final ReferenceImage golden = read(file);
+
+        assertEquals(file + " width", golden.getWidth(), image.getWidth());
+        assertEquals(file + " height", golden.getHeight(), image.getHeight());
+
+        final int error = image.maxChannelError(golden);
+        assertTrue(file + " differs by up to " + error + " (MSE " + image.meanSquaredError(golden) + ")",
+                error <= MAX_CHANNEL_ERROR);
+    }
+
+    private ReferenceImage read(String file)
+    {
+        try(InputStream stream = getClass().getClassLoader().getResourceAsStream(GOLDEN_DIRECTORY + "/" + file))
+        {
+            assertNotNull("Missing golden image " + file, stream);
+            return ReferenceImage.readPpm(stream);
+        }
+        catch(IOException ex)
+        {
+            throw new AssertionError("Failed to read golden image " + file, ex);
+        }
+    }
+
+    private static void write(ReferenceImage image, String file)
+    {
+        final File directory = new File("src/test/resources", GOLDEN_DIRECTORY);
+
+        try(OutputStream stream = new FileOutputStream(new File(directory, file)))
+        {
+            image.writePpm(stream);
+        }
+        catch(IOException ex)
+        {
+            throw new AssertionError("Failed to write golden image " + file, ex);
+        }
+    }
+}
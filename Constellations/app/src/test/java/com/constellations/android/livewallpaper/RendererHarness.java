@@ -0,0 +1,87 @@
+package com.constellations.android.livewallpaper;
+
+import com.constellations.android.util.Logger;
+
+import java.io.File;
+
+/**
+ * Drives a {@link ConstellationsRenderer} on a plain JVM, issuing its GL calls to a
+ * {@link RecordingGLBackend}. The scene time advances at a fixed frame rate, and errors the
+ * renderer logs fail the test, so a frame that silently falls back to the placeholder is
+ * not mistaken for a cheap one.
+ */
+public class RendererHarness
+{
+    /**
+     * Frame rate the scene time and the uptime advance at
+     */
+    private static final float FPS = 30.f;
+
+    private final RecordingGLBackend gl = new RecordingGLBackend();
+    private final TestRenderHost host;
+    private final ConstellationsRenderer renderer;
+
+    /**
+     * Create the renderer and its surface
+     * @param cacheDir The cache directory of the renderer
+     * @param preferences The settings
+     * @param width Surface width
+     * @param height Surface height
+     */
+    public RendererHarness(File cacheDir, TestPreferences preferences, int width, int height)
+    {
+        Logger.setSink(new Logger.Sink()
+        {
+            @Override
+            public void log(int priority, String tag, String message, Throwable error)
+            {
+                if(priority >= Logger.ERROR)
+                    throw new AssertionError(tag + ": " + message, error);
+            }
+        });
+
+        host = new TestRenderHost(cacheDir, preferences);
+        renderer = new ConstellationsRenderer(host, gl, null);
+        renderer.setFrameClock(ReplayFrameClock.fixedRate(30.f, FPS, 100000));
+
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, width, height);
+    }
+
+    /**
+     * Render frames. The statistics of the last one are available from
+     * {@link #getFrameStats()} afterwards.
+     * @param count Number of frames
+     */
+    public void renderFrames(int count)
+    {
+        for(int i = 0; i < count; ++i)
+        {
+            host.advance((long)(1000 / FPS));
+            gl.beginFrame();
+            renderer.onDrawFrame(null);
+        }
+    }
+
+    /**
+     * The calls of the last frame
+     */
+    public GLCallStats getFrameStats()
+    {
+        return gl.getFrameStats();
+    }
+
+    public ConstellationsRenderer getRenderer()
+    {
+        return renderer;
+    }
+
+    /**
+     * Give up the renderer and send log messages to Android again
+     */
+    public void release()
+    {
+        renderer.release();
+        Logger.setSink(null);
+    }
+}
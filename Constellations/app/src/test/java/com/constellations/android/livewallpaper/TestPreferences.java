@@ -0,0 +1,88 @@
+package com.constellations.android.livewallpaper;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory {@link SharedPreferences} holding the settings a test publishes with
+ * {@link Configuration#update(SharedPreferences)}. Values are set directly, there is no
+ * editor.
+ */
+public class TestPreferences implements SharedPreferences
+{
+    private final Map<String, Object> values = new HashMap<>();
+
+    public TestPreferences put(String key, Object value)
+    {
+        values.put(key, value);
+        return this;
+    }
+
+    @Override
+    public Map<String, ?> getAll()
+    {
+        return new HashMap<>(values);
+    }
+
+    @Override
+    public String getString(String key, String defValue)
+    {
+        return values.containsKey(key) ? (String)values.get(key) : defValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String key, Set<String> defValues)
+    {
+        return values.containsKey(key) ? (Set<String>)values.get(key) : defValues;
+    }
+
+    @Override
+    public int getInt(String key, int defValue)
+    {
+        return values.containsKey(key) ? (Integer)values.get(key) : defValue;
+    }
+
+    @Override
+    public long getLong(String key, long defValue)
+    {
+        return values.containsKey(key) ? (Long)values.get(key) : defValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue)
+    {
+        return values.containsKey(key) ? (Float)values.get(key) : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue)
+    {
+        return values.containsKey(key) ? (Boolean)values.get(key) : defValue;
+    }
+
+    @Override
+    public boolean contains(String key)
+    {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Editor edit()
+    {
+        throw new UnsupportedOperationException("Use put() to change test settings");
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener)
+    {
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener)
+    {
+    }
+}
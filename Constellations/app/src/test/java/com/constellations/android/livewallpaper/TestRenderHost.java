@@ -0,0 +1,86 @@
+package com.constellations.android.livewallpaper;
+
+import com.constellations.android.R;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * {@link RenderHost} for tests on a plain JVM. Shader sources are read from src/main/res/raw,
+ * the settings come from a {@link TestPreferences} instance, and the uptime only advances
+ * when the test says so.
+ */
+public class TestRenderHost implements RenderHost
+{
+    /**
+     * The raw resources, relative to the module directory unit tests run in
+     */
+    private static final File RAW_DIRECTORY = new File("src/main/res/raw");
+
+    private final File cacheDir;
+    private final TestPreferences preferences;
+    private long uptime;
+
+    /**
+     * @param cacheDir The cache directory, usually a temporary folder of the test
+     * @param preferences The settings published with each {@link #updateConfiguration()}
+     */
+    public TestRenderHost(File cacheDir, TestPreferences preferences)
+    {
+        this.cacheDir = cacheDir;
+        this.preferences = preferences;
+    }
+
+    /**
+     * Advance the uptime
+     * @param millis Milliseconds to add
+     */
+    public void advance(long millis)
+    {
+        uptime += millis;
+    }
+
+    @Override
+    public String loadShaderSource(int resourceId) throws ShaderException
+    {
+        // Resource ids are only known to the generated R class
+        for(Field field: R.raw.class.getFields())
+        {
+            try
+            {
+                if(field.getInt(null) != resourceId)
+                    continue;
+
+                final File file = new File(RAW_DIRECTORY, field.getName() + ".glsl");
+                return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            }
+            catch(IllegalAccessException | IOException ex)
+            {
+                throw new ShaderException("Failed to load resource " + field.getName() + ": " + ex.getMessage());
+            }
+        }
+
+        throw new ShaderException("Unknown resource " + resourceId);
+    }
+
+    @Override
+    public File getCacheDir()
+    {
+        return cacheDir;
+    }
+
+    @Override
+    public void updateConfiguration()
+    {
+        Configuration.update(preferences);
+    }
+
+    @Override
+    public long uptimeMillis()
+    {
+        return uptime;
+    }
+}